@@ -0,0 +1,74 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.bench;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.transaction.Transaction;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobStore;
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.impl.AbstractBlobStore;
+import org.akubraproject.impl.BlobStoreConnectionWrapper;
+import org.akubraproject.impl.BlobWrapper;
+
+/**
+ * Adds id-generation to a store that does not support it. The transactional store needs this
+ * from its underlying store whenever a blob is overwritten while the old version is still
+ * referenced, so the file-system store is wrapped in this when benchmarking it under a
+ * transactional store.
+ */
+class IdGeneratingStore extends AbstractBlobStore {
+  private final BlobStore store;
+  private final String    prefix;
+
+  /**
+   * Create a new id-generating store.
+   *
+   * @param id     the id of this store
+   * @param store  the store to wrap
+   * @param prefix the prefix for generated ids
+   */
+  IdGeneratingStore(URI id, BlobStore store, String prefix) {
+    super(id);
+    this.store  = store;
+    this.prefix = prefix + "gen/";
+  }
+
+  public BlobStoreConnection openConnection(Transaction tx, Map<String, String> hints)
+      throws UnsupportedOperationException, IOException {
+    return new BlobStoreConnectionWrapper(this, store.openConnection(tx, hints)) {
+      public Blob getBlob(URI blobId, Map<String, String> hints) throws IOException {
+        ensureOpen();
+
+        if (blobId == null)
+          blobId = URI.create(prefix + UUID.randomUUID());
+
+        return new BlobWrapper(delegate.getBlob(blobId, hints), this);
+      }
+    };
+  }
+}
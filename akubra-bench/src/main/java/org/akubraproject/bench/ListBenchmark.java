@@ -0,0 +1,65 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.bench;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Benchmarks for {@link BlobStoreConnection#listBlobIds listBlobIds}. Each invocation lists
+ * the pre-populated blobs by their common prefix, so the number of blobs created concurrently
+ * by other benchmark threads does not affect the result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListBenchmark {
+  /**
+   * List all pre-populated blobs.
+   */
+  @Benchmark
+  public int listBlobIds(StoreState ss, ThreadState ts) throws Exception {
+    final String prefix = ss.getDataPrefix();
+
+    return ts.call(new StoreOp<Integer>() {
+      public Integer run(BlobStoreConnection con) throws Exception {
+        int cnt = 0;
+        for (Iterator<URI> iter = con.listBlobIds(prefix); iter.hasNext(); iter.next())
+          cnt++;
+        return cnt;
+      }
+    });
+  }
+}
@@ -0,0 +1,64 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once for each of a list of thread counts. JMH does not allow the thread
+ * count to be a benchmark parameter, hence this driver. The thread counts are taken from the
+ * <code>akubra.bench.threads</code> system property (a comma-separated list, default
+ * <code>1,4,16</code>); all arguments are passed on to JMH, so the usual JMH options such as
+ * <code>-p stack=FS,TXN_FS</code> or a benchmark regexp can be used to narrow the run. If
+ * <code>akubra.bench.result</code> is set, the results for each thread count are written as
+ * JSON to that file name with <code>-&lt;threads&gt;.json</code> appended.
+ */
+public class Main {
+  /**
+   * Run the benchmarks.
+   *
+   * @param args the JMH command-line options
+   * @throws Exception if the benchmarks could not be run
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cmdLine = new CommandLineOptions(args);
+    String result = System.getProperty("akubra.bench.result");
+
+    for (String t : System.getProperty("akubra.bench.threads", "1,4,16").split(",")) {
+      int threads = Integer.parseInt(t.trim());
+
+      ChainedOptionsBuilder opts = new OptionsBuilder()
+          .parent(cmdLine)
+          .threads(threads);
+      if (cmdLine.getIncludes().isEmpty())
+        opts.include(Main.class.getPackage().getName() + "\\..*Benchmark");
+      if (result != null)
+        opts.result(result + "-" + threads + ".json").resultFormat(ResultFormatType.JSON);
+
+      new Runner(opts.build()).run();
+    }
+  }
+}
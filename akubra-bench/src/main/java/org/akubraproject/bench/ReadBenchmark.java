@@ -0,0 +1,110 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.bench;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Benchmarks for the read-only blob operations: reading the full content, reading its tail,
+ * {@link org.akubraproject.Blob#exists exists} and {@link org.akubraproject.Blob#getSize
+ * getSize}. All work against the pre-populated blobs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+  /** the number of bytes read by {@link #readTail} */
+  public static final int TAIL_SIZE = 4096;
+
+  /**
+   * Open an input-stream and read the blob completely.
+   */
+  @Benchmark
+  public long read(ThreadState ts) throws Exception {
+    final URI    id  = ts.nextReadId();
+    final byte[] buf = ts.getBuffer();
+
+    return ts.call(new StoreOp<Long>() {
+      public Long run(BlobStoreConnection con) throws Exception {
+        return StoreState.read(con.getBlob(id, null), buf);
+      }
+    });
+  }
+
+  /**
+   * Read the last {@value #TAIL_SIZE} bytes of the blob using a ranged read.
+   */
+  @Benchmark
+  public long readTail(ThreadState ts) throws Exception {
+    final URI    id     = ts.nextReadId();
+    final byte[] buf    = ts.getBuffer();
+    final long   length = Math.min(TAIL_SIZE, ts.getBlobSize());
+    final long   offset = ts.getBlobSize() - length;
+
+    return ts.call(new StoreOp<Long>() {
+      public Long run(BlobStoreConnection con) throws Exception {
+        return StoreState.read(con.getBlob(id, null), offset, length, buf);
+      }
+    });
+  }
+
+  /**
+   * Test for the existence of a blob.
+   */
+  @Benchmark
+  public boolean exists(ThreadState ts) throws Exception {
+    final URI id = ts.nextReadId();
+
+    return ts.call(new StoreOp<Boolean>() {
+      public Boolean run(BlobStoreConnection con) throws Exception {
+        return con.getBlob(id, null).exists();
+      }
+    });
+  }
+
+  /**
+   * Get the size of a blob.
+   */
+  @Benchmark
+  public long getSize(ThreadState ts) throws Exception {
+    final URI id = ts.nextReadId();
+
+    return ts.call(new StoreOp<Long>() {
+      public Long run(BlobStoreConnection con) throws Exception {
+        return con.getBlob(id, null).getSize();
+      }
+    });
+  }
+}
@@ -0,0 +1,41 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.bench;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * A unit of work run against a connection. Depending on the stack, the connection is either
+ * one held open by the benchmark thread or one opened for a transaction around just this work.
+ *
+ * @param <T> the type of the result
+ */
+public interface StoreOp<T> {
+  /**
+   * Run the work.
+   *
+   * @param con the connection to use
+   * @return the result
+   * @throws Exception if an error occurred
+   */
+  T run(BlobStoreConnection con) throws Exception;
+}
@@ -0,0 +1,256 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+
+import javax.transaction.TransactionManager;
+
+import org.akubraproject.BlobStore;
+import org.akubraproject.cache.CachingBlobStore;
+import org.akubraproject.fs.FSBlobStore;
+import org.akubraproject.map.IdMapper;
+import org.akubraproject.map.IdMappingBlobStore;
+import org.akubraproject.mem.MemBlobStore;
+import org.akubraproject.qsc.QuiescingBlobStore;
+import org.akubraproject.rmi.AkubraRMIClient;
+import org.akubraproject.rmi.AkubraRMIServer;
+import org.akubraproject.stats.InstrumentedBlobStore;
+import org.akubraproject.tck.BtmUtils;
+import org.akubraproject.txn.derby.TransactionalStore;
+
+/**
+ * The store stacks that can be benchmarked. Each constant knows how to assemble its stack in
+ * a scratch directory and which id prefix the blobs created through it must use.
+ */
+public enum StoreStack {
+  /** a plain {@link MemBlobStore} */
+  MEM {
+    @Override
+    Stack build(File dir) {
+      return new Stack(new MemBlobStore(STORE_ID), null, FILE_PREFIX);
+    }
+  },
+
+  /** a plain {@link FSBlobStore} */
+  FS {
+    @Override
+    Stack build(File dir) {
+      return new Stack(fs(dir), null, FILE_PREFIX);
+    }
+  },
+
+  /** a {@link TransactionalStore} over a {@link MemBlobStore} */
+  TXN_MEM {
+    @Override
+    Stack build(File dir) throws IOException {
+      return txn(new MemBlobStore(URI.create("urn:akubra-bench:mem")), dir);
+    }
+  },
+
+  /** a {@link TransactionalStore} over an {@link FSBlobStore} */
+  TXN_FS {
+    @Override
+    Stack build(File dir) throws IOException {
+      return txn(new IdGeneratingStore(URI.create("urn:akubra-bench:gen"), fs(dir), FILE_PREFIX),
+                 dir);
+    }
+  },
+
+  /** a {@link QuiescingBlobStore} over an {@link FSBlobStore} */
+  QSC_FS {
+    @Override
+    Stack build(File dir) {
+      return new Stack(new QuiescingBlobStore(STORE_ID, fs(dir)), null, FILE_PREFIX);
+    }
+  },
+
+  /** an {@link InstrumentedBlobStore} over an {@link FSBlobStore} */
+  STATS_FS {
+    @Override
+    Stack build(File dir) {
+      return new Stack(new InstrumentedBlobStore(STORE_ID, fs(dir)), null, FILE_PREFIX);
+    }
+  },
+
+  /** a {@link CachingBlobStore} over an {@link FSBlobStore} */
+  CACHE_FS {
+    @Override
+    Stack build(File dir) {
+      return new Stack(new CachingBlobStore(STORE_ID, fs(dir)), null, FILE_PREFIX);
+    }
+  },
+
+  /** an {@link IdMappingBlobStore} over an {@link FSBlobStore} */
+  MAP_FS {
+    @Override
+    Stack build(File dir) {
+      IdMapper mapper = new PrefixMapper(URN_PREFIX, FILE_PREFIX);
+      return new Stack(new IdMappingBlobStore(STORE_ID, fs(dir), mapper), null, URN_PREFIX);
+    }
+  },
+
+  /** the RMI client talking to an RMI server exporting a {@link MemBlobStore} */
+  RMI_MEM {
+    @Override
+    Stack build(File dir) throws Exception {
+      return rmi(new MemBlobStore(URI.create("urn:akubra-bench:mem")));
+    }
+  },
+
+  /** the RMI client talking to an RMI server exporting an {@link FSBlobStore} */
+  RMI_FS {
+    @Override
+    Stack build(File dir) throws Exception {
+      return rmi(fs(dir));
+    }
+  };
+
+  /** the id of the top-level store of each stack */
+  static final URI    STORE_ID    = URI.create("urn:akubra-bench:store");
+  /** the blob-id prefix understood by the file-system store */
+  static final String FILE_PREFIX = "file:bench/";
+  /** the external blob-id prefix used by the id-mapping store */
+  static final String URN_PREFIX  = "urn:bench:";
+
+  /**
+   * Assemble this stack.
+   *
+   * @param dir a scratch directory the stack may use for its files and databases; it is
+   *            removed by the caller after the stack has been closed
+   * @return the new stack
+   * @throws Exception if the stack could not be set up
+   */
+  abstract Stack build(File dir) throws Exception;
+
+  private static BlobStore fs(File dir) {
+    File base = new File(dir, "blobs");
+    if (!base.mkdirs())
+      throw new IllegalStateException("Could not create '" + base + "'");
+    return new FSBlobStore(URI.create("urn:akubra-bench:fs"), base);
+  }
+
+  private static Stack txn(BlobStore wrapped, File dir) throws IOException {
+    TransactionalStore store =
+        new TransactionalStore(STORE_ID, wrapped, new File(dir, "db").getAbsolutePath());
+    return new Stack(store, BtmUtils.getTM(), FILE_PREFIX);
+  }
+
+  private static Stack rmi(BlobStore exported) throws Exception {
+    int port = freePort();
+    String name = "akubra-bench-" + port;
+    final AkubraRMIServer server = new AkubraRMIServer(exported, name, port);
+
+    return new Stack(AkubraRMIClient.create(name, port), null, FILE_PREFIX) {
+      @Override
+      public void close() throws IOException {
+        server.shutDown(true);
+      }
+    };
+  }
+
+  private static int freePort() throws IOException {
+    ServerSocket s = new ServerSocket(0);
+    try {
+      return s.getLocalPort();
+    } finally {
+      s.close();
+    }
+  }
+
+  /**
+   * An assembled store stack.
+   */
+  public static class Stack {
+    private final BlobStore          store;
+    private final TransactionManager tm;
+    private final String             idPrefix;
+
+    Stack(BlobStore store, TransactionManager tm, String idPrefix) {
+      this.store    = store;
+      this.tm       = tm;
+      this.idPrefix = idPrefix;
+    }
+
+    /**
+     * @return the top-level store of this stack
+     */
+    public BlobStore getStore() {
+      return store;
+    }
+
+    /**
+     * @return the transaction-manager to use, or null if the stack is not transactional
+     */
+    public TransactionManager getTransactionManager() {
+      return tm;
+    }
+
+    /**
+     * @return the prefix all blob-ids in this stack must start with
+     */
+    public String getIdPrefix() {
+      return idPrefix;
+    }
+
+    /**
+     * Release any resources, such as network listeners, held by this stack.
+     *
+     * @throws IOException if an error occurred releasing the resources
+     */
+    public void close() throws IOException {
+    }
+  }
+
+  /**
+   * Maps external ids to internal ids by swapping one prefix for another.
+   */
+  private static class PrefixMapper implements IdMapper {
+    private final String extPrefix;
+    private final String intPrefix;
+
+    PrefixMapper(String extPrefix, String intPrefix) {
+      this.extPrefix = extPrefix;
+      this.intPrefix = intPrefix;
+    }
+
+    public URI getExternalId(URI internalId) {
+      return URI.create(extPrefix + internalId.toString().substring(intPrefix.length()));
+    }
+
+    public URI getInternalId(URI externalId) {
+      String id = externalId.toString();
+      if (!id.startsWith(extPrefix))
+        return externalId;
+      return URI.create(intPrefix + id.substring(extPrefix.length()));
+    }
+
+    public String getInternalPrefix(String externalPrefix) {
+      if (!externalPrefix.startsWith(extPrefix))
+        return null;
+      return intPrefix + externalPrefix.substring(extPrefix.length());
+    }
+  }
+}
@@ -0,0 +1,276 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.bench;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import javax.transaction.TransactionManager;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobStore;
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * The store under test, shared by all benchmark threads. On setup the stack is assembled in a
+ * fresh scratch directory and populated with <var>numBlobs</var> blobs of <var>blobSize</var>
+ * bytes each; these are used by the read and list benchmarks. The scratch directory is created
+ * under the directory named by the <code>akubra.bench.dir</code> system property, or under
+ * <code>java.io.tmpdir</code> if that is not set.
+ */
+@State(Scope.Benchmark)
+public class StoreState {
+  /** the store stack to benchmark */
+  @Param({ "MEM", "FS", "TXN_MEM", "TXN_FS", "QSC_FS", "STATS_FS", "CACHE_FS",
+           "MAP_FS", "RMI_MEM", "RMI_FS" })
+  public StoreStack stack;
+
+  /** the size of the blobs read and written, in bytes */
+  @Param({ "1024", "65536", "1048576" })
+  public int blobSize;
+
+  /** the number of blobs to pre-populate the store with */
+  @Param({ "100" })
+  public int numBlobs;
+
+  private File             dir;
+  private StoreStack.Stack stk;
+  private byte[]           content;
+  private URI[]            ids;
+
+  private final Set<BlobStoreConnection> cons =
+      Collections.synchronizedSet(new HashSet<BlobStoreConnection>());
+
+  /**
+   * Assemble and populate the store.
+   *
+   * @throws Exception if an error occurred
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    File parent = new File(System.getProperty("akubra.bench.dir",
+                                              System.getProperty("java.io.tmpdir")));
+    dir = File.createTempFile("akubra-bench-", "", parent);
+    if (!dir.delete() || !dir.mkdirs())
+      throw new IllegalStateException("Could not create scratch directory '" + dir + "'");
+
+    stk = stack.build(dir);
+
+    content = new byte[blobSize];
+    new Random(42).nextBytes(content);
+
+    ids = new URI[numBlobs];
+    for (int idx = 0; idx < numBlobs; idx++)
+      ids[idx] = URI.create(getDataPrefix() + idx);
+
+    call(new StoreOp<Void>() {
+      public Void run(BlobStoreConnection con) throws Exception {
+        for (URI id : ids)
+          write(con.getBlob(id, null), false);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Shut down the store and remove the scratch directory.
+   *
+   * @throws Exception if an error occurred
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    try {
+      synchronized (cons) {
+        for (BlobStoreConnection con : cons)
+          con.close();
+        cons.clear();
+      }
+
+      if (stk != null)
+        stk.close();
+    } finally {
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  /**
+   * @return the top-level store under test
+   */
+  public BlobStore getStore() {
+    return stk.getStore();
+  }
+
+  /**
+   * Open a (non-transactional) connection that stays open until the store is torn down. The
+   * connection is closed here rather than by the thread using it because JMH does not order the
+   * teardown of per-thread state before that of the shared state.
+   *
+   * @return the new connection
+   * @throws Exception if an error occurred
+   */
+  public BlobStoreConnection openConnection() throws Exception {
+    BlobStoreConnection con = getStore().openConnection(null, null);
+    cons.add(con);
+    return con;
+  }
+
+  /**
+   * @return true if the work must be done inside transactions
+   */
+  public boolean isTransactional() {
+    return stk.getTransactionManager() != null;
+  }
+
+  /**
+   * @return the prefix all ids of blobs created by the benchmarks must start with
+   */
+  public String getIdPrefix() {
+    return stk.getIdPrefix();
+  }
+
+  /**
+   * @return the prefix of the ids of the pre-populated blobs
+   */
+  public String getDataPrefix() {
+    return stk.getIdPrefix() + "data/";
+  }
+
+  /**
+   * @return the ids of the pre-populated blobs
+   */
+  public URI[] getIds() {
+    return ids;
+  }
+
+  /**
+   * @return the number of bytes in each blob
+   */
+  public int getBlobSize() {
+    return blobSize;
+  }
+
+  /**
+   * Write the blob content to the given blob.
+   *
+   * @param blob      the blob to write
+   * @param overwrite whether to overwrite an existing blob
+   * @throws Exception if an error occurred
+   */
+  public void write(Blob blob, boolean overwrite) throws Exception {
+    OutputStream out = blob.openOutputStream(blobSize, overwrite);
+    try {
+      out.write(content);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Read a blob completely.
+   *
+   * @param blob the blob to read
+   * @param buf  the buffer to read into
+   * @return the number of bytes read
+   * @throws Exception if an error occurred
+   */
+  public static long read(Blob blob, byte[] buf) throws Exception {
+    return drain(blob.openInputStream(), buf);
+  }
+
+  /**
+   * Read a range of a blob.
+   *
+   * @param blob   the blob to read
+   * @param offset the position of the first byte to read
+   * @param length the number of bytes to read
+   * @param buf    the buffer to read into
+   * @return the number of bytes read
+   * @throws Exception if an error occurred
+   */
+  public static long read(Blob blob, long offset, long length, byte[] buf) throws Exception {
+    return drain(blob.openInputStream(offset, length), buf);
+  }
+
+  private static long drain(InputStream in, byte[] buf) throws Exception {
+    try {
+      long cnt = 0;
+      for (int len; (len = in.read(buf)) != -1; )
+        cnt += len;
+      return cnt;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Run the given operation on a newly opened connection, inside a new transaction if the
+   * stack is transactional. The transaction is committed if the operation succeeds and rolled
+   * back otherwise.
+   *
+   * @param op the operation to run
+   * @return the operation's result
+   * @throws Exception if an error occurred
+   */
+  public <T> T call(StoreOp<T> op) throws Exception {
+    TransactionManager tm = stk.getTransactionManager();
+    if (tm == null) {
+      BlobStoreConnection con = getStore().openConnection(null, null);
+      try {
+        return op.run(con);
+      } finally {
+        con.close();
+      }
+    }
+
+    tm.begin();
+    boolean ok = false;
+    try {
+      BlobStoreConnection con = getStore().openConnection(tm.getTransaction(), null);
+      try {
+        T res = op.run(con);
+        ok = true;
+        return res;
+      } finally {
+        con.close();
+      }
+    } finally {
+      if (ok)
+        tm.commit();
+      else
+        tm.rollback();
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.bench;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Per-thread benchmark state. For non-transactional stacks each thread keeps a connection open
+ * for the whole run, since that is how such stores are normally used; for
+ * transactional stacks every operation runs in its own transaction, so that the measured time
+ * includes the commit. Each thread also gets its own id namespace for the blobs it creates.
+ */
+@State(Scope.Thread)
+public class ThreadState {
+  private static final AtomicInteger threadCnt = new AtomicInteger();
+
+  private StoreState          store;
+  private String              prefix;
+  private long                idCnt;
+  private int                 readIdx;
+  private byte[]              buf;
+  private BlobStoreConnection con;
+
+  /**
+   * Set up the per-thread state.
+   *
+   * @param store the store under test
+   * @throws Exception if an error occurred
+   */
+  @Setup(Level.Trial)
+  public void setUp(StoreState store) throws Exception {
+    this.store   = store;
+    this.prefix  = store.getIdPrefix() + "t" + threadCnt.getAndIncrement() + "/";
+    this.readIdx = (prefix.hashCode() & Integer.MAX_VALUE) % store.getIds().length;
+    this.buf     = new byte[8192];
+
+    if (!store.isTransactional())
+      con = store.openConnection();
+  }
+
+  /**
+   * Run an operation, either on this thread's connection or in a new transaction.
+   *
+   * @param op the operation to run
+   * @return the operation's result
+   * @throws Exception if an error occurred
+   */
+  public <T> T call(StoreOp<T> op) throws Exception {
+    return (con != null) ? op.run(con) : store.call(op);
+  }
+
+  /**
+   * @return a new, never before used blob id in this thread's namespace
+   */
+  public URI newId() {
+    return URI.create(prefix + idCnt++);
+  }
+
+  /**
+   * @return the id of a blob reserved for this thread's exclusive use
+   */
+  public URI getScratchId() {
+    return URI.create(prefix + "scratch");
+  }
+
+  /**
+   * @return the id of the next pre-populated blob to read; threads cycle through all of them
+   */
+  public URI nextReadId() {
+    URI[] ids = store.getIds();
+    URI   id  = ids[readIdx];
+    readIdx = (readIdx + 1) % ids.length;
+    return id;
+  }
+
+  /**
+   * @return the number of bytes in each pre-populated blob
+   */
+  public int getBlobSize() {
+    return store.getBlobSize();
+  }
+
+  /**
+   * @return this thread's read buffer
+   */
+  public byte[] getBuffer() {
+    return buf;
+  }
+
+  /**
+   * Create a blob with the standard content.
+   *
+   * @param id the id of the blob
+   * @throws Exception if an error occurred
+   */
+  public void create(final URI id) throws Exception {
+    call(new StoreOp<Void>() {
+      public Void run(BlobStoreConnection con) throws Exception {
+        store.write(con.getBlob(id, null), false);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Delete a blob if it exists.
+   *
+   * @param id the id of the blob
+   * @throws Exception if an error occurred
+   */
+  public void delete(final URI id) throws Exception {
+    call(new StoreOp<Void>() {
+      public Void run(BlobStoreConnection con) throws Exception {
+        Blob b = con.getBlob(id, null);
+        if (b.exists())
+          b.delete();
+        return null;
+      }
+    });
+  }
+}
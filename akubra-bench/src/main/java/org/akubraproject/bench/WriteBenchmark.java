@@ -0,0 +1,155 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.bench;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Benchmarks for the blob operations that modify the store: create, overwrite, {@link
+ * org.akubraproject.Blob#moveTo moveTo} and {@link org.akubraproject.Blob#delete delete}.
+ *
+ * <p>So that the store does not grow without bound (and so that each invocation sees the same
+ * store state), blobs that are created or consumed by an invocation are set up and removed
+ * again around each invocation. That bookkeeping is not part of the measurement.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+  /**
+   * An id that does not exist before the invocation; whatever the invocation created under
+   * it is deleted afterwards.
+   */
+  @State(Scope.Thread)
+  public static class NewBlob {
+    URI id;
+
+    @Setup(Level.Invocation)
+    public void setUp(ThreadState ts) {
+      id = ts.newId();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown(ThreadState ts) throws Exception {
+      ts.delete(id);
+    }
+  }
+
+  /**
+   * A blob that exists before the invocation; it is deleted afterwards if the invocation
+   * left it in place.
+   */
+  @State(Scope.Thread)
+  public static class ExistingBlob {
+    URI id;
+
+    @Setup(Level.Invocation)
+    public void setUp(ThreadState ts) throws Exception {
+      id = ts.newId();
+      ts.create(id);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown(ThreadState ts) throws Exception {
+      ts.delete(id);
+    }
+  }
+
+  /**
+   * Create a new blob.
+   */
+  @Benchmark
+  public void create(final StoreState ss, ThreadState ts, NewBlob nb) throws Exception {
+    final URI id = nb.id;
+
+    ts.call(new StoreOp<Void>() {
+      public Void run(BlobStoreConnection con) throws Exception {
+        ss.write(con.getBlob(id, null), false);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Overwrite an existing blob. The same per-thread blob is overwritten by every invocation.
+   */
+  @Benchmark
+  public void overwrite(final StoreState ss, ThreadState ts) throws Exception {
+    final URI id = ts.getScratchId();
+
+    ts.call(new StoreOp<Void>() {
+      public Void run(BlobStoreConnection con) throws Exception {
+        ss.write(con.getBlob(id, null), true);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Rename an existing blob.
+   */
+  @Benchmark
+  public void moveTo(ThreadState ts, ExistingBlob src, NewBlob dst) throws Exception {
+    final URI from = src.id;
+    final URI to   = dst.id;
+
+    ts.call(new StoreOp<Void>() {
+      public Void run(BlobStoreConnection con) throws Exception {
+        con.getBlob(from, null).moveTo(to, null);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Delete an existing blob.
+   */
+  @Benchmark
+  public void delete(ThreadState ts, ExistingBlob eb) throws Exception {
+    final URI id = eb.id;
+
+    ts.call(new StoreOp<Void>() {
+      public Void run(BlobStoreConnection con) throws Exception {
+        con.getBlob(id, null).delete();
+        return null;
+      }
+    });
+  }
+}
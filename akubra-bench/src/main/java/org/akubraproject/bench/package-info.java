@@ -0,0 +1,30 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Akubra Benchmarks. JMH benchmarks that measure the throughput of the basic blob operations
+ * through the Akubra API, for each of the store implementations and a few typical stacks of
+ * them, over a range of blob sizes and thread counts. Build the self-contained
+ * <code>akubra-benchmarks.jar</code> with <code>mvn package</code> and run it with
+ * <code>java -jar</code>; see {@link org.akubraproject.bench.Main} for the options.
+ */
+package org.akubraproject.bench;
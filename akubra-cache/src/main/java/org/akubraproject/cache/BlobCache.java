@@ -0,0 +1,270 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.cache;
+
+import java.net.URI;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A size-bounded map of blob-id to {@link CachedBlob} using segmented LRU (SLRU) eviction.
+ *
+ * <p>New entries go into a probationary segment; an entry that is hit again while there is
+ * promoted to a protected segment which may occupy up to 80% of the capacity. Entries falling
+ * off the protected segment are demoted back to probation, and entries are evicted from the
+ * least recently used end of probation first. This keeps blobs that are read repeatedly in the
+ * cache when a scan reads many blobs once.
+ *
+ * <p>The weight of an entry is its content length plus an estimate of the fixed overhead, so
+ * the capacity bounds the heap used by the cache.
+ *
+ * <p>Loading is not done under the lock, so a load can race with an invalidation of the same
+ * blob. To avoid caching stale data, callers obtain the {@link #epoch} of the id before reading
+ * from the underlying store and pass it to {@link #put}; invalidating bumps the epoch, and a
+ * put with an outdated epoch is dropped. Epochs are kept per stripe rather than per id, so an
+ * unrelated invalidation may occasionally cause a load not to be cached.
+ */
+class BlobCache {
+  /** The estimated heap used by an entry, not counting the content or the id. */
+  static final int ENTRY_OVERHEAD = 96;
+
+  private static final int EPOCH_STRIPES = 64;
+
+  private final long capacity;
+  private final long protectedCapacity;
+
+  private final LinkedHashMap<URI, CachedBlob> probation =
+      new LinkedHashMap<URI, CachedBlob>(16, 0.75f, false);
+  private final LinkedHashMap<URI, CachedBlob> protect =
+      new LinkedHashMap<URI, CachedBlob>(16, 0.75f, true);
+
+  private long probationWeight = 0;
+  private long protectedWeight = 0;
+
+  private final AtomicLongArray epochs = new AtomicLongArray(EPOCH_STRIPES);
+  private final AtomicLong      hits   = new AtomicLong();
+  private final AtomicLong      misses = new AtomicLong();
+
+  /**
+   * Create a new cache.
+   *
+   * @param capacity the maximum total weight of the entries, in bytes
+   */
+  BlobCache(long capacity) {
+    this.capacity          = capacity;
+    this.protectedCapacity = capacity / 5 * 4;
+  }
+
+  /**
+   * Look up an entry, promoting it if found.
+   *
+   * @param id the blob's id
+   * @return the entry, or null if not cached
+   */
+  CachedBlob get(URI id) {
+    CachedBlob e;
+
+    synchronized (this) {
+      e = protect.get(id);
+      if (e == null) {
+        e = probation.remove(id);
+        if (e != null) {
+          long w = weight(id, e);
+          probationWeight -= w;
+          protect.put(id, e);
+          protectedWeight += w;
+          demote();
+        }
+      }
+    }
+
+    if (e != null)
+      hits.incrementAndGet();
+    else
+      misses.incrementAndGet();
+
+    return e;
+  }
+
+  /**
+   * Add an entry. The entry is dropped if the id was invalidated since <var>epoch</var> was
+   * obtained, or if it weighs more than the whole capacity. An entry with content is not
+   * replaced by one without.
+   *
+   * @param id    the blob's id
+   * @param entry the entry
+   * @param epoch the value of {@link #epoch epoch(id)} from before the entry was loaded
+   * @return true if the entry was added
+   */
+  synchronized boolean put(URI id, CachedBlob entry, long epoch) {
+    if (epochs.get(stripe(id)) != epoch)
+      return false;
+
+    long w = weight(id, entry);
+    if (w > capacity)
+      return false;
+
+    CachedBlob old = protect.get(id);
+    if (old != null) {
+      if (old.getContent() != null && entry.getContent() == null)
+        return false;
+      protect.put(id, entry);
+      protectedWeight += w - weight(id, old);
+      demote();
+    } else {
+      old = probation.get(id);
+      if (old != null && old.getContent() != null && entry.getContent() == null)
+        return false;
+      probation.put(id, entry);
+      probationWeight += w - ((old != null) ? weight(id, old) : 0);
+    }
+
+    evict();
+    return true;
+  }
+
+  /**
+   * Remove an entry and make any loads of it currently in progress not be cached.
+   *
+   * @param id the blob's id
+   */
+  void invalidate(URI id) {
+    epochs.incrementAndGet(stripe(id));
+
+    synchronized (this) {
+      CachedBlob e = protect.remove(id);
+      if (e != null)
+        protectedWeight -= weight(id, e);
+
+      e = probation.remove(id);
+      if (e != null)
+        probationWeight -= weight(id, e);
+    }
+  }
+
+  /**
+   * Remove all entries and make any loads currently in progress not be cached.
+   */
+  void invalidateAll() {
+    for (int idx = 0; idx < EPOCH_STRIPES; idx++)
+      epochs.incrementAndGet(idx);
+
+    synchronized (this) {
+      protect.clear();
+      probation.clear();
+      protectedWeight = 0;
+      probationWeight = 0;
+    }
+  }
+
+  /**
+   * Get the current epoch of an id, for passing to {@link #put}.
+   *
+   * @param id the blob's id
+   * @return the epoch
+   */
+  long epoch(URI id) {
+    return epochs.get(stripe(id));
+  }
+
+  /**
+   * @return the total weight of the cached entries, in bytes
+   */
+  synchronized long getWeight() {
+    return protectedWeight + probationWeight;
+  }
+
+  /**
+   * @return the number of cached entries
+   */
+  synchronized int size() {
+    return protect.size() + probation.size();
+  }
+
+  /**
+   * @return whether the given id is in the protected segment; for testing
+   */
+  synchronized boolean isProtected(URI id) {
+    return protect.containsKey(id);
+  }
+
+  /**
+   * @return the number of lookups that found an entry
+   */
+  long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of lookups that did not find an entry
+   */
+  long getMissCount() {
+    return misses.get();
+  }
+
+  /** Move the least recently used protected entries to probation until protected fits. */
+  private void demote() {
+    Iterator<Map.Entry<URI, CachedBlob>> iter = protect.entrySet().iterator();
+    while (protectedWeight > protectedCapacity && iter.hasNext()) {
+      Map.Entry<URI, CachedBlob> e = iter.next();
+      iter.remove();
+
+      long w = weight(e.getKey(), e.getValue());
+      protectedWeight -= w;
+      probation.put(e.getKey(), e.getValue());
+      probationWeight += w;
+    }
+  }
+
+  /** Drop entries, least valuable first, until the cache fits its capacity. */
+  private void evict() {
+    evict(probation.entrySet().iterator(), true);
+    evict(protect.entrySet().iterator(), false);
+  }
+
+  private void evict(Iterator<Map.Entry<URI, CachedBlob>> iter, boolean isProbation) {
+    while (protectedWeight + probationWeight > capacity && iter.hasNext()) {
+      Map.Entry<URI, CachedBlob> e = iter.next();
+      iter.remove();
+
+      long w = weight(e.getKey(), e.getValue());
+      if (isProbation)
+        probationWeight -= w;
+      else
+        protectedWeight -= w;
+    }
+  }
+
+  private static long weight(URI id, CachedBlob e) {
+    byte[] content = e.getContent();
+    return ENTRY_OVERHEAD + 2L * id.toString().length() + ((content != null) ? content.length : 0);
+  }
+
+  private static int stripe(URI id) {
+    int h = id.hashCode();
+    return (h ^ (h >>> 16)) & (EPOCH_STRIPES - 1);
+  }
+}
@@ -0,0 +1,85 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.cache;
+
+/**
+ * An immutable cache entry: what is known about a blob. This is either just the existence
+ * and possibly the size, or additionally the complete content.
+ */
+class CachedBlob {
+  /** the entry for a blob known not to exist */
+  static final CachedBlob MISSING = new CachedBlob(false, -1, null);
+
+  /** the entry for a blob known to exist, but whose size is not known */
+  static final CachedBlob EXISTS = new CachedBlob(true, -1, null);
+
+  private final boolean exists;
+  private final long    size;
+  private final byte[]  content;
+
+  private CachedBlob(boolean exists, long size, byte[] content) {
+    this.exists  = exists;
+    this.size    = size;
+    this.content = content;
+  }
+
+  /**
+   * Create an entry for an existing blob of known size.
+   *
+   * @param size the size of the blob; may be -1 if unknown
+   * @return the entry
+   */
+  static CachedBlob withSize(long size) {
+    return (size < 0) ? EXISTS : new CachedBlob(true, size, null);
+  }
+
+  /**
+   * Create an entry for an existing blob with known content.
+   *
+   * @param content the complete content; not copied
+   * @return the entry
+   */
+  static CachedBlob withContent(byte[] content) {
+    return new CachedBlob(true, content.length, content);
+  }
+
+  /**
+   * @return whether the blob exists
+   */
+  boolean exists() {
+    return exists;
+  }
+
+  /**
+   * @return the size of the blob, or -1 if not known
+   */
+  long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the content of the blob, or null if not cached; must not be modified
+   */
+  byte[] getContent() {
+    return content;
+  }
+}
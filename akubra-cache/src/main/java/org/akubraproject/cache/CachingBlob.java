@@ -0,0 +1,301 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+
+import java.net.URI;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.output.ProxyOutputStream;
+
+import org.akubraproject.Blob;
+import org.akubraproject.MissingBlobException;
+import org.akubraproject.impl.BlobWrapper;
+import org.akubraproject.impl.FileChannelWrapper;
+import org.akubraproject.impl.SeekableByteChannelWrapper;
+import org.akubraproject.impl.StreamManager;
+
+/**
+ * Serves reads from the cache where possible, populating it on a miss, and invalidates the
+ * cache entry when the blob is modified.
+ */
+class CachingBlob extends BlobWrapper {
+  private final CachingBlobStoreConnection con;
+  private final BlobCache                  cache;
+  private final StreamManager              streamManager;
+
+  /**
+   * Create a new caching blob.
+   *
+   * @param connection    the connection this blob belongs to
+   * @param blob          the underlying blob this is wrapping
+   * @param streamManager the stream manager
+   */
+  public CachingBlob(CachingBlobStoreConnection connection, Blob blob,
+                     StreamManager streamManager) {
+    super(blob, connection);
+    this.con           = connection;
+    this.cache         = connection.getCache();
+    this.streamManager = streamManager;
+  }
+
+  @Override
+  public InputStream openInputStream() throws IOException {
+    ensureOpen();
+    if (!con.isCaching())
+      return manage(delegate.openInputStream());
+
+    long       epoch = cache.epoch(id);
+    CachedBlob e     = cache.get(id);
+    if (e != null) {
+      if (!e.exists())
+        throw new MissingBlobException(id);
+      if (e.getContent() != null)
+        return manage(new ByteArrayInputStream(e.getContent()));
+      if (e.getSize() > con.getMaxBlobSize())
+        return manage(delegate.openInputStream());
+    }
+
+    InputStream in;
+    try {
+      in = delegate.openInputStream();
+    } catch (MissingBlobException mbe) {
+      cache.put(id, CachedBlob.MISSING, epoch);
+      throw mbe;
+    }
+
+    return manage(load(in, epoch));
+  }
+
+  @Override
+  public InputStream openInputStream(long offset, long length) throws IOException {
+    ensureOpen();
+    checkRange(offset, length);
+    if (!con.isCaching())
+      return manage(delegate.openInputStream(offset, length));
+
+    CachedBlob e = cache.get(id);
+    if (e != null && !e.exists())
+      throw new MissingBlobException(id);
+
+    byte[] content = (e != null) ? e.getContent() : null;
+    if (content == null)
+      return manage(delegate.openInputStream(offset, length));
+
+    int off = (int) Math.min(offset, content.length);
+    int len = (int) ((length < 0) ? content.length - off : Math.min(length, content.length - off));
+    return manage(new ByteArrayInputStream(content, off, len));
+  }
+
+  @Override
+  public OutputStream openOutputStream(long estimatedSize, boolean overwrite) throws IOException {
+    ensureOpen();
+    con.invalidate(id);
+
+    OutputStream out = new ProxyOutputStream(delegate.openOutputStream(estimatedSize, overwrite)) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          // drop anything loaded while the content was being written
+          con.invalidate(id);
+        }
+      }
+    };
+
+    return streamManager.manageOutputStream(owner, out);
+  }
+
+  /**
+   * Channels always access the underlying blob. The cache entry is invalidated when a writable
+   * channel is opened and again when it is closed.
+   */
+  @Override
+  public SeekableByteChannel openChannel(boolean writable) throws IOException {
+    ensureOpen();
+    if (!writable)
+      return streamManager.manageChannel(owner, delegate.openChannel(false), false);
+
+    con.invalidate(id);
+
+    SeekableByteChannel channel = delegate.openChannel(true);
+    if (channel instanceof FileChannel) {
+      channel = new FileChannelWrapper((FileChannel) channel) {
+        @Override
+        protected void implCloseChannel() throws IOException {
+          try {
+            super.implCloseChannel();
+          } finally {
+            con.invalidate(id);
+          }
+        }
+      };
+    } else {
+      channel = new SeekableByteChannelWrapper(channel) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            con.invalidate(id);
+          }
+        }
+      };
+    }
+
+    return streamManager.manageChannel(owner, channel, true);
+  }
+
+  @Override
+  public long getSize() throws IOException {
+    ensureOpen();
+    if (!con.isCaching())
+      return delegate.getSize();
+
+    long       epoch = cache.epoch(id);
+    CachedBlob e     = cache.get(id);
+    if (e != null) {
+      if (!e.exists())
+        throw new MissingBlobException(id);
+      if (e.getSize() >= 0)
+        return e.getSize();
+    }
+
+    long size;
+    try {
+      size = delegate.getSize();
+    } catch (MissingBlobException mbe) {
+      cache.put(id, CachedBlob.MISSING, epoch);
+      throw mbe;
+    }
+
+    cache.put(id, CachedBlob.withSize(size), epoch);
+    return size;
+  }
+
+  @Override
+  public boolean exists() throws IOException {
+    ensureOpen();
+    if (!con.isCaching())
+      return delegate.exists();
+
+    long       epoch = cache.epoch(id);
+    CachedBlob e     = cache.get(id);
+    if (e != null)
+      return e.exists();
+
+    boolean exists = delegate.exists();
+    cache.put(id, exists ? CachedBlob.EXISTS : CachedBlob.MISSING, epoch);
+    return exists;
+  }
+
+  @Override
+  public void delete() throws IOException {
+    ensureOpen();
+    try {
+      delegate.delete();
+    } finally {
+      con.invalidate(id);
+    }
+  }
+
+  @Override
+  public Blob moveTo(URI blobId, Map<String, String> hints) throws IOException {
+    ensureOpen();
+
+    Blob dest = null;
+    try {
+      dest = delegate.moveTo(blobId, hints);
+    } finally {
+      con.invalidate(id);
+      if (blobId != null)
+        con.invalidate(blobId);
+      else if (dest != null)
+        con.invalidate(dest.getId());
+    }
+
+    return con.wrap(dest);
+  }
+
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+    ensureOpen();
+
+    Blob dest = null;
+    try {
+      dest = delegate.copyTo(blobId, hints);
+    } finally {
+      if (blobId != null)
+        con.invalidate(blobId);
+      else if (dest != null)
+        con.invalidate(dest.getId());
+    }
+
+    return con.wrap(dest);
+  }
+
+  /**
+   * Read the start of the content and cache it if that turns out to be all of it.
+   *
+   * @param in    the stream on the full content
+   * @param epoch the cache epoch from before the stream was opened
+   * @return a stream with the full content
+   * @throws IOException if reading failed
+   */
+  private InputStream load(InputStream in, long epoch) throws IOException {
+    byte[] head;
+
+    boolean ok = false;
+    try {
+      BoundedInputStream bin = new BoundedInputStream(in, con.getMaxBlobSize() + 1L);
+      bin.setPropagateClose(false);
+      head = IOUtils.toByteArray(bin);
+      ok = true;
+    } finally {
+      if (!ok)
+        IOUtils.closeQuietly(in);
+    }
+
+    if (head.length > con.getMaxBlobSize())
+      return new SequenceInputStream(new ByteArrayInputStream(head), in);
+
+    in.close();
+    cache.put(id, CachedBlob.withContent(head), epoch);
+    return new ByteArrayInputStream(head);
+  }
+
+  private InputStream manage(InputStream in) throws IOException {
+    return streamManager.manageInputStream(owner, in);
+  }
+}
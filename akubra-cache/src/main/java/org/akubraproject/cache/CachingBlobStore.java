@@ -0,0 +1,163 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.cache;
+
+import java.io.IOException;
+
+import java.net.URI;
+
+import java.util.Map;
+
+import javax.transaction.Transaction;
+
+import org.akubraproject.BlobStore;
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.impl.AbstractBlobStore;
+import org.akubraproject.impl.StreamManager;
+
+/**
+ * A read-through cache in front of another store. The content of small blobs is kept in memory
+ * after they are first read, as is whether blobs exist and their sizes, so repeated reads of the
+ * same blobs are served without going to the underlying store. This helps most in front of
+ * stores with a high per-request cost, such as remote or network file systems.
+ *
+ * <p>The cache is bounded by the heap it occupies, and uses segmented LRU eviction so that
+ * blobs read repeatedly are not displaced by a scan reading many blobs once. Blobs larger than
+ * the maximum blob size are streamed from the underlying store; only their size is cached.
+ *
+ * <p>Cache entries are invalidated when a blob is written, deleted, moved, or copied to through
+ * this store. Changes made directly to the underlying store, or via another id aliasing the same
+ * blob, are not seen; use {@link #invalidate} or {@link #invalidateAll} when they occur.
+ *
+ * <p>Only connections opened without a transaction use the cache. Transactional connections
+ * read and write the underlying store directly, since the cache would expose data from other
+ * transactions; blobs they modify are invalidated when they are modified and again when the
+ * transaction completes.
+ */
+public class CachingBlobStore extends AbstractBlobStore {
+  /** The default capacity: 64 MiB. */
+  public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+  /** The default size of the largest blob whose content is cached: 64 KiB. */
+  public static final int DEFAULT_MAX_BLOB_SIZE = 64 * 1024;
+
+  private final BlobStore     store;
+  private final BlobCache     cache;
+  private final int           maxBlobSize;
+  private final StreamManager streamMgr = new StreamManager();
+
+  /**
+   * Creates an instance with the default capacity and maximum blob size.
+   *
+   * @param id the id associated with this store.
+   * @param store the store to wrap.
+   */
+  public CachingBlobStore(URI id, BlobStore store) {
+    this(id, store, DEFAULT_CAPACITY, DEFAULT_MAX_BLOB_SIZE);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param id the id associated with this store.
+   * @param store the store to wrap.
+   * @param capacity the approximate maximum amount of heap used by the cache, in bytes
+   * @param maxBlobSize the size of the largest blob whose content is cached; 0 to cache only
+   *                    existence and sizes
+   * @throws IllegalArgumentException if capacity or maxBlobSize is negative
+   */
+  public CachingBlobStore(URI id, BlobStore store, long capacity, int maxBlobSize)
+      throws IllegalArgumentException {
+    super(id);
+
+    if (capacity < 0)
+      throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+    if (maxBlobSize < 0)
+      throw new IllegalArgumentException("maxBlobSize must not be negative: " + maxBlobSize);
+
+    this.store       = store;
+    this.cache       = new BlobCache(capacity);
+    this.maxBlobSize = maxBlobSize;
+  }
+
+  @Override
+  public BlobStoreConnection openConnection(Transaction tx, Map<String, String> hints)
+      throws IOException {
+    BlobStoreConnection con = store.openConnection(tx, hints);
+
+    boolean ok = false;
+    try {
+      CachingBlobStoreConnection res =
+          new CachingBlobStoreConnection(this, con, streamMgr, cache, maxBlobSize, tx);
+      ok = true;
+      return res;
+    } finally {
+      if (!ok)
+        con.close();
+    }
+  }
+
+  /**
+   * Removes a blob from the cache. Use this when a blob was changed other than through this
+   * store.
+   *
+   * @param blobId the id of the blob
+   */
+  public void invalidate(URI blobId) {
+    cache.invalidate(blobId);
+  }
+
+  /**
+   * Removes all blobs from the cache.
+   */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * @return the number of lookups that were served from the cache
+   */
+  public long getHitCount() {
+    return cache.getHitCount();
+  }
+
+  /**
+   * @return the number of lookups that were not found in the cache
+   */
+  public long getMissCount() {
+    return cache.getMissCount();
+  }
+
+  /**
+   * @return the approximate amount of heap currently used by the cache, in bytes
+   */
+  public long getCachedBytes() {
+    return cache.getWeight();
+  }
+
+  /**
+   * @return the number of blobs currently in the cache
+   */
+  public int getCachedBlobCount() {
+    return cache.size();
+  }
+}
@@ -0,0 +1,262 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URI;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobStore;
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.UnsupportedIdException;
+import org.akubraproject.impl.BlobStoreConnectionWrapper;
+import org.akubraproject.impl.StreamManager;
+
+/**
+ * Serves the connection level lookups from the cache where possible and provides caching blobs.
+ * If the connection is transactional the cache is not used, but the blobs modified are still
+ * invalidated.
+ */
+class CachingBlobStoreConnection extends BlobStoreConnectionWrapper {
+  private final BlobCache cache;
+  private final int       maxBlobSize;
+  private final Set<URI>  modified;
+
+  /**
+   * Creates an instance.
+   *
+   * @param store       the store from which this connection originated.
+   * @param connection  the wrapped connection.
+   * @param streamMgr   the stream manager.
+   * @param cache       the cache.
+   * @param maxBlobSize the size of the largest blob whose content is cached.
+   * @param tx          the transaction the connection belongs to, or null.
+   * @throws IOException if the transaction synchronization could not be registered
+   */
+  public CachingBlobStoreConnection(BlobStore store, BlobStoreConnection connection,
+                                    StreamManager streamMgr, BlobCache cache, int maxBlobSize,
+                                    Transaction tx) throws IOException {
+    super(store, connection, streamMgr);
+    this.cache       = cache;
+    this.maxBlobSize = maxBlobSize;
+
+    if (tx != null) {
+      modified = Collections.synchronizedSet(new HashSet<URI>());
+
+      try {
+        tx.registerSynchronization(new Synchronization() {
+          public void beforeCompletion() {
+          }
+
+          public void afterCompletion(int status) {
+            synchronized (modified) {
+              for (URI id : modified)
+                CachingBlobStoreConnection.this.cache.invalidate(id);
+              modified.clear();
+            }
+          }
+        });
+      } catch (Exception e) {
+        throw new IOException("Error registering txn synchronization", e);
+      }
+    } else {
+      modified = null;
+    }
+  }
+
+  @Override
+  public Blob getBlob(URI blobId, Map<String, String> hints)
+      throws IOException, UnsupportedIdException, UnsupportedOperationException {
+    ensureOpen();
+    return wrap(delegate.getBlob(blobId, hints));
+  }
+
+  @Override
+  public Blob getBlob(InputStream content, long estimatedSize, Map<String, String> hints)
+      throws IOException, UnsupportedOperationException {
+    ensureOpen();
+
+    Blob blob = delegate.getBlob(content, estimatedSize, hints);
+    invalidate(blob.getId());
+
+    return wrap(blob);
+  }
+
+  @Override
+  public Map<URI, Blob> getBlobs(Collection<URI> blobIds, Map<String, String> hints)
+      throws IOException, UnsupportedIdException {
+    ensureOpen();
+
+    Map<URI, Blob> res = new LinkedHashMap<URI, Blob>();
+    for (Map.Entry<URI, Blob> e : delegate.getBlobs(blobIds, hints).entrySet())
+      res.put(e.getKey(), wrap(e.getValue()));
+
+    return res;
+  }
+
+  @Override
+  public Set<URI> exists(Collection<URI> blobIds) throws IOException, UnsupportedIdException {
+    ensureOpen();
+    if (!isCaching())
+      return delegate.exists(blobIds);
+
+    Set<URI>       res    = new HashSet<URI>();
+    Map<URI, Long> misses = new LinkedHashMap<URI, Long>();
+
+    for (URI id : blobIds) {
+      checkId(id);
+      if (res.contains(id) || misses.containsKey(id))
+        continue;
+
+      long       epoch = cache.epoch(id);
+      CachedBlob e     = cache.get(id);
+      if (e == null)
+        misses.put(id, epoch);
+      else if (e.exists())
+        res.add(id);
+    }
+
+    if (!misses.isEmpty()) {
+      Set<URI> found = delegate.exists(misses.keySet());
+      for (Map.Entry<URI, Long> m : misses.entrySet()) {
+        boolean exists = found.contains(m.getKey());
+        cache.put(m.getKey(), exists ? CachedBlob.EXISTS : CachedBlob.MISSING, m.getValue());
+        if (exists)
+          res.add(m.getKey());
+      }
+    }
+
+    return res;
+  }
+
+  @Override
+  public Map<URI, Long> getSizes(Collection<URI> blobIds)
+      throws IOException, UnsupportedIdException {
+    ensureOpen();
+    if (!isCaching())
+      return delegate.getSizes(blobIds);
+
+    Map<URI, Long> res    = new LinkedHashMap<URI, Long>();
+    Map<URI, Long> misses = new LinkedHashMap<URI, Long>();
+    Set<URI>       seen   = new LinkedHashSet<URI>();
+
+    for (URI id : blobIds) {
+      checkId(id);
+      if (!seen.add(id))
+        continue;
+
+      long       epoch = cache.epoch(id);
+      CachedBlob e     = cache.get(id);
+      if (e == null || (e.exists() && e.getSize() < 0))
+        misses.put(id, epoch);
+      else if (e.exists())
+        res.put(id, e.getSize());
+    }
+
+    if (!misses.isEmpty()) {
+      Map<URI, Long> found = delegate.getSizes(misses.keySet());
+      for (Map.Entry<URI, Long> m : misses.entrySet()) {
+        Long size = found.get(m.getKey());
+        cache.put(m.getKey(), (size != null) ? CachedBlob.withSize(size) : CachedBlob.MISSING,
+                  m.getValue());
+      }
+
+      // keep the order of the request
+      Map<URI, Long> merged = new LinkedHashMap<URI, Long>();
+      for (URI id : seen) {
+        Long size = res.containsKey(id) ? res.get(id) : found.get(id);
+        if (size != null)
+          merged.put(id, size);
+      }
+      res = merged;
+    }
+
+    return res;
+  }
+
+  @Override
+  public void delete(Collection<URI> blobIds) throws IOException, UnsupportedIdException {
+    ensureOpen();
+
+    List<URI> ids = new ArrayList<URI>(blobIds);
+    try {
+      delegate.delete(ids);
+    } finally {
+      for (URI id : ids) {
+        if (id != null)
+          invalidate(id);
+      }
+    }
+  }
+
+  /**
+   * @return whether lookups in this connection use the cache
+   */
+  boolean isCaching() {
+    return modified == null;
+  }
+
+  /**
+   * @return the cache
+   */
+  BlobCache getCache() {
+    return cache;
+  }
+
+  /**
+   * @return the size of the largest blob whose content is cached
+   */
+  int getMaxBlobSize() {
+    return maxBlobSize;
+  }
+
+  /**
+   * Invalidate a blob that is being modified by this connection. In a transactional connection
+   * it is invalidated again when the transaction completes.
+   *
+   * @param blobId the id of the blob
+   */
+  void invalidate(URI blobId) {
+    if (modified != null)
+      modified.add(blobId);
+    cache.invalidate(blobId);
+  }
+
+  Blob wrap(Blob blob) {
+    return new CachingBlob(this, blob, streamManager);
+  }
+}
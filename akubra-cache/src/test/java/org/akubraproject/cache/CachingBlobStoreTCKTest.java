@@ -0,0 +1,92 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.annotations.Factory;
+
+import org.akubraproject.BlobStore;
+import org.akubraproject.mem.MemBlobStore;
+import org.akubraproject.tck.TCKTestSuite;
+import org.akubraproject.txn.derby.TransactionalStore;
+
+/**
+ * TCK test suite for {@link CachingBlobStore}.
+ */
+public class CachingBlobStoreTCKTest {
+  @Factory
+  public Object[] createTests() throws Exception {
+    URI storeId1 = URI.create("urn:cache-tck-test:42");
+    URI storeId2 = URI.create("urn:cache-tck-test:43");
+    URI storeId3 = URI.create("urn:cache-tck-test:44");
+
+    BlobStore nonTxnStore1 = new MemBlobStore(URI.create("urn:store:1"));
+    BlobStore nonTxnStore2 = new MemBlobStore(URI.create("urn:store:2"));
+    BlobStore txnStore     =
+                  createTxnStore("cache-txn-text-1", new MemBlobStore(URI.create("urn:store:3")));
+
+    return new Object[] {
+      new CachingBlobStoreTestSuite(new CachingBlobStore(storeId1, nonTxnStore1), storeId1,
+                                    false, true),
+      // small enough that entries get evicted and large blobs bypass the cache
+      new CachingBlobStoreTestSuite(new CachingBlobStore(storeId2, nonTxnStore2, 2048, 16),
+                                    storeId2, false, true),
+      new CachingBlobStoreTestSuite(new CachingBlobStore(storeId3, txnStore), storeId3,
+                                    true, false),
+    };
+  }
+
+  private BlobStore createTxnStore(String name, BlobStore backingStore) throws IOException {
+    File base  = new File(System.getProperty("basedir"), "target");
+    File dbDir = new File(base, name);
+    FileUtils.deleteDirectory(dbDir);
+    dbDir.getParentFile().mkdirs();
+
+    System.setProperty("derby.stream.error.file", new File(base, "derby.log").toString());
+
+    return new TransactionalStore(URI.create("urn:" + name), backingStore, dbDir.getPath());
+  }
+
+  public static class CachingBlobStoreTestSuite extends TCKTestSuite {
+    public CachingBlobStoreTestSuite(BlobStore store, URI storeId, boolean isTransactional,
+                                     boolean supportsIdGen) {
+      super(store, storeId, isTransactional, supportsIdGen);
+    }
+
+    @Override
+    protected URI[] getAliases(URI uri) {
+      // for underlying mem store, all uris are distinct
+      return new URI[] { uri };
+    }
+
+    @Override
+    protected URI getInvalidId() {
+      // for underlying mem store, all uris are valid
+      return null;
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.cache;
+
+import java.net.URI;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link BlobCache}.
+ */
+public class TestBlobCache {
+  private static final int SIZE = 1000;
+
+  /**
+   * Entries should be found until evicted, and the weight should track the content.
+   */
+  @Test
+  public void testPutGet() {
+    BlobCache  cache = new BlobCache(10 * SIZE);
+    URI        id    = id(1);
+    CachedBlob e     = CachedBlob.withContent(new byte[SIZE]);
+
+    assertNull(cache.get(id));
+    assertTrue(cache.put(id, e, cache.epoch(id)));
+    assertSame(cache.get(id), e);
+    assertEquals(cache.size(), 1);
+    assertTrue(cache.getWeight() > SIZE);
+    assertEquals(cache.getHitCount(), 1);
+    assertEquals(cache.getMissCount(), 1);
+
+    // content is not replaced by metadata
+    assertFalse(cache.put(id, CachedBlob.withSize(SIZE), cache.epoch(id)));
+    assertSame(cache.get(id), e);
+
+    // but is replaced by new content
+    CachedBlob e2 = CachedBlob.withContent(new byte[2 * SIZE]);
+    assertTrue(cache.put(id, e2, cache.epoch(id)));
+    assertSame(cache.get(id), e2);
+    assertEquals(cache.size(), 1);
+    assertTrue(cache.getWeight() > 2 * SIZE && cache.getWeight() < 3 * SIZE);
+
+    // entries larger than the capacity are not cached
+    assertFalse(cache.put(id(2), CachedBlob.withContent(new byte[20 * SIZE]), cache.epoch(id(2))));
+    assertNull(cache.get(id(2)));
+  }
+
+  /**
+   * A put with an epoch from before an invalidation should be dropped.
+   */
+  @Test
+  public void testInvalidate() {
+    BlobCache cache = new BlobCache(10 * SIZE);
+    URI       id    = id(1);
+
+    long epoch = cache.epoch(id);
+    assertTrue(cache.put(id, CachedBlob.MISSING, epoch));
+    cache.invalidate(id);
+    assertNull(cache.get(id));
+    assertEquals(cache.size(), 0);
+    assertEquals(cache.getWeight(), 0);
+
+    assertFalse(cache.put(id, CachedBlob.EXISTS, epoch));
+    assertNull(cache.get(id));
+
+    epoch = cache.epoch(id);
+    assertTrue(cache.put(id, CachedBlob.EXISTS, epoch));
+    assertTrue(cache.put(id(2), CachedBlob.EXISTS, cache.epoch(id(2))));
+    cache.invalidateAll();
+    assertEquals(cache.size(), 0);
+    assertEquals(cache.getWeight(), 0);
+    assertFalse(cache.put(id, CachedBlob.EXISTS, epoch));
+  }
+
+  /**
+   * Entries that are hit again should survive a scan of entries read once.
+   */
+  @Test
+  public void testScanResistance() {
+    BlobCache cache = new BlobCache(10 * SIZE);
+
+    for (int idx = 0; idx < 3; idx++) {
+      assertTrue(cache.put(id(idx), CachedBlob.withContent(new byte[SIZE]), cache.epoch(id(idx))));
+      assertNotNull(cache.get(id(idx)));
+      assertTrue(cache.isProtected(id(idx)));
+    }
+
+    for (int idx = 100; idx < 200; idx++)
+      assertTrue(cache.put(id(idx), CachedBlob.withContent(new byte[SIZE]), cache.epoch(id(idx))));
+
+    for (int idx = 0; idx < 3; idx++)
+      assertNotNull(cache.get(id(idx)));
+    assertNull(cache.get(id(100)));
+    assertNotNull(cache.get(id(199)));
+    assertTrue(cache.getWeight() <= 10 * SIZE);
+  }
+
+  /**
+   * The protected segment should be bounded, demoting its least recently used entries.
+   */
+  @Test
+  public void testDemotion() {
+    BlobCache cache = new BlobCache(10 * SIZE);
+
+    for (int idx = 0; idx < 8; idx++) {
+      cache.put(id(idx), CachedBlob.withContent(new byte[SIZE]), cache.epoch(id(idx)));
+      cache.get(id(idx));
+    }
+
+    assertFalse(cache.isProtected(id(0)));
+    assertTrue(cache.isProtected(id(7)));
+    assertEquals(cache.size(), 8);
+    assertTrue(cache.getWeight() <= 10 * SIZE);
+  }
+
+  private static URI id(int idx) {
+    return URI.create("urn:blob:" + idx);
+  }
+}
@@ -0,0 +1,213 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.URI;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobStore;
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.mem.MemBlobStore;
+
+/**
+ * Unit tests for {@link CachingBlobStore}.
+ */
+public class TestCachingBlobStore {
+  private static final URI ID1 = URI.create("urn:blob:1");
+  private static final URI ID2 = URI.create("urn:blob:2");
+
+  private BlobStore        backing;
+  private CachingBlobStore store;
+
+  @BeforeMethod
+  public void setUp() {
+    backing = new MemBlobStore();
+    store   = new CachingBlobStore(URI.create("urn:cache-test:1"), backing, 1024 * 1024, 100);
+  }
+
+  /**
+   * Repeated reads should be served from the cache, so changes made directly to the underlying
+   * store are not seen until invalidated.
+   */
+  @Test
+  public void testReadThrough() throws Exception {
+    write(backing, ID1, "foo");
+
+    BlobStoreConnection con = store.openConnection(null, null);
+    Blob b = con.getBlob(ID1, null);
+    assertEquals(read(b), "foo");
+    assertEquals(store.getMissCount(), 1);
+    assertEquals(store.getCachedBlobCount(), 1);
+
+    write(backing, ID1, "bar");
+    assertEquals(read(b), "foo");
+    assertEquals(read(b, 1, 1), "o");
+    assertEquals(b.getSize(), 3);
+    assertTrue(b.exists());
+    assertEquals(store.getHitCount(), 4);
+
+    store.invalidate(ID1);
+    assertEquals(read(b), "bar");
+
+    write(backing, ID1, "baz");
+    store.invalidateAll();
+    assertEquals(store.getCachedBlobCount(), 0);
+    assertEquals(read(b), "baz");
+
+    con.close();
+  }
+
+  /**
+   * Writes, deletes, and moves through the cache should invalidate the affected blobs.
+   */
+  @Test
+  public void testInvalidation() throws Exception {
+    BlobStoreConnection con = store.openConnection(null, null);
+    Blob b1 = con.getBlob(ID1, null);
+    Blob b2 = con.getBlob(ID2, null);
+
+    assertFalse(b1.exists());
+    assertFalse(b2.exists());
+
+    write(store, ID1, "foo");
+    assertTrue(b1.exists());
+    assertEquals(read(b1), "foo");
+
+    OutputStream out = b1.openOutputStream(-1, true);
+    out.write("foobar".getBytes("UTF-8"));
+    out.close();
+    assertEquals(b1.getSize(), 6);
+    assertEquals(read(b1), "foobar");
+
+    Blob moved = b1.moveTo(ID2, null);
+    assertFalse(b1.exists());
+    assertTrue(b2.exists());
+    assertEquals(read(moved), "foobar");
+
+    Blob copied = moved.copyTo(ID1, null);
+    assertTrue(b1.exists());
+    assertEquals(read(b1), "foobar");
+    copied.delete();
+    assertFalse(b1.exists());
+
+    moved.delete();
+    assertFalse(b2.exists());
+    assertFalse(backing.openConnection(null, null).getBlob(ID2, null).exists());
+
+    write(store, ID1, "foo");
+    assertTrue(b1.exists());
+    con.delete(Collections.singleton(ID1));
+    assertFalse(b1.exists());
+
+    con.close();
+  }
+
+  /**
+   * Blobs larger than the maximum blob size should be streamed, with only their size cached.
+   */
+  @Test
+  public void testLargeBlob() throws Exception {
+    StringBuilder body = new StringBuilder();
+    for (int idx = 0; idx < 30; idx++)
+      body.append("large-").append(idx);
+
+    write(backing, ID1, body.toString());
+
+    BlobStoreConnection con = store.openConnection(null, null);
+    Blob b = con.getBlob(ID1, null);
+    assertEquals(read(b), body.toString());
+    assertEquals(b.getSize(), body.length());
+    assertEquals(read(b), body.toString());
+    assertEquals(read(b, 6, 2), "0l");
+    assertTrue(store.getCachedBytes() < body.length());
+
+    con.close();
+  }
+
+  /**
+   * The bulk lookups should be served from the cache for the blobs found there.
+   */
+  @Test
+  public void testBulkLookups() throws Exception {
+    write(backing, ID1, "foo");
+
+    BlobStoreConnection con = store.openConnection(null, null);
+    assertEquals(con.exists(Arrays.asList(ID1, ID2)), Collections.singleton(ID1));
+    assertEquals(store.getMissCount(), 2);
+    assertEquals(con.exists(Arrays.asList(ID1, ID2)), Collections.singleton(ID1));
+    assertEquals(store.getHitCount(), 2);
+
+    Map<URI, Long> sizes = con.getSizes(Arrays.asList(ID2, ID1));
+    assertEquals(sizes, Collections.singletonMap(ID1, 3L));
+    sizes = con.getSizes(Arrays.asList(ID2, ID1, ID1));
+    assertEquals(sizes, Collections.singletonMap(ID1, 3L));
+    assertEquals(store.getHitCount(), 6);
+
+    con.close();
+  }
+
+  private static void write(BlobStore store, URI id, String body) throws IOException {
+    BlobStoreConnection con = store.openConnection(null, null);
+    try {
+      OutputStream out = con.getBlob(id, null).openOutputStream(-1, true);
+      out.write(body.getBytes("UTF-8"));
+      out.close();
+    } finally {
+      con.close();
+    }
+  }
+
+  private static String read(Blob b) throws IOException {
+    InputStream in = b.openInputStream();
+    try {
+      return IOUtils.toString(in, "UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  private static String read(Blob b, long offset, long length) throws IOException {
+    InputStream in = b.openInputStream(offset, length);
+    try {
+      return IOUtils.toString(in, "UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -26,6 +26,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
 import java.util.Map;
 
 /**
@@ -70,6 +71,24 @@ public interface Blob {
    */
   InputStream openInputStream() throws IOException, MissingBlobException;
 
+  /**
+   * Opens a new InputStream for reading a range of the content. The stream starts at
+   * <var>offset</var> and ends after <var>length</var> bytes or at the end of the content,
+   * whichever comes first; an <var>offset</var> at or beyond the end of the content results
+   * in an empty stream. Implementations should position the stream directly where the
+   * underlying storage allows it, rather than reading and discarding the leading bytes.
+   *
+   * @param offset the position of the first byte to read; must not be negative
+   * @param length the maximum number of bytes to read, or -1 to read to the end of the content
+   * @return the input stream.
+   * @throws IllegalArgumentException if <var>offset</var> is negative or <var>length</var> is
+   *                                  less than -1
+   * @throws MissingBlobException if the blob does not {@link #exists exist}.
+   * @throws IOException if the stream cannot be opened for any other reason.
+   */
+  InputStream openInputStream(long offset, long length)
+      throws IOException, MissingBlobException, IllegalArgumentException;
+
   /**
    * Opens a new OutputStream for writing the content. If the blob does not exist it is created
    * with the data written to the stream as the content; else if <var>overwrite</var> is true the
@@ -87,6 +106,28 @@ public interface Blob {
   OutputStream openOutputStream(long estimatedSize, boolean overwrite)
       throws IOException, DuplicateBlobException;
 
+  /**
+   * Opens a new channel for random access to the content. A read-only channel is like a ranged
+   * {@link #openInputStream(long, long) input stream} that can be repositioned. A writable channel
+   * modifies the content in place: bytes written replace those at the channel's position, writing
+   * past the end extends the content, and truncating shortens it. Whether concurrent readers see
+   * the changes before the channel is closed depends on the store.
+   *
+   * <p>Stores whose blobs are files return a {@link java.nio.channels.FileChannel FileChannel},
+   * so that callers can use <code>transferTo</code> and similar operations on it. Other stores
+   * may emulate the channel with streams, e.g. by rewriting the whole content when a writable
+   * channel is closed.
+   *
+   * @param writable whether the channel may be used to modify the content
+   * @return the channel
+   * @throws MissingBlobException if the blob does not {@link #exists exist}.
+   * @throws UnsupportedOperationException if <var>writable</var> is true and this store does not
+   *                                       support writing
+   * @throws IOException if the channel cannot be opened for any other reason.
+   */
+  SeekableByteChannel openChannel(boolean writable)
+      throws IOException, MissingBlobException, UnsupportedOperationException;
+
   /**
    * Gets the size of the blob, in bytes.
    *
@@ -135,4 +176,29 @@ public interface Blob {
   Blob moveTo(URI blobId, Map<String, String> hints)
       throws DuplicateBlobException, IOException, MissingBlobException, NullPointerException,
              IllegalArgumentException;
+
+  /**
+   * Copy this blob to a new blob under the given id. Before the copy, this blob must exist and the
+   * destination blob must not. After the copy, both blobs exist and have the same content; later
+   * changes to either do not affect the other.
+   *
+   * <p>Stores should perform the copy without passing the content through the caller where they
+   * can, e.g. by copying within the file system or by sharing the stored content.
+   *
+   * @param blobId the blob id; may be null if the store supports id-generation
+   * @param hints A set of hints to allow the implementation to optimize the operation (can be
+   *              null)
+   *
+   * @return the resulting Blob from the copy
+   *
+   * @throws UnsupportedIdException if blobId is not in a recognized/usable pattern by this store
+   * @throws UnsupportedOperationException if <var>blobId</var> is null and this store is not
+   *                                       capable of generating ids.
+   * @throws MissingBlobException if this blob does not exist
+   * @throws DuplicateBlobException if a blob with <var>blobId</var> already exists
+   * @throws IOException if an error occurs while attempting the operation
+   */
+  Blob copyTo(URI blobId, Map<String, String> hints)
+      throws DuplicateBlobException, IOException, MissingBlobException, NullPointerException,
+             IllegalArgumentException;
 }
@@ -0,0 +1,87 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject;
+
+import java.io.Serializable;
+
+import java.net.URI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One page of a {@link BlobStoreConnection#listBlobIds(String, URI, int) paged listing} of
+ * blob ids. The ids are in {@link #ID_ORDER}; if there may be more ids the page has a
+ * continuation, which is passed as <var>startAfter</var> to get the next page.
+ *
+ * <p>The continuation is simply the last id in the page, so a client that processes the ids one
+ * by one can equally resume from the last id it finished, e.g. after a failure.
+ */
+public final class BlobIdPage implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The order of the ids in a listing: by their string form, as compared by {@link
+   * String#compareTo}. This differs from {@link URI#compareTo}, which compares the components
+   * of the URI.
+   */
+  public static final Comparator<URI> ID_ORDER = new Comparator<URI>() {
+    public int compare(URI u1, URI u2) {
+      return u1.toString().compareTo(u2.toString());
+    }
+  };
+
+  private final List<URI> blobIds;
+  private final URI       continuation;
+
+  /**
+   * Create a new page.
+   *
+   * @param blobIds      the ids in this page, in {@link #ID_ORDER}
+   * @param continuation the id to continue the listing after, or null if the listing is complete
+   */
+  public BlobIdPage(List<URI> blobIds, URI continuation) {
+    this.blobIds      = Collections.unmodifiableList(new ArrayList<URI>(blobIds));
+    this.continuation = continuation;
+  }
+
+  /**
+   * @return the ids in this page, in {@link #ID_ORDER}; may be empty
+   */
+  public List<URI> getBlobIds() {
+    return blobIds;
+  }
+
+  /**
+   * @return the <var>startAfter</var> value for the next page, or null if there are no more ids
+   */
+  public URI getContinuation() {
+    return continuation;
+  }
+
+  @Override
+  public String toString() {
+    return "BlobIdPage[" + blobIds.size() + " ids, continuation=" + continuation + "]";
+  }
+}
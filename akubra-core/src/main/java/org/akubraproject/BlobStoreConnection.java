@@ -26,8 +26,10 @@ import java.io.InputStream;
 
 import java.net.URI;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Interface to abstract the idea of a connection to a transaction based blob store
@@ -89,6 +91,66 @@ public interface BlobStoreConnection {
   Blob getBlob(InputStream content, long estimatedSize, Map<String, String> hints)
         throws IOException, UnsupportedOperationException;
 
+  /**
+   * Gets the blobs with the given ids. This is equivalent to calling {@link #getBlob(URI, Map)
+   * getBlob} for each id, but allows stores to look up all the blobs at once.
+   *
+   * @param blobIds the blob ids; none may be null
+   * @param hints A set of hints to allow the implementation to optimize the operation (can be
+   *              null)
+   *
+   * @return the blobs, keyed by id, in the iteration order of <var>blobIds</var>. As with
+   *         <code>getBlob</code> there is no requirement that the returned blobs exist.
+   *
+   * @throws IOException for IO errors
+   * @throws UnsupportedIdException if any of the ids is not in a recognized/usable pattern by
+   *                                this store
+   */
+  Map<URI, Blob> getBlobs(Collection<URI> blobIds, Map<String, String> hints)
+        throws IOException, UnsupportedIdException;
+
+  /**
+   * Tests which of the given blobs exist. This is equivalent to calling {@link Blob#exists
+   * exists} on the blob for each id, but allows stores to check all the ids at once.
+   *
+   * @param blobIds the blob ids; none may be null
+   *
+   * @return the subset of <var>blobIds</var> that exist
+   *
+   * @throws IOException if an error occurred during the existence checks
+   * @throws UnsupportedIdException if any of the ids is not in a recognized/usable pattern by
+   *                                this store
+   */
+  Set<URI> exists(Collection<URI> blobIds) throws IOException, UnsupportedIdException;
+
+  /**
+   * Gets the sizes of the given blobs. This is equivalent to calling {@link Blob#getSize
+   * getSize} on the blob for each id, except that blobs which do not exist are skipped instead of
+   * causing a {@link MissingBlobException}.
+   *
+   * @param blobIds the blob ids; none may be null
+   *
+   * @return the sizes, in bytes, keyed by id, of those blobs that exist
+   *
+   * @throws IOException if an error occurred getting the sizes
+   * @throws UnsupportedIdException if any of the ids is not in a recognized/usable pattern by
+   *                                this store
+   */
+  Map<URI, Long> getSizes(Collection<URI> blobIds) throws IOException, UnsupportedIdException;
+
+  /**
+   * Removes the given blobs from the store. This is equivalent to calling {@link Blob#delete
+   * delete} on the blob for each id; as with that, ids of blobs that do not exist are ignored.
+   * If an error occurs then some of the blobs may have been deleted and others not.
+   *
+   * @param blobIds the blob ids; none may be null
+   *
+   * @throws IOException if any of the blobs cannot be deleted for any reason
+   * @throws UnsupportedIdException if any of the ids is not in a recognized/usable pattern by
+   *                                this store
+   */
+  void delete(Collection<URI> blobIds) throws IOException, UnsupportedIdException;
+
   /**
    * Gets an iterator over the ids of all blobs in this store.
    *
@@ -100,6 +162,28 @@ public interface BlobStoreConnection {
    */
   Iterator<URI> listBlobIds(String filterPrefix) throws IOException;
 
+  /**
+   * Gets one page of the ids of the blobs in this store. Unlike with {@link #listBlobIds(String)
+   * listBlobIds(String)} the ids are listed in a defined order, {@link BlobIdPage#ID_ORDER}, so a
+   * listing can be done in pieces, and resumed after a failure, by passing the last id seen as
+   * <var>startAfter</var>. Blobs created or deleted while the listing is in progress may or may
+   * not be listed, but every blob that exists throughout is listed exactly once.
+   *
+   * @param filterPrefix if not null, only ids beginning with this prefix are listed
+   * @param startAfter   if not null, only ids after this one are listed; this need not be the id
+   *                     of an existing blob
+   * @param maxIds       the maximum number of ids to return
+   *
+   * @return the page; its {@link BlobIdPage#getContinuation continuation} is null if there are no
+   *         more ids
+   *
+   * @throws IOException if an error occurred getting the list of blob ids
+   * @throws IllegalArgumentException if <var>maxIds</var> is not positive
+   * @throws UnsupportedOperationException if this store cannot list its blobs
+   */
+  BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds)
+      throws IOException, IllegalArgumentException, UnsupportedOperationException;
+
   /**
    * Flush all blobs associated with this connection and fsync. After this method completes all
    * data should be comitted to stable storage (for stores that are backed by stable storage).
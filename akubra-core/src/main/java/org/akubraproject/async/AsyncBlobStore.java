@@ -0,0 +1,156 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.async;
+
+import java.io.IOException;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.transaction.Transaction;
+
+import org.akubraproject.BlobStore;
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Provides asynchronous connections to a store, running their operations on an executor
+ * belonging to this instance. Connections that implement {@link AsyncCapableConnection} supply
+ * their own implementation; all others are wrapped in an {@link ExecutorAsyncConnection} that
+ * runs one operation of a connection at a time.
+ *
+ * <p>The executor should be bounded, so that a burst of requests is rejected rather than
+ * consuming unbounded memory; {@link #AsyncBlobStore(BlobStore, int, int)} creates such an
+ * executor.
+ */
+public class AsyncBlobStore {
+  private static final AtomicInteger poolCount = new AtomicInteger();
+
+  private final BlobStore       store;
+  private final ExecutorService executor;
+
+  /**
+   * Create a new instance using the given executor.
+   *
+   * @param store    the store to provide asynchronous access to
+   * @param executor the executor to run the operations on
+   */
+  public AsyncBlobStore(BlobStore store, ExecutorService executor) {
+    this.store    = store;
+    this.executor = executor;
+  }
+
+  /**
+   * Create a new instance with its own bounded executor. The executor's threads are daemon
+   * threads; call {@link #shutdown} to stop them.
+   *
+   * @param store     the store to provide asynchronous access to
+   * @param threads   the maximum number of threads to run operations on
+   * @param queueSize the maximum number of operations waiting for a thread; operations beyond
+   *                  this are rejected
+   */
+  public AsyncBlobStore(BlobStore store, int threads, int queueSize) {
+    this(store, newBoundedExecutor(threads, queueSize,
+                                   "akubra-async-" + poolCount.incrementAndGet()));
+  }
+
+  /**
+   * Create an executor with a bounded number of threads and a bounded queue. Idle threads time
+   * out, and operations submitted while the queue is full are rejected.
+   *
+   * @param threads    the maximum number of threads
+   * @param queueSize  the maximum number of queued tasks
+   * @param namePrefix the prefix for the names of the threads
+   * @return the new executor
+   */
+  public static ExecutorService newBoundedExecutor(int threads, int queueSize,
+                                                   final String namePrefix) {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                               new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+          private final AtomicInteger threadCount = new AtomicInteger();
+
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, namePrefix + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+
+    return executor;
+  }
+
+  /**
+   * @return the underlying store
+   */
+  public BlobStore getBlobStore() {
+    return store;
+  }
+
+  /**
+   * @return the executor operations are run on
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Open a connection to the underlying store and return its asynchronous view. The
+   * connection itself is opened synchronously.
+   *
+   * @param tx    the transaction for the connection, or null
+   * @param hints the hints for the store; may be null
+   * @return the asynchronous connection
+   * @throws IOException if the connection could not be opened
+   * @see BlobStore#openConnection
+   */
+  public AsyncBlobStoreConnection openConnection(Transaction tx, Map<String, String> hints)
+      throws IOException {
+    return getAsyncConnection(store.openConnection(tx, hints));
+  }
+
+  /**
+   * Get the asynchronous view of an existing connection. Closing the returned connection closes
+   * the given one.
+   *
+   * @param con the connection
+   * @return the asynchronous connection
+   */
+  public AsyncBlobStoreConnection getAsyncConnection(BlobStoreConnection con) {
+    if (con instanceof AsyncCapableConnection)
+      return ((AsyncCapableConnection) con).getAsyncConnection(executor);
+
+    return new ExecutorAsyncConnection(con, executor, false);
+  }
+
+  /**
+   * Shut down the executor. Operations already submitted are completed.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,131 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.async;
+
+import java.io.InputStream;
+
+import java.net.URI;
+
+import java.util.Map;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * The asynchronous counterpart of a {@link BlobStoreConnection}. Each operation returns right
+ * away with a future for its result; errors, such as an <code>IOException</code> or a {@link
+ * org.akubraproject.MissingBlobException MissingBlobException}, are reported as the cause of the
+ * <code>ExecutionException</code> thrown by {@link BlobFuture#get get}. If the operation could
+ * not be scheduled because the executor is saturated the future fails with a
+ * <code>RejectedExecutionException</code>.
+ *
+ * <p>Unless the implementation states otherwise, operations are started in the order they are
+ * submitted, and an operation may run concurrently with the ones submitted before it only if
+ * the underlying connection is safe for concurrent use.
+ */
+public interface AsyncBlobStoreConnection {
+  /**
+   * @return the underlying connection
+   */
+  BlobStoreConnection getConnection();
+
+  /**
+   * Asynchronous {@link BlobStoreConnection#getBlob(URI, Map) getBlob}.
+   *
+   * @param blobId the blob id; may be null if the store supports id-generation
+   * @param hints  the hints for the store; may be null
+   * @return the future blob
+   */
+  BlobFuture<Blob> getBlob(URI blobId, Map<String, String> hints);
+
+  /**
+   * Asynchronous {@link Blob#exists}.
+   *
+   * @param blobId the blob id
+   * @return whether the blob exists
+   */
+  BlobFuture<Boolean> exists(URI blobId);
+
+  /**
+   * Asynchronous {@link Blob#getSize}.
+   *
+   * @param blobId the blob id
+   * @return the future size of the blob
+   */
+  BlobFuture<Long> getSize(URI blobId);
+
+  /**
+   * Read the complete content of a blob.
+   *
+   * @param blobId the blob id
+   * @return the future content
+   */
+  BlobFuture<byte[]> readAll(URI blobId);
+
+  /**
+   * Write a blob from a stream. The stream is read, but not closed, on another thread; it must
+   * not be used by the caller until the future completes.
+   *
+   * @param blobId        the blob id; if null a new blob is created as by {@link
+   *                      BlobStoreConnection#getBlob(InputStream, long, Map)}
+   * @param content       the content to write
+   * @param estimatedSize the estimated size of the content, or -1 if unknown
+   * @param overwrite     whether to overwrite an existing blob; ignored if blobId is null
+   * @return the future blob written
+   */
+  BlobFuture<Blob> write(URI blobId, InputStream content, long estimatedSize, boolean overwrite);
+
+  /**
+   * Asynchronous {@link Blob#moveTo}.
+   *
+   * @param blobId the id of the blob to move
+   * @param destId the id to move it to; may be null if the store supports id-generation
+   * @param hints  the hints for the store; may be null
+   * @return the future blob at the new location
+   */
+  BlobFuture<Blob> moveTo(URI blobId, URI destId, Map<String, String> hints);
+
+  /**
+   * Asynchronous {@link Blob#delete}.
+   *
+   * @param blobId the blob id
+   * @return a future that completes when the blob has been deleted
+   */
+  BlobFuture<Void> delete(URI blobId);
+
+  /**
+   * Asynchronous {@link BlobStoreConnection#listBlobIds(String, URI, int) paged listBlobIds}.
+   *
+   * @param filterPrefix the prefix of the ids to list; may be null
+   * @param startAfter   the id to continue the listing after; may be null
+   * @param maxIds       the maximum number of ids to return
+   * @return the future page of ids
+   */
+  BlobFuture<BlobIdPage> listBlobIds(String filterPrefix, URI startAfter, int maxIds);
+
+  /**
+   * Close the underlying connection. This does not wait for outstanding operations; those
+   * that have not completed yet are likely to fail.
+   */
+  void close();
+}
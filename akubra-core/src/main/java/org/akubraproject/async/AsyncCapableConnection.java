@@ -0,0 +1,41 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.async;
+
+import java.util.concurrent.ExecutorService;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Implemented by connections that provide their own asynchronous implementation, because they
+ * can run operations concurrently or combine them. {@link AsyncBlobStore} uses it in place of
+ * its generic {@link ExecutorAsyncConnection} when available.
+ */
+public interface AsyncCapableConnection extends BlobStoreConnection {
+  /**
+   * Get the asynchronous view of this connection.
+   *
+   * @param executor the executor any blocking work should be run on
+   * @return the asynchronous connection
+   */
+  AsyncBlobStoreConnection getAsyncConnection(ExecutorService executor);
+}
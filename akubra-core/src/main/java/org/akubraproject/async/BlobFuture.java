@@ -0,0 +1,45 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.async;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * The result of an asynchronous operation. In addition to a plain {@link Future}, listeners
+ * can be registered to be notified on completion, so that callers do not need to block in
+ * {@link #get}.
+ *
+ * @param <T> the type of the result
+ */
+public interface BlobFuture<T> extends Future<T> {
+  /**
+   * Register a listener to be run when this future completes, successfully or not, or is
+   * cancelled. If this future has already completed the listener is run right away. Listeners
+   * typically call {@link #get} to obtain the result, which will then not block.
+   *
+   * @param listener the listener
+   * @param executor the executor to run the listener on; listeners should be short when
+   *                 this runs them on the completing thread
+   */
+  void addListener(Runnable listener, Executor executor);
+}
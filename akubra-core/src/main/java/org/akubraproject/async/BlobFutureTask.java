@@ -0,0 +1,121 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link FutureTask} that implements {@link BlobFuture}. It is either run as a task, or
+ * completed explicitly via {@link #complete} or {@link #fail} by an implementation that
+ * computes several results together.
+ *
+ * @param <T> the type of the result
+ */
+public class BlobFutureTask<T> extends FutureTask<T> implements BlobFuture<T> {
+  private static final Logger log = LoggerFactory.getLogger(BlobFutureTask.class);
+
+  private static final Callable<Object> NOT_RUNNABLE = new Callable<Object>() {
+    public Object call() {
+      throw new IllegalStateException("This future must be completed explicitly");
+    }
+  };
+
+  private final List<Runnable> listeners = new ArrayList<Runnable>();
+  private final List<Executor> executors = new ArrayList<Executor>();
+  private       boolean        done      = false;
+
+  /**
+   * Create a new task.
+   *
+   * @param task the task to run
+   */
+  public BlobFutureTask(Callable<T> task) {
+    super(task);
+  }
+
+  /**
+   * Create a new future that is completed explicitly.
+   */
+  @SuppressWarnings("unchecked")
+  public BlobFutureTask() {
+    super((Callable<T>) NOT_RUNNABLE);
+  }
+
+  /**
+   * Complete this future successfully. Has no effect if it is already done.
+   *
+   * @param value the result
+   */
+  public void complete(T value) {
+    set(value);
+  }
+
+  /**
+   * Complete this future with an error. Has no effect if it is already done.
+   *
+   * @param t the error
+   */
+  public void fail(Throwable t) {
+    setException(t);
+  }
+
+  public void addListener(Runnable listener, Executor executor) {
+    synchronized (listeners) {
+      if (!done) {
+        listeners.add(listener);
+        executors.add(executor);
+        return;
+      }
+    }
+
+    notify(listener, executor);
+  }
+
+  @Override
+  protected void done() {
+    synchronized (listeners) {
+      done = true;
+    }
+
+    // no more are added once done is set
+    for (int idx = 0; idx < listeners.size(); idx++)
+      notify(listeners.get(idx), executors.get(idx));
+
+    listeners.clear();
+    executors.clear();
+  }
+
+  private static void notify(Runnable listener, Executor executor) {
+    try {
+      executor.execute(listener);
+    } catch (RuntimeException re) {
+      log.error("Failed to notify listener " + listener, re);
+    }
+  }
+}
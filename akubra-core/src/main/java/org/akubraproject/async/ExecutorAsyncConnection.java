@@ -0,0 +1,293 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.async;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.URI;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.commons.io.IOUtils;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.impl.BufferPool;
+
+/**
+ * An asynchronous connection that runs the blocking operations of the underlying connection on
+ * an executor.
+ *
+ * <p>Connections are in general not safe for concurrent use, so by default the operations of one
+ * connection are run one at a time, in the order submitted; a connection occupies at most one
+ * thread of the executor, and operations waiting for their turn are queued by the connection.
+ * That queue is bounded like the executor's, so that a single connection cannot queue more
+ * operations than the executor would: when it is full, further operations are rejected.
+ * Operations of different connections run concurrently. Connections that are safe for concurrent
+ * use can be created with <var>concurrent</var> set, in which case each operation is handed to
+ * the executor right away.
+ *
+ * <p>Subclasses may override individual operations, using {@link #submit} to schedule work.
+ */
+public class ExecutorAsyncConnection implements AsyncBlobStoreConnection {
+  /** The underlying connection */
+  protected final BlobStoreConnection con;
+
+  private final Executor       executor;
+  private final SerialExecutor serial;
+
+  /**
+   * Create a new asynchronous connection. A non-concurrent connection queues as many operations
+   * as the executor's queue holds if it is a <code>ThreadPoolExecutor</code>, and any number
+   * otherwise.
+   *
+   * @param con        the underlying connection
+   * @param executor   the executor to run the operations on
+   * @param concurrent whether the underlying connection may be used by several threads at once
+   */
+  public ExecutorAsyncConnection(BlobStoreConnection con, Executor executor, boolean concurrent) {
+    this(con, executor, concurrent, getQueueCapacity(executor));
+  }
+
+  /**
+   * Create a new asynchronous connection.
+   *
+   * @param con        the underlying connection
+   * @param executor   the executor to run the operations on
+   * @param concurrent whether the underlying connection may be used by several threads at once
+   * @param maxQueued  the maximum number of operations of a non-concurrent connection waiting
+   *                   for their turn; further operations are rejected
+   */
+  public ExecutorAsyncConnection(BlobStoreConnection con, Executor executor, boolean concurrent,
+                                 int maxQueued) {
+    if (maxQueued < 1)
+      throw new IllegalArgumentException("maxQueued must be at least 1: " + maxQueued);
+
+    this.con      = con;
+    this.executor = executor;
+    this.serial   = concurrent ? null : new SerialExecutor(executor, maxQueued);
+  }
+
+  /**
+   * @param executor the executor
+   * @return the capacity of the executor's queue, at least 1
+   */
+  private static int getQueueCapacity(Executor executor) {
+    if (!(executor instanceof ThreadPoolExecutor))
+      return Integer.MAX_VALUE;
+
+    BlockingQueue<Runnable> queue = ((ThreadPoolExecutor) executor).getQueue();
+    long cap = (long) queue.size() + queue.remainingCapacity();
+    return (int) Math.max(1, Math.min(cap, Integer.MAX_VALUE));
+  }
+
+  public BlobStoreConnection getConnection() {
+    return con;
+  }
+
+  public BlobFuture<Blob> getBlob(final URI blobId, final Map<String, String> hints) {
+    return submit(new Callable<Blob>() {
+      public Blob call() throws Exception {
+        return con.getBlob(blobId, hints);
+      }
+    });
+  }
+
+  public BlobFuture<Boolean> exists(final URI blobId) {
+    return submit(new Callable<Boolean>() {
+      public Boolean call() throws Exception {
+        return con.getBlob(blobId, null).exists();
+      }
+    });
+  }
+
+  public BlobFuture<Long> getSize(final URI blobId) {
+    return submit(new Callable<Long>() {
+      public Long call() throws Exception {
+        return con.getBlob(blobId, null).getSize();
+      }
+    });
+  }
+
+  public BlobFuture<byte[]> readAll(final URI blobId) {
+    return submit(new Callable<byte[]>() {
+      public byte[] call() throws Exception {
+        InputStream in = con.getBlob(blobId, null).openInputStream();
+        try {
+          return IOUtils.toByteArray(in);
+        } finally {
+          in.close();
+        }
+      }
+    });
+  }
+
+  public BlobFuture<Blob> write(final URI blobId, final InputStream content,
+                                final long estimatedSize, final boolean overwrite) {
+    return submit(new Callable<Blob>() {
+      public Blob call() throws Exception {
+        if (blobId == null)
+          return con.getBlob(content, estimatedSize, null);
+
+        Blob         blob = con.getBlob(blobId, null);
+        OutputStream out  = blob.openOutputStream(estimatedSize, overwrite);
+        try {
+          BufferPool.getDefault().copy(content, out);
+          out.close();
+          out = null;
+        } finally {
+          if (out != null)
+            IOUtils.closeQuietly(out);
+        }
+
+        return blob;
+      }
+    });
+  }
+
+  public BlobFuture<Blob> moveTo(final URI blobId, final URI destId,
+                                 final Map<String, String> hints) {
+    return submit(new Callable<Blob>() {
+      public Blob call() throws Exception {
+        return con.getBlob(blobId, null).moveTo(destId, hints);
+      }
+    });
+  }
+
+  public BlobFuture<Void> delete(final URI blobId) {
+    return submit(new Callable<Void>() {
+      public Void call() throws Exception {
+        con.getBlob(blobId, null).delete();
+        return null;
+      }
+    });
+  }
+
+  public BlobFuture<BlobIdPage> listBlobIds(final String filterPrefix, final URI startAfter,
+                                            final int maxIds) {
+    return submit(new Callable<BlobIdPage>() {
+      public BlobIdPage call() throws Exception {
+        return con.listBlobIds(filterPrefix, startAfter, maxIds);
+      }
+    });
+  }
+
+  public void close() {
+    con.close();
+  }
+
+  /**
+   * Schedule a task on the executor, subject to the ordering of this connection.
+   *
+   * @param task the task to run
+   * @return the future result of the task
+   */
+  protected <T> BlobFuture<T> submit(Callable<T> task) {
+    BlobFutureTask<T> future = new BlobFutureTask<T>(task);
+
+    if (serial != null) {
+      serial.execute(future);
+    } else {
+      try {
+        executor.execute(future);
+      } catch (RejectedExecutionException ree) {
+        future.fail(ree);
+      }
+    }
+
+    return future;
+  }
+
+  /**
+   * Runs tasks one at a time, in order, on an underlying executor. Tasks submitted while the
+   * queue of waiting tasks is full are rejected.
+   */
+  private static class SerialExecutor {
+    private final Executor                 executor;
+    private final int                      maxQueued;
+    private final Queue<BlobFutureTask<?>> queue   = new LinkedList<BlobFutureTask<?>>();
+    private       boolean                  running = false;
+
+    SerialExecutor(Executor executor, int maxQueued) {
+      this.executor  = executor;
+      this.maxQueued = maxQueued;
+    }
+
+    void execute(BlobFutureTask<?> task) {
+      boolean full;
+      synchronized (this) {
+        full = running && queue.size() >= maxQueued;
+        if (!full) {
+          queue.add(task);
+          if (running)
+            return;
+          running = true;
+        }
+      }
+
+      if (full) {
+        task.fail(new RejectedExecutionException("The connection already has " + maxQueued +
+                                                 " operations queued"));
+        return;
+      }
+
+      scheduleNext();
+    }
+
+    private void scheduleNext() {
+      while (true) {
+        final BlobFutureTask<?> next;
+        synchronized (this) {
+          next = queue.poll();
+          if (next == null) {
+            running = false;
+            return;
+          }
+        }
+
+        try {
+          executor.execute(new Runnable() {
+            public void run() {
+              try {
+                next.run();
+              } finally {
+                scheduleNext();
+              }
+            }
+          });
+          return;
+        } catch (RejectedExecutionException ree) {
+          next.fail(ree);
+        }
+      }
+    }
+  }
+}
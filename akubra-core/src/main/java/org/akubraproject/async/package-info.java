@@ -0,0 +1,30 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * An asynchronous facade over the Akubra API. An {@link org.akubraproject.async.AsyncBlobStore}
+ * runs the operations of its connections on a bounded executor and returns futures, so that
+ * request-handling threads need not block on storage. Connections of stores that can do better
+ * than running each operation on a pool thread implement
+ * {@link org.akubraproject.async.AsyncCapableConnection}.
+ */
+package org.akubraproject.async;
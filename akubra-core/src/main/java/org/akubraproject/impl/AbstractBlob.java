@@ -22,7 +22,16 @@
 package org.akubraproject.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.akubraproject.Blob;
 import org.akubraproject.BlobStoreConnection;
@@ -30,9 +39,17 @@ import org.akubraproject.BlobStoreConnection;
 /**
  * An abstract base class for Blobs.
  *
+ * <p>This provides an implementation of {@link #openInputStream(long, long) ranged reads} that
+ * skips over the leading content of a full stream; subclasses whose storage supports
+ * positioning should override it. Likewise {@link #copyTo copyTo} is implemented by streaming the
+ * content to the new blob, and {@link #openChannel channels} are emulated with streams; stores
+ * able to copy more directly or to access the content randomly should override these.
+ *
  * @author Pradeep Krishnan
  */
 public abstract class AbstractBlob implements Blob {
+  private static final Logger log = LoggerFactory.getLogger(AbstractBlob.class);
+
   /** The connection that created this blob.*/
   protected final BlobStoreConnection owner;
 
@@ -65,6 +82,117 @@ public abstract class AbstractBlob implements Blob {
     return null;
   }
 
+  /**
+   * Opens a new InputStream for reading a range of the content. This implementation opens a
+   * stream on the whole content, skips to <var>offset</var>, and limits the result to
+   * <var>length</var> bytes.
+   */
+  @Override
+  public InputStream openInputStream(long offset, long length) throws IOException {
+    checkRange(offset, length);
+    return sliceStream(openInputStream(), offset, length);
+  }
+
+  /**
+   * Opens a channel emulated with streams. A read-only channel reads through ranged input
+   * streams, opening a new stream whenever the position is moved. A writable channel works on a
+   * copy of the content in a temporary file, and overwrites the blob with it when closed if it
+   * was modified.
+   */
+  @Override
+  public SeekableByteChannel openChannel(boolean writable) throws IOException {
+    ensureOpen();
+    return writable ? SpooledChannel.open(this) : new StreamChannel(this);
+  }
+
+  /**
+   * Copy this blob to a new blob. This implementation reads the content and writes it to the
+   * destination blob obtained from the connection; the destination is deleted again if the copy
+   * fails.
+   */
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+    ensureOpen();
+
+    InputStream in = openInputStream();
+    try {
+      Blob         dest = getConnection().getBlob(blobId, hints);
+      OutputStream out  = dest.openOutputStream(-1, false);
+
+      boolean success = false;
+      try {
+        BufferPool.getDefault().copy(in, out);
+        out.close();
+        success = true;
+      } finally {
+        if (!success) {
+          IOUtils.closeQuietly(out);
+          try {
+            dest.delete();
+          } catch (Throwable t) {
+            log.error("Error deleting blob '" + dest.getId() + "' after copy failure", t);
+          }
+        }
+      }
+
+      return dest;
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  /**
+   * Helper that validates the arguments to {@link #openInputStream(long, long)}.
+   *
+   * @param offset the position of the first byte to read
+   * @param length the maximum number of bytes to read, or -1 for no limit
+   * @throws IllegalArgumentException if offset is negative or length is less than -1
+   */
+  protected static void checkRange(long offset, long length) throws IllegalArgumentException {
+    if (offset < 0)
+      throw new IllegalArgumentException("offset must not be negative: " + offset);
+    if (length < -1)
+      throw new IllegalArgumentException("length must be -1 or not negative: " + length);
+  }
+
+  /**
+   * Helper that restricts a stream to a range of its content by skipping <var>offset</var>
+   * bytes and then limiting it to <var>length</var> bytes. The stream is closed if skipping
+   * fails.
+   *
+   * @param in     the stream positioned at the beginning of the content
+   * @param offset the number of bytes to skip
+   * @param length the maximum number of bytes to read after skipping, or -1 for no limit
+   * @return the restricted stream
+   * @throws IOException if skipping failed
+   */
+  protected static InputStream sliceStream(InputStream in, long offset, long length)
+      throws IOException {
+    boolean ok = false;
+    try {
+      if (offset > 0)
+        IOUtils.skip(in, offset);
+      ok = true;
+    } finally {
+      if (!ok)
+        IOUtils.closeQuietly(in);
+    }
+
+    return limitStream(in, length);
+  }
+
+  /**
+   * Helper that limits a stream to at most <var>length</var> bytes. Closing the returned stream
+   * closes the given stream.
+   *
+   * @param in     the stream to limit
+   * @param length the maximum number of bytes to read, or -1 for no limit
+   * @return the limited stream, or <var>in</var> itself if <var>length</var> is -1
+   */
+  protected static InputStream limitStream(InputStream in, long length) {
+    return (length < 0) ? in : new BoundedInputStream(in, length);
+  }
+
   /**
    * Helper that checks whether the connection is open and throws an exception if not.
    *
@@ -24,17 +24,33 @@ package org.akubraproject.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.BlobStore;
 import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.MissingBlobException;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * An abstract base class for blob store connections.
+ * An abstract base class for blob store connections. The bulk operations ({@link #getBlobs
+ * getBlobs}, {@link #exists exists}, {@link #getSizes getSizes}, and {@link #delete delete}) are
+ * implemented here by looping over the ids and invoking the corresponding single-blob operation,
+ * and the paged {@link #listBlobIds(String, URI, int) listBlobIds} by scanning the full listing;
+ * stores that can do better should override them.
  *
  * @author Pradeep Krishnan
  */
@@ -68,7 +84,7 @@ public abstract class AbstractBlobStoreConnection implements BlobStoreConnection
     try {
       OutputStream out = blob.openOutputStream(estimatedSize, true);
       try {
-        IOUtils.copyLarge(content, out);
+        BufferPool.getDefault().copy(content, out);
         out.close();
         out = null;
       } finally {
@@ -90,6 +106,62 @@ public abstract class AbstractBlobStoreConnection implements BlobStoreConnection
     return blob;
   }
 
+  @Override
+  public Map<URI, Blob> getBlobs(Collection<URI> blobIds, Map<String, String> hints)
+            throws IOException {
+    ensureOpen();
+
+    Map<URI, Blob> res = new LinkedHashMap<URI, Blob>();
+    for (URI id : blobIds) {
+      if (!res.containsKey(id))
+        res.put(id, getBlob(checkId(id), hints));
+    }
+
+    return res;
+  }
+
+  @Override
+  public Set<URI> exists(Collection<URI> blobIds) throws IOException {
+    Set<URI> res = new HashSet<URI>();
+    for (Blob b : getBlobs(blobIds, null).values()) {
+      if (b.exists())
+        res.add(b.getId());
+    }
+
+    return res;
+  }
+
+  @Override
+  public Map<URI, Long> getSizes(Collection<URI> blobIds) throws IOException {
+    Map<URI, Long> res = new LinkedHashMap<URI, Long>();
+    for (Blob b : getBlobs(blobIds, null).values()) {
+      try {
+        res.put(b.getId(), b.getSize());
+      } catch (MissingBlobException mbe) {
+        // does not exist, or was just deleted
+      }
+    }
+
+    return res;
+  }
+
+  @Override
+  public void delete(Collection<URI> blobIds) throws IOException {
+    for (Blob b : getBlobs(blobIds, null).values())
+      b.delete();
+  }
+
+  /**
+   * Implemented by scanning all of {@link #listBlobIds(String) listBlobIds(filterPrefix)} and
+   * keeping the smallest ids; stores that can seek to <var>startAfter</var> should override this.
+   */
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds)
+      throws IOException {
+    checkMaxIds(maxIds);
+    return scanPage(listBlobIds(filterPrefix), startAfter, maxIds);
+  }
+
   @Override
   public void close() {
     if (!closed) {
@@ -113,4 +185,80 @@ public abstract class AbstractBlobStoreConnection implements BlobStoreConnection
     if (isClosed())
       throw new IllegalStateException("Connection closed.");
   }
+
+  /**
+   * Helper for the bulk operations that checks an id is not null, since unlike for
+   * {@link #getBlob(URI, Map) getBlob} null does not mean id-generation there.
+   *
+   * @param blobId the id to check
+   * @return <var>blobId</var>
+   * @throws NullPointerException if <var>blobId</var> is null
+   */
+  protected static URI checkId(URI blobId) throws NullPointerException {
+    if (blobId == null)
+      throw new NullPointerException("Blob id may not be null");
+    return blobId;
+  }
+
+  /**
+   * Helper for the paged {@link #listBlobIds(String, URI, int) listBlobIds} that checks the page
+   * size is valid.
+   *
+   * @param maxIds the requested page size
+   * @throws IllegalArgumentException if <var>maxIds</var> is not positive
+   */
+  protected static void checkMaxIds(int maxIds) throws IllegalArgumentException {
+    if (maxIds <= 0)
+      throw new IllegalArgumentException("maxIds must be positive: " + maxIds);
+  }
+
+  /**
+   * Create a page of a listing from an unordered iteration over the ids. This runs through the
+   * whole iteration, but keeps only <var>maxIds</var> + 1 ids in memory.
+   *
+   * @param ids        the ids to page, in any order
+   * @param startAfter if not null, only ids after this one are included in the page
+   * @param maxIds     the page size
+   * @return the page
+   */
+  protected static BlobIdPage scanPage(Iterator<URI> ids, URI startAfter, int maxIds) {
+    // the largest of the smallest ids seen so far is at the head
+    PriorityQueue<URI> smallest = new PriorityQueue<URI>(Math.min(maxIds, 1000) + 1,
+                                      Collections.reverseOrder(BlobIdPage.ID_ORDER));
+
+    while (ids.hasNext()) {
+      URI id = ids.next();
+      if (startAfter != null && BlobIdPage.ID_ORDER.compare(id, startAfter) <= 0)
+        continue;
+
+      if (smallest.size() <= maxIds) {
+        smallest.add(id);
+      } else if (BlobIdPage.ID_ORDER.compare(id, smallest.peek()) < 0) {
+        smallest.poll();
+        smallest.add(id);
+      }
+    }
+
+    List<URI> res = new ArrayList<URI>(smallest);
+    Collections.sort(res, BlobIdPage.ID_ORDER);
+    return toPage(res, maxIds);
+  }
+
+  /**
+   * Create a page of a listing from the ids following <var>startAfter</var>. The caller should
+   * supply one id more than the page size if there are that many, so that it is known whether
+   * the listing is complete.
+   *
+   * @param ids    the ids following <var>startAfter</var>, in {@link BlobIdPage#ID_ORDER}; at most
+   *               <var>maxIds</var> + 1 are used
+   * @param maxIds the page size
+   * @return the page
+   */
+  protected static BlobIdPage toPage(List<URI> ids, int maxIds) {
+    if (ids.size() <= maxIds)
+      return new BlobIdPage(ids, null);
+
+    List<URI> page = ids.subList(0, maxIds);
+    return new BlobIdPage(page, page.get(maxIds - 1));
+  }
 }
@@ -0,0 +1,125 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileLock;
+import java.util.concurrent.Future;
+
+/**
+ * Simple wrapper implementation that delegates all calls to the wrapped asynchronous file
+ * channel. Subclass and override to customize; to act on close, override {@link #close} and
+ * invoke the super implementation.
+ *
+ * <p>Completion handlers and futures are those of the wrapped channel, so they see the wrapped
+ * channel's locks rather than this one.
+ */
+public class AsynchronousFileChannelWrapper extends AsynchronousFileChannel {
+  /** The wrapped channel to which all calls are delegated. */
+  protected final AsynchronousFileChannel delegate;
+
+  /**
+   * Create a new AsynchronousFileChannelWrapper.
+   *
+   * @param delegate the channel to delegate the calls to
+   */
+  public AsynchronousFileChannelWrapper(AsynchronousFileChannel delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * @return the channel to which the calls are delegated
+   */
+  public AsynchronousFileChannel getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public long size() throws IOException {
+    return delegate.size();
+  }
+
+  @Override
+  public AsynchronousFileChannel truncate(long size) throws IOException {
+    delegate.truncate(size);
+    return this;
+  }
+
+  @Override
+  public void force(boolean metaData) throws IOException {
+    delegate.force(metaData);
+  }
+
+  @Override
+  public <A> void lock(long position, long size, boolean shared, A attachment,
+                       CompletionHandler<FileLock, ? super A> handler) {
+    delegate.lock(position, size, shared, attachment, handler);
+  }
+
+  @Override
+  public Future<FileLock> lock(long position, long size, boolean shared) {
+    return delegate.lock(position, size, shared);
+  }
+
+  @Override
+  public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+    return delegate.tryLock(position, size, shared);
+  }
+
+  @Override
+  public <A> void read(ByteBuffer dst, long position, A attachment,
+                       CompletionHandler<Integer, ? super A> handler) {
+    delegate.read(dst, position, attachment, handler);
+  }
+
+  @Override
+  public Future<Integer> read(ByteBuffer dst, long position) {
+    return delegate.read(dst, position);
+  }
+
+  @Override
+  public <A> void write(ByteBuffer src, long position, A attachment,
+                        CompletionHandler<Integer, ? super A> handler) {
+    delegate.write(src, position, attachment, handler);
+  }
+
+  @Override
+  public Future<Integer> write(ByteBuffer src, long position) {
+    return delegate.write(src, position);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return delegate.isOpen();
+  }
+
+  /**
+   * Closes the wrapped channel.
+   */
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+}
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.Iterator;
 
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.BlobStore;
 import org.akubraproject.BlobStoreConnection;
 
@@ -68,6 +69,12 @@ public abstract class BlobStoreConnectionWrapper extends AbstractBlobStoreConnec
     return delegate.listBlobIds(filterPrefix);
   }
 
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds)
+      throws IOException {
+    return delegate.listBlobIds(filterPrefix, startAfter, maxIds);
+  }
+
   @Override
   public void sync() throws IOException, UnsupportedOperationException {
     delegate.sync();
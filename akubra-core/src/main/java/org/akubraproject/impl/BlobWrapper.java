@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
 import java.util.Map;
 
 import org.akubraproject.Blob;
@@ -93,6 +94,12 @@ public class BlobWrapper extends AbstractBlob {
     return delegate.openInputStream();
   }
 
+  @Override
+  public InputStream openInputStream(long offset, long length) throws IOException {
+    ensureOpen();
+    return delegate.openInputStream(offset, length);
+  }
+
   @Override
   public OutputStream openOutputStream(long estimatedSize, boolean overwrite) throws IOException {
     ensureOpen();
@@ -105,6 +112,12 @@ public class BlobWrapper extends AbstractBlob {
     return delegate.getSize();
   }
 
+  @Override
+  public SeekableByteChannel openChannel(boolean writable) throws IOException {
+    ensureOpen();
+    return delegate.openChannel(writable);
+  }
+
   @Override
   public boolean exists() throws IOException {
     ensureOpen();
@@ -124,4 +137,12 @@ public class BlobWrapper extends AbstractBlob {
     Blob nb = delegate.moveTo(blobId, hints);
     return getConnection().getBlob(nb.getId(), hints);
   }
+
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+    ensureOpen();
+
+    Blob nb = delegate.copyTo(blobId, hints);
+    return getConnection().getBlob(nb.getId(), hints);
+  }
 }
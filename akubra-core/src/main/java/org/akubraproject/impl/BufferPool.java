@@ -0,0 +1,284 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of transient I/O buffers, so that copy loops do not allocate a new buffer each time.
+ * Both heap (<code>byte[]</code>) and direct {@link ByteBuffer}s are pooled.
+ *
+ * <p>Buffers come in power-of-two size classes from {@link #MIN_BUFFER_SIZE} to {@link
+ * #MAX_BUFFER_SIZE}; a request is rounded up to the next class, so a buffer may be larger than
+ * asked for. Requests above the largest class are allocated unpooled, and releasing such a
+ * buffer simply drops it. Each thread keeps one buffer per class up to {@link #LOCAL_MAX_SIZE}
+ * for itself, so an acquire/release cycle on the same thread does not touch any shared state;
+ * beyond that released buffers go to shared per-class queues, which retain at most a
+ * configurable number of bytes.
+ *
+ * <p>A buffer must not be used after it has been released, and must be released at most once.
+ * The content of an acquired buffer is undefined. Usually the {@link #getDefault default pool}
+ * is used.
+ */
+public class BufferPool {
+  /** The size of the smallest size class: 4 KiB. */
+  public static final int MIN_BUFFER_SIZE = 4 * 1024;
+
+  /** The size of the largest size class: 1 MiB. */
+  public static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+  /** The largest size class that is cached per thread: 64 KiB. */
+  public static final int LOCAL_MAX_SIZE = 64 * 1024;
+
+  /** The buffer size used by {@link #copy copy}, and a good choice for other copy loops. */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  /** The default maximum number of bytes retained in the shared queues, per buffer kind. */
+  public static final long DEFAULT_MAX_RETAINED = 16L * 1024 * 1024;
+
+  private static final int MIN_SHIFT     = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+  private static final int NUM_CLASSES   =
+      Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SHIFT + 1;
+  private static final int LOCAL_CLASSES =
+      Integer.numberOfTrailingZeros(LOCAL_MAX_SIZE) - MIN_SHIFT + 1;
+
+  private static final BufferPool defaultPool = new BufferPool(DEFAULT_MAX_RETAINED);
+
+  private final Pool<byte[]> heap;
+  private final Pool<ByteBuffer> direct;
+
+  /**
+   * Create a new pool.
+   *
+   * @param maxRetained the maximum number of bytes of heap buffers, and separately of direct
+   *                    buffers, to keep in the shared queues
+   */
+  public BufferPool(long maxRetained) {
+    heap = new Pool<byte[]>(maxRetained) {
+      @Override
+      byte[] allocate(int size) {
+        return new byte[size];
+      }
+
+      @Override
+      int capacity(byte[] buf) {
+        return buf.length;
+      }
+    };
+
+    direct = new Pool<ByteBuffer>(maxRetained) {
+      @Override
+      ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size);
+      }
+
+      @Override
+      int capacity(ByteBuffer buf) {
+        return buf.capacity();
+      }
+    };
+  }
+
+  /**
+   * @return the pool shared by the Akubra implementations
+   */
+  public static BufferPool getDefault() {
+    return defaultPool;
+  }
+
+  /**
+   * Get a heap buffer.
+   *
+   * @param minSize the minimum size of the buffer
+   * @return a buffer of at least <var>minSize</var> bytes
+   */
+  public byte[] acquire(int minSize) {
+    return heap.acquire(minSize);
+  }
+
+  /**
+   * Return a heap buffer obtained from {@link #acquire} to the pool.
+   *
+   * @param buf the buffer; may be null
+   */
+  public void release(byte[] buf) {
+    if (buf != null)
+      heap.release(buf);
+  }
+
+  /**
+   * Get a direct buffer. The buffer is cleared, i.e. its position is 0 and its limit is its
+   * capacity.
+   *
+   * @param minSize the minimum capacity of the buffer
+   * @return a buffer with a capacity of at least <var>minSize</var> bytes
+   */
+  public ByteBuffer acquireDirect(int minSize) {
+    ByteBuffer buf = direct.acquire(minSize);
+    buf.clear();
+    return buf;
+  }
+
+  /**
+   * Return a direct buffer obtained from {@link #acquireDirect} to the pool.
+   *
+   * @param buf the buffer; may be null
+   */
+  public void releaseDirect(ByteBuffer buf) {
+    if (buf != null)
+      direct.release(buf);
+  }
+
+  /**
+   * Copy all the content of an input stream to an output stream using a pooled buffer. Neither
+   * stream is closed.
+   *
+   * @param in  the stream to read from
+   * @param out the stream to write to
+   * @return the number of bytes copied
+   * @throws IOException if reading or writing failed
+   */
+  public long copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buf = acquire(DEFAULT_BUFFER_SIZE);
+    try {
+      long count = 0;
+      int  n;
+      while ((n = in.read(buf)) != -1) {
+        out.write(buf, 0, n);
+        count += n;
+      }
+      return count;
+    } finally {
+      release(buf);
+    }
+  }
+
+  /**
+   * @return the number of bytes of heap buffers in the shared queues; for testing
+   */
+  long getRetainedHeapBytes() {
+    return heap.retained.get();
+  }
+
+  /**
+   * Get the size class for a request.
+   *
+   * @param size the requested size
+   * @return the index of the smallest class holding <var>size</var> bytes, or -1 if too large
+   */
+  static int sizeClass(int size) {
+    if (size <= MIN_BUFFER_SIZE)
+      return 0;
+    if (size > MAX_BUFFER_SIZE)
+      return -1;
+    return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+  }
+
+  /**
+   * @return the size of the buffers in the given class
+   */
+  static int classSize(int cls) {
+    return 1 << (cls + MIN_SHIFT);
+  }
+
+  /**
+   * The pool for one kind of buffer.
+   */
+  private abstract static class Pool<T> {
+    private final List<Queue<T>> shared = new ArrayList<Queue<T>>(NUM_CLASSES);
+    private final long           maxRetained;
+    final AtomicLong             retained = new AtomicLong();
+
+    private final ThreadLocal<Object[]> local = new ThreadLocal<Object[]>() {
+      @Override
+      protected Object[] initialValue() {
+        return new Object[LOCAL_CLASSES];
+      }
+    };
+
+    Pool(long maxRetained) {
+      this.maxRetained = maxRetained;
+      for (int cls = 0; cls < NUM_CLASSES; cls++)
+        shared.add(new ConcurrentLinkedQueue<T>());
+    }
+
+    abstract T allocate(int size);
+
+    abstract int capacity(T buf);
+
+    @SuppressWarnings("unchecked")
+    T acquire(int minSize) {
+      int cls = sizeClass(minSize);
+      if (cls < 0)
+        return allocate(minSize);
+
+      if (cls < LOCAL_CLASSES) {
+        Object[] cache = local.get();
+        T        buf   = (T) cache[cls];
+        if (buf != null) {
+          cache[cls] = null;
+          return buf;
+        }
+      }
+
+      T buf = shared.get(cls).poll();
+      if (buf != null) {
+        retained.addAndGet(-classSize(cls));
+        return buf;
+      }
+
+      return allocate(classSize(cls));
+    }
+
+    void release(T buf) {
+      int size = capacity(buf);
+      int cls  = sizeClass(size);
+      if (cls < 0 || classSize(cls) != size)
+        return;         // not one of ours
+
+      if (cls < LOCAL_CLASSES) {
+        Object[] cache = local.get();
+        if (cache[cls] == null) {
+          cache[cls] = buf;
+          return;
+        }
+      }
+
+      if (retained.addAndGet(size) > maxRetained) {
+        retained.addAndGet(-size);
+        return;
+      }
+
+      shared.get(cls).offer(buf);
+    }
+  }
+}
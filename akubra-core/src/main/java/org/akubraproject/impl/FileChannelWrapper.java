@@ -0,0 +1,161 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Simple wrapper implementation that delegates all calls to the wrapped file channel, so that
+ * a wrapped channel is still a {@link FileChannel}. Subclass and override to customize; to act
+ * on close, override {@link #implCloseChannel} and invoke the super implementation.
+ *
+ * <p>Transfers between two wrapped channels are done between the wrapped channels, so that the
+ * platform can still transfer the data directly.
+ */
+public class FileChannelWrapper extends FileChannel {
+  /** The wrapped channel to which all calls are delegated. */
+  protected final FileChannel delegate;
+
+  /**
+   * Create a new FileChannelWrapper.
+   *
+   * @param delegate the channel to delegate the calls to
+   */
+  public FileChannelWrapper(FileChannel delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * @return the channel to which the calls are delegated
+   */
+  public FileChannel getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    return delegate.read(dst);
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    return delegate.read(dsts, offset, length);
+  }
+
+  @Override
+  public int read(ByteBuffer dst, long position) throws IOException {
+    return delegate.read(dst, position);
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    return delegate.write(src);
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    return delegate.write(srcs, offset, length);
+  }
+
+  @Override
+  public int write(ByteBuffer src, long position) throws IOException {
+    return delegate.write(src, position);
+  }
+
+  @Override
+  public long position() throws IOException {
+    return delegate.position();
+  }
+
+  @Override
+  public FileChannel position(long newPosition) throws IOException {
+    delegate.position(newPosition);
+    return this;
+  }
+
+  @Override
+  public long size() throws IOException {
+    return delegate.size();
+  }
+
+  @Override
+  public FileChannel truncate(long size) throws IOException {
+    delegate.truncate(size);
+    return this;
+  }
+
+  @Override
+  public void force(boolean metaData) throws IOException {
+    delegate.force(metaData);
+  }
+
+  @Override
+  public long transferTo(long position, long count, WritableByteChannel target)
+      throws IOException {
+    return delegate.transferTo(position, count, unwrap(target));
+  }
+
+  @Override
+  public long transferFrom(ReadableByteChannel src, long position, long count)
+      throws IOException {
+    return delegate.transferFrom(unwrap(src), position, count);
+  }
+
+  @Override
+  public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+    return delegate.map(mode, position, size);
+  }
+
+  @Override
+  public FileLock lock(long position, long size, boolean shared) throws IOException {
+    return delegate.lock(position, size, shared);
+  }
+
+  @Override
+  public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+    return delegate.tryLock(position, size, shared);
+  }
+
+  /**
+   * Closes the wrapped channel.
+   */
+  @Override
+  protected void implCloseChannel() throws IOException {
+    delegate.close();
+  }
+
+  private static <T> T unwrap(T channel) {
+    if (channel instanceof FileChannelWrapper && ((FileChannelWrapper) channel).isOpen()) {
+      @SuppressWarnings("unchecked")
+      T inner = (T) ((FileChannelWrapper) channel).getDelegate();
+      return unwrap(inner);
+    }
+
+    return channel;
+  }
+}
@@ -0,0 +1,44 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.impl;
+
+import java.io.Closeable;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * A stream or channel tracked by a {@link StreamManager}, which notifies the manager's
+ * <code>CloseListener</code> when closed.
+ */
+interface ManagedCloseable extends Closeable {
+  /**
+   * Gets the store connection that this stream or channel is part of.
+   *
+   * @return the store connection
+   */
+  BlobStoreConnection getConnection();
+
+  /**
+   * @return whether this was opened for writing, i.e. is tracked as an output stream
+   */
+  boolean isWritable();
+}
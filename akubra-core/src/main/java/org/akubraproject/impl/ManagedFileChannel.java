@@ -0,0 +1,78 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Wraps a <code>FileChannel</code> to provide notification to a <code>CloseListener</code> when
+ * closed.
+ */
+class ManagedFileChannel extends FileChannelWrapper implements ManagedCloseable {
+  private final CloseListener listener;
+  private final BlobStoreConnection con;
+  private final boolean writable;
+
+  /**
+   * Creates an instance.
+   *
+   * @param listener the CloseListener to notify when closed.
+   * @param channel the channel to wrap.
+   * @param con the store connection
+   * @param writable whether the channel was opened for writing
+   */
+  ManagedFileChannel(CloseListener listener, FileChannel channel, BlobStoreConnection con,
+                     boolean writable) {
+    super(channel);
+    this.listener = listener;
+    this.con = con;
+    this.writable = writable;
+  }
+
+  /**
+   * Gets the store connection that this channel is part of.
+   *
+   * @return the store connection
+   */
+  public BlobStoreConnection getConnection() {
+    return con;
+  }
+
+  /**
+   * @return whether the channel was opened for writing
+   */
+  public boolean isWritable() {
+    return writable;
+  }
+
+  /**
+   * Closes the channel, then notifies the CloseListener. This is invoked at most once.
+   */
+  @Override
+  protected void implCloseChannel() throws IOException {
+    super.implCloseChannel();
+    listener.notifyClosed(this);
+  }
+}
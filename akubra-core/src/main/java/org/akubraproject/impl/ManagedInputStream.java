@@ -34,7 +34,7 @@ import org.akubraproject.BlobStoreConnection;
  * @author Pradeep Krishnan
  * @author Chris Wilper
  */
-class ManagedInputStream extends FilterInputStream {
+class ManagedInputStream extends FilterInputStream implements ManagedCloseable {
   private final CloseListener listener;
   private final BlobStoreConnection con;
   private boolean closed = false;
@@ -61,6 +61,13 @@ class ManagedInputStream extends FilterInputStream {
     return con;
   }
 
+  /**
+   * @return false
+   */
+  public boolean isWritable() {
+    return false;
+  }
+
   /**
    * Closes the stream, then notifies the CloseListener.
    */
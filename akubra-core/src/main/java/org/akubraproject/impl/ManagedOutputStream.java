@@ -33,7 +33,7 @@ import org.akubraproject.BlobStoreConnection;
  *
  * @author Chris Wilper
  */
-class ManagedOutputStream extends FilterOutputStream {
+class ManagedOutputStream extends FilterOutputStream implements ManagedCloseable {
   private final CloseListener listener;
   private final BlobStoreConnection con;
   private boolean closed = false;
@@ -60,6 +60,13 @@ class ManagedOutputStream extends FilterOutputStream {
     return con;
   }
 
+  /**
+   * @return true
+   */
+  public boolean isWritable() {
+    return true;
+  }
+
   /**
    * Implement this far more efficiently than the ridiculous implementation in the superclass.
    */
@@ -0,0 +1,83 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.impl;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Wraps a <code>SeekableByteChannel</code> to provide notification to a
+ * <code>CloseListener</code> when closed.
+ */
+class ManagedSeekableByteChannel extends SeekableByteChannelWrapper
+    implements ManagedCloseable {
+  private final CloseListener listener;
+  private final BlobStoreConnection con;
+  private final boolean writable;
+  private boolean closed = false;
+
+  /**
+   * Creates an instance.
+   *
+   * @param listener the CloseListener to notify when closed.
+   * @param channel the channel to wrap.
+   * @param con the store connection
+   * @param writable whether the channel was opened for writing
+   */
+  ManagedSeekableByteChannel(CloseListener listener, SeekableByteChannel channel,
+                             BlobStoreConnection con, boolean writable) {
+    super(channel);
+    this.listener = listener;
+    this.con = con;
+    this.writable = writable;
+  }
+
+  /**
+   * Gets the store connection that this channel is part of.
+   *
+   * @return the store connection
+   */
+  public BlobStoreConnection getConnection() {
+    return con;
+  }
+
+  /**
+   * @return whether the channel was opened for writing
+   */
+  public boolean isWritable() {
+    return writable;
+  }
+
+  /**
+   * Closes the channel, then notifies the CloseListener.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      super.close();
+      closed = true;
+      listener.notifyClosed(this);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.akubraproject.Blob;
+
+/**
+ * A writable channel on the content of a blob, for stores that can only write whole blobs. The
+ * content is copied to a temporary file which the channel then reads and writes; when the channel
+ * is closed the blob is overwritten with the file's content, if it was modified, and the file is
+ * deleted. Hence other readers do not see the changes until the channel is closed.
+ */
+class SpooledChannel extends SeekableByteChannelWrapper {
+  private static final Logger log = LoggerFactory.getLogger(SpooledChannel.class);
+
+  private final Blob blob;
+  private final File file;
+  private boolean    modified = false;
+  private boolean    closed   = false;
+
+  private SpooledChannel(Blob blob, File file, FileChannel channel) {
+    super(channel);
+    this.blob = blob;
+    this.file = file;
+  }
+
+  /**
+   * Open a new channel positioned at the beginning of the content.
+   *
+   * @param blob the blob to read and write
+   * @return the channel
+   * @throws IOException if the content could not be copied, e.g. because the blob does not exist
+   */
+  static SpooledChannel open(Blob blob) throws IOException {
+    InputStream in = blob.openInputStream();
+    try {
+      File file = File.createTempFile("akubra-channel", ".tmp");
+
+      FileChannel channel = null;
+      boolean     success = false;
+      try {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        BufferPool.getDefault().copy(in, Channels.newOutputStream(channel));
+        channel.position(0);
+        success = true;
+      } finally {
+        if (!success) {
+          if (channel != null)
+            IOUtils.closeQuietly(channel);
+          if (!file.delete())
+            log.warn("Failed to delete temporary file '" + file + "'");
+        }
+      }
+
+      return new SpooledChannel(blob, file, channel);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    int n = super.write(src);
+    modified = true;
+    return n;
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) throws IOException {
+    super.truncate(size);
+    modified = true;
+    return this;
+  }
+
+  /**
+   * Writes the content back to the blob if it was modified, then closes and deletes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed)
+      return;
+    closed = true;
+
+    try {
+      if (modified) {
+        delegate.position(0);
+        OutputStream out = blob.openOutputStream(delegate.size(), true);
+        try {
+          BufferPool.getDefault().copy(Channels.newInputStream(delegate), out);
+          out.close();
+          out = null;
+        } finally {
+          if (out != null)
+            IOUtils.closeQuietly(out);
+        }
+      }
+    } finally {
+      try {
+        super.close();
+      } finally {
+        if (!file.delete())
+          log.warn("Failed to delete temporary file '" + file + "'");
+      }
+    }
+  }
+}
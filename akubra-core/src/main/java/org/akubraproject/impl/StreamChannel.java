@@ -0,0 +1,148 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+import org.apache.commons.io.IOUtils;
+
+import org.akubraproject.Blob;
+
+/**
+ * A read-only channel on the content of a blob, implemented with the blob's {@link
+ * Blob#openInputStream(long, long) ranged input streams}. Moving the position closes the current
+ * stream, and the next read opens a new one at the new position; so this suits reading a few
+ * ranges rather than many small scattered reads.
+ */
+class StreamChannel implements SeekableByteChannel {
+  private final Blob  blob;
+  private InputStream in;
+  private long        pos  = 0;
+  private boolean     open = true;
+
+  /**
+   * Create a new channel positioned at the beginning of the content.
+   *
+   * @param blob the blob to read
+   * @throws IOException if the content could not be opened, e.g. because the blob does not exist
+   */
+  StreamChannel(Blob blob) throws IOException {
+    this.blob = blob;
+    this.in   = blob.openInputStream();
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    ensureOpen();
+    if (!dst.hasRemaining())
+      return 0;
+
+    if (in == null)
+      in = blob.openInputStream(pos, -1);
+
+    int n;
+    if (dst.hasArray()) {
+      n = in.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+      if (n > 0)
+        dst.position(dst.position() + n);
+    } else {
+      byte[] buf = BufferPool.getDefault().acquire(BufferPool.DEFAULT_BUFFER_SIZE);
+      try {
+        n = in.read(buf, 0, Math.min(buf.length, dst.remaining()));
+        if (n > 0)
+          dst.put(buf, 0, n);
+      } finally {
+        BufferPool.getDefault().release(buf);
+      }
+    }
+
+    if (n > 0)
+      pos += n;
+    return n;
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    ensureOpen();
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public long position() throws IOException {
+    ensureOpen();
+    return pos;
+  }
+
+  @Override
+  public SeekableByteChannel position(long newPosition) throws IOException {
+    ensureOpen();
+    if (newPosition < 0)
+      throw new IllegalArgumentException("position must not be negative: " + newPosition);
+
+    if (newPosition != pos) {
+      IOUtils.closeQuietly(in);
+      in  = null;
+      pos = newPosition;
+    }
+
+    return this;
+  }
+
+  /**
+   * @return the size of the blob, which may be -1 if the store does not know it
+   */
+  @Override
+  public long size() throws IOException {
+    ensureOpen();
+    return blob.getSize();
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) throws IOException {
+    ensureOpen();
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (open) {
+      open = false;
+      if (in != null)
+        in.close();
+    }
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (!open)
+      throw new ClosedChannelException();
+  }
+}
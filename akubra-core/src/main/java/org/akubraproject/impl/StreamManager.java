@@ -26,9 +26,17 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import java.util.Collections;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,21 +50,41 @@ import org.akubraproject.BlobStoreConnection;
  * ensuring that streams that belong to a <code>BlobStoreConnection</code> are closed when the
  * connection is closed.
  *
+ * <p>Streams are indexed by their connection, so opening or closing a stream only touches the
+ * owning connection's entry, and closing a connection only visits that connection's streams.
+ * Store-wide counts of the open streams are kept separately, and {@link
+ * #awaitOutputStreamsClosed} lets subclasses wait for all output streams to be closed.
+ *
+ * <p>Blob channels are tracked too: a writable channel is counted as an output stream, and a
+ * read-only channel as an input stream. The same goes for asynchronous file channels, which
+ * count as open until closed, regardless of any operations still pending on them.
+ *
  * @author Chris Wilper
  */
 public class StreamManager {
   private static final Logger log = LoggerFactory.getLogger(StreamManager.class);
 
+  /** Key used for streams that do not belong to a connection. */
+  private static final Object NO_CONNECTION = new Object();
+
   /** Listens to close events. */
   protected final CloseListener listener;
 
-  /** The set of open <code>OutputStream</code>s managed by this instance. */
-  protected final Set<ManagedOutputStream> openOutputStreams
-      = Collections.synchronizedSet(new HashSet<ManagedOutputStream>());
+  /** The open streams, indexed by connection. */
+  private final ConcurrentMap<Object, ConnectionStreams> streams =
+      new ConcurrentHashMap<Object, ConnectionStreams>();
 
-  /** The set of open <code>InputStream</code>s managed by this instance. */
-  protected final Set<ManagedInputStream> openInputStreams
-      = Collections.synchronizedSet(new HashSet<ManagedInputStream>());
+  /** The number of open <code>OutputStream</code>s managed by this instance. */
+  private final AtomicInteger openOutputStreams = new AtomicInteger();
+
+  /** The number of open <code>InputStream</code>s managed by this instance. */
+  private final AtomicInteger openInputStreams = new AtomicInteger();
+
+  /** Monitor used to wait for and signal the closing of the last open output stream. */
+  private final Object outputDrained = new Object();
+
+  /** The number of threads waiting on {@link #outputDrained}. */
+  private final AtomicInteger drainWaiters = new AtomicInteger();
 
   /**
    * Creates an instance.
@@ -64,15 +92,18 @@ public class StreamManager {
   public StreamManager() {
     listener = new CloseListener() {
       public void notifyClosed(Closeable closeable) {
-        if (closeable instanceof InputStream) {
-          synchronized (openInputStreams) {
-            openInputStreams.remove(closeable);
-            openInputStreams.notifyAll();
-          }
-        } else {
-          synchronized (openOutputStreams) {
-            openOutputStreams.remove(closeable);
-            openOutputStreams.notifyAll();
+        if (!(closeable instanceof ManagedCloseable))
+          throw new IllegalArgumentException("Not a managed stream: " + closeable);
+
+        ManagedCloseable managed = (ManagedCloseable) closeable;
+        if (!untrack(managed.getConnection(), managed))
+          return;
+
+        if (!managed.isWritable()) {
+          openInputStreams.decrementAndGet();
+        } else if (openOutputStreams.decrementAndGet() == 0 && drainWaiters.get() > 0) {
+          synchronized (outputDrained) {
+            outputDrained.notifyAll();
           }
         }
       }
@@ -90,7 +121,8 @@ public class StreamManager {
   public OutputStream manageOutputStream(BlobStoreConnection con, OutputStream stream)
       throws IOException {
     ManagedOutputStream managed = new ManagedOutputStream(listener, stream, con);
-    openOutputStreams.add(managed);
+    openOutputStreams.incrementAndGet();
+    track(con, managed);
     return managed;
   }
 
@@ -105,7 +137,58 @@ public class StreamManager {
   public InputStream manageInputStream(BlobStoreConnection con, InputStream stream)
       throws IOException {
     ManagedInputStream managed = new ManagedInputStream(listener, stream, con);
-    openInputStreams.add(managed);
+    openInputStreams.incrementAndGet();
+    track(con, managed);
+    return managed;
+  }
+
+  /**
+   * Provides a tracked wrapper around a given blob channel. If the channel is a
+   * <code>FileChannel</code> then so is the wrapper.
+   *
+   * @param con the connection that the returned channel belongs to.
+   * @param channel the channel to wrap.
+   * @param writable whether the channel was opened for writing; if so it is tracked like an
+   *                 output stream, else like an input stream
+   * @return the wrapped version of the channel.
+   * @throws IOException if interrupted while trying to acquire the state-lock
+   */
+  public SeekableByteChannel manageChannel(BlobStoreConnection con, SeekableByteChannel channel,
+                                           boolean writable) throws IOException {
+    SeekableByteChannel managed = (channel instanceof FileChannel) ?
+        new ManagedFileChannel(listener, (FileChannel) channel, con, writable) :
+        new ManagedSeekableByteChannel(listener, channel, con, writable);
+
+    if (writable)
+      openOutputStreams.incrementAndGet();
+    else
+      openInputStreams.incrementAndGet();
+    track(con, managed);
+    return managed;
+  }
+
+  /**
+   * Provides a tracked wrapper around a given asynchronous file channel.
+   *
+   * @param con the connection that the returned channel belongs to.
+   * @param channel the channel to wrap.
+   * @param writable whether the channel was opened for writing; if so it is tracked like an
+   *                 output stream, else like an input stream
+   * @return the wrapped version of the channel.
+   * @throws IOException if the channel could not be tracked; not thrown by this implementation,
+   *                     but subclasses may e.g. wait for a lock
+   */
+  public AsynchronousFileChannel manageAsyncChannel(BlobStoreConnection con,
+                                                    AsynchronousFileChannel channel,
+                                                    boolean writable) throws IOException {
+    ManagedAsynchronousFileChannel managed =
+        new ManagedAsynchronousFileChannel(listener, channel, con, writable);
+
+    if (writable)
+      openOutputStreams.incrementAndGet();
+    else
+      openInputStreams.incrementAndGet();
+    track(con, managed);
     return managed;
   }
 
@@ -115,37 +198,108 @@ public class StreamManager {
    * @param con the connection that is closed
    */
   public void connectionClosed(BlobStoreConnection con) {
-    Set<Closeable> closeables = new HashSet<Closeable>();
-    synchronized (openOutputStreams) {
-      for (ManagedOutputStream c : openOutputStreams)
-        if (c.getConnection().equals(con))
-          closeables.add(c);
-    }
+    ConnectionStreams cs = streams.get(key(con));
+    if (cs == null)
+      return;
 
-    synchronized (openInputStreams) {
-      for (ManagedInputStream c : openInputStreams)
-        if (c.getConnection().equals(con))
-          closeables.add(c);
+    List<Closeable> closeables;
+    synchronized (cs) {
+      closeables = new ArrayList<Closeable>(cs.open);
     }
 
     if (!closeables.isEmpty()) {
       log.warn("Auto-closing " + closeables.size() + " open streams for closed connection " + con);
-      for (Closeable c : closeables) {
-        if (c instanceof InputStream)
-          IOUtils.closeQuietly((InputStream) c);
-        else
-          IOUtils.closeQuietly((OutputStream) c);
+      for (Closeable c : closeables)
+        IOUtils.closeQuietly(c);
+    }
+  }
+
+  /**
+   * Waits until all output streams managed by this instance have been closed. The caller is
+   * responsible for preventing new output streams from being opened meanwhile, if so desired.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  protected void awaitOutputStreamsClosed() throws InterruptedException {
+    drainWaiters.incrementAndGet();
+    try {
+      synchronized (outputDrained) {
+        while (openOutputStreams.get() > 0)
+          outputDrained.wait();
       }
+    } finally {
+      drainWaiters.decrementAndGet();
     }
   }
 
-  // how many output streams are open?
-  int getOpenOutputStreamCount() {
-    return openOutputStreams.size();
+  /**
+   * Gets the number of open output streams managed by this instance.
+   *
+   * @return the number of open output streams
+   */
+  protected int getOpenOutputStreamCount() {
+    return openOutputStreams.get();
   }
 
-  // how many input streams are open?
-  int getOpenInputStreamCount() {
-    return openInputStreams.size();
+  /**
+   * Gets the number of open input streams managed by this instance.
+   *
+   * @return the number of open input streams
+   */
+  protected int getOpenInputStreamCount() {
+    return openInputStreams.get();
+  }
+
+  private void track(BlobStoreConnection con, Closeable stream) {
+    Object key = key(con);
+
+    while (true) {
+      ConnectionStreams cs = streams.get(key);
+      if (cs == null) {
+        ConnectionStreams ncs = new ConnectionStreams();
+        cs = streams.putIfAbsent(key, ncs);
+        if (cs == null)
+          cs = ncs;
+      }
+
+      synchronized (cs) {
+        if (!cs.retired) {
+          cs.open.add(stream);
+          return;
+        }
+      }
+    }
+  }
+
+  private boolean untrack(BlobStoreConnection con, Closeable stream) {
+    Object            key = key(con);
+    ConnectionStreams cs  = streams.get(key);
+    if (cs == null)
+      return false;
+
+    synchronized (cs) {
+      if (!cs.open.remove(stream))
+        return false;
+
+      if (cs.open.isEmpty()) {
+        cs.retired = true;
+        streams.remove(key, cs);
+      }
+    }
+
+    return true;
+  }
+
+  private static Object key(BlobStoreConnection con) {
+    return (con == null) ? NO_CONNECTION : con;
+  }
+
+  /**
+   * The open streams of a single connection. An entry is retired when its last stream is
+   * removed, after which it is dropped from the index and a new entry must be created.
+   */
+  private static class ConnectionStreams {
+    final Set<Closeable> open = new HashSet<Closeable>();
+    boolean retired = false;
   }
 }
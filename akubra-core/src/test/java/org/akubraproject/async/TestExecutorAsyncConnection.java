@@ -0,0 +1,372 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.async;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.net.URI;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
+import org.akubraproject.BlobStore;
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.MissingBlobException;
+
+/**
+ * Unit Tests for {@link ExecutorAsyncConnection} and {@link AsyncBlobStore}.
+ */
+public class TestExecutorAsyncConnection {
+  private static final URI ID = URI.create("urn:blob:1");
+
+  /**
+   * Each operation should be run against the underlying connection, and its result or error
+   * reported through the future.
+   */
+  @Test
+  public void testOperations() throws Exception {
+    BlobStoreConnection con  = createMock(BlobStoreConnection.class);
+    Blob                blob = createMock(Blob.class);
+    Blob                dest = createMock(Blob.class);
+    ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    expect(con.getBlob(ID, null)).andStubReturn(blob);
+    expect(blob.exists()).andReturn(true);
+    expect(blob.getSize()).andReturn(42L);
+    expect(blob.getSize()).andThrow(new MissingBlobException(ID));
+    expect(blob.openInputStream()).andReturn(new ByteArrayInputStream(new byte[] { 1, 2 }));
+    expect(blob.openOutputStream(2, true)).andReturn(written);
+    expect(blob.moveTo(URI.create("urn:blob:2"), null)).andReturn(dest);
+    blob.delete();
+    BlobIdPage page = new BlobIdPage(Arrays.asList(ID), ID);
+    expect(con.listBlobIds("urn:", null, 1)).andReturn(page);
+    con.close();
+    replay(con, blob, dest);
+
+    AsyncBlobStoreConnection acon = new ExecutorAsyncConnection(con, SAME_THREAD, false);
+    assertSame(acon.getConnection(), con);
+    assertSame(acon.getBlob(ID, null).get(), blob);
+    assertTrue(acon.exists(ID).get());
+    assertEquals(acon.getSize(ID).get(), Long.valueOf(42));
+    try {
+      acon.getSize(ID).get();
+      fail("Did not get expected exception");
+    } catch (ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof MissingBlobException);
+    }
+    assertTrue(Arrays.equals(acon.readAll(ID).get(), new byte[] { 1, 2 }));
+    assertSame(acon.write(ID, new ByteArrayInputStream(new byte[] { 3, 4 }), 2, true).get(), blob);
+    assertTrue(Arrays.equals(written.toByteArray(), new byte[] { 3, 4 }));
+    assertSame(acon.moveTo(ID, URI.create("urn:blob:2"), null).get(), dest);
+    assertEquals(acon.delete(ID).get(), null);
+    assertSame(acon.listBlobIds("urn:", null, 1).get(), page);
+    acon.close();
+
+    verify(con, blob, dest);
+  }
+
+  /**
+   * A non-concurrent connection should run one operation at a time, in order.
+   */
+  @Test
+  public void testSerialOrdering() throws Exception {
+    final List<Integer> order = new LinkedList<Integer>();
+    BlobStoreConnection con   = createMock(BlobStoreConnection.class);
+    Blob                blob  = createMock(Blob.class);
+    expect(con.getBlob(ID, null)).andStubReturn(blob);
+    expect(blob.exists()).andStubReturn(true);
+    replay(con, blob);
+
+    QueueExecutor          exec = new QueueExecutor();
+    ExecutorAsyncConnection acon = new ExecutorAsyncConnection(con, exec, false);
+
+    List<BlobFuture<Boolean>> futures = new LinkedList<BlobFuture<Boolean>>();
+    for (int idx = 0; idx < 3; idx++) {
+      final int n = idx;
+      BlobFuture<Boolean> f = acon.exists(ID);
+      f.addListener(new Runnable() {
+        public void run() {
+          order.add(n);
+        }
+      }, SAME_THREAD);
+      futures.add(f);
+    }
+
+    assertEquals(exec.tasks.size(), 1);
+    exec.runOne();
+    assertTrue(futures.get(0).isDone());
+    assertFalse(futures.get(1).isDone());
+    assertEquals(exec.tasks.size(), 1);
+    exec.runAll();
+    assertEquals(order, Arrays.asList(0, 1, 2));
+
+    // concurrent connections hand each operation to the executor right away
+    acon = new ExecutorAsyncConnection(con, exec, true);
+    acon.exists(ID);
+    acon.exists(ID);
+    assertEquals(exec.tasks.size(), 2);
+    exec.runAll();
+  }
+
+  /**
+   * Operations that the executor rejects should fail.
+   */
+  @Test
+  public void testRejection() throws Exception {
+    BlobStoreConnection con = createMock(BlobStoreConnection.class);
+    replay(con);
+
+    Executor reject = new Executor() {
+      public void execute(Runnable r) {
+        throw new RejectedExecutionException("full");
+      }
+    };
+
+    for (boolean concurrent : new boolean[] { false, true }) {
+      ExecutorAsyncConnection acon = new ExecutorAsyncConnection(con, reject, concurrent);
+      for (int idx = 0; idx < 2; idx++) {
+        try {
+          acon.exists(ID).get();
+          fail("Did not get expected exception");
+        } catch (ExecutionException ee) {
+          assertTrue(ee.getCause() instanceof RejectedExecutionException);
+        }
+      }
+    }
+
+    // a bounded executor rejects once its threads and queue are full
+    ExecutorService exec = AsyncBlobStore.newBoundedExecutor(1, 1, "test");
+    final Object    lock = new Object();
+    Runnable        wait = new Runnable() {
+      public void run() {
+        synchronized (lock) {
+        }
+      }
+    };
+
+    synchronized (lock) {
+      exec.execute(wait);
+      exec.execute(wait);
+      try {
+        exec.execute(wait);
+        fail("Did not get expected exception");
+      } catch (RejectedExecutionException ree) {
+      }
+    }
+    exec.shutdown();
+  }
+
+  /**
+   * A non-concurrent connection should queue no more operations than allowed, and by default no
+   * more than the executor's queue holds, so that flooding a single connection is rejected.
+   */
+  @Test
+  public void testSerialBound() throws Exception {
+    BlobStoreConnection con  = createMock(BlobStoreConnection.class);
+    Blob                blob = createMock(Blob.class);
+    expect(con.getBlob(ID, null)).andStubReturn(blob);
+    expect(blob.exists()).andStubReturn(true);
+    replay(con, blob);
+
+    QueueExecutor           exec = new QueueExecutor();
+    ExecutorAsyncConnection acon = new ExecutorAsyncConnection(con, exec, false, 2);
+
+    // one handed to the executor, two queued by the connection
+    List<BlobFuture<Boolean>> futures = new LinkedList<BlobFuture<Boolean>>();
+    for (int idx = 0; idx < 3; idx++)
+      futures.add(acon.exists(ID));
+    assertRejected(acon.exists(ID));
+
+    exec.runOne();
+    futures.add(acon.exists(ID));
+    assertRejected(acon.exists(ID));
+    exec.runAll();
+    for (BlobFuture<Boolean> f : futures)
+      assertTrue(f.get());
+
+    // flood a connection on a bounded executor whose only thread is busy
+    ExecutorService bounded = AsyncBlobStore.newBoundedExecutor(1, 5, "test-flood");
+    final Object    lock    = new Object();
+    try {
+      synchronized (lock) {
+        bounded.execute(new Runnable() {
+          public void run() {
+            synchronized (lock) {
+            }
+          }
+        });
+
+        acon    = new ExecutorAsyncConnection(con, bounded, false);
+        futures = new LinkedList<BlobFuture<Boolean>>();
+        for (int idx = 0; idx < 100; idx++)
+          futures.add(acon.exists(ID));
+      }
+
+      int rejected = 0;
+      for (BlobFuture<Boolean> f : futures) {
+        try {
+          assertTrue(f.get());
+        } catch (ExecutionException ee) {
+          assertTrue(ee.getCause() instanceof RejectedExecutionException);
+          rejected++;
+        }
+      }
+      // one in the executor's queue, five queued by the connection
+      assertEquals(rejected, 94);
+    } finally {
+      bounded.shutdown();
+    }
+
+    try {
+      new ExecutorAsyncConnection(con, exec, false, 0);
+      fail("Did not get expected IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+    }
+  }
+
+  /**
+   * Listeners should be run on completion, or right away if already completed.
+   */
+  @Test
+  public void testListeners() throws Exception {
+    final AtomicInteger    count = new AtomicInteger();
+    Runnable               l     = new Runnable() {
+      public void run() {
+        count.incrementAndGet();
+      }
+    };
+
+    BlobFutureTask<String> f = new BlobFutureTask<String>();
+    f.addListener(l, SAME_THREAD);
+    f.addListener(l, SAME_THREAD);
+    assertEquals(count.get(), 0);
+
+    f.complete("foo");
+    assertEquals(count.get(), 2);
+    assertEquals(f.get(), "foo");
+
+    f.addListener(l, SAME_THREAD);
+    assertEquals(count.get(), 3);
+
+    f.fail(new IOException());
+    assertEquals(f.get(), "foo");
+
+    f = new BlobFutureTask<String>();
+    f.fail(new IOException());
+    f.addListener(l, SAME_THREAD);
+    assertEquals(count.get(), 4);
+
+    // an explicitly completed future must not be run
+    f = new BlobFutureTask<String>();
+    f.run();
+    try {
+      f.get();
+      fail("Did not get expected exception");
+    } catch (ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  /**
+   * The store should use the connection's own asynchronous implementation if it has one.
+   */
+  @Test
+  public void testAsyncCapable() throws Exception {
+    BlobStore                store = createMock(BlobStore.class);
+    BlobStoreConnection      con   = createMock(BlobStoreConnection.class);
+    AsyncCapableConnection   acc   = createMock(AsyncCapableConnection.class);
+    AsyncBlobStoreConnection mine  = createMock(AsyncBlobStoreConnection.class);
+
+    AsyncBlobStore as = new AsyncBlobStore(store, 1, 10);
+
+    expect(store.openConnection(null, null)).andReturn(con);
+    expect(store.openConnection(null, null)).andReturn(acc);
+    expect(acc.getAsyncConnection(as.getExecutor())).andReturn(mine);
+    replay(store, con, acc, mine);
+
+    assertTrue(as.openConnection(null, null) instanceof ExecutorAsyncConnection);
+    assertSame(as.openConnection(null, null), mine);
+    assertSame(as.getBlobStore(), store);
+
+    as.shutdown();
+    assertTrue(as.getExecutor().isShutdown());
+    verify(store, con, acc, mine);
+  }
+
+  private static void assertRejected(BlobFuture<?> f) throws Exception {
+    try {
+      f.get();
+      fail("Did not get expected RejectedExecutionException");
+    } catch (ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof RejectedExecutionException);
+    }
+  }
+
+  private static final Executor SAME_THREAD = new Executor() {
+    public void execute(Runnable r) {
+      r.run();
+    }
+  };
+
+  /**
+   * An executor that queues tasks until told to run them.
+   */
+  private static class QueueExecutor implements Executor {
+    final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+    public void execute(Runnable r) {
+      tasks.add(r);
+    }
+
+    void runOne() {
+      tasks.removeFirst().run();
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty())
+        runOne();
+    }
+  }
+}
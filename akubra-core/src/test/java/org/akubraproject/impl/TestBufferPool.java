@@ -0,0 +1,143 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import java.nio.ByteBuffer;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Unit Tests for {@link BufferPool}.
+ */
+public class TestBufferPool {
+  /**
+   * Requests should be rounded up to the next size class.
+   */
+  @Test
+  public void testSizeClasses() {
+    assertEquals(BufferPool.sizeClass(0), 0);
+    assertEquals(BufferPool.sizeClass(BufferPool.MIN_BUFFER_SIZE), 0);
+    assertEquals(BufferPool.sizeClass(BufferPool.MIN_BUFFER_SIZE + 1), 1);
+    assertEquals(BufferPool.sizeClass(BufferPool.MAX_BUFFER_SIZE + 1), -1);
+    assertEquals(BufferPool.classSize(BufferPool.sizeClass(BufferPool.MAX_BUFFER_SIZE)),
+                 BufferPool.MAX_BUFFER_SIZE);
+
+    BufferPool pool = new BufferPool(0);
+    assertEquals(pool.acquire(1).length, BufferPool.MIN_BUFFER_SIZE);
+    assertEquals(pool.acquire(5000).length, 8192);
+    assertEquals(pool.acquire(8192).length, 8192);
+    assertEquals(pool.acquire(BufferPool.MAX_BUFFER_SIZE + 1).length,
+                 BufferPool.MAX_BUFFER_SIZE + 1);
+    assertEquals(pool.acquireDirect(5000).capacity(), 8192);
+  }
+
+  /**
+   * Released buffers should be handed out again, first from the thread's own cache and then
+   * from the shared queues up to the retention limit.
+   */
+  @Test
+  public void testReuse() {
+    BufferPool pool = new BufferPool(BufferPool.MAX_BUFFER_SIZE);
+
+    byte[] b1 = pool.acquire(100);
+    byte[] b2 = pool.acquire(100);
+    assertNotSame(b1, b2);
+
+    pool.release(b1);
+    pool.release(b2);
+    assertEquals(pool.getRetainedHeapBytes(), BufferPool.MIN_BUFFER_SIZE);
+    assertSame(pool.acquire(100), b1);
+    assertSame(pool.acquire(100), b2);
+    assertEquals(pool.getRetainedHeapBytes(), 0);
+
+    // large buffers are not cached per thread, and at most maxRetained bytes are kept
+    byte[] l1 = pool.acquire(BufferPool.MAX_BUFFER_SIZE);
+    byte[] l2 = pool.acquire(BufferPool.MAX_BUFFER_SIZE);
+    pool.release(l1);
+    pool.release(l2);
+    assertEquals(pool.getRetainedHeapBytes(), BufferPool.MAX_BUFFER_SIZE);
+    assertSame(pool.acquire(BufferPool.MAX_BUFFER_SIZE), l1);
+    assertNotSame(pool.acquire(BufferPool.MAX_BUFFER_SIZE), l2);
+
+    // foreign buffers are dropped
+    pool.release(new byte[1000]);
+    pool.release(new byte[BufferPool.MAX_BUFFER_SIZE * 2]);
+    assertEquals(pool.getRetainedHeapBytes(), 0);
+    pool.release((byte[]) null);
+
+    ByteBuffer d = pool.acquireDirect(100);
+    assertTrue(d.isDirect());
+    d.position(10);
+    pool.releaseDirect(d);
+    ByteBuffer d2 = pool.acquireDirect(100);
+    assertSame(d2, d);
+    assertEquals(d2.position(), 0);
+    assertEquals(d2.limit(), d2.capacity());
+  }
+
+  /**
+   * Buffers released by one thread should be usable by another.
+   */
+  @Test
+  public void testSharedAcrossThreads() throws Exception {
+    final BufferPool pool = new BufferPool(BufferPool.MAX_BUFFER_SIZE);
+    final byte[][]   bufs = new byte[2][];
+
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        bufs[0] = pool.acquire(100);
+        bufs[1] = pool.acquire(100);
+        pool.release(bufs[0]);
+        pool.release(bufs[1]);
+      }
+    };
+    t.start();
+    t.join();
+
+    assertSame(pool.acquire(100), bufs[1]);
+  }
+
+  /**
+   * Copying should transfer all the content.
+   */
+  @Test
+  public void testCopy() throws Exception {
+    byte[] data = new byte[3 * BufferPool.DEFAULT_BUFFER_SIZE + 17];
+    for (int idx = 0; idx < data.length; idx++)
+      data[idx] = (byte) idx;
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(BufferPool.getDefault().copy(new ByteArrayInputStream(data), out), data.length);
+    assertTrue(Arrays.equals(out.toByteArray(), data));
+  }
+}
@@ -23,16 +23,25 @@ package org.akubraproject.impl;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
 import java.util.Map;
 
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 import org.akubraproject.Blob;
 import org.akubraproject.BlobStoreConnection;
@@ -104,6 +113,144 @@ public class TestStreamManager {
     assertEquals(manager.getOpenOutputStreamCount(), 0);
   }
 
+  /**
+   * Managed channels should be tracked like output streams if writable and like input streams
+   * otherwise, and file channels should remain file channels.
+   */
+  @Test(dependsOnGroups = { "init" })
+  public void testManageChannel() throws Exception {
+    File file = File.createTempFile("akubra-test", ".tmp");
+    try {
+      SeekableByteChannel managed =
+          manager.manageChannel(null, new RandomAccessFile(file, "rw").getChannel(), true);
+      assertTrue(managed instanceof FileChannel);
+      assertEquals(manager.getOpenOutputStreamCount(), 1);
+      assertEquals(manager.getOpenInputStreamCount(), 0);
+      managed.close();
+      managed.close();
+      assertFalse(managed.isOpen());
+      assertEquals(manager.getOpenOutputStreamCount(), 0);
+
+      BlobStoreConnection con = new MockConnection(manager);
+      SeekableByteChannel inner =
+          new SeekableByteChannelWrapper(new RandomAccessFile(file, "r").getChannel());
+      managed = manager.manageChannel(con, inner, false);
+      assertFalse(managed instanceof FileChannel);
+      assertEquals(manager.getOpenInputStreamCount(), 1);
+      assertEquals(manager.getOpenOutputStreamCount(), 0);
+
+      con.close();
+      assertFalse(inner.isOpen());
+      assertEquals(manager.getOpenInputStreamCount(), 0);
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Managed asynchronous channels should be tracked like managed channels, and closed along
+   * with their connection.
+   */
+  @Test(dependsOnGroups = { "init" })
+  public void testManageAsyncChannel() throws Exception {
+    File file = File.createTempFile("akubra-test", ".tmp");
+    try {
+      AsynchronousFileChannel managed = manager.manageAsyncChannel(null,
+          AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.WRITE), true);
+      assertEquals(manager.getOpenOutputStreamCount(), 1);
+      assertEquals(manager.getOpenInputStreamCount(), 0);
+      assertEquals(managed.write(ByteBuffer.wrap(new byte[] { 42 }), 0).get().intValue(), 1);
+      managed.close();
+      managed.close();
+      assertFalse(managed.isOpen());
+      assertEquals(manager.getOpenOutputStreamCount(), 0);
+      assertEquals(file.length(), 1L);
+
+      BlobStoreConnection     con   = new MockConnection(manager);
+      AsynchronousFileChannel inner = AsynchronousFileChannel.open(file.toPath());
+      managed = manager.manageAsyncChannel(con, inner, false);
+      assertEquals(manager.getOpenInputStreamCount(), 1);
+      assertEquals(manager.getOpenOutputStreamCount(), 0);
+
+      con.close();
+      assertFalse(inner.isOpen());
+      assertFalse(managed.isOpen());
+      assertEquals(manager.getOpenInputStreamCount(), 0);
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Closing a stream more than once, or after its connection was closed, should only be counted
+   * once, and closing a connection without streams should be a no-op.
+   */
+  @Test(dependsOnGroups = { "init" })
+  public void testRepeatedClose() throws Exception {
+    StreamManager       mgr = new StreamManager();
+    BlobStoreConnection con = new MockConnection(mgr);
+
+    OutputStream out = mgr.manageOutputStream(con, new ByteArrayOutputStream());
+    InputStream  in  = mgr.manageInputStream(con, new ByteArrayInputStream(new byte[0]));
+    mgr.manageInputStream(new MockConnection(mgr), new ByteArrayInputStream(new byte[0]));
+
+    out.close();
+    out.close();
+    assertEquals(mgr.getOpenOutputStreamCount(), 0);
+    assertEquals(mgr.getOpenInputStreamCount(), 2);
+
+    con.close();
+    in.close();
+    assertEquals(mgr.getOpenInputStreamCount(), 1);
+
+    mgr.connectionClosed(con);
+    assertEquals(mgr.getOpenInputStreamCount(), 1);
+  }
+
+  /**
+   * awaitOutputStreamsClosed should block until the last output stream is closed, regardless
+   * of open input streams.
+   */
+  @Test(dependsOnGroups = { "init" })
+  public void testAwaitOutputStreamsClosed() throws Exception {
+    final StreamManager mgr = new StreamManager();
+    mgr.awaitOutputStreamsClosed();
+
+    BlobStoreConnection con1 = new MockConnection(mgr);
+    BlobStoreConnection con2 = new MockConnection(mgr);
+    OutputStream out1 = mgr.manageOutputStream(con1, new ByteArrayOutputStream());
+    mgr.manageOutputStream(con2, new ByteArrayOutputStream());
+    mgr.manageInputStream(con2, new ByteArrayInputStream(new byte[0]));
+
+    final boolean[] done = new boolean[1];
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          mgr.awaitOutputStreamsClosed();
+          synchronized (done) {
+            done[0] = true;
+          }
+        } catch (InterruptedException ie) {
+          throw new RuntimeException(ie);
+        }
+      }
+    };
+    t.start();
+
+    out1.close();
+    t.join(200);
+    assertTrue(t.isAlive());
+
+    con2.close();
+    t.join(5000);
+    assertFalse(t.isAlive());
+    synchronized (done) {
+      assertTrue(done[0]);
+    }
+    assertEquals(mgr.getOpenInputStreamCount(), 0);
+  }
+
   private static class MockConnection extends AbstractBlobStoreConnection {
     public MockConnection(StreamManager manager) {
       super(null, manager);
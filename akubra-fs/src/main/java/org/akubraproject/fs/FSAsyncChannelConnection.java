@@ -0,0 +1,58 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.IOException;
+
+import java.net.URI;
+
+import java.nio.channels.AsynchronousFileChannel;
+
+import java.util.concurrent.ExecutorService;
+
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.MissingBlobException;
+
+/**
+ * Implemented by the connections of an {@link FSBlobStore}, to open blobs as {@link
+ * AsynchronousFileChannel}s: reads and writes are issued without waiting for them and report
+ * their completion to a handler or future, so that serving many blobs at once does not take a
+ * waiting thread per open blob.
+ */
+public interface FSAsyncChannelConnection extends BlobStoreConnection {
+  /**
+   * Open an existing blob as an asynchronous channel. Like the blob's other streams and channels
+   * the channel is closed when the connection is closed, and operations still pending then fail.
+   *
+   * @param blobId   the id of the blob
+   * @param writable whether the channel is to be opened for writing too
+   * @param executor the executor to run the I/O and the completion handlers on; if null the
+   *                 platform's default thread pool is used
+   * @return the channel
+   * @throws MissingBlobException if the blob does not exist
+   * @throws UnsupportedOperationException if the channel is writable and the store is a
+   *                                       read-only snapshot
+   * @throws IOException if the channel could not be opened
+   */
+  AsynchronousFileChannel openAsyncChannel(URI blobId, boolean writable, ExecutorService executor)
+      throws MissingBlobException, UnsupportedOperationException, IOException;
+}
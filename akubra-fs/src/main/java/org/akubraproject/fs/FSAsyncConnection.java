@@ -0,0 +1,153 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.IOException;
+
+import java.net.URI;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.commons.io.IOUtils;
+
+import org.akubraproject.async.BlobFuture;
+import org.akubraproject.async.BlobFutureTask;
+import org.akubraproject.async.ExecutorAsyncConnection;
+
+/**
+ * The asynchronous view of an {@link FSBlobStoreConnection}. The operations are run on the
+ * executor like those of any connection, except for {@link #readAll}, which reads the blob
+ * through an {@link AsynchronousFileChannel}: the blob is opened by the calling thread, and each
+ * read is issued when the previous one completes, so no thread waits on the blob meanwhile.
+ */
+class FSAsyncConnection extends ExecutorAsyncConnection {
+  /** The largest blob that can be read into a byte array. */
+  static final long MAX_READ_ALL_SIZE = Integer.MAX_VALUE - 8;
+
+  private final FSBlobStoreConnection fsCon;
+  private final ExecutorService       executor;
+
+  /**
+   * Create a new asynchronous connection.
+   *
+   * @param con      the underlying connection
+   * @param executor the executor to run the operations and the channel I/O on
+   */
+  FSAsyncConnection(FSBlobStoreConnection con, ExecutorService executor) {
+    super(con, executor, true);
+    this.fsCon    = con;
+    this.executor = executor;
+  }
+
+  @Override
+  public BlobFuture<byte[]> readAll(URI blobId) {
+    BlobFutureTask<byte[]> future  = new BlobFutureTask<byte[]>();
+    AsynchronousFileChannel channel = null;
+    try {
+      channel = fsCon.openAsyncChannel(blobId, false, executor);
+      new Reader(channel, future).start();
+    } catch (Throwable t) {
+      IOUtils.closeQuietly(channel);
+      future.fail(t);
+    }
+
+    return future;
+  }
+
+  /**
+   * Reads a whole channel into a byte array, completing the future with it. The channel is
+   * closed before the future is completed.
+   */
+  private static class Reader implements CompletionHandler<Integer, Void> {
+    private final AsynchronousFileChannel channel;
+    private final BlobFutureTask<byte[]>  future;
+    private ByteBuffer                    buf;
+
+    Reader(AsynchronousFileChannel channel, BlobFutureTask<byte[]> future) {
+      this.channel = channel;
+      this.future  = future;
+    }
+
+    void start() throws IOException {
+      buf = ByteBuffer.allocate(checkSize(channel.size()));
+      next();
+    }
+
+    public void completed(Integer n, Void attachment) {
+      if (n < 0)
+        done();
+      else
+        next();
+    }
+
+    public void failed(Throwable t, Void attachment) {
+      IOUtils.closeQuietly(channel);
+      future.fail(t);
+    }
+
+    private void next() {
+      try {
+        if (!buf.hasRemaining()) {
+          // the file may have grown since it was opened
+          long size = channel.size();
+          if (size <= buf.position()) {
+            done();
+            return;
+          }
+
+          ByteBuffer nbuf = ByteBuffer.allocate(checkSize(size));
+          buf.flip();
+          nbuf.put(buf);
+          buf = nbuf;
+        }
+
+        channel.read(buf, buf.position(), null, this);
+      } catch (Throwable t) {
+        failed(t, null);
+      }
+    }
+
+    private void done() {
+      try {
+        channel.close();
+      } catch (IOException ioe) {
+        future.fail(ioe);
+        return;
+      }
+
+      byte[] content = buf.array();
+      future.complete((buf.position() == content.length) ? content :
+                      Arrays.copyOf(content, buf.position()));
+    }
+
+    private static int checkSize(long size) throws IOException {
+      if (size > MAX_READ_ALL_SIZE)
+        throw new IOException("Blob of " + size + " bytes is too large to be read into memory");
+      return (int) size;
+    }
+  }
+}
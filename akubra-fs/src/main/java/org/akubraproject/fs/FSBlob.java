@@ -26,29 +26,45 @@ import org.akubraproject.DuplicateBlobException;
 import org.akubraproject.MissingBlobException;
 import org.akubraproject.UnsupportedIdException;
 import org.akubraproject.impl.AbstractBlob;
+import org.akubraproject.impl.AsynchronousFileChannelWrapper;
+import org.akubraproject.impl.FileChannelWrapper;
 import org.akubraproject.impl.StreamManager;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ProxyOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Filesystem-backed Blob implementation.
  *
  * <p>A note on syncing: in order for a newly created, deleted, or moved file to be properly
- * sync'd the directory has to be fsync'd too; however, Java does not provide a way to do this.
- * Hence it is possible to loose a complete file despite having sync'd.
+ * sync'd the directory has to be fsync'd too. Hence the set of modified files also records
+ * removed files and created directories, so that the {@link FSSyncer} syncs their parent
+ * directories; on platforms that do not allow directories to be sync'd it is possible to loose
+ * a complete file despite having sync'd.
  *
  * @author Chris Wilper
  */
@@ -64,27 +80,65 @@ class FSBlob extends AbstractBlob {
 
   static final String scheme = "file";
   private final URI canonicalId;
+  private final FSLayout layout;
+  private final FSIndex index;
+  private final FSMappings mappings;
+  private final FSCopier copier;
+  private final FSMetadataCache metadata;
+  private final FSTrash trash;
+  private final FSUsageLedger usage;
+  private final long mapThreshold;
   private final File file;
   private final StreamManager manager;
   private final Set<File>     modified;
+  private final boolean       readOnly;
+  private final FSBlobStoreConnection connection;
 
   /**
    * Create a file based blob
    *
    * @param connection the blob store connection
-   * @param baseDir the baseDir of the store
+   * @param layout the layout of the store
    * @param blobId the identifier for the blob
    * @param manager the stream manager
-   * @param modified the set of modified files in the connection; may be null
+   * @param modified the set of files and directories in the connection that were modified,
+   *                 created or removed since the last sync; may be null
    * @throws UnsupportedIdException if the given id is not supported
    */
-  FSBlob(FSBlobStoreConnection connection, File baseDir, URI blobId, StreamManager manager,
+  FSBlob(FSBlobStoreConnection connection, FSLayout layout, URI blobId, StreamManager manager,
          Set<File> modified) throws UnsupportedIdException {
+    this(connection, layout, blobId, null, manager, modified);
+  }
+
+  /**
+   * Create a file based blob
+   *
+   * @param connection the blob store connection
+   * @param layout the layout of the store
+   * @param blobId the identifier for the blob
+   * @param hints the hints the blob was requested with; may be null
+   * @param manager the stream manager
+   * @param modified the set of files and directories in the connection that were modified,
+   *                 created or removed since the last sync; may be null
+   * @throws UnsupportedIdException if the given id is not supported
+   */
+  FSBlob(FSBlobStoreConnection connection, FSLayout layout, URI blobId, Map<String, String> hints,
+         StreamManager manager, Set<File> modified) throws UnsupportedIdException {
     super(connection, blobId);
     this.canonicalId = validateId(blobId);
-    this.file = new File(baseDir, canonicalId.getRawSchemeSpecificPart());
+    this.layout = layout;
+    this.index = connection.getIndex();
+    this.mappings = connection.getMappings();
+    this.copier = connection.getCopier();
+    this.metadata = connection.getMetadataCache();
+    this.trash = connection.getTrash();
+    this.usage = connection.getUsageLedger();
+    this.mapThreshold = getMapThreshold(hints, connection.getMapThreshold());
+    this.file = layout.getFile(canonicalId.getRawSchemeSpecificPart());
     this.manager = manager;
     this.modified = modified;
+    this.readOnly = connection.isReadOnly();
+    this.connection = connection;
   }
 
   @Override
@@ -92,35 +146,240 @@ class FSBlob extends AbstractBlob {
     return canonicalId;
   }
 
+  /**
+   * Reads the file through a memory mapping if it is at least as large as the {@link
+   * FSBlobStore#MAP_THRESHOLD map threshold}.
+   */
   @Override
   public InputStream openInputStream() throws IOException {
     ensureOpen();
 
-    if (!file.exists())
+    if (!fileExists())
       throw new MissingBlobException(getId());
 
-    return manager.manageInputStream(getConnection(), new FileInputStream(file));
+    InputStream in = openMapped(0, -1);
+    if (in == null)
+      in = openFile();
+
+    return manager.manageInputStream(getConnection(), in);
+  }
+
+  /**
+   * Opens a stream on a range of the file, positioning it via the file's channel rather than
+   * reading through the leading content, or reading it through a memory mapping if the file is
+   * at least as large as the {@link FSBlobStore#MAP_THRESHOLD map threshold}.
+   */
+  @Override
+  public InputStream openInputStream(long offset, long length) throws IOException {
+    checkRange(offset, length);
+    ensureOpen();
+
+    if (!fileExists())
+      throw new MissingBlobException(getId());
+
+    InputStream mapped = openMapped(offset, length);
+    if (mapped != null)
+      return manager.manageInputStream(getConnection(), mapped);
+
+    FileInputStream in = openFile();
+    try {
+      in.getChannel().position(offset);
+    } catch (IOException ioe) {
+      IOUtils.closeQuietly(in);
+      throw ioe;
+    }
+
+    return manager.manageInputStream(getConnection(), limitStream(in, length));
   }
 
+  /**
+   * Writes through a buffer sized from <var>estimatedSize</var>; see {@link FSOutputStream}. A
+   * file shared with a snapshot, or still being read through a memory mapping, is replaced
+   * rather than overwritten.
+   */
   @Override
   public OutputStream openOutputStream(long estimatedSize, boolean overwrite) throws IOException {
     ensureOpen();
+    ensureWritable();
 
-    if (!overwrite && file.exists())
+    if (!overwrite && fileExists())
       throw new DuplicateBlobException(getId());
 
     makeParentDirs(file);
+    invalidateMetadata(file);
+    final long oldSize = (usage != null) ? sizeOf(file) : -1;
 
-    if (modified != null)
-      modified.add(file);
+    boolean      mapped = mappings.beginWrite(file);
+    OutputStream out    = null;
+    try {
+      if (overwrite) {
+        if (mapped)
+          replace(false);
+        else
+          unshare(false);
+      }
+
+      if (modified != null)
+        modified.add(file);
+
+      FileOutputStream fos;
+      try {
+        fos = new FileOutputStream(file);
+      } catch (FileNotFoundException fnfe) {
+        if (!layout.recreateParentDirs(file))
+          throw fnfe;
+        fos = new FileOutputStream(file);
+      }
+
+      try {
+        out = new FSOutputStream(fos.getChannel(), estimatedSize);
+      } finally {
+        if (out == null) {
+          // don't leave an empty blob behind
+          IOUtils.closeQuietly(fos);
+          Files.deleteIfExists(file.toPath());
+        }
+      }
+    } finally {
+      if (out == null)
+        mappings.endWrite(file);
+    }
 
-    return manager.manageOutputStream(getConnection(), new FileOutputStream(file));
+    if (index != null)
+      index.put(canonicalId.toString(), 0, System.currentTimeMillis());
+
+    return manager.manageOutputStream(getConnection(), new ProxyOutputStream(out) {
+      private boolean closed = false;
+
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          if (!closed) {
+            closed = true;
+            written(oldSize);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Opens the file's own channel, so the returned channel is a <code>FileChannel</code>. A
+   * writable channel on a file shared with a snapshot, or still being read through a memory
+   * mapping, is opened on a copy of the file.
+   */
+  @Override
+  public SeekableByteChannel openChannel(boolean writable) throws IOException {
+    ensureOpen();
+    if (writable)
+      ensureWritable();
+
+    if (!fileExists())
+      throw new MissingBlobException(getId());
+
+    final long oldSize = (writable && usage != null) ? sizeOf(file) : -1;
+    if (writable)
+      beginWrite();
+
+    FileChannel channel;
+    try {
+      channel = new RandomAccessFile(file, writable ? "rw" : "r").getChannel();
+    } catch (IOException ioe) {
+      if (writable)
+        mappings.endWrite(file);
+      throw ioe;
+    }
+
+    if (writable) {
+      channel = new FileChannelWrapper(channel) {
+        @Override
+        protected void implCloseChannel() throws IOException {
+          try {
+            super.implCloseChannel();
+          } finally {
+            written(oldSize);
+          }
+        }
+      };
+    }
+
+    return manager.manageChannel(getConnection(), channel, writable);
+  }
+
+  /**
+   * Opens the file as an asynchronous channel, with the same checks and bookkeeping as {@link
+   * #openChannel}.
+   *
+   * @param writable whether the channel is to be opened for writing too
+   * @param executor the executor to run the I/O and the completion handlers on; if null the
+   *                 platform's default thread pool is used
+   * @return the channel
+   * @throws IOException if the channel could not be opened
+   */
+  AsynchronousFileChannel openAsyncChannel(boolean writable, ExecutorService executor)
+      throws IOException {
+    ensureOpen();
+    if (writable)
+      ensureWritable();
+
+    if (!fileExists())
+      throw new MissingBlobException(getId());
+
+    final long oldSize = (writable && usage != null) ? sizeOf(file) : -1;
+    if (writable)
+      beginWrite();
+
+    Set<StandardOpenOption> options = writable ?
+        EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE) :
+        EnumSet.of(StandardOpenOption.READ);
+
+    AsynchronousFileChannel channel = null;
+    try {
+      channel = AsynchronousFileChannel.open(file.toPath(), options, executor);
+    } catch (NoSuchFileException nsfe) {
+      invalidateMetadata(file);
+      throw new MissingBlobException(getId());
+    } finally {
+      if (channel == null && writable)
+        mappings.endWrite(file);
+    }
+
+    if (writable) {
+      channel = new AsynchronousFileChannelWrapper(channel) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            written(oldSize);
+          }
+        }
+      };
+    }
+
+    return manager.manageAsyncChannel(getConnection(), channel, writable);
   }
 
   @Override
   public long getSize() throws IOException {
     ensureOpen();
 
+    if (index != null) {
+      FSIndex.Entry entry = index.get(canonicalId.toString());
+      if (entry == null)
+        throw new MissingBlobException(getId());
+      return entry.size;
+    }
+
+    if (metadata != null) {
+      FSMetadataCache.Entry entry = metadata.stat(file);
+      if (!entry.exists)
+        throw new MissingBlobException(getId());
+      return entry.size;
+    }
+
     if (!file.exists())
       throw new MissingBlobException(getId());
 
@@ -131,23 +390,41 @@ class FSBlob extends AbstractBlob {
   public boolean exists() throws IOException {
     ensureOpen();
 
-    return file.exists();
+    return fileExists();
   }
 
   @Override
   public void delete() throws IOException {
     ensureOpen();
-
-    if (!file.delete() && file.exists())
+    ensureWritable();
+    mappings.invalidate(file);
+    invalidateMetadata(file);
+    long oldSize = (usage != null) ? sizeOf(file) : -1;
+
+    if (trash != null) {
+      File baseDir = layout.getBaseDir(getPath());
+      if (trash.delete(file, baseDir) && modified != null) {
+        modified.add(file);
+        modified.add(trash.getTrashDir(baseDir));
+      }
+    } else if (file.delete()) {
+      if (modified != null)
+        modified.add(file);
+    } else if (file.exists()) {
       throw new IOException("Failed to delete file: " + file);
+    }
 
-    if (modified != null)
-      modified.remove(file);
+    if (index != null)
+      index.remove(canonicalId.toString());
+    if (usage != null)
+      usage.changed(getPath(), oldSize, -1);
   }
 
 
   /**
-   * Move a file-based blob object from one location to another
+   * Move a file-based blob object from one location to another. The file is renamed, unless the
+   * destination is placed in a base directory on another disk, in which case it is copied like
+   * in {@link #copyTo}, and then deleted.
    *
    * @param blobId The ID of the new (destination) blob
    * @param hints A set of hints for moveTo and getBlob
@@ -162,11 +439,12 @@ class FSBlob extends AbstractBlob {
     boolean force_move = false;
 
     ensureOpen();
+    ensureWritable();
     FSBlob dest = (FSBlob) getConnection().getBlob(blobId, hints);
 
     File other = dest.file;
 
-    if (other.exists())
+    if (dest.fileExists())
       throw new DuplicateBlobException(blobId);
 
     makeParentDirs(other);
@@ -174,19 +452,21 @@ class FSBlob extends AbstractBlob {
     if (hints != null)
       force_move = Boolean.parseBoolean(hints.get(FORCE_MOVE_AS_COPY_AND_DELETE));
 
-    if (force_move || !file.renameTo(other)) {
+    mappings.invalidate(file);
+    invalidateMetadata(file);
+    invalidateMetadata(other);
+    long size = (usage != null) ? sizeOf(file) : -1;
+
+    if (force_move || !rename(file, other)) {
       if (!file.exists())
         throw new MissingBlobException(getId());
 
+      log.debug("Performing force copy-and-delete of source '" +  file + "' to '"
+                + other + "'");
+
       boolean success = false;
       try {
-        nioCopy(file, other);
-
-        if (file.length() != other.length()) {
-          throw new IOException("Source and destination file sizes do not match: source '" + file
-                                + "' is " + file.length()
-                                + " and destination '" + other + "' is " + other.length());
-        }
+        copier.copy(file, other);
 
         if (!file.delete() && file.exists())
           throw new IOException("Failed to delete file: " + file);
@@ -200,8 +480,69 @@ class FSBlob extends AbstractBlob {
       }
     }
 
-    if (modified != null && modified.remove(file))
+    if (modified != null) {
+      modified.add(file);
       modified.add(other);
+    }
+
+    if (index != null) {
+      index.remove(canonicalId.toString());
+      dest.updateIndex();
+    }
+
+    if (usage != null) {
+      usage.changed(getPath(), size, -1);
+      usage.changed(dest.getPath(), -1, size);
+    }
+
+    return dest;
+  }
+
+  /**
+   * Copy a file-based blob to another location. The content is copied between the files' channels,
+   * which lets the platform copy it in the kernel where it can, and large files are copied in
+   * parallel chunks; see {@link FSCopier}.
+   *
+   * @param blobId The ID of the new (destination) blob
+   * @param hints A set of hints for copyTo and getBlob
+   * @return The newly-created (destination) blob
+   * @throws DuplicateBlobException if destination file already exists
+   * @throws IOException on failure to copy the source blob to the destination blob
+   * @throws MissingBlobException if source file does not exist
+   */
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+    ensureOpen();
+    ensureWritable();
+    FSBlob dest = (FSBlob) getConnection().getBlob(blobId, hints);
+
+    File other = dest.file;
+
+    if (!fileExists())
+      throw new MissingBlobException(getId());
+
+    makeParentDirs(other);
+
+    invalidateMetadata(other);
+    if (!createNewFile(other))
+      throw new DuplicateBlobException(blobId);
+
+    boolean success = false;
+    try {
+      copier.copy(file, other);
+      success = true;
+    } finally {
+      if (!success && other.exists() && !other.delete())
+        log.error("Error deleting destination file '" +  other + "' after copy failure");
+    }
+
+    if (modified != null)
+      modified.add(other);
+
+    if (index != null)
+      dest.updateIndex();
+    if (usage != null)
+      usage.changed(dest.getPath(), -1, sizeOf(other));
 
     return dest;
   }
@@ -228,38 +569,198 @@ class FSBlob extends AbstractBlob {
     }
   }
 
-  private void makeParentDirs(File file) throws IOException {
-    File parent = file.getParentFile();
+  /**
+   * Open a stream through a memory mapping, if the file is large enough.
+   *
+   * @return the stream, or null if the file is not to be mapped
+   */
+  private InputStream openMapped(long offset, long length) throws IOException {
+    if (mapThreshold < 0)
+      return null;
 
-    if (parent != null && !parent.exists()) {
-      parent.mkdirs(); // See https://jira.duraspace.org/browse/AKUBRA-3
-      if (!parent.exists())
-        throw new IOException("Unable to create parent directory: " + parent.getPath());
+    FSMappings.Mapping m;
+    try {
+      m = mappings.acquire(file, mapThreshold);
+    } catch (NoSuchFileException nsfe) {
+      throw new MissingBlobException(getId());
     }
+
+    return (m != null) ? new MappedInputStream(mappings, m, offset, length) : null;
   }
 
-  private static void nioCopy(File source, File dest) throws IOException {
-    FileInputStream f_in = null;
-    FileOutputStream f_out = null;
+  static long getMapThreshold(Map<String, String> hints, long dflt) {
+    String val = (hints != null) ? hints.get(FSBlobStore.MAP_THRESHOLD) : null;
+    if (val == null)
+      return dflt;
 
-    log.debug("Performing force copy-and-delete of source '" +  source + "' to '"
-              + dest + "'");
     try {
-      f_in = new FileInputStream(source);
+      return Long.parseLong(val.trim());
+    } catch (NumberFormatException nfe) {
+      log.warn("Ignoring invalid " + FSBlobStore.MAP_THRESHOLD + " hint '" + val + "'");
+      return dflt;
+    }
+  }
 
-      try {
-        f_out = new FileOutputStream(dest);
+  private boolean fileExists() throws IOException {
+    if (index != null)
+      return index.get(canonicalId.toString()) != null;
 
-        FileChannel in = f_in.getChannel();
-        FileChannel out = f_out.getChannel();
-        in.transferTo(0, source.length(), out);
-      } finally {
-        IOUtils.closeQuietly(f_out);
-      }
+    return (metadata != null) ? metadata.stat(file).exists : file.exists();
+  }
+
+  /**
+   * Open the file for reading. A cached entry may claim the file exists when another process
+   * has just removed it, so a missing file is reported as missing blob here too.
+   */
+  private FileInputStream openFile() throws IOException {
+    try {
+      return new FileInputStream(file);
+    } catch (FileNotFoundException fnfe) {
+      if (file.exists())
+        throw fnfe;
+
+      invalidateMetadata(file);
+      throw new MissingBlobException(getId());
+    }
+  }
+
+  private void updateIndex() throws IOException {
+    index.update(canonicalId.toString(), file);
+  }
+
+  /**
+   * Prepare the file for being modified in place through a channel, see {@link
+   * FSMappings#beginWrite}; {@link #written} must be invoked when done.
+   */
+  private void beginWrite() throws IOException {
+    invalidateMetadata(file);
+    boolean mapped = mappings.beginWrite(file);
+
+    boolean success = false;
+    try {
+      if (mapped)
+        replace(true);
+      else
+        unshare(true);
+      if (modified != null)
+        modified.add(file);
+      success = true;
     } finally {
-      IOUtils.closeQuietly(f_in);
+      if (!success)
+        mappings.endWrite(file);
+    }
+  }
+
+  /**
+   * Called when writing to the file is done.
+   *
+   * @param oldSize the size of the file before it was opened for writing; -1 if it did not
+   *                exist, or if there is no usage ledger
+   */
+  private void written(long oldSize) throws IOException {
+    mappings.endWrite(file);
+    invalidateMetadata(file);
+    if (index != null)
+      updateIndex();
+    if (usage != null)
+      usage.changed(getPath(), oldSize, sizeOf(file));
+  }
+
+  private String getPath() {
+    return canonicalId.getRawSchemeSpecificPart();
+  }
+
+  /**
+   * @return the size of the file, or -1 if it does not exist
+   */
+  private static long sizeOf(File file) throws IOException {
+    try {
+      return Files.size(file.toPath());
+    } catch (NoSuchFileException nsfe) {
+      return -1;
     }
+  }
 
-    if (!dest.exists()) throw new IOException("Failed to copy file to new location: " + dest);
+  private void ensureWritable() {
+    if (readOnly)
+      throw new UnsupportedOperationException("Blob '" + getId() + "' is in a read-only snapshot");
+  }
+
+  /**
+   * Make sure that modifying the file in place does not modify a snapshot sharing it: if the
+   * file has other (hard) links, it is replaced by a copy of its own, or just removed if its
+   * content is about to be replaced anyway. The link count is only checked once the store may
+   * have snapshots, see {@link FSBlobStore#setHasSnapshots}; where the filesystem does not
+   * report link counts no snapshots can be taken, see {@link FSBlobStore#snapshot}.
+   *
+   * @param keepContent whether the content needs to be kept
+   */
+  private void unshare(boolean keepContent) throws IOException {
+    if (!connection.hasSnapshots())
+      return;
+
+    int links;
+    try {
+      links = (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+    } catch (NoSuchFileException nsfe) {
+      return;
+    } catch (UnsupportedOperationException uoe) {
+      return;
+    }
+
+    if (links <= 1)
+      return;
+
+    replace(keepContent);
+  }
+
+  /**
+   * Replace the file by a copy of its own, or just remove it if its content is about to be
+   * replaced anyway, so that whoever still has the old file open or mapped keeps its content.
+   *
+   * @param keepContent whether the content needs to be kept
+   */
+  private void replace(boolean keepContent) throws IOException {
+    if (!keepContent) {
+      Files.deleteIfExists(file.toPath());
+      return;
+    }
+
+    File tmp = File.createTempFile(".~" + file.getName(), ".tmp", file.getParentFile());
+    boolean success = false;
+    try {
+      copier.copy(file, tmp);
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      success = true;
+    } finally {
+      if (!success && !tmp.delete())
+        log.error("Error deleting temporary copy '" + tmp + "' of '" + file + "'");
+    }
+  }
+
+  private void invalidateMetadata(File file) {
+    if (metadata != null)
+      metadata.invalidate(file);
+  }
+
+  private void makeParentDirs(File file) throws IOException {
+    List<File> created = layout.makeParentDirs(file);
+    if (modified != null)
+      modified.addAll(created);
+  }
+
+  private boolean rename(File source, File dest) throws IOException {
+    return source.renameTo(dest) || (layout.recreateParentDirs(dest) && source.renameTo(dest));
+  }
+
+  private boolean createNewFile(File file) throws IOException {
+    try {
+      return file.createNewFile();
+    } catch (IOException ioe) {
+      if (!layout.recreateParentDirs(file))
+        throw ioe;
+      return file.createNewFile();
+    }
   }
 }
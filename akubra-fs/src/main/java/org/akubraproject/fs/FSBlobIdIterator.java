@@ -22,49 +22,104 @@
 package org.akubraproject.fs;
 
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 /**
- * Iterates over all files in baseDir (respecting filterPrefix if provided).
+ * Iterates over all files in baseDir (respecting filterPrefix if provided). The entries of each
+ * directory are visited in sorted order, which makes the ids come out in {@link
+ * org.akubraproject.BlobIdPage#ID_ORDER id order}; if startAfter is provided, directories holding
+ * only ids up to it are skipped without being listed.
+ *
+ * <p>Directories are listed one at a time as the walk reaches them, and entries which cannot
+ * match the filterPrefix or come after startAfter are dropped by their names alone, so that only
+ * the subtrees which may hold matching ids are listed, and only their entries are stat'ed to
+ * tell files from directories. A prefix listing thus takes time proportional to the matching
+ * subtree (plus the size of the directories leading to it).
+ *
+ * <p>If the files are spread over hash directories (see {@link FSLayout}), the hash directories
+ * are not part of the ids, and the ids do not come out in order; startAfter then only filters
+ * the ids, and the prefix can only prune below the hash directories.
+ *
+ * <p>An iterator walks a single base directory; {@link #listAll} covers all base directories of
+ * a striped store.
  *
  * @author Chris Wilper
  */
 class FSBlobIdIterator extends AbstractIterator<URI> {
   private final Logger log = LoggerFactory.getLogger(FSBlobIdIterator.class);
-  private final File baseDir;
+  private final Path baseDir;
+  private final int hashLevels;
   private final String filterPrefix;
+  private final String startAfter;
   private DirectoryNode currentDir;
 
   FSBlobIdIterator(File baseDir, String filterPrefix) {
-    this.baseDir = baseDir;
+    this(baseDir, filterPrefix, null);
+  }
+
+  FSBlobIdIterator(File baseDir, String filterPrefix, URI startAfter) {
+    this(baseDir, 0, filterPrefix, startAfter);
+  }
+
+  FSBlobIdIterator(File baseDir, int hashLevels, String filterPrefix, URI startAfter) {
+    this.baseDir = baseDir.toPath();
+    this.hashLevels = hashLevels;
     this.filterPrefix = filterPrefix;
+    this.startAfter = (startAfter != null) ? startAfter.toString() : null;
     currentDir = new DirectoryNode(null, "");
   }
 
+  /**
+   * Iterate over the files in all base directories of a layout, one base directory after the
+   * other; the ids thus do not come out in order if there are several.
+   *
+   * @param layout       the layout of the store
+   * @param filterPrefix the prefix of the ids to list; may be null
+   * @return the ids
+   */
+  static Iterator<URI> listAll(FSLayout layout, String filterPrefix) {
+    List<Iterator<URI>> iterators = new ArrayList<Iterator<URI>>();
+    for (File baseDir : layout.getBaseDirs())
+      iterators.add(new FSBlobIdIterator(baseDir, layout.getHashLevels(), filterPrefix, null));
+
+    return Iterators.concat(iterators.iterator());
+  }
+
   @Override
   protected URI computeNext() {
     while (currentDir != null) {
-      DirectoryNode child = currentDir.nextChild();
+      String child = currentDir.nextChild();
       if (child == null) {
         // no more children; move up
         currentDir = currentDir.parent;
-      } else if (child.isDirectory()) {
+      } else if (child.endsWith("/")) {
         // child is dir; move down
-        currentDir = child;
+        currentDir = new DirectoryNode(currentDir, child);
       } else {
-        // child is file
+        // child is file, and has passed the filters already
         try {
-          URI uri = new URI(FSBlob.scheme + ":" + child.path);
-          if (filterPrefix == null || uri.toString().startsWith(filterPrefix)) {
-            return uri;
-          }
+          return new URI(FSBlob.scheme + ":" + child.substring(currentDir.idStart));
         } catch (URISyntaxException e) {
-          log.warn("Skipping non-URI-safe file: {}", child.path);
+          log.warn("Skipping non-URI-safe file: {}", child);
         }
       }
     }
@@ -76,54 +131,113 @@ class FSBlobIdIterator extends AbstractIterator<URI> {
 
     final DirectoryNode parent;
 
+    /** "" if root, "name/" if subdir */
     final String path;
 
-    private String[] childPaths;
+    /** the number of directories between the root and this node; 0 for the root */
+    final int depth;
+
+    /** the start of the part of the path that makes up the id, after the hash directories */
+    final int idStart;
+
+    /** the sorted paths of the children which may hold matching ids; dirs end in '/' */
+    private final List<String> childPaths = new ArrayList<String>();
 
     private int childNum;
 
-    DirectoryNode(DirectoryNode parent,  // null if root
-                  String path) {         // "" if root, "name/" if subdir, "name" if file
+    DirectoryNode(DirectoryNode parent, String path) {
       this.parent = parent;
       this.path = path;
-      if (isDirectory()) {
-        setChildPaths();
-      }
+      this.depth = (parent == null) ? 0 : parent.depth + 1;
+      this.idStart = (depth <= hashLevels) ? path.length() : parent.idStart;
+
+      listChildren();
+
+      /* Sorting the paths with the trailing '/' of directories sorts the ids in the whole
+       * subtree of a directory correctly relative to its siblings.
+       */
+      Collections.sort(childPaths);
     }
 
-    private void setChildPaths() {
-      File dir;
-      if (path.length() == 0) {
-        dir = baseDir;
-      } else {
-        dir = new File(baseDir, path);
+    String nextChild() {
+      return (childNum < childPaths.size()) ? childPaths.get(childNum++) : null;
+    }
+
+    private void listChildren() {
+      Path dir = baseDir.resolve(path);
+
+      DirectoryStream<Path> entries;
+      try {
+        entries = Files.newDirectoryStream(dir);
+      } catch (NotDirectoryException nde) {
+        log.warn("Skipping file outside the hash directories: {}", dir);
+        return;
+      } catch (NoSuchFileException nsfe) {
+        log.debug("Skipping removed directory: {}", dir);
+        return;
+      } catch (IOException ioe) {
+        throw new RuntimeException("Error listing directory '" + dir + "'", ioe);
       }
-      File[] childFiles = dir.listFiles();
-      childPaths = new String[childFiles.length];
-      for (int i = 0; i < childFiles.length; i++) {
-        StringBuilder childPath = new StringBuilder(path);
-        childPath.append(childFiles[i].getName());
-        if (childFiles[i].isDirectory()) {
-          childPath.append("/");
+
+      try {
+        for (Path entry : entries) {
+          String name = entry.getFileName().toString();
+          if (depth < hashLevels) {
+            // hash directories are all alike, so there is nothing to filter or stat
+            childPaths.add(path + name + "/");
+          } else {
+            String childPath = getChildPath(entry, name);
+            if (childPath != null)
+              childPaths.add(childPath);
+          }
         }
-        childPaths[i] = childPath.toString();
+      } catch (DirectoryIteratorException die) {
+        throw new RuntimeException("Error listing directory '" + dir + "'", die.getCause());
+      } finally {
+        IOUtils.closeQuietly(entries);
       }
     }
 
-    boolean isDirectory() {
-      return path.length() == 0 || path.endsWith("/");
+    /**
+     * Filter a child, looking at its file type only if its name does not decide it.
+     *
+     * @return the path of the child, or null if neither it nor anything under it may be listed
+     */
+    private String getChildPath(Path entry, String name) {
+      String  id         = FSBlob.scheme + ":" + path.substring(idStart) + name;
+      boolean isMatch    = filterPrefix == null || id.startsWith(filterPrefix);
+      boolean holdsMatch = isMatch || filterPrefix.startsWith(id + "/");
+      if (!holdsMatch || isDirBeforeStart(id + "/")) {
+        return null;  // neither as file nor as directory
+      }
+
+      boolean isDir;
+      try {
+        isDir = Files.readAttributes(entry, BasicFileAttributes.class).isDirectory();
+      } catch (NoSuchFileException nsfe) {
+        return null;  // removed
+      } catch (IOException ioe) {
+        log.warn("Skipping unreadable file: " + entry, ioe);
+        return null;
+      }
+
+      if (isDir) {
+        return path + name + "/";
+      }
+      if (!isMatch || (startAfter != null && id.compareTo(startAfter) <= 0)) {
+        return null;
+      }
+      return path + name;
     }
 
-    DirectoryNode nextChild() {
-      if (isDirectory()) {
-        if (childNum == childPaths.length) {
-          return null;  // no more children
-        } else {
-          return new DirectoryNode(this, childPaths[childNum++]);
-        }
-      } else {
-        return null;   // not a directory
+    /**
+     * @return true if all files under the directory are known not to be after startAfter
+     */
+    private boolean isDirBeforeStart(String dirId) {
+      if (startAfter == null || hashLevels > 0) {
+        return false;
       }
+      return dirId.compareTo(startAfter) < 0 && !startAfter.startsWith(dirId);
     }
   }
 }
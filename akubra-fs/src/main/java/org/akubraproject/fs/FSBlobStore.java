@@ -22,13 +22,23 @@
 package org.akubraproject.fs;
 
 import java.io.File;
+import java.io.IOException;
 
 import java.net.URI;
 
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
 import java.util.Map;
 
 import javax.transaction.Transaction;
 
+import org.apache.commons.io.FileUtils;
+
 import org.akubraproject.Blob;
 import org.akubraproject.BlobStoreConnection;
 import org.akubraproject.impl.AbstractBlobStore;
@@ -65,6 +75,75 @@ import org.akubraproject.impl.StreamManager;
  *   <li> adjacent "/" characters replaced with a single "/".</li>
  *   <li> scheme normalized to lowercase</li>
  * </ul>
+ * <p>
+ * <h2>Directory Layout</h2>
+ * By default each blob is stored in the file named by its id, relative to the base directory.
+ * As this puts all blobs with flat ids like <code>file:obj123456</code> into a single
+ * directory, the store can instead be created with a number of levels of hash directories:
+ * the file named by the id is then placed below directories derived from a hash of the id,
+ * each level fanning out into at most 256 directories, while the ids themselves are unchanged.
+ * With hash directories {@link BlobStoreConnection#listBlobIds(String, URI, int) paged
+ * listings} must scan all ids. The layout of an existing base directory must not be changed.
+ * <p>
+ * <h2>Striping</h2>
+ * The store may be spread over several base directories, typically one per disk. Each blob is
+ * placed in one of them by a hash of its id, optionally weighted, e.g. by the {@link
+ * #getFreeSpaceWeights free space} of the disks; below each base directory the files are laid
+ * out as with a single one, and ids are relative to whichever base directory holds the blob.
+ * Listings merge the ids from all base directories. Moving a blob renames its file if the new
+ * id is placed on the same disk, and copies it otherwise. The placement depends on the list of
+ * base directories and on the weights, so neither must be changed for an existing store.
+ * <p>
+ * <h2>Index</h2>
+ * Optionally the store keeps an index of the ids, sizes and modification times of its blobs in
+ * a file outside the base directory, which it then uses to answer {@link Blob#exists}, {@link
+ * Blob#getSize} and the listings without touching the filesystem; this helps where stat'ing
+ * files is slow, e.g. on network filesystems. The listings then come out in id order also with
+ * hash directories. The index is built from the files when the store is first used with it.
+ * It relies on this store being the only one to modify the files; if they are modified by
+ * other means, {@link #reconcileIndex} must be run to bring the index up to date.
+ * <p>
+ * <h2>Metadata Cache</h2>
+ * Without an index, {@link Blob#exists} and {@link Blob#getSize} stat the blob's file. With
+ * {@link #setMetadataCacheTTL} the store instead caches the existence, size and modification
+ * time of the files it has stat'ed. It drops the entries of the files it modifies itself, and
+ * those of files modified by other processes as far as the filesystem reports the changes;
+ * in any case the entries expire after the given time, which so bounds how long changes made
+ * by other processes may go unnoticed.
+ * <p>
+ * <h2>Deferred Deletes</h2>
+ * Removing a large file can take long on some filesystems. With {@link #setDeferredDeletes}
+ * the store instead moves deleted files into trash directories, from where background threads
+ * remove them; a blob is gone as soon as its file has been moved. When more files are waiting
+ * than allowed, the deleting threads remove them themselves, so the trash cannot grow without
+ * bounds.
+ * <p>
+ * <h2>Usage Ledger</h2>
+ * With {@link #setUsageLedger} the store keeps count of its blobs and their total size, overall
+ * and per top-level prefix, updating the counts as it modifies the blobs and writing them to a
+ * ledger file periodically. Its connections, which are {@link FSUsageConnection}s, report the
+ * counts without listing the blobs. The counts only cover changes made through this store, and
+ * after a crash they miss the changes since the ledger was last written; {@link #rescanUsage}
+ * rebuilds them from the files.
+ * <p>
+ * <h2>Asynchronous Channels</h2>
+ * The store's connections are also {@link FSAsyncChannelConnection}s, which open blobs as {@link
+ * java.nio.channels.AsynchronousFileChannel}s: reads and writes complete to a handler or future,
+ * so that serving many large blobs at once does not park a thread per open blob. The channels
+ * are closed with their connection like the blobs' streams. The {@link
+ * org.akubraproject.async.AsyncCapableConnection#getAsyncConnection asynchronous view} of the
+ * connections reads whole blobs that way. Where the platform has no asynchronous file I/O, as
+ * on Linux, the I/O itself is run on a thread pool, whose threads are then only taken while an
+ * operation is running.
+ * <p>
+ * <h2>Snapshots</h2>
+ * {@link #snapshot} takes a point-in-time snapshot of the store by hard-linking all its files
+ * into snapshot directories, which takes a small fraction of the time of copying them; {@link
+ * #openSnapshot} opens a snapshot as a read-only store. Afterwards the store replaces a file
+ * shared with a snapshot instead of modifying it in place, so the snapshot keeps the content
+ * it was taken with. Only then does the store check the link count of each file it modifies;
+ * a store reopened over files of which snapshots were taken earlier must be told with {@link
+ * #setHasSnapshots}.
  *
  * @author Chris Wilper
  */
@@ -75,27 +154,424 @@ public class FSBlobStore extends AbstractBlobStore {
    */
   public static final String WILL_NOT_SYNC = "org.akubraproject.will_not_sync";
 
-  private final File baseDir;
+  /**
+   * Connection and blob hint giving the size in bytes from which blobs are read through memory
+   * mappings rather than file streams; 0 to map all blobs, a negative value to map none. A
+   * value given when getting a blob overrides the connection's, which defaults to -1. Recently
+   * used mappings are pooled, so repeated reads of large, rarely modified blobs avoid the
+   * system calls and copying of stream reads; blobs larger than 2 GiB are never mapped.
+   */
+  public static final String MAP_THRESHOLD = "org.akubraproject.map_threshold";
+
+  private final FSLayout layout;
+  private final File indexFile;
+  private final boolean readOnly;
+  private volatile boolean hasSnapshots;
+  private FSIndex index;
   private final StreamManager manager = new StreamManager();
+  private final FSSyncer syncer = new FSSyncer(FSSyncer.DEFAULT_THREADS);
+  private final FSMappings mappings = new FSMappings(FSMappings.DEFAULT_MAX_POOLED);
+  private final FSCopier copier =
+      new FSCopier(FSCopier.DEFAULT_THREADS, FSCopier.DEFAULT_CHUNK_SIZE);
+  private FSMetadataCache metadata;
+  private FSTrash trash;
+  private FSUsageLedger usage;
 
   /**
-   * Creates an instance with the given id and base storage directory.
+   * Creates an instance with the given id and base storage directory, and without hash
+   * directories.
    *
    * @param id the unique identifier of this blobstore.
    * @param baseDir the base storage directory.
    */
   public FSBlobStore(URI id, File baseDir) {
+    this(id, baseDir, 0);
+  }
+
+  /**
+   * Creates an instance with the given id, base storage directory, and number of levels of
+   * hash directories.
+   *
+   * @param id the unique identifier of this blobstore.
+   * @param baseDir the base storage directory.
+   * @param hashLevels the number of levels of hash directories, from 0 (none) to 16.
+   * @throws IllegalArgumentException if <var>hashLevels</var> is out of range.
+   */
+  public FSBlobStore(URI id, File baseDir, int hashLevels) throws IllegalArgumentException {
+    this(id, baseDir, hashLevels, null);
+  }
+
+  /**
+   * Creates an instance with the given id, base storage directory, number of levels of hash
+   * directories, and index file.
+   *
+   * @param id the unique identifier of this blobstore.
+   * @param baseDir the base storage directory.
+   * @param hashLevels the number of levels of hash directories, from 0 (none) to 16.
+   * @param indexFile the file to keep the index in, outside the base directory; null for no
+   *                  index.
+   * @throws IllegalArgumentException if <var>hashLevels</var> is out of range.
+   */
+  public FSBlobStore(URI id, File baseDir, int hashLevels, File indexFile)
+      throws IllegalArgumentException {
+    this(id, new File[] { baseDir }, null, hashLevels, indexFile);
+  }
+
+  /**
+   * Creates an instance striped over several base storage directories, with the given id,
+   * number of levels of hash directories, and index file.
+   *
+   * @param id the unique identifier of this blobstore.
+   * @param baseDirs the base storage directories, typically one per disk; the order matters.
+   * @param weights the relative share of the blobs to place in each base directory, such as
+   *                from {@link #getFreeSpaceWeights}; null to spread them evenly.
+   * @param hashLevels the number of levels of hash directories, from 0 (none) to 16.
+   * @param indexFile the file to keep the index in, outside the base directories; null for no
+   *                  index.
+   * @throws IllegalArgumentException if there are no base directories, if the weights do not
+   *                                  match them or are not positive, or if
+   *                                  <var>hashLevels</var> is out of range.
+   */
+  public FSBlobStore(URI id, File[] baseDirs, long[] weights, int hashLevels, File indexFile)
+      throws IllegalArgumentException {
+    this(id, new FSLayout(baseDirs, weights, hashLevels), indexFile, false);
+  }
+
+  private FSBlobStore(URI id, FSLayout layout, File indexFile, boolean readOnly) {
     super(id);
-    this.baseDir = baseDir;
+    this.layout = layout;
+    this.indexFile = indexFile;
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * Computes weights for striping a new store by the space currently free on the disks of the
+   * base directories. The weights must be recorded with the store's configuration and passed
+   * again whenever the store is opened, as blobs would otherwise be looked up in the wrong
+   * base directory once the free space changes.
+   *
+   * @param baseDirs the base storage directories, which must exist.
+   * @return the weights, the usable space of each directory in MiB (at least 1).
+   * @throws IllegalArgumentException if one of the directories does not exist.
+   */
+  public static long[] getFreeSpaceWeights(File... baseDirs) throws IllegalArgumentException {
+    long[] weights = new long[baseDirs.length];
+    for (int idx = 0; idx < baseDirs.length; idx++) {
+      if (!baseDirs[idx].isDirectory())
+        throw new IllegalArgumentException("Not a directory: " + baseDirs[idx]);
+      weights[idx] = Math.max(1, baseDirs[idx].getUsableSpace() >> 20);
+    }
+
+    return weights;
   }
 
   @Override
-  public BlobStoreConnection openConnection(Transaction tx, Map<String, String> hints) {
+  public BlobStoreConnection openConnection(Transaction tx, Map<String, String> hints)
+      throws IOException {
     if (tx != null) {
       throw new UnsupportedOperationException();
     }
 
     boolean no_sync = (hints != null) && Boolean.parseBoolean(hints.get(WILL_NOT_SYNC));
-    return new FSBlobStoreConnection(this, baseDir, manager, no_sync);
+    long mapThreshold = FSBlob.getMapThreshold(hints, -1);
+    return new FSBlobStoreConnection(this, getIndex(), manager, no_sync, mapThreshold);
+  }
+
+  /**
+   * Brings the index up to date with the files in the base directories, for when they have been
+   * modified other than through this store. This walks all the files, so it is slow on large
+   * stores, and it should be run while the store is not otherwise in use.
+   *
+   * @return the number of blobs whose entries in the index had to be changed.
+   * @throws IllegalStateException if the store does not keep an index.
+   * @throws IOException if the files could not be read or the index could not be written.
+   */
+  public long reconcileIndex() throws IllegalStateException, IOException {
+    FSIndex idx = getIndex();
+    if (idx == null)
+      throw new IllegalStateException("This store does not keep an index");
+
+    return idx.reconcile();
+  }
+
+  /**
+   * Takes a snapshot of the blobs, by recreating the directories of the store under the given
+   * snapshot directories and hard-linking all files into them.
+   * <p>
+   * The blobs must not be modified while the snapshot is taken, or the snapshot may be
+   * inconsistent, or even be modified along with the store by writes in progress. Writes can be
+   * held off for the duration of this call, which only takes as long as creating the links, by
+   * wrapping the store in a <code>QuiescingBlobStore</code> and making that quiescent.
+   *
+   * @param snapshotDirs the directories to create the snapshot in, one per base directory and
+   *                     on the same filesystem as it; they must not exist yet.
+   * @throws IllegalArgumentException if the number of directories does not match the number
+   *                                  of base directories.
+   * @throws UnsupportedOperationException if the filesystem does not report the link counts
+   *                                       of files, so the store could not tell which files
+   *                                       it must not modify in place.
+   * @throws IOException if a snapshot directory exists or the links could not be created; no
+   *                     snapshot directories are left behind then.
+   */
+  public void snapshot(File... snapshotDirs)
+      throws IllegalArgumentException, UnsupportedOperationException, IOException {
+    File[] baseDirs = layout.getBaseDirs();
+    if (snapshotDirs.length != baseDirs.length)
+      throw new IllegalArgumentException("Expected " + baseDirs.length +
+                                         " snapshot directories, got " + snapshotDirs.length);
+
+    for (int idx = 0; idx < baseDirs.length; idx++) {
+      if (snapshotDirs[idx].exists())
+        throw new IOException("Snapshot directory '" + snapshotDirs[idx] + "' already exists");
+      if (baseDirs[idx].exists() &&
+          !Files.getFileStore(baseDirs[idx].toPath()).supportsFileAttributeView("unix"))
+        throw new UnsupportedOperationException("Filesystem of '" + baseDirs[idx] +
+                                                "' does not support snapshots");
+    }
+
+    hasSnapshots = true;
+
+    boolean success = false;
+    try {
+      for (int idx = 0; idx < baseDirs.length; idx++)
+        link(baseDirs[idx].toPath(), snapshotDirs[idx].toPath());
+      success = true;
+    } finally {
+      if (!success) {
+        for (File dir : snapshotDirs)
+          FileUtils.deleteQuietly(dir);
+      }
+    }
+  }
+
+  /**
+   * Opens a snapshot taken with {@link #snapshot} as a read-only store: its blobs can be read
+   * and listed, while operations modifying them throw an UnsupportedOperationException. The
+   * snapshot does not share the index or metadata cache of this store. As the snapshot may
+   * have been taken before this store was opened, this store keeps it intact from now on as
+   * with {@link #setHasSnapshots}.
+   *
+   * @param id the unique identifier of the snapshot store.
+   * @param snapshotDirs the directories the snapshot was taken in.
+   * @return the snapshot store.
+   * @throws IllegalArgumentException if the number of directories does not match the number
+   *                                  of base directories.
+   */
+  public FSBlobStore openSnapshot(URI id, File... snapshotDirs) throws IllegalArgumentException {
+    FSBlobStore snap = new FSBlobStore(id, layout.withBaseDirs(snapshotDirs), null, true);
+    hasSnapshots = true;
+    return snap;
+  }
+
+  /**
+   * Tells the store whether snapshots of it may exist. Only if so does it check the link count
+   * of every file it is about to modify in place, and replace files shared with a snapshot; this
+   * costs a stat per overwrite or writable channel. It is turned on by {@link #snapshot} and
+   * {@link #openSnapshot}, but must be turned on explicitly for a store reopened over files of
+   * which snapshots were taken earlier, as those would otherwise be modified along with it.
+   * Unlike other settings this applies to connections opened before as well.
+   *
+   * @param hasSnapshots whether snapshots of the store may exist.
+   */
+  public void setHasSnapshots(boolean hasSnapshots) {
+    this.hasSnapshots = hasSnapshots;
+  }
+
+  /**
+   * Recreate a directory tree with hard links to all its files.
+   */
+  private static void link(final Path src, final Path dst) throws IOException {
+    Files.createDirectories(dst);
+    if (!Files.exists(src))
+      return;
+
+    Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+          throws IOException {
+        Files.createDirectories(dst.resolve(src.relativize(dir)));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.createLink(dst.resolve(src.relativize(file)), file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException ioe) throws IOException {
+        if (ioe instanceof NoSuchFileException)
+          return FileVisitResult.CONTINUE;     // removed meanwhile
+        throw ioe;
+      }
+    });
+  }
+
+  /**
+   * Turns the metadata cache on or off. Connections opened before keep using the previous
+   * setting.
+   *
+   * @param ttl the time in milliseconds after which cached entries expire; 0 or less to turn
+   *            the cache off, which also stops the thread watching for changes.
+   */
+  public synchronized void setMetadataCacheTTL(long ttl) {
+    if (metadata != null)
+      metadata.close();
+
+    metadata = (ttl > 0) ? new FSMetadataCache(ttl, layout.getBaseDir()) : null;
+  }
+
+  /**
+   * Turns deferred deletes on or off. Connections opened before keep using the previous
+   * setting.
+   *
+   * @param trashDirs the directories to move deleted files to, one per base directory, each on
+   *                  the same filesystem as its base directory but outside of it; they are
+   *                  created if needed. Null to turn deferred deletes off, which stops the
+   *                  background threads; files still in the trash are then removed the next
+   *                  time deferred deletes are turned on.
+   * @param threads the number of threads removing files from the trash.
+   * @param maxQueued the maximum number of files waiting to be removed.
+   * @throws IllegalArgumentException if the number of trash directories does not match the
+   *                                  number of base directories.
+   * @throws IOException if a trash directory could not be created or read.
+   */
+  public synchronized void setDeferredDeletes(File[] trashDirs, int threads, int maxQueued)
+      throws IllegalArgumentException, IOException {
+    FSTrash newTrash =
+        (trashDirs != null) ? new FSTrash(layout.getBaseDirs(), trashDirs, threads, maxQueued)
+                            : null;
+
+    if (trash != null)
+      trash.close();
+
+    trash = newTrash;
+  }
+
+  /**
+   * @return the number of deleted files waiting to be removed from the trash; 0 if deletes
+   *         are not deferred.
+   */
+  public synchronized int getDeferredDeleteQueueDepth() {
+    return (trash != null) ? trash.getQueueDepth() : 0;
+  }
+
+  /**
+   * @return the number of deleted files the deleting threads had to remove themselves since
+   *         deferred deletes were turned on, because too many were waiting already; 0 if
+   *         deletes are not deferred.
+   */
+  public synchronized long getDirectDeleteCount() {
+    return (trash != null) ? trash.getDirectCount() : 0;
+  }
+
+  /**
+   * Turns the usage ledger on or off. Connections opened before keep using the previous
+   * setting. When a ledger file is opened for the first time, the counts are built by scanning
+   * all the files.
+   *
+   * @param ledgerFile the file to keep the counts in, outside the base directories; null to
+   *                   turn the ledger off, which writes the file a last time.
+   * @param interval the time in milliseconds between writes of the ledger file.
+   * @throws IOException if the ledger file could not be read or written.
+   */
+  public synchronized void setUsageLedger(File ledgerFile, long interval) throws IOException {
+    if (usage != null) {
+      usage.close();
+      usage = null;
+    }
+
+    if (ledgerFile != null)
+      usage = new FSUsageLedger(ledgerFile, layout, interval);
+  }
+
+  /**
+   * Rebuilds the counts of the usage ledger from the files, for when they are off after a crash
+   * or have been modified other than through this store. This walks and stat's all the files,
+   * so it is slow on large stores, and it should be run while the store is not otherwise in use.
+   *
+   * @throws IllegalStateException if the store does not keep a usage ledger.
+   * @throws IOException if the files could not be read or the ledger could not be written.
+   */
+  public void rescanUsage() throws IllegalStateException, IOException {
+    FSUsageLedger ledger = getUsageLedger();
+    if (ledger == null)
+      throw new IllegalStateException("This store does not keep a usage ledger");
+
+    ledger.rescan();
+  }
+
+  /**
+   * @return the index, opened on first use; null if the store does not keep one
+   */
+  private synchronized FSIndex getIndex() throws IOException {
+    if (index == null && indexFile != null)
+      index = FSIndex.open(indexFile, layout);
+
+    return index;
+  }
+
+  /**
+   * @return true if this store is a read-only snapshot
+   */
+  boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * @return true if snapshots of this store may share its files
+   */
+  boolean hasSnapshots() {
+    return hasSnapshots;
+  }
+
+  /**
+   * @return the layout of the files in the base directories
+   */
+  FSLayout getLayout() {
+    return layout;
+  }
+
+  /**
+   * @return the syncer shared by the connections
+   */
+  FSSyncer getSyncer() {
+    return syncer;
+  }
+
+  /**
+   * @return the memory mappings shared by the connections
+   */
+  FSMappings getMappings() {
+    return mappings;
+  }
+
+  /**
+   * @return the usage ledger shared by the connections; null if it is turned off
+   */
+  synchronized FSUsageLedger getUsageLedger() {
+    return usage;
+  }
+
+  /**
+   * @return the trash shared by the connections; null if deletes are not deferred
+   */
+  synchronized FSTrash getTrash() {
+    return trash;
+  }
+
+  /**
+   * @return the copier shared by the connections
+   */
+  FSCopier getCopier() {
+    return copier;
+  }
+
+  /**
+   * @return the metadata cache shared by the connections; null if it is turned off
+   */
+  synchronized FSMetadataCache getMetadataCache() {
+    return metadata;
   }
 }
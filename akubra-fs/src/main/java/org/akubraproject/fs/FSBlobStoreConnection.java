@@ -22,39 +22,73 @@
 package org.akubraproject.fs;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 import java.net.URI;
 
+import java.nio.channels.AsynchronousFileChannel;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
 
 import org.akubraproject.Blob;
-import org.akubraproject.BlobStore;
+import org.akubraproject.BlobIdPage;
+import org.akubraproject.async.AsyncBlobStoreConnection;
+import org.akubraproject.async.AsyncCapableConnection;
 import org.akubraproject.impl.AbstractBlobStoreConnection;
 import org.akubraproject.impl.StreamManager;
 
 /**
  * Filesystem-backed BlobStoreConnection implementation.
  *
+ * <p>The connection is safe for use by several threads at once, so its {@link
+ * #getAsyncConnection asynchronous view} runs operations concurrently; it reads whole blobs
+ * through asynchronous channels, see {@link #openAsyncChannel}.
+ *
  * @author Chris Wilper
  */
-class FSBlobStoreConnection extends AbstractBlobStoreConnection {
-  private static final Logger log = LoggerFactory.getLogger(FSBlobStoreConnection.class);
+class FSBlobStoreConnection extends AbstractBlobStoreConnection
+    implements AsyncCapableConnection, FSAsyncChannelConnection, FSUsageConnection {
+  private final FSLayout        layout;
+  private final FSSyncer        syncer;
+  private final FSIndex         index;
+  private final FSMappings      mappings;
+  private final FSCopier        copier;
+  private final FSMetadataCache metadata;
+  private final FSTrash         trash;
+  private final FSUsageLedger   usage;
+  private final long            mapThreshold;
+  private final Set<File>       modified;
+  private final boolean         readOnly;
+  private final FSBlobStore     blobStore;
 
-  private final File baseDir;
-  private final Set<File>     modified;
+  FSBlobStoreConnection(FSBlobStore blobStore, StreamManager manager, boolean noSync) {
+    this(blobStore, null, manager, noSync, -1);
+  }
 
-  FSBlobStoreConnection(BlobStore blobStore, File baseDir, StreamManager manager, boolean noSync) {
+  FSBlobStoreConnection(FSBlobStore blobStore, FSIndex index, StreamManager manager,
+                        boolean noSync, long mapThreshold) {
     super(blobStore, manager);
-    this.baseDir = baseDir;
-    this.modified = noSync ? null : new HashSet<File>();
+    this.layout = blobStore.getLayout();
+    this.syncer = blobStore.getSyncer();
+    this.index = index;
+    this.mappings = blobStore.getMappings();
+    this.copier = blobStore.getCopier();
+    this.metadata = blobStore.getMetadataCache();
+    this.trash = blobStore.getTrash();
+    this.usage = blobStore.getUsageLedger();
+    this.mapThreshold = mapThreshold;
+    this.modified = noSync ? null : Collections.synchronizedSet(new HashSet<File>());
+    this.readOnly = blobStore.isReadOnly();
+    this.blobStore = blobStore;
   }
 
   @Override
@@ -64,15 +98,124 @@ class FSBlobStoreConnection extends AbstractBlobStoreConnection {
     if (blobId == null)
       throw new UnsupportedOperationException();
 
-    return new FSBlob(this, baseDir, blobId, streamManager, modified);
+    return new FSBlob(this, layout, blobId, hints, streamManager, modified);
+  }
+
+  /**
+   * @return the index of the blobs, or null if the store does not keep one
+   */
+  FSIndex getIndex() {
+    return index;
+  }
+
+  /**
+   * @return the memory mappings of the store's files
+   */
+  FSMappings getMappings() {
+    return mappings;
+  }
+
+  /**
+   * @return true if the store is a read-only snapshot
+   */
+  boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * @return true if snapshots of the store may share its files; this is not fixed when the
+   *         connection is opened, as snapshots may be taken while it is in use
+   */
+  boolean hasSnapshots() {
+    return blobStore.hasSnapshots();
+  }
+
+  /**
+   * @return the copier for the store's files
+   */
+  FSCopier getCopier() {
+    return copier;
+  }
+
+  /**
+   * @return the metadata cache of the store's files, or null if the store does not keep one
+   */
+  FSMetadataCache getMetadataCache() {
+    return metadata;
+  }
+
+  /**
+   * @return the trash deleted files are moved to, or null if files are deleted directly
+   */
+  FSTrash getTrash() {
+    return trash;
+  }
+
+  /**
+   * @return the usage ledger of the store, or null if the store does not keep one
+   */
+  FSUsageLedger getUsageLedger() {
+    return usage;
+  }
+
+  /**
+   * @return the size from which blobs are read through memory mappings; -1 if they are not
+   */
+  long getMapThreshold() {
+    return mapThreshold;
   }
 
   @Override
   public Iterator<URI> listBlobIds(String filterPrefix) {
     ensureOpen();
-    return new FSBlobIdIterator(baseDir, filterPrefix);
+
+    if (index != null)
+      return index.list(filterPrefix, null);
+
+    return FSBlobIdIterator.listAll(layout, filterPrefix);
   }
 
+  /**
+   * Reads the ids from the index if there is one. Otherwise walks the directories in sorted
+   * order, skipping those holding only ids up to <var>startAfter</var>, and merges the first
+   * ids from each base directory; with hash directories the ids are not stored in order, so all
+   * of them must be scanned instead.
+   */
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds) {
+    ensureOpen();
+    checkMaxIds(maxIds);
+
+    if (layout.getHashLevels() > 0 && index == null)
+      return scanPage(listBlobIds(filterPrefix), startAfter, maxIds);
+
+    if (index != null) {
+      Iterator<URI> iter =
+          index.list(filterPrefix, (startAfter != null) ? startAfter.toString() : null);
+
+      List<URI> ids = new ArrayList<URI>();
+      while (ids.size() <= maxIds && iter.hasNext())
+        ids.add(iter.next());
+
+      return toPage(ids, maxIds);
+    }
+
+    // the overall first ids are among the first ones of each base directory
+    SortedSet<URI> ids = new TreeSet<URI>(BlobIdPage.ID_ORDER);
+    for (File baseDir : layout.getBaseDirs()) {
+      Iterator<URI> iter = new FSBlobIdIterator(baseDir, filterPrefix, startAfter);
+      for (int cnt = 0; cnt <= maxIds && iter.hasNext(); cnt++)
+        ids.add(iter.next());
+    }
+
+    return toPage(new ArrayList<URI>(ids), maxIds);
+  }
+
+  /**
+   * Syncs the files modified via this connection, and their directories, as well as the index
+   * if there is one. Syncs of all the store's connections are group-committed, see {@link
+   * FSSyncer}.
+   */
   @Override
   public void sync() throws IOException {
     ensureOpen();
@@ -80,20 +223,46 @@ class FSBlobStoreConnection extends AbstractBlobStoreConnection {
     if (modified == null)
       throw new UnsupportedOperationException("You promised you weren't going to call sync!");
 
-    for (File f : modified) {
-      try {
-        FileInputStream fis = new FileInputStream(f);
-        try {
-          fis.getFD().sync();
-        } finally {
-          fis.close();
-        }
-      } catch (IOException ioe) {
-        log.warn("Error sync'ing file '" + f + "'", ioe);
-      }
+    List<File> files;
+    synchronized (modified) {
+      files = new ArrayList<File>(modified);
+      modified.clear();
     }
 
-    modified.clear();
+    syncer.sync(files);
+
+    if (index != null)
+      index.force();
+  }
+
+  @Override
+  public AsynchronousFileChannel openAsyncChannel(URI blobId, boolean writable,
+                                                 ExecutorService executor) throws IOException {
+    ensureOpen();
+    return ((FSBlob) getBlob(blobId, null)).openAsyncChannel(writable, executor);
+  }
+
+  @Override
+  public FSUsage getUsage() {
+    ensureOpen();
+    return ensureUsage().getUsage();
+  }
+
+  @Override
+  public Map<String, FSUsage> getUsageByPrefix() {
+    ensureOpen();
+    return ensureUsage().getUsageByPrefix();
+  }
+
+  private FSUsageLedger ensureUsage() {
+    if (usage == null)
+      throw new UnsupportedOperationException("The store does not keep a usage ledger");
+    return usage;
+  }
+
+  @Override
+  public AsyncBlobStoreConnection getAsyncConnection(ExecutorService executor) {
+    return new FSAsyncConnection(this, executor);
   }
 
   @Override
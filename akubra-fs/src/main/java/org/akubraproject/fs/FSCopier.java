@@ -0,0 +1,236 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.akubraproject.async.AsyncBlobStore;
+import org.akubraproject.impl.BufferPool;
+
+/**
+ * Copies files, shared by all connections of a store; used to move blobs between filesystems
+ * and to copy them.
+ *
+ * <p>The content is copied between the files' channels, which lets the platform copy it in the
+ * kernel where it can. Files of at least two chunks are split into chunks which are copied in
+ * parallel, on the current thread and on up to <var>threads</var> - 1 pooled ones, each writing
+ * through a channel of its own; the progress is logged as the chunks complete. The size of the
+ * copy is checked against that of the source.
+ */
+class FSCopier {
+  private static final Logger log = LoggerFactory.getLogger(FSCopier.class);
+
+  /** The default number of chunks copied in parallel. */
+  static final int  DEFAULT_THREADS    = 4;
+  /** The default size of the chunks: 64 MiB. */
+  static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+
+  private final int             threads;
+  private final long            chunkSize;
+  private final ExecutorService executor;
+
+  /**
+   * Create a new copier.
+   *
+   * @param threads   the maximum number of chunks to copy in parallel
+   * @param chunkSize the size of the chunks
+   */
+  FSCopier(int threads, long chunkSize) {
+    this.threads   = threads;
+    this.chunkSize = chunkSize;
+    this.executor  = (threads > 1) ?
+        AsyncBlobStore.newBoundedExecutor(threads - 1, threads - 1, "akubra-fs-copy") : null;
+  }
+
+  /**
+   * Copy a file.
+   *
+   * @param source the file to copy
+   * @param dest   the file to copy to; it is created if it does not exist, and truncated if it
+   *               does
+   * @throws IOException if the copy failed, or came out with the wrong size
+   */
+  void copy(File source, File dest) throws IOException {
+    FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+    try {
+      FileChannel out = FileChannel.open(dest.toPath(), StandardOpenOption.CREATE,
+                                         StandardOpenOption.WRITE,
+                                         StandardOpenOption.TRUNCATE_EXISTING);
+      try {
+        long size = in.size();
+        if (executor == null || size < 2 * chunkSize)
+          copyRange(in, out, 0, size);
+        else
+          copyChunks(in, out, size, source, dest);
+
+        if (out.size() != size) {
+          throw new IOException("Source and destination file sizes do not match: source '" +
+                                source + "' is " + size + " and destination '" + dest + "' is " +
+                                out.size());
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private void copyChunks(final FileChannel in, final FileChannel out, final long size,
+                          final File source, final File dest) throws IOException {
+    final AtomicLong next   = new AtomicLong();
+    final AtomicLong copied = new AtomicLong();
+    final long       start  = System.currentTimeMillis();
+
+    final class Worker implements Runnable {
+      private final boolean ownChannel;
+      IOException           error;
+
+      Worker(boolean ownChannel) {
+        this.ownChannel = ownChannel;
+      }
+
+      public void run() {
+        try {
+          FileChannel ch =
+              ownChannel ? FileChannel.open(dest.toPath(), StandardOpenOption.WRITE) : out;
+          try {
+            long pos;
+            while ((pos = next.getAndAdd(chunkSize)) < size) {
+              long len = Math.min(chunkSize, size - pos);
+              copyRange(in, ch, pos, len);
+              log.debug("Copied " + copied.addAndGet(len) + " of " + size + " bytes of '" +
+                        source + "'");
+            }
+          } finally {
+            if (ownChannel)
+              ch.close();
+          }
+        } catch (IOException ioe) {
+          error = ioe;
+          next.set(size);         // stop the others
+        }
+      }
+    }
+
+    List<Worker>    workers = new ArrayList<Worker>();
+    List<Future<?>> helpers = new ArrayList<Future<?>>();
+    int             num     = (int) Math.min(threads, (size + chunkSize - 1) / chunkSize) - 1;
+    try {
+      for (int idx = 0; idx < num; idx++) {
+        Worker w = new Worker(true);
+        helpers.add(executor.submit(w));
+        workers.add(w);
+      }
+    } catch (RejectedExecutionException ree) {
+      log.debug("Copying with fewer threads", ree);
+    }
+
+    Worker self = new Worker(false);
+    workers.add(self);
+    self.run();
+
+    boolean interrupted = false;
+    try {
+      for (Future<?> helper : helpers) {
+        while (true) {
+          try {
+            helper.get();
+            break;
+          } catch (InterruptedException ie) {
+            interrupted = true;
+          } catch (ExecutionException ee) {
+            throw new IOException("Error copying '" + source + "'", ee.getCause());
+          }
+        }
+      }
+    } finally {
+      if (interrupted)
+        Thread.currentThread().interrupt();
+    }
+
+    for (Worker w : workers) {
+      if (w.error != null)
+        throw w.error;
+    }
+
+    long time = Math.max(System.currentTimeMillis() - start, 1);
+    log.info("Copied " + size + " bytes from '" + source + "' to '" + dest + "' in " + time +
+             " ms (" + (size / 1024 * 1000 / 1024 / time) + " MiB/s)");
+  }
+
+  /**
+   * Copy a range of a file to the same position of another one. transferTo may copy less than
+   * asked for, or nothing at all if the platform can't transfer between the two files directly;
+   * in that case the rest is copied through a pooled direct buffer.
+   */
+  static void copyRange(FileChannel in, FileChannel out, long pos, long len) throws IOException {
+    long end = pos + len;
+
+    out.position(pos);
+    while (pos < end) {
+      long n = in.transferTo(pos, end - pos, out);
+      if (n <= 0)
+        break;
+      pos += n;
+    }
+
+    if (pos >= end)
+      return;
+
+    ByteBuffer buf = BufferPool.getDefault().acquireDirect(BufferPool.DEFAULT_BUFFER_SIZE);
+    try {
+      while (pos < end) {
+        buf.clear();
+        if (end - pos < buf.capacity())
+          buf.limit((int) (end - pos));
+
+        int n = in.read(buf, pos);
+        if (n < 0)
+          throw new IOException("Unexpected end of file at " + pos + " while copying");
+
+        buf.flip();
+        while (buf.hasRemaining())
+          out.write(buf);
+        pos += n;
+      }
+    } finally {
+      BufferPool.getDefault().releaseDirect(buf);
+    }
+  }
+}
@@ -0,0 +1,437 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.net.URI;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.collect.AbstractIterator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of the blobs in a store, so that existence checks, sizes, and listings need not go
+ * to the filesystem. The index holds the id, size and modification time of each blob in memory,
+ * sorted by id, and persists them in a memory-mapped log file to which each change is appended.
+ *
+ * <p>The log starts with a magic header, followed by the records: a record type byte, the
+ * length of the id as an unsigned short, the id in UTF-8, and for a {@link #put} the size and
+ * modification time as longs. The type is written last, so that a record which was only
+ * partially written is ignored; a zero type marks the end of the records, and the log is
+ * extended in large zero-filled steps. Once superseded records take up more than half of the
+ * log, the live entries are written to a new log which replaces the old one.
+ *
+ * <p>The index assumes that its store is the only one modifying the files; if the files are
+ * changed behind its back, e.g. after a crash or by a restore, {@link #reconcile} brings it up
+ * to date again.
+ */
+class FSIndex {
+  private static final Logger log = LoggerFactory.getLogger(FSIndex.class);
+
+  private static final byte[]  MAGIC        = { 'A', 'K', 'B', 'I', 'D', 'X', '0', '1' };
+  private static final byte    END          = 0;
+  private static final byte    PUT          = 1;
+  private static final byte    REMOVE       = 2;
+  private static final int     MIN_CAPACITY = 1024 * 1024;
+  private static final int     MAX_ID_LEN   = 0xFFFF;
+  private static final Charset UTF8         = Charset.forName("UTF-8");
+
+  private final File                                 file;
+  private final FSLayout                             layout;
+  private final ConcurrentSkipListMap<String, Entry> entries =
+      new ConcurrentSkipListMap<String, Entry>();
+
+  private FileChannel      channel;
+  private MappedByteBuffer buf;
+  /** the length the records of the live entries would take up in a fresh log */
+  private long             liveBytes;
+
+  /**
+   * The metadata of a blob.
+   */
+  static final class Entry {
+    final long size;
+    final long mtime;
+
+    Entry(long size, long mtime) {
+      this.size  = size;
+      this.mtime = mtime;
+    }
+  }
+
+  private FSIndex(File file, FSLayout layout) {
+    this.file   = file;
+    this.layout = layout;
+  }
+
+  /**
+   * Open the index. If the log does not exist yet, or cannot be read, the index is built from
+   * the files in the store.
+   *
+   * @param file   the log file; must not be inside the store's base directory
+   * @param layout the layout of the store's files
+   * @return the index
+   * @throws IOException if the log could not be read or written
+   */
+  static FSIndex open(File file, FSLayout layout) throws IOException {
+    FSIndex index = new FSIndex(file, layout);
+
+    boolean ok;
+    if (file.exists()) {
+      ok = index.load();
+    } else {
+      log.info("Index '" + file + "' not found - building it from " +
+               Arrays.toString(layout.getBaseDirs()));
+      ok = false;
+    }
+
+    if (!ok) {
+      index.entries.clear();
+      index.rewrite();
+      index.reconcile();
+    } else if (index.isMostlyGarbage()) {
+      index.rewrite();
+    }
+
+    return index;
+  }
+
+  /**
+   * Get the metadata of a blob.
+   *
+   * @param id the canonical id of the blob
+   * @return the metadata, or null if the blob does not exist
+   */
+  Entry get(String id) {
+    return entries.get(id);
+  }
+
+  /**
+   * Record that a blob exists.
+   *
+   * @param id    the canonical id of the blob
+   * @param size  the size of the blob
+   * @param mtime the modification time of the blob's file
+   * @throws IOException if the change could not be logged
+   */
+  synchronized void put(String id, long size, long mtime) throws IOException {
+    byte[] idBytes = encode(id);
+    if (entries.put(id, new Entry(size, mtime)) == null)
+      liveBytes += putLength(idBytes);
+    append(PUT, idBytes, size, mtime);
+  }
+
+  /**
+   * Record that a blob no longer exists.
+   *
+   * @param id the canonical id of the blob
+   * @throws IOException if the change could not be logged
+   */
+  synchronized void remove(String id) throws IOException {
+    if (entries.remove(id) != null) {
+      byte[] idBytes = encode(id);
+      liveBytes -= putLength(idBytes);
+      append(REMOVE, idBytes, 0, 0);
+    }
+  }
+
+  /**
+   * Record the current state of a blob's file.
+   *
+   * @param id   the canonical id of the blob
+   * @param file the blob's file
+   * @throws IOException if the file could not be stat'ed or the change could not be logged
+   */
+  void update(String id, File file) throws IOException {
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    } catch (NoSuchFileException nsfe) {
+      remove(id);
+      return;
+    }
+
+    put(id, attrs.size(), attrs.lastModifiedTime().toMillis());
+  }
+
+  /**
+   * List the ids in the index, in {@link org.akubraproject.BlobIdPage#ID_ORDER id order}.
+   *
+   * @param filterPrefix if not null, only the ids starting with this are listed
+   * @param startAfter   if not null, only the ids after this are listed
+   * @return the ids
+   */
+  Iterator<URI> list(final String filterPrefix, String startAfter) {
+    NavigableMap<String, Entry> tail = entries;
+    if (filterPrefix != null && (startAfter == null || filterPrefix.compareTo(startAfter) > 0))
+      tail = entries.tailMap(filterPrefix, true);
+    else if (startAfter != null)
+      tail = entries.tailMap(startAfter, false);
+
+    final Iterator<String> ids = tail.keySet().iterator();
+    return new AbstractIterator<URI>() {
+      @Override
+      protected URI computeNext() {
+        if (ids.hasNext()) {
+          String id = ids.next();
+          if (filterPrefix == null || id.startsWith(filterPrefix))
+            return URI.create(id);
+        }
+        return endOfData();
+      }
+    };
+  }
+
+  /**
+   * @return the number of blobs in the index
+   */
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Write the changes to the log to disk.
+   */
+  synchronized void force() {
+    buf.force();
+  }
+
+  /**
+   * Bring the index in line with the files in the store: blobs whose files were added, changed
+   * or removed behind the index's back are updated.
+   *
+   * @return the number of blobs whose entries had to be changed
+   * @throws IOException if the files could not be stat'ed or the changes could not be logged
+   */
+  long reconcile() throws IOException {
+    long        fixed = 0;
+    Set<String> seen  = new HashSet<String>();
+
+    Iterator<URI> files = FSBlobIdIterator.listAll(layout, null);
+    while (files.hasNext()) {
+      String id = files.next().toString();
+      seen.add(id);
+
+      BasicFileAttributes attrs;
+      try {
+        File f = layout.getFile(id.substring(FSBlob.scheme.length() + 1));
+        attrs = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+      } catch (NoSuchFileException nsfe) {
+        continue;       // removed meanwhile; dealt with below
+      }
+
+      Entry e     = entries.get(id);
+      long  mtime = attrs.lastModifiedTime().toMillis();
+      if (e == null || e.size != attrs.size() || e.mtime != mtime) {
+        put(id, attrs.size(), mtime);
+        fixed++;
+      }
+    }
+
+    for (String id : entries.keySet()) {
+      if (!seen.contains(id) &&
+          !layout.getFile(id.substring(FSBlob.scheme.length() + 1)).exists()) {
+        remove(id);
+        fixed++;
+      }
+    }
+
+    if (fixed > 0)
+      log.info("Reconciled " + fixed + " entries of index '" + file + "'");
+
+    return fixed;
+  }
+
+  /**
+   * Read the log into memory, and map it for appending.
+   *
+   * @return false if the log is not a valid index log
+   */
+  private synchronized boolean load() throws IOException {
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long len = channel.size();
+    if (len > Integer.MAX_VALUE || len < MAGIC.length) {
+      log.warn("Index '" + file + "' has an invalid size - rebuilding it");
+      return false;
+    }
+
+    buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, len);
+    byte[] magic = new byte[MAGIC.length];
+    buf.get(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      log.warn("Index '" + file + "' has an invalid header - rebuilding it");
+      return false;
+    }
+
+    int end = buf.position();
+    while (buf.remaining() >= 3) {
+      byte type = buf.get();
+      if (type == END)
+        break;
+
+      int idLen   = buf.getShort() & 0xFFFF;
+      int dataLen = idLen + ((type == PUT) ? 16 : 0);
+      if ((type != PUT && type != REMOVE) || buf.remaining() < dataLen) {
+        log.warn("Index '" + file + "' has an invalid record at " + end + " - rebuilding it");
+        return false;
+      }
+
+      byte[] idBytes = new byte[idLen];
+      buf.get(idBytes);
+      String id = new String(idBytes, UTF8);
+      if (type == PUT) {
+        if (entries.put(id, new Entry(buf.getLong(), buf.getLong())) == null)
+          liveBytes += putLength(idBytes);
+      } else {
+        if (entries.remove(id) != null)
+          liveBytes -= putLength(idBytes);
+      }
+
+      end = buf.position();
+    }
+
+    buf.position(end);
+    return true;
+  }
+
+  /**
+   * Append a record to the log, growing or compacting the log if it is full.
+   */
+  private void append(byte type, byte[] idBytes, long size, long mtime) throws IOException {
+    int recLen = (type == PUT) ? putLength(idBytes) : 3 + idBytes.length;
+
+    // leave room for the end marker
+    if (buf.remaining() < recLen + 1) {
+      if (isMostlyGarbage()) {
+        rewrite();      // the change is in the entries already
+        return;
+      }
+      grow(recLen + 1);
+    }
+
+    int start = buf.position();
+    buf.position(start + 1);
+    buf.putShort((short) idBytes.length);
+    buf.put(idBytes);
+    if (type == PUT) {
+      buf.putLong(size);
+      buf.putLong(mtime);
+    }
+    buf.put(start, type);
+  }
+
+  /**
+   * Extend the log and remap it.
+   */
+  private void grow(int needed) throws IOException {
+    long newCap = Math.max((long) buf.capacity() * 2, (long) buf.position() + needed);
+    newCap = Math.max(newCap, MIN_CAPACITY);
+    if (newCap > Integer.MAX_VALUE)
+      throw new IOException("Index '" + file + "' is too large");
+
+    int pos = buf.position();
+    buf.force();
+    buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCap);
+    buf.position(pos);
+  }
+
+  /**
+   * Write the entries to a new log and replace the current log with it.
+   */
+  private synchronized void rewrite() throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.TRUNCATE_EXISTING,
+                                       StandardOpenOption.WRITE);
+    long live = 0;
+    try {
+      ByteBuffer rec = ByteBuffer.allocate(3 + MAX_ID_LEN + 16);
+      out.write(ByteBuffer.wrap(MAGIC));
+      for (Map.Entry<String, Entry> e : entries.entrySet()) {
+        byte[] idBytes = encode(e.getKey());
+        rec.clear();
+        rec.put(PUT).putShort((short) idBytes.length).put(idBytes);
+        rec.putLong(e.getValue().size).putLong(e.getValue().mtime);
+        rec.flip();
+        live += rec.remaining();
+        while (rec.hasRemaining())
+          out.write(rec);
+      }
+      out.force(true);
+    } finally {
+      out.close();
+    }
+
+    if (channel != null)
+      channel.close();
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long len = MAGIC.length + live;
+    buf = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                      Math.max(Math.max(len * 2, MIN_CAPACITY), len + 1));
+    buf.position((int) len);
+
+    liveBytes = live;
+  }
+
+  /**
+   * @return true if superseded records take up more than half of the log
+   */
+  private boolean isMostlyGarbage() {
+    long logBytes = buf.position() - MAGIC.length;
+    return logBytes - liveBytes > liveBytes;
+  }
+
+  private static int putLength(byte[] idBytes) {
+    return 3 + idBytes.length + 16;
+  }
+
+  private static byte[] encode(String id) throws IOException {
+    byte[] idBytes = id.getBytes(UTF8);
+    if (idBytes.length > MAX_ID_LEN)
+      throw new IOException("Id too long to be indexed: " + id);
+    return idBytes;
+  }
+}
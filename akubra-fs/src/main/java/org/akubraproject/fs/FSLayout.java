@@ -0,0 +1,285 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the paths of blob ids to files under a store's base directories, and creates the parent
+ * directories of those files.
+ *
+ * <p>A store may be striped over several base directories, typically on separate disks. Each
+ * path is placed in one of them by rendezvous hashing: every base directory gets a score from a
+ * hash of the path and the directory's position, scaled by the directory's weight, and the
+ * highest score wins. The placement thus only depends on the path and on the list of
+ * directories and their weights, which therefore must not be changed for an existing store;
+ * within each base directory the layout is the same as with a single one.
+ *
+ * <p>In the flat layout (zero hash levels) the path is used as is, relative to the base
+ * directory. Otherwise the file is placed below <var>hashLevels</var> levels of directories
+ * named after the leading bytes of the MD5 digest of the path, two hex digits per level, so
+ * that each level fans out into at most 256 directories: with two levels
+ * <code>file:obj123456</code> is stored as <code>88/e1/obj123456</code>, for example. The path
+ * itself follows the hash directories unchanged, so the id can be recovered from the file.
+ *
+ * <p>The directories known to exist are cached, so that creating a file does not have to check
+ * for its parent every time. The cache assumes that directories are not removed while the store
+ * is in use; if one is anyway, {@link #recreateParentDirs} repairs the damage once creating a
+ * file in it has failed.
+ */
+class FSLayout {
+  /** The maximum number of hash levels: one per byte of the digest. */
+  static final int MAX_HASH_LEVELS = 16;
+
+  private static final int    MAX_CACHED_DIRS = 100000;
+  private static final char[] HEX             = "0123456789abcdef".toCharArray();
+
+  private final File[]    baseDirs;
+  private final long[]    weights;
+  private final int       hashLevels;
+  private final Set<File> knownDirs =
+      Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+  /**
+   * Create a new layout.
+   *
+   * @param baseDir    the base directory of the store
+   * @param hashLevels the number of levels of hash directories; 0 for the flat layout
+   * @throws IllegalArgumentException if <var>hashLevels</var> is negative or larger than
+   *                                  {@link #MAX_HASH_LEVELS}
+   */
+  FSLayout(File baseDir, int hashLevels) throws IllegalArgumentException {
+    this(new File[] { baseDir }, null, hashLevels);
+  }
+
+  /**
+   * Create a new layout striped over several base directories.
+   *
+   * @param baseDirs   the base directories of the store
+   * @param weights    the relative share of the blobs to place in each base directory; null to
+   *                   spread them evenly
+   * @param hashLevels the number of levels of hash directories; 0 for the flat layout
+   * @throws IllegalArgumentException if there are no base directories, if the weights do not
+   *                                  match them or are not positive, or if <var>hashLevels</var>
+   *                                  is negative or larger than {@link #MAX_HASH_LEVELS}
+   */
+  FSLayout(File[] baseDirs, long[] weights, int hashLevels) throws IllegalArgumentException {
+    if (baseDirs.length == 0)
+      throw new IllegalArgumentException("At least one base directory is required");
+    if (weights != null && weights.length != baseDirs.length)
+      throw new IllegalArgumentException("Got " + weights.length + " weights for " +
+                                         baseDirs.length + " base directories");
+    if (hashLevels < 0 || hashLevels > MAX_HASH_LEVELS)
+      throw new IllegalArgumentException("hashLevels must be between 0 and " + MAX_HASH_LEVELS +
+                                         ": " + hashLevels);
+
+    this.baseDirs   = baseDirs.clone();
+    this.weights    = new long[baseDirs.length];
+    this.hashLevels = hashLevels;
+
+    for (int idx = 0; idx < baseDirs.length; idx++) {
+      if (weights != null && weights[idx] <= 0)
+        throw new IllegalArgumentException("Weights must be positive: " + Arrays.toString(weights));
+      this.weights[idx] = (weights != null) ? weights[idx] : 1;
+    }
+  }
+
+  /**
+   * @return the (first) base directory of the store
+   */
+  File getBaseDir() {
+    return baseDirs[0];
+  }
+
+  /**
+   * @return all base directories of the store
+   */
+  File[] getBaseDirs() {
+    return baseDirs.clone();
+  }
+
+  /**
+   * Create a layout like this one, but over other base directories.
+   *
+   * @param baseDirs the base directories; there must be as many as this layout has
+   * @return the new layout
+   * @throws IllegalArgumentException if the number of base directories differs
+   */
+  FSLayout withBaseDirs(File[] baseDirs) throws IllegalArgumentException {
+    if (baseDirs.length != this.baseDirs.length)
+      throw new IllegalArgumentException("Expected " + this.baseDirs.length +
+                                         " base directories, got " + baseDirs.length);
+
+    return new FSLayout(baseDirs, weights, hashLevels);
+  }
+
+  /**
+   * @return the number of levels of hash directories; 0 for the flat layout
+   */
+  int getHashLevels() {
+    return hashLevels;
+  }
+
+  /**
+   * Get the file for a blob.
+   *
+   * @param path the (normalized) scheme-specific part of the blob's id
+   * @return the file
+   */
+  File getFile(String path) {
+    File baseDir = getBaseDir(path);
+    if (hashLevels == 0)
+      return new File(baseDir, path);
+
+    return new File(new File(baseDir, getHashDirs(path)), path);
+  }
+
+  /**
+   * Get the base directory a blob is placed in.
+   *
+   * @param path the (normalized) scheme-specific part of the blob's id
+   * @return the base directory
+   */
+  File getBaseDir(String path) {
+    if (baseDirs.length == 1)
+      return baseDirs[0];
+
+    // use the half of the digest the hash directories don't
+    byte[] digest = md5(path);
+    long   seed   = 0;
+    for (int idx = 8; idx < 16; idx++)
+      seed = (seed << 8) | (digest[idx] & 0xFF);
+
+    int    best      = 0;
+    double bestScore = -1;
+    for (int idx = 0; idx < baseDirs.length; idx++) {
+      // a uniform value in (0, 1), turned into a score with a weighted exponential distribution
+      double u     = ((mix(seed + (idx + 1) * 0x9E3779B97F4A7C15L) >>> 11) + 0.5) * 0x1.0p-53;
+      double score = weights[idx] / -Math.log(u);
+      if (score > bestScore) {
+        best      = idx;
+        bestScore = score;
+      }
+    }
+
+    return baseDirs[best];
+  }
+
+  /**
+   * Make sure the parent directory of a file exists.
+   *
+   * @param file the file
+   * @return the directories that had to be created, so that they can be sync'd; usually empty
+   * @throws IOException if the directory did not exist and could not be created
+   */
+  List<File> makeParentDirs(File file) throws IOException {
+    File parent = file.getParentFile();
+    if (parent == null || knownDirs.contains(parent))
+      return Collections.emptyList();
+
+    List<File> created = Collections.emptyList();
+    if (!parent.exists()) {
+      created = new ArrayList<File>();
+      for (File dir = parent; dir != null && !dir.exists(); dir = dir.getParentFile())
+        created.add(dir);
+
+      parent.mkdirs(); // See https://jira.duraspace.org/browse/AKUBRA-3
+      if (!parent.exists())
+        throw new IOException("Unable to create parent directory: " + parent.getPath());
+    }
+
+    if (knownDirs.size() >= MAX_CACHED_DIRS)
+      knownDirs.clear();
+    knownDirs.add(parent);
+
+    return created;
+  }
+
+  /**
+   * Recreate the parent directory of a file if it has been removed behind the cache's back.
+   * This is meant to be invoked after creating the file failed.
+   *
+   * @param file the file
+   * @return true if the directory was missing and has been recreated, i.e. if it is worth
+   *         trying again to create the file
+   * @throws IOException if the directory could not be recreated
+   */
+  boolean recreateParentDirs(File file) throws IOException {
+    File parent = file.getParentFile();
+    if (parent == null || !knownDirs.contains(parent) || parent.exists())
+      return false;
+
+    knownDirs.remove(parent);
+    makeParentDirs(file);
+    return true;
+  }
+
+  /**
+   * Get the hash directories for a path.
+   *
+   * @param path the (normalized) scheme-specific part of the blob's id
+   * @return the relative path of the hash directories, e.g. "88/e1/"
+   */
+  String getHashDirs(String path) {
+    byte[] digest = md5(path);
+
+    StringBuilder res = new StringBuilder(hashLevels * 3);
+    for (int idx = 0; idx < hashLevels; idx++) {
+      res.append(HEX[(digest[idx] >> 4) & 0x0F]);
+      res.append(HEX[digest[idx] & 0x0F]);
+      res.append('/');
+    }
+
+    return res.toString();
+  }
+
+  /**
+   * The finalizer of the SplitMix64 generator, which spreads the bits of similar inputs.
+   */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  private static byte[] md5(String path) {
+    try {
+      return MessageDigest.getInstance("MD5").digest(path.getBytes("UTF-8"));
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new Error("MD5 not supported", nsae);     // every platform must support it
+    } catch (UnsupportedEncodingException uee) {
+      throw new Error("UTF-8 not supported", uee);    // every platform must support it
+    }
+  }
+}
@@ -0,0 +1,316 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The read-only memory mappings of files, shared by all connections of a store.
+ *
+ * <p>Each mapping is reference counted: whoever {@link #acquire acquires} a mapping must {@link
+ * #release release} it when done, and once all references are gone the mapping is unmapped
+ * right away, rather than whenever the garbage collector gets around to it. Recently used
+ * mappings are kept in a pool, up to a maximum number of mapped bytes, so that hot files are
+ * mapped only once; the pool holds a reference of its own. A pooled mapping is dropped when its
+ * file's size or modification time change, and when the store {@link #invalidate invalidates}
+ * it before modifying the file.
+ *
+ * <p>Reading a mapped page past the end of its file fails with an <code>InternalError</code>,
+ * so a file must not be truncated while mappings of it are in use. The store therefore brackets
+ * each modification of a file by {@link #beginWrite} and {@link #endWrite}: meanwhile the file
+ * is not mapped, and if mappings of it are still in use the store replaces the file instead of
+ * modifying it, so that those mappings keep the old content.
+ *
+ * <p>Modifying a mapped file other than through the store may make reads from the mapping fail,
+ * so mappings are best used for blobs which are not modified once written.
+ */
+class FSMappings {
+  private static final Logger log = LoggerFactory.getLogger(FSMappings.class);
+
+  /** The default maximum number of bytes in pooled mappings: 256 MiB. */
+  static final long DEFAULT_MAX_POOLED = 256L * 1024 * 1024;
+
+  private static final Unmapper unmapper = Unmapper.create();
+
+  private final long               maxPooled;
+  private final Map<File, Mapping> pool    = new LinkedHashMap<File, Mapping>(16, 0.75f, true);
+  private final Map<File, Integer> live    = new HashMap<File, Integer>();
+  private final Map<File, Integer> writers = new HashMap<File, Integer>();
+  private long                     pooledBytes;
+
+  /**
+   * The mapping of a whole file.
+   */
+  static final class Mapping {
+    final long                     size;
+    final long                     mtime;
+    private final File             file;
+    private final MappedByteBuffer buf;
+    private int                    refs = 1;
+
+    private Mapping(File file, MappedByteBuffer buf, long size, long mtime) {
+      this.file  = file;
+      this.buf   = buf;
+      this.size  = size;
+      this.mtime = mtime;
+    }
+
+    /**
+     * @return a new view of the mapped content, positioned at the start; only valid until the
+     *         mapping is released
+     */
+    ByteBuffer view() {
+      return buf.duplicate();
+    }
+  }
+
+  /**
+   * Create a new set of mappings.
+   *
+   * @param maxPooled the maximum number of bytes in pooled mappings; 0 to not pool mappings
+   */
+  FSMappings(long maxPooled) {
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * Get a mapping of a file, if it is large enough.
+   *
+   * @param file    the file to map
+   * @param minSize the minimum size of the file
+   * @return the mapping, with a reference for the caller; or null if the file is smaller than
+   *         <var>minSize</var> or too large to map
+   * @throws java.nio.file.NoSuchFileException if the file does not exist
+   * @throws IOException if the file could not be mapped
+   */
+  Mapping acquire(File file, long minSize) throws IOException {
+    synchronized (this) {
+      if (writers.containsKey(file))
+        return null;
+      // counts as in use while being mapped, so writers do not truncate it meanwhile
+      count(live, file, 1);
+    }
+
+    boolean reserved = true;
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      long size  = attrs.size();
+      long mtime = attrs.lastModifiedTime().toMillis();
+      if (size < minSize || size > Integer.MAX_VALUE)
+        return null;
+
+      synchronized (this) {
+        Mapping m = pool.get(file);
+        if (m != null) {
+          if (m.size == size && m.mtime == mtime) {
+            m.refs++;
+            return m;
+          }
+          invalidate(file);
+        }
+      }
+
+      Mapping m;
+      FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      try {
+        m = new Mapping(file, ch.map(FileChannel.MapMode.READ_ONLY, 0, size), size, mtime);
+        reserved = false;
+      } finally {
+        ch.close();
+      }
+
+      if (size <= maxPooled) {
+        synchronized (this) {
+          if (!pool.containsKey(file)) {
+            m.refs++;
+            pool.put(file, m);
+            pooledBytes += size;
+            trim();
+          }
+        }
+      }
+
+      return m;
+    } finally {
+      if (reserved) {
+        synchronized (this) {
+          count(live, file, -1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Release a reference to a mapping obtained from {@link #acquire}.
+   *
+   * @param m the mapping
+   */
+  synchronized void release(Mapping m) {
+    if (--m.refs == 0) {
+      unmapper.unmap(m.buf);
+      count(live, m.file, -1);
+    }
+  }
+
+  /**
+   * Drop the pooled mapping of a file, if any; to be invoked before the file is modified.
+   *
+   * @param file the file
+   */
+  synchronized void invalidate(File file) {
+    Mapping m = pool.remove(file);
+    if (m != null) {
+      pooledBytes -= m.size;
+      release(m);
+    }
+  }
+
+  /**
+   * Note that a file is about to be modified: its pooled mapping is dropped, and the file is not
+   * mapped again until {@link #endWrite} is invoked. Every invocation must be followed by one of
+   * <code>endWrite</code>, whether the modification succeeded or not.
+   *
+   * @param file the file
+   * @return true if mappings of the file are still in use, in which case the file must be
+   *         replaced rather than modified in place
+   */
+  synchronized boolean beginWrite(File file) {
+    invalidate(file);
+    count(writers, file, 1);
+    return live.containsKey(file);
+  }
+
+  /**
+   * Note that a modification of a file, started with {@link #beginWrite}, is done.
+   *
+   * @param file the file
+   */
+  synchronized void endWrite(File file) {
+    count(writers, file, -1);
+  }
+
+  /**
+   * @return the number of bytes in pooled mappings; for testing
+   */
+  synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  private static void count(Map<File, Integer> counts, File file, int delta) {
+    Integer cnt = counts.get(file);
+    int     n   = ((cnt != null) ? cnt : 0) + delta;
+    if (n > 0)
+      counts.put(file, n);
+    else
+      counts.remove(file);
+  }
+
+  private void trim() {
+    for (Iterator<Map.Entry<File, Mapping>> it = pool.entrySet().iterator();
+         pooledBytes > maxPooled && it.hasNext(); ) {
+      Mapping m = it.next().getValue();
+      it.remove();
+      pooledBytes -= m.size;
+      release(m);
+    }
+  }
+
+  /**
+   * Unmaps buffers explicitly. There is no public API for this, so it is done the way the
+   * platform does it internally, if that can be found; otherwise buffers are left to the
+   * garbage collector.
+   */
+  private abstract static class Unmapper {
+    abstract void unmap(MappedByteBuffer buf);
+
+    static Unmapper create() {
+      try {
+        // Java 9 and later
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        Field f = unsafeClass.getDeclaredField("theUnsafe");
+        f.setAccessible(true);
+        final Object unsafe = f.get(null);
+
+        return new Unmapper() {
+          @Override
+          void unmap(MappedByteBuffer buf) {
+            invoke(invokeCleaner, unsafe, buf);
+          }
+        };
+      } catch (Exception e) {
+        log.trace("No Unsafe.invokeCleaner", e);
+      }
+
+      try {
+        // Java 7 and 8
+        final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+        final Method clean   = Class.forName("sun.misc.Cleaner").getMethod("clean");
+
+        return new Unmapper() {
+          @Override
+          void unmap(MappedByteBuffer buf) {
+            Object c = invoke(cleaner, buf);
+            if (c != null)
+              invoke(clean, c);
+          }
+        };
+      } catch (Exception e) {
+        log.info("Mapped files can not be unmapped explicitly on this platform", e);
+      }
+
+      return new Unmapper() {
+        @Override
+        void unmap(MappedByteBuffer buf) {
+        }
+      };
+    }
+
+    static Object invoke(Method m, Object obj, Object... args) {
+      try {
+        return m.invoke(obj, args);
+      } catch (Exception e) {
+        log.warn("Error unmapping a file - leaving it to the garbage collector", e);
+        return null;
+      }
+    }
+  }
+}
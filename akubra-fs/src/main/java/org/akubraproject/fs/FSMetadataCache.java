@@ -0,0 +1,249 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of the existence, size and modification time of a store's files, so that the usual
+ * sequence of <code>exists()</code>, <code>getSize()</code> and <code>openInputStream()</code>
+ * on a blob does not stat its file each time.
+ *
+ * <p>The store invalidates the entries of the files it modifies itself. Changes made by other
+ * processes are picked up through a {@link WatchService} on the directories holding the cached
+ * files, which a daemon thread drains; when it reports lost events, the whole cache is cleared.
+ * Since watching is not reliable on all filesystems (e.g. network filesystems), and the number
+ * of directories watched is limited, entries in any case expire after a fixed time.
+ *
+ * <p>At most {@link #MAX_ENTRIES} files are cached; the cache is cleared when it is full.
+ */
+class FSMetadataCache {
+  private static final Logger log = LoggerFactory.getLogger(FSMetadataCache.class);
+
+  /** The maximum number of files cached. */
+  static final int MAX_ENTRIES = 100000;
+
+  /** The maximum number of directories watched. */
+  static final int MAX_WATCHED_DIRS = 4096;
+
+  private final long                ttl;
+  private final Map<File, Entry>    entries       = new ConcurrentHashMap<File, Entry>();
+  private final Map<Path, WatchKey> watched       = new ConcurrentHashMap<Path, WatchKey>();
+  private final AtomicLong          invalidations = new AtomicLong();
+  private final WatchService        watcher;
+
+  /**
+   * Create a new cache.
+   *
+   * @param ttl the time in milliseconds after which entries expire
+   * @param dir the base directory of the store, whose filesystem is watched
+   */
+  FSMetadataCache(long ttl, File dir) {
+    this.ttl = ttl;
+
+    WatchService ws;
+    try {
+      ws = dir.toPath().getFileSystem().newWatchService();
+    } catch (IOException ioe) {
+      log.warn("Could not watch '" + dir + "' for changes; cached entries are only expired",
+               ioe);
+      ws = null;
+    } catch (UnsupportedOperationException uoe) {
+      log.info("Filesystem of '" + dir + "' cannot be watched; cached entries are only expired");
+      ws = null;
+    }
+    this.watcher = ws;
+
+    if (watcher != null) {
+      Thread t = new Thread(new Runnable() {
+        public void run() {
+          watch();
+        }
+      }, "akubra-fs-watcher");
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+  /**
+   * Get the metadata of a file, from the cache if there is a current entry, else from the
+   * filesystem.
+   *
+   * @param file the file
+   * @return the metadata
+   * @throws IOException if the file could not be stat'ed
+   */
+  Entry stat(File file) throws IOException {
+    long  now = System.currentTimeMillis();
+    Entry e   = entries.get(file);
+    if (e != null && now - e.loaded < ttl)
+      return e;
+
+    // an invalidation while stat'ing may be for a change the stat did not see
+    long gen = invalidations.get();
+
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      e = new Entry(true, attrs.size(), attrs.lastModifiedTime().toMillis(), now);
+    } catch (NoSuchFileException nsfe) {
+      e = new Entry(false, 0, 0, now);
+    }
+
+    watch(file.getParentFile());
+
+    if (invalidations.get() == gen) {
+      if (entries.size() >= MAX_ENTRIES)
+        entries.clear();
+      entries.put(file, e);
+    }
+
+    return e;
+  }
+
+  /**
+   * Drop the entry of a file, because it has been or is being modified.
+   *
+   * @param file the file
+   */
+  void invalidate(File file) {
+    invalidations.incrementAndGet();
+    entries.remove(file);
+  }
+
+  /**
+   * Drop all entries.
+   */
+  void clear() {
+    invalidations.incrementAndGet();
+    entries.clear();
+  }
+
+  /**
+   * @return the number of cached entries; for testing
+   */
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Stop watching the directories and drop all entries. The cache keeps working, just without
+   * picking up changes from other processes until entries expire.
+   */
+  void close() {
+    if (watcher != null) {
+      try {
+        watcher.close();
+      } catch (IOException ioe) {
+        log.warn("Error closing the watch service", ioe);
+      }
+    }
+
+    clear();
+  }
+
+  private void watch(File dir) {
+    if (watcher == null || dir == null)
+      return;
+
+    Path path = dir.toPath();
+    if (watched.containsKey(path) || watched.size() >= MAX_WATCHED_DIRS)
+      return;
+
+    try {
+      watched.put(path, path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                      StandardWatchEventKinds.ENTRY_DELETE,
+                                      StandardWatchEventKinds.ENTRY_MODIFY));
+    } catch (NoSuchFileException nsfe) {
+      // nothing to watch yet
+    } catch (IOException ioe) {
+      log.debug("Could not watch '" + dir + "'", ioe);
+    } catch (ClosedWatchServiceException cwse) {
+      // closed
+    }
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watcher.take();
+        Path     dir = (Path) key.watchable();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            log.debug("Lost change events; clearing the cache");
+            clear();
+          } else {
+            invalidate(dir.resolve((Path) event.context()).toFile());
+          }
+        }
+
+        if (!key.reset()) {
+          // the directory is gone
+          watched.remove(dir);
+          clear();
+        }
+      }
+    } catch (InterruptedException ie) {
+      log.debug("Watcher interrupted; cached entries are only expired from now on");
+    } catch (ClosedWatchServiceException cwse) {
+      // closed
+    }
+  }
+
+  /**
+   * The metadata of a file.
+   */
+  static final class Entry {
+    /** whether the file exists */
+    final boolean exists;
+    /** the size of the file; 0 if it does not exist */
+    final long    size;
+    /** the modification time of the file; 0 if it does not exist */
+    final long    mtime;
+    final long    loaded;
+
+    Entry(boolean exists, long size, long mtime, long loaded) {
+      this.exists = exists;
+      this.size   = size;
+      this.mtime  = mtime;
+      this.loaded = loaded;
+    }
+  }
+}
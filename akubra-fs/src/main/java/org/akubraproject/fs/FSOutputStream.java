@@ -0,0 +1,143 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.akubraproject.impl.BufferPool;
+
+/**
+ * A buffered output stream writing to a file channel through a pooled direct buffer, whose size
+ * follows the expected size of the content: small blobs get a small buffer and are written in
+ * one go, large ones get the largest pooled buffer. Writes at least as large as the buffer
+ * bypass it.
+ *
+ * <p>The expected size is only a hint: the file is not extended up front, as that would merely
+ * make it sparse rather than reserve space for it, and would expose the expected length to
+ * readers while the stream is open.
+ */
+class FSOutputStream extends OutputStream {
+  private final FileChannel channel;
+  private ByteBuffer        buf;
+
+  /**
+   * Create a new stream.
+   *
+   * @param channel       the channel to write to, positioned at the start of the empty file; it
+   *                      is closed when this stream is closed
+   * @param estimatedSize the expected size of the content, or -1 if unknown
+   */
+  FSOutputStream(FileChannel channel, long estimatedSize) {
+    this.channel = channel;
+    this.buf     = BufferPool.getDefault().acquireDirect(getBufferSize(estimatedSize));
+  }
+
+  /**
+   * @param estimatedSize the expected size of the content, or -1 if unknown
+   * @return the size of the buffer to use
+   */
+  static int getBufferSize(long estimatedSize) {
+    if (estimatedSize < 0)
+      return BufferPool.DEFAULT_BUFFER_SIZE;
+
+    return (int) Math.max(BufferPool.MIN_BUFFER_SIZE,
+                          Math.min(estimatedSize, BufferPool.MAX_BUFFER_SIZE));
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    if (!buf.hasRemaining())
+      drain();
+    buf.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    if (off < 0 || len < 0 || len > b.length - off)
+      throw new IndexOutOfBoundsException();
+
+    if (len >= buf.capacity()) {
+      drain();
+      writeFully(ByteBuffer.wrap(b, off, len));
+      return;
+    }
+
+    while (len > 0) {
+      if (!buf.hasRemaining())
+        drain();
+
+      int n = Math.min(len, buf.remaining());
+      buf.put(b, off, n);
+      off += n;
+      len -= n;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    drain();
+  }
+
+  /**
+   * Writes out the buffer and closes the channel. The channel is closed and the buffer released
+   * even if writing fails.
+   */
+  @Override
+  public void close() throws IOException {
+    if (buf == null)
+      return;
+
+    try {
+      drain();
+    } finally {
+      BufferPool.getDefault().releaseDirect(buf);
+      buf = null;
+      channel.close();
+    }
+  }
+
+  private void drain() throws IOException {
+    buf.flip();
+    try {
+      writeFully(buf);
+    } finally {
+      buf.clear();
+    }
+  }
+
+  private void writeFully(ByteBuffer src) throws IOException {
+    while (src.hasRemaining())
+      channel.write(src);
+  }
+
+  private void ensureOpen() throws IOException {
+    if (buf == null)
+      throw new IOException("Stream closed");
+  }
+}
@@ -0,0 +1,230 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.akubraproject.async.AsyncBlobStore;
+
+/**
+ * Syncs files and the directories holding them to disk, shared by all connections of a store.
+ *
+ * <p>Syncs are group-committed: while one batch of files is being sync'd, the files of all
+ * further {@link #sync} calls are collected into the next batch, which is then sync'd as a
+ * whole by one of the waiting threads, and all of its waiters are released together. Within a
+ * batch each file and each directory is sync'd once, several of them in parallel.
+ *
+ * <p>The parent directory of each file is sync'd too, so that new, moved and deleted entries
+ * are durable; the files given may therefore also be directories, e.g. newly created ones, or
+ * files which no longer exist. Not all platforms allow directories to be sync'd; there only
+ * the files are.
+ */
+class FSSyncer {
+  private static final Logger log = LoggerFactory.getLogger(FSSyncer.class);
+
+  /** The default number of files sync'd in parallel. */
+  static final int DEFAULT_THREADS = 8;
+
+  private final int             threads;
+  private final ExecutorService executor;
+  private final Object          lock    = new Object();
+  private Batch                 pending = new Batch();
+  private boolean               running = false;
+  private long                  batches = 0;
+
+  /**
+   * Create a new syncer.
+   *
+   * @param threads the maximum number of files to sync in parallel
+   */
+  FSSyncer(int threads) {
+    this.threads  = threads;
+    this.executor = (threads > 1) ?
+        AsyncBlobStore.newBoundedExecutor(threads - 1, threads - 1, "akubra-fs-sync") : null;
+  }
+
+  /**
+   * Sync the given files and their parent directories. This returns once a batch including
+   * all of them has been sync'd. Errors are logged, not thrown.
+   *
+   * @param files the files to sync
+   */
+  void sync(Collection<File> files) {
+    if (files.isEmpty())
+      return;
+
+    Batch   batch;
+    boolean interrupted = false;
+
+    synchronized (lock) {
+      batch = pending;
+      batch.files.addAll(files);
+
+      /* A batch which is not done is either the running one or the pending one; so if none
+       * is running, ours is the pending one, and we get to run it.
+       */
+      while (!batch.done && running) {
+        try {
+          lock.wait();
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
+      }
+
+      if (!batch.done) {
+        running = true;
+        pending = new Batch();
+      }
+    }
+
+    try {
+      if (!batch.done) {
+        try {
+          interrupted |= batch.run();
+        } finally {
+          synchronized (lock) {
+            batch.done = true;
+            running    = false;
+            batches++;
+            lock.notifyAll();
+          }
+        }
+      }
+    } finally {
+      if (interrupted)
+        Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return the number of batches sync'd so far; for testing
+   */
+  long getBatchCount() {
+    synchronized (lock) {
+      return batches;
+    }
+  }
+
+  /**
+   * Sync a single file or directory.
+   *
+   * @param file the file or directory to sync
+   */
+  void fsync(File file) {
+    try {
+      FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      try {
+        ch.force(true);
+      } finally {
+        ch.close();
+      }
+    } catch (NoSuchFileException nsfe) {
+      log.debug("Not sync'ing removed file '" + file + "'");
+    } catch (IOException ioe) {
+      if (file.isDirectory())
+        log.debug("Error sync'ing directory '" + file + "'", ioe);
+      else
+        log.warn("Error sync'ing file '" + file + "'", ioe);
+    }
+  }
+
+  /**
+   * The files to sync in one go.
+   */
+  private class Batch {
+    final Set<File> files = new LinkedHashSet<File>();
+    boolean         done  = false;
+
+    /**
+     * Sync the files and their directories, spreading them over the executor's threads and
+     * the current one. Must only be invoked once no more files can be added.
+     *
+     * @return true if the current thread was interrupted while waiting for the other threads
+     */
+    boolean run() {
+      Set<File> all = new LinkedHashSet<File>(files);
+      for (File file : files) {
+        File dir = file.getParentFile();
+        if (dir != null)
+          all.add(dir);
+      }
+
+      final Queue<File> work = new ConcurrentLinkedQueue<File>(all);
+
+      Runnable worker = new Runnable() {
+        public void run() {
+          File file;
+          while ((file = work.poll()) != null)
+            fsync(file);
+        }
+      };
+
+      List<Future<?>> helpers = new ArrayList<Future<?>>();
+      int             num     = Math.min(threads, all.size()) - 1;
+      try {
+        for (int idx = 0; idx < num; idx++)
+          helpers.add(executor.submit(worker));
+      } catch (RejectedExecutionException ree) {
+        log.debug("Sync'ing with fewer threads", ree);
+      }
+
+      worker.run();
+
+      boolean interrupted = false;
+      for (Future<?> helper : helpers) {
+        while (true) {
+          try {
+            helper.get();
+            break;
+          } catch (InterruptedException ie) {
+            interrupted = true;
+          } catch (ExecutionException ee) {
+            log.error("Error sync'ing files", ee.getCause());
+            break;
+          }
+        }
+      }
+
+      return interrupted;
+    }
+  }
+}
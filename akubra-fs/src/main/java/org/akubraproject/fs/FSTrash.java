@@ -0,0 +1,216 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.akubraproject.async.AsyncBlobStore;
+
+/**
+ * Deferred deletes, shared by all connections of a store: a deleted file is renamed into the
+ * trash directory of its base directory, and removed from there by background reapers, so that
+ * the deleting thread does not wait for the filesystem to free the file's blocks, which takes
+ * long for large files on some filesystems.
+ *
+ * <p>The reapers drain the queue of trashed files in batches. The queue is bounded: when it is
+ * full, the deleting thread removes the file itself, which slows deletes down to the speed the
+ * filesystem can sustain. Files left in the trash, e.g. by a crash, are queued again when the
+ * trash is next opened.
+ */
+class FSTrash {
+  private static final Logger log = LoggerFactory.getLogger(FSTrash.class);
+
+  /** The maximum number of files a reaper takes off the queue at once. */
+  static final int BATCH_SIZE = 64;
+
+  private final Map<File, File>     trashDirs = new HashMap<File, File>();
+  private final BlockingQueue<File> queue;
+  private final ExecutorService     executor;
+  private final AtomicLong          seq       = new AtomicLong(System.currentTimeMillis() * 1000);
+  private final AtomicLong          reaped    = new AtomicLong();
+  private final AtomicLong          direct    = new AtomicLong();
+
+  /**
+   * Create a new trash, and start the reapers.
+   *
+   * @param baseDirs  the base directories of the store
+   * @param trashDirs the trash directories, one per base directory, on the same filesystem as
+   *                  it but outside of it; they are created if they do not exist
+   * @param threads   the number of reapers
+   * @param maxQueued the maximum number of files waiting to be removed
+   * @throws IllegalArgumentException if the number of trash directories does not match the
+   *                                  number of base directories
+   * @throws IOException if a trash directory could not be created or listed
+   */
+  FSTrash(File[] baseDirs, File[] trashDirs, int threads, int maxQueued)
+      throws IllegalArgumentException, IOException {
+    if (trashDirs.length != baseDirs.length)
+      throw new IllegalArgumentException("Expected " + baseDirs.length +
+                                         " trash directories, got " + trashDirs.length);
+
+    this.queue = new LinkedBlockingQueue<File>(maxQueued);
+
+    List<File> leftover = new ArrayList<File>();
+    for (int idx = 0; idx < baseDirs.length; idx++) {
+      Files.createDirectories(trashDirs[idx].toPath());
+      this.trashDirs.put(baseDirs[idx], trashDirs[idx]);
+
+      File[] files = trashDirs[idx].listFiles();
+      if (files == null)
+        throw new IOException("Error listing trash directory '" + trashDirs[idx] + "'");
+      for (File f : files)
+        leftover.add(f);
+    }
+
+    this.executor = AsyncBlobStore.newBoundedExecutor(threads, threads, "akubra-fs-reaper");
+    for (int idx = 0; idx < threads; idx++) {
+      executor.execute(new Runnable() {
+        public void run() {
+          reap();
+        }
+      });
+    }
+
+    if (!leftover.isEmpty())
+      log.info("Removing " + leftover.size() + " files left in the trash");
+    for (File f : leftover)
+      enqueue(f);
+  }
+
+  /**
+   * Delete a file, by moving it into the trash. If that fails, e.g. because the trash is on
+   * another filesystem, the file is deleted directly.
+   *
+   * @param file    the file to delete
+   * @param baseDir the base directory the file is in
+   * @return true if the file was deleted, false if it did not exist
+   * @throws IOException if the file could not be deleted
+   */
+  boolean delete(File file, File baseDir) throws IOException {
+    File trashDir = trashDirs.get(baseDir);
+
+    while (true) {
+      File trashed = new File(trashDir, seq.incrementAndGet() + "-" + file.getName());
+      try {
+        Files.move(file.toPath(), trashed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        enqueue(trashed);
+        return true;
+      } catch (NoSuchFileException nsfe) {
+        if (!file.exists())
+          return false;
+        throw nsfe;
+      } catch (FileAlreadyExistsException faee) {
+        // left over from a previous run; try the next name
+      } catch (IOException ioe) {
+        log.warn("Error moving '" + file + "' into the trash; deleting it directly", ioe);
+        direct.incrementAndGet();
+        return Files.deleteIfExists(file.toPath());
+      }
+    }
+  }
+
+  /**
+   * @return the trash directory of the given base directory
+   */
+  File getTrashDir(File baseDir) {
+    return trashDirs.get(baseDir);
+  }
+
+  /**
+   * @return the number of files waiting to be removed
+   */
+  int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * @return the number of files removed by the reapers
+   */
+  long getReapedCount() {
+    return reaped.get();
+  }
+
+  /**
+   * @return the number of files removed by the deleting threads because the queue was full
+   */
+  long getDirectCount() {
+    return direct.get();
+  }
+
+  /**
+   * Stop the reapers. Files still in the trash are removed when the trash is next opened.
+   */
+  void close() {
+    executor.shutdownNow();
+  }
+
+  private void enqueue(File trashed) {
+    if (!queue.offer(trashed)) {
+      direct.incrementAndGet();
+      remove(trashed);
+    }
+  }
+
+  private void reap() {
+    List<File> batch = new ArrayList<File>(BATCH_SIZE);
+    try {
+      while (true) {
+        batch.add(queue.take());
+        queue.drainTo(batch, BATCH_SIZE - 1);
+
+        for (File f : batch) {
+          remove(f);
+          reaped.incrementAndGet();
+        }
+        batch.clear();
+      }
+    } catch (InterruptedException ie) {
+      log.debug("Reaper stopped");
+    }
+  }
+
+  private void remove(File trashed) {
+    try {
+      Files.deleteIfExists(trashed.toPath());
+    } catch (IOException ioe) {
+      log.warn("Error removing '" + trashed + "' from the trash", ioe);
+    }
+  }
+}
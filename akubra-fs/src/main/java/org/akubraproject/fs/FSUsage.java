@@ -0,0 +1,75 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+/**
+ * The number of blobs and the bytes they take up, in a whole store or under a prefix; see
+ * {@link FSUsageConnection}.
+ */
+public final class FSUsage {
+  private final long blobCount;
+  private final long byteCount;
+
+  /**
+   * Create a new instance.
+   *
+   * @param blobCount the number of blobs
+   * @param byteCount the total size of the blobs
+   */
+  public FSUsage(long blobCount, long byteCount) {
+    this.blobCount = blobCount;
+    this.byteCount = byteCount;
+  }
+
+  /**
+   * @return the number of blobs
+   */
+  public long getBlobCount() {
+    return blobCount;
+  }
+
+  /**
+   * @return the total size of the blobs, in bytes
+   */
+  public long getByteCount() {
+    return byteCount;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof FSUsage))
+      return false;
+
+    FSUsage other = (FSUsage) o;
+    return blobCount == other.blobCount && byteCount == other.byteCount;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (blobCount * 31 + byteCount);
+  }
+
+  @Override
+  public String toString() {
+    return "FSUsage[blobs=" + blobCount + ", bytes=" + byteCount + "]";
+  }
+}
@@ -0,0 +1,51 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.util.Map;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Implemented by the connections of an {@link FSBlobStore}, to report how many blobs the store
+ * holds and how large they are, without listing and stat'ing them. The numbers come from the
+ * store's usage ledger, see {@link FSBlobStore#setUsageLedger}.
+ */
+public interface FSUsageConnection extends BlobStoreConnection {
+  /**
+   * Get the usage of the whole store.
+   *
+   * @return the usage
+   * @throws UnsupportedOperationException if the store does not keep a usage ledger
+   */
+  FSUsage getUsage() throws UnsupportedOperationException;
+
+  /**
+   * Get the usage per top-level prefix: the blobs are grouped by their ids up to and including
+   * the first '/' after the scheme, such as <code>file:images/</code>; blobs whose paths have no
+   * '/' are grouped under <code>file:</code>.
+   *
+   * @return the usage by prefix, sorted by prefix; prefixes without blobs may be missing
+   * @throws UnsupportedOperationException if the store does not keep a usage ledger
+   */
+  Map<String, FSUsage> getUsageByPrefix() throws UnsupportedOperationException;
+}
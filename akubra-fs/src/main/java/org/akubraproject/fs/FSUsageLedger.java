@@ -0,0 +1,272 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+import java.net.URI;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps count of the blobs in a store and of their total size, overall and per top-level
+ * prefix (see {@link FSUsageConnection#getUsageByPrefix}). The counts are updated as the store
+ * writes, deletes, moves and copies files, and written to a ledger file at a fixed interval by
+ * a daemon thread, as well as when the ledger is closed.
+ *
+ * <p>The ledger file is a text file with a header line followed by one line per prefix, holding
+ * the prefix, the number of blobs and the number of bytes separated by tabs. It is replaced
+ * atomically when written. If it is missing or cannot be read, the counts are rebuilt by a
+ * {@link #rescan} of all files. After a crash the counts miss the changes since the ledger was
+ * last written, and concurrent writes to the same blob may skew them; a rescan, while the store
+ * is not otherwise in use, sets them right again.
+ */
+class FSUsageLedger {
+  private static final Logger  log    = LoggerFactory.getLogger(FSUsageLedger.class);
+  private static final String  HEADER = "akubra-usage 1";
+  private static final Charset UTF8   = Charset.forName("UTF-8");
+
+  private final File                      file;
+  private final FSLayout                  layout;
+  private final SortedMap<String, long[]> counts = new TreeMap<String, long[]>();
+  private final Thread                    writer;
+  private boolean                         dirty;
+
+  /**
+   * Open the ledger, and start writing it periodically.
+   *
+   * @param file     the ledger file; must not be inside the store's base directories
+   * @param layout   the layout of the store's files
+   * @param interval the time in milliseconds between writes of the ledger file
+   * @throws IOException if the ledger file could not be written, or the files not rescanned
+   */
+  FSUsageLedger(File file, FSLayout layout, final long interval) throws IOException {
+    this.file   = file;
+    this.layout = layout;
+
+    if (!load()) {
+      log.info("Usage ledger '" + file + "' not found or unreadable - rescanning the files");
+      rescan();
+    }
+
+    writer = new Thread(new Runnable() {
+      public void run() {
+        try {
+          while (true) {
+            Thread.sleep(interval);
+            try {
+              write();
+            } catch (IOException ioe) {
+              log.warn("Error writing usage ledger '" + FSUsageLedger.this.file + "'", ioe);
+            }
+          }
+        } catch (InterruptedException ie) {
+          // closed
+        }
+      }
+    }, "akubra-fs-usage");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Get the prefix a blob is counted under.
+   *
+   * @param path the (normalized) scheme-specific part of the blob's id
+   * @return the prefix
+   */
+  static String getPrefix(String path) {
+    int slash = path.indexOf('/');
+    return FSBlob.scheme + ":" + ((slash < 0) ? "" : path.substring(0, slash + 1));
+  }
+
+  /**
+   * Record a change of a blob.
+   *
+   * @param path    the (normalized) scheme-specific part of the blob's id
+   * @param oldSize the size of the blob before the change; -1 if it did not exist
+   * @param newSize the size of the blob after the change; -1 if it does not exist anymore
+   */
+  synchronized void changed(String path, long oldSize, long newSize) {
+    long count = ((newSize >= 0) ? 1 : 0) - ((oldSize >= 0) ? 1 : 0);
+    long bytes = Math.max(newSize, 0) - Math.max(oldSize, 0);
+    if (count == 0 && bytes == 0)
+      return;
+
+    String prefix = getPrefix(path);
+    long[] c      = counts.get(prefix);
+    if (c == null)
+      counts.put(prefix, c = new long[2]);
+
+    c[0] += count;
+    c[1] += bytes;
+    if (c[0] <= 0 && c[1] <= 0)
+      counts.remove(prefix);
+
+    dirty = true;
+  }
+
+  /**
+   * @return the usage of the whole store
+   */
+  synchronized FSUsage getUsage() {
+    long blobs = 0;
+    long bytes = 0;
+    for (long[] c : counts.values()) {
+      blobs += c[0];
+      bytes += c[1];
+    }
+
+    return new FSUsage(blobs, bytes);
+  }
+
+  /**
+   * @return the usage by prefix, sorted by prefix
+   */
+  synchronized SortedMap<String, FSUsage> getUsageByPrefix() {
+    SortedMap<String, FSUsage> res = new TreeMap<String, FSUsage>();
+    for (Map.Entry<String, long[]> e : counts.entrySet())
+      res.put(e.getKey(), new FSUsage(e.getValue()[0], e.getValue()[1]));
+
+    return res;
+  }
+
+  /**
+   * Rebuild the counts from the files, and write the ledger file. This walks and stat's all
+   * the files, so it is slow on large stores; changes made meanwhile may be miscounted.
+   *
+   * @throws IOException if the files could not be read or the ledger could not be written
+   */
+  void rescan() throws IOException {
+    SortedMap<String, long[]> scanned = new TreeMap<String, long[]>();
+
+    Iterator<URI> ids = FSBlobIdIterator.listAll(layout, null);
+    while (ids.hasNext()) {
+      String path = ids.next().getRawSchemeSpecificPart();
+
+      long size;
+      try {
+        size = Files.size(layout.getFile(path).toPath());
+      } catch (NoSuchFileException nsfe) {
+        continue;       // removed meanwhile
+      }
+
+      String prefix = getPrefix(path);
+      long[] c      = scanned.get(prefix);
+      if (c == null)
+        scanned.put(prefix, c = new long[2]);
+      c[0]++;
+      c[1] += size;
+    }
+
+    synchronized (this) {
+      counts.clear();
+      counts.putAll(scanned);
+      dirty = true;
+    }
+
+    write();
+  }
+
+  /**
+   * Write the ledger file, if anything changed since it was last written.
+   *
+   * @throws IOException if the file could not be written
+   */
+  synchronized void write() throws IOException {
+    if (!dirty)
+      return;
+
+    File   tmp = new File(file.getPath() + ".tmp");
+    Writer out = Files.newBufferedWriter(tmp.toPath(), UTF8);
+    try {
+      out.write(HEADER + "\n");
+      for (Map.Entry<String, long[]> e : counts.entrySet())
+        out.write(e.getKey() + "\t" + e.getValue()[0] + "\t" + e.getValue()[1] + "\n");
+    } finally {
+      out.close();
+    }
+
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+    dirty = false;
+  }
+
+  /**
+   * Stop the periodic writes, and write the ledger file a last time.
+   *
+   * @throws IOException if the file could not be written
+   */
+  void close() throws IOException {
+    writer.interrupt();
+    write();
+  }
+
+  /**
+   * Read the ledger file.
+   *
+   * @return false if the file does not exist or is not a valid ledger
+   */
+  private synchronized boolean load() throws IOException {
+    BufferedReader in;
+    try {
+      in = Files.newBufferedReader(file.toPath(), UTF8);
+    } catch (NoSuchFileException nsfe) {
+      return false;
+    }
+
+    try {
+      if (!HEADER.equals(in.readLine()))
+        return false;
+
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split("\t");
+        if (fields.length != 3)
+          return false;
+        counts.put(fields[0],
+                   new long[] { Long.parseLong(fields[1]), Long.parseLong(fields[2]) });
+      }
+
+      return true;
+    } catch (NumberFormatException nfe) {
+      return false;
+    } finally {
+      in.close();
+    }
+  }
+}
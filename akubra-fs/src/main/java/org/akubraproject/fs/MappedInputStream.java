@@ -0,0 +1,129 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.InvalidMarkException;
+
+/**
+ * An input stream over (a range of) a mapped file. The stream holds a reference to the mapping
+ * until it is closed; all methods are synchronized, so that closing the stream, which may unmap
+ * the file, cannot race with a read.
+ */
+class MappedInputStream extends InputStream {
+  private final FSMappings   mappings;
+  private final ByteBuffer   buf;
+  private FSMappings.Mapping mapping;
+
+  /**
+   * Create a new stream.
+   *
+   * @param mappings the mappings the mapping was acquired from
+   * @param mapping  the mapping; it is released when the stream is closed
+   * @param offset   the offset of the first byte to read
+   * @param length   the maximum number of bytes to read; -1 to read to the end
+   */
+  MappedInputStream(FSMappings mappings, FSMappings.Mapping mapping, long offset, long length) {
+    this.mappings = mappings;
+    this.mapping  = mapping;
+    this.buf      = mapping.view();
+
+    int start = (int) Math.min(offset, buf.capacity());
+    buf.position(start);
+    if (length >= 0 && length < buf.capacity() - start)
+      buf.limit(start + (int) length);
+  }
+
+  @Override
+  public synchronized int read() throws IOException {
+    ensureOpen();
+    return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+  }
+
+  @Override
+  public synchronized int read(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    if (off < 0 || len < 0 || len > b.length - off)
+      throw new IndexOutOfBoundsException();
+    if (len == 0)
+      return 0;
+    if (!buf.hasRemaining())
+      return -1;
+
+    int n = Math.min(len, buf.remaining());
+    buf.get(b, off, n);
+    return n;
+  }
+
+  @Override
+  public synchronized long skip(long n) throws IOException {
+    ensureOpen();
+    if (n <= 0)
+      return 0;
+
+    int skipped = (int) Math.min(n, buf.remaining());
+    buf.position(buf.position() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public synchronized int available() throws IOException {
+    ensureOpen();
+    return buf.remaining();
+  }
+
+  @Override
+  public boolean markSupported() {
+    return true;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+    buf.mark();
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    ensureOpen();
+    try {
+      buf.reset();
+    } catch (InvalidMarkException ime) {
+      throw new IOException("Stream not marked");
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (mapping != null) {
+      mappings.release(mapping);
+      mapping = null;
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (mapping == null)
+      throw new IOException("Stream closed");
+  }
+}
@@ -0,0 +1,32 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+/**
+ * TCK test suite for {@link FSBlobStore} with the metadata cache turned on.
+ */
+public class TestCachedFSBlobStoreTCK extends TestFSBlobStoreTCK {
+  public TestCachedFSBlobStoreTCK() throws Exception {
+    super(1, false);
+    ((FSBlobStore) store).setMetadataCacheTTL(60000);
+  }
+}
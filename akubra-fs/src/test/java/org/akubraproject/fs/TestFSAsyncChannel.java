@@ -0,0 +1,201 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.OutputStream;
+
+import java.net.URI;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.MissingBlobException;
+import org.akubraproject.async.AsyncBlobStoreConnection;
+import org.akubraproject.async.AsyncCapableConnection;
+
+/**
+ * Unit tests for the asynchronous channels of {@link FSBlobStore}.
+ */
+public class TestFSAsyncChannel {
+  private static File            baseDir;
+  private static File            snapDir;
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    baseDir  = FSTestUtil.createTempDir();
+    snapDir  = FSTestUtil.createTempDir();
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @AfterClass
+  public static void destroy() {
+    executor.shutdownNow();
+    FSTestUtil.rmdir(baseDir);
+    FSTestUtil.rmdir(snapDir);
+  }
+
+  /**
+   * Blobs should be readable and writable through the channels, writes should be seen by the
+   * store, and open channels should be closed with their connection.
+   */
+  @Test
+  public void testChannel() throws Exception {
+    FSBlobStore store = new FSBlobStore(URI.create("urn:store"), baseDir);
+    store.setMetadataCacheTTL(60000);
+    FSAsyncChannelConnection con =
+        (FSAsyncChannelConnection) store.openConnection(null, null);
+    write(con, "file:chan", "hello");
+    assertEquals(con.getBlob(URI.create("file:chan"), null).getSize(), 5L);
+
+    AsynchronousFileChannel out = con.openAsyncChannel(URI.create("file:chan"), true, executor);
+    assertEquals(out.write(ByteBuffer.wrap(" world".getBytes("UTF-8")), 5).get().intValue(), 6);
+    out.close();
+    assertEquals(con.getBlob(URI.create("file:chan"), null).getSize(), 11L);
+
+    final AsynchronousFileChannel in =
+        con.openAsyncChannel(URI.create("file:chan"), false, executor);
+    final ByteBuffer     buf   = ByteBuffer.allocate(100);
+    final AtomicInteger  read  = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+    in.read(buf, 6, null, new CompletionHandler<Integer, Void>() {
+      public void completed(Integer n, Void attachment) {
+        read.set(n);
+        latch.countDown();
+      }
+
+      public void failed(Throwable t, Void attachment) {
+        latch.countDown();
+      }
+    });
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(read.get(), 5);
+    assertEquals(new String(buf.array(), 0, 5, "UTF-8"), "world");
+
+    try {
+      in.write(ByteBuffer.wrap(new byte[1]), 0).get();
+      fail("Did not get expected exception");
+    } catch (Exception e) {
+    }
+
+    try {
+      con.openAsyncChannel(URI.create("file:missing"), false, executor);
+      fail("Did not get expected MissingBlobException");
+    } catch (MissingBlobException mbe) {
+    }
+
+    con.close();
+    assertFalse(in.isOpen());
+  }
+
+  /**
+   * The asynchronous view should read whole blobs of any size, and report missing ones.
+   */
+  @Test
+  public void testReadAll() throws Exception {
+    FSBlobStore store = new FSBlobStore(URI.create("urn:store"), baseDir);
+    BlobStoreConnection con = store.openConnection(null, null);
+    AsyncBlobStoreConnection async =
+        ((AsyncCapableConnection) con).getAsyncConnection(executor);
+
+    byte[] big = new byte[3 * 1024 * 1024 + 17];
+    new Random(42).nextBytes(big);
+    OutputStream out = con.getBlob(URI.create("file:big"), null).openOutputStream(-1, true);
+    out.write(big);
+    out.close();
+    write(con, "file:empty", "");
+
+    assertEquals(async.readAll(URI.create("file:big")).get(), big);
+    assertEquals(async.readAll(URI.create("file:empty")).get(), new byte[0]);
+
+    try {
+      async.readAll(URI.create("file:missing")).get();
+      fail("Did not get expected MissingBlobException");
+    } catch (ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof MissingBlobException);
+    }
+
+    async.close();
+    try {
+      async.readAll(URI.create("file:big")).get();
+      fail("Did not get expected IllegalStateException");
+    } catch (ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  /**
+   * Channels on a read-only snapshot should not be writable.
+   */
+  @Test
+  public void testReadOnly() throws Exception {
+    FSBlobStore store = new FSBlobStore(URI.create("urn:store"), baseDir);
+    BlobStoreConnection con = store.openConnection(null, null);
+    write(con, "file:snapped", "snapped");
+    con.close();
+
+    File snap = new File(snapDir, "snap");
+    store.snapshot(snap);
+
+    FSBlobStore snapStore = store.openSnapshot(URI.create("urn:snap"), snap);
+    FSAsyncChannelConnection scon =
+        (FSAsyncChannelConnection) snapStore.openConnection(null, null);
+    try {
+      scon.openAsyncChannel(URI.create("file:snapped"), true, null);
+      fail("Did not get expected UnsupportedOperationException");
+    } catch (UnsupportedOperationException uoe) {
+    }
+
+    AsynchronousFileChannel in = scon.openAsyncChannel(URI.create("file:snapped"), false, null);
+    assertEquals(in.size(), 7L);
+    in.close();
+    scon.close();
+  }
+
+  private static void write(BlobStoreConnection con, String id, String content)
+      throws Exception {
+    OutputStream out = con.getBlob(URI.create(id), null).openOutputStream(-1, true);
+    IOUtils.write(content, out, "UTF-8");
+    out.close();
+  }
+}
@@ -21,17 +21,27 @@
  */
 package org.akubraproject.fs;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
 import java.io.OutputStream;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.akubraproject.MissingBlobException;
 import org.akubraproject.UnsupportedIdException;
 import org.akubraproject.impl.StreamManager;
+import org.apache.commons.io.IOUtils;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -40,6 +50,7 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 /**
  * Unit tests for {@link FSBlob}.
@@ -50,6 +61,7 @@ public class TestFSBlob {
   private static URI id;
 
   private static File baseDir;
+  private static FSLayout layout;
   private static FSBlobStoreConnection conn;
   private static StreamManager mgr;
 
@@ -58,8 +70,9 @@ public class TestFSBlob {
     id = new URI("urn:example:store");
     baseDir = FSTestUtil.createTempDir();
     FSBlobStore store = new FSBlobStore(id, baseDir);
+    layout = store.getLayout();
     mgr = new StreamManager();
-    conn = new FSBlobStoreConnection(store, baseDir, mgr, true);
+    conn = new FSBlobStoreConnection(store, mgr, true);
   }
 
   @AfterClass
@@ -141,12 +154,127 @@ public class TestFSBlob {
     assertMoved(hints);
   }
 
+  /**
+   * Channels should be file channels on the blob's file.
+   */
+  @Test
+  public void testChannel() throws Exception {
+    try {
+      getFSBlob("file:channel").openChannel(false);
+      fail("Did not get expected MissingBlobException");
+    } catch (MissingBlobException mbe) {
+    }
+
+    FSBlob blob = createFSBlob("file:channel");
+
+    SeekableByteChannel ch = blob.openChannel(true);
+    try {
+      assertTrue(ch instanceof FileChannel);
+      FileChannel fc = (FileChannel) ch;
+
+      fc.write(ByteBuffer.wrap("FS".getBytes()), 0);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      assertEquals(fc.transferTo(2, 100, Channels.newChannel(out)), 9);
+      assertEquals(out.toString(), "blob test");
+    } finally {
+      ch.close();
+    }
+
+    assertFalse(ch.isOpen());
+    assertEquals(IOUtils.toString(blob.openInputStream()), "FSblob test");
+
+    blob.delete();
+  }
+
+  /**
+   * Blobs at least as large as the map threshold should be read through mappings.
+   */
+  @Test
+  public void testMappedRead() throws Exception {
+    Map<String, String> hints = new HashMap<String, String>();
+    hints.put(FSBlobStore.MAP_THRESHOLD, "5");
+
+    FSBlob blob = (FSBlob) conn.getBlob(URI.create("file:mapped"), hints);
+    try {
+      blob.openInputStream();
+      fail("Did not get expected MissingBlobException");
+    } catch (MissingBlobException mbe) {
+    }
+
+    OutputStream out = blob.openOutputStream(-1, false);
+    out.write("mapped blob".getBytes());
+    out.close();
+
+    InputStream in = blob.openInputStream();
+    assertEquals(IOUtils.toString(in), "mapped blob");
+    in.close();
+    assertEquals(conn.getMappings().getPooledBytes(), 11L);
+    assertEquals(IOUtils.toString(blob.openInputStream(7, 3)), "blo");
+    assertEquals(IOUtils.toString(blob.openInputStream(7, -1)), "blob");
+    assertEquals(IOUtils.toString(blob.openInputStream(20, -1)), "");
+
+    // modifications should be seen
+    out = blob.openOutputStream(-1, true);
+    assertEquals(conn.getMappings().getPooledBytes(), 0L);
+    out.write("remapped blob".getBytes());
+    out.close();
+    assertEquals(IOUtils.toString(blob.openInputStream()), "remapped blob");
+    assertEquals(conn.getMappings().getPooledBytes(), 13L);
+
+    // small blobs should not be mapped
+    hints.put(FSBlobStore.MAP_THRESHOLD, "100");
+    blob = (FSBlob) conn.getBlob(URI.create("file:mapped"), hints);
+    assertEquals(IOUtils.toString(blob.openInputStream()), "remapped blob");
+
+    blob.delete();
+    assertEquals(conn.getMappings().getPooledBytes(), 0L);
+  }
+
+  /**
+   * Overwriting or truncating a blob while it is being read through a mapping should not affect
+   * the reader, which should keep reading the old content.
+   */
+  @Test
+  public void testMappedOverwrite() throws Exception {
+    Map<String, String> hints = new HashMap<String, String>();
+    hints.put(FSBlobStore.MAP_THRESHOLD, "0");
+
+    byte[] old = new byte[1024 * 1024];
+    Arrays.fill(old, (byte) 'a');
+    FSBlob blob = (FSBlob) conn.getBlob(URI.create("file:mappedOverwrite"), hints);
+    OutputStream out = blob.openOutputStream(-1, false);
+    out.write(old);
+    out.close();
+
+    InputStream in = blob.openInputStream();
+    assertEquals(in.read(), 'a');
+
+    out = blob.openOutputStream(-1, true);
+    out.write("new".getBytes());
+    out.close();
+    assertEquals(IOUtils.toByteArray(in).length, old.length - 1);
+    in.close();
+    assertEquals(IOUtils.toString(blob.openInputStream()), "new");
+
+    // the same goes for writable channels
+    in = blob.openInputStream();
+    SeekableByteChannel ch = blob.openChannel(true);
+    ch.truncate(0);
+    ch.close();
+    assertEquals(IOUtils.toString(in), "new");
+    in.close();
+    assertEquals(blob.getSize(), 0L);
+
+    blob.delete();
+  }
+
   private static FSBlob getFSBlob(String id) {
     try {
       URI uri = null;
       if (id != null)
         uri = new URI(id);
-      return new FSBlob(conn, baseDir, uri, mgr, null);
+      return new FSBlob(conn, layout, uri, mgr, null);
     } catch (URISyntaxException e) {
       throw new RuntimeException(e);
     } catch (NullPointerException e) {
@@ -27,10 +27,16 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
+import org.akubraproject.BlobIdPage;
+
 import static org.testng.Assert.assertEquals;
 
 /**
@@ -42,6 +48,7 @@ public class TestFSBlobIdIterator {
   private static File tmpDir;
   private static File emptyDir;
   private static File multiDir;
+  private static File hashedDir;
 
   /**
    * Sets up the test directories.
@@ -66,6 +73,15 @@ public class TestFSBlobIdIterator {
     FSTestUtil.add(multiDir, "dir-nonempty/subdir1/file-5");
     FSTestUtil.add(multiDir, "dir-nonempty/subdir1/file-6");
     FSTestUtil.add(multiDir, "dir-nonempty/subdir1/file 7"); // ignore; non-uri
+    hashedDir = new File(tmpDir, "hashed");
+    hashedDir.mkdir();
+    FSLayout layout = new FSLayout(hashedDir, 2);
+    for (String path : new String[] { "file-1", "file-2", "dir/file-3", "dir/sub/file-4" }) {
+      File file = layout.getFile(path);
+      layout.makeParentDirs(file);
+      file.createNewFile();
+    }
+    FSTestUtil.add(hashedDir, "file-5");  // ignore; outside the hash dirs
   }
 
   /**
@@ -104,10 +120,80 @@ public class TestFSBlobIdIterator {
     assertEquals(getSet(getIter(multiDir, prefix + "dir-n")).size(), 4);
   }
 
+  /**
+   * Prefixes reaching into subdirectories should select exactly the ids in them, in order.
+   */
+  @Test
+  public void testDeepPrefix() {
+    assertEquals(getList(getIter(multiDir, "file:dir-nonempty/sub")),
+                 Arrays.asList(URI.create("file:dir-nonempty/subdir1/file-5"),
+                               URI.create("file:dir-nonempty/subdir1/file-6")));
+    assertEquals(getList(getIter(multiDir, "file:dir-nonempty/subdir1/file-6")),
+                 Arrays.asList(URI.create("file:dir-nonempty/subdir1/file-6")));
+    assertEquals(getList(getIter(multiDir, "file:dir-nonempty/file")),
+                 Arrays.asList(URI.create("file:dir-nonempty/file-3"),
+                               URI.create("file:dir-nonempty/file-4")));
+    assertEquals(getList(getIter(multiDir, "file:dir-nonempty")).size(), 4);
+    assertEquals(getList(getIter(multiDir, "file:dir-nonempty/file-3/")).size(), 0);
+    assertEquals(getList(getIter(multiDir, "file:dir-nonempty/subdir1/file-7")).size(), 0);
+    assertEquals(getList(getIter(multiDir, "urn:")).size(), 0);
+  }
+
+  /**
+   * Ids should come out sorted, starting after startAfter if provided.
+   */
+  @Test
+  public void testSortedWithStartAfter() {
+    List<URI> all = getList(new FSBlobIdIterator(multiDir, null, null));
+    assertEquals(all.size(), 6);
+
+    List<URI> sorted = new ArrayList<URI>(all);
+    Collections.sort(sorted, BlobIdPage.ID_ORDER);
+    assertEquals(all, sorted);
+
+    for (int idx = 0; idx < all.size(); idx++) {
+      assertEquals(getList(new FSBlobIdIterator(multiDir, null, all.get(idx))),
+                   all.subList(idx + 1, all.size()));
+    }
+
+    assertEquals(getList(new FSBlobIdIterator(multiDir, null, URI.create("file:dir-nonempty/"))),
+                 all.subList(0, all.size()));
+    assertEquals(getList(new FSBlobIdIterator(multiDir, null, URI.create("file:e"))),
+                 all.subList(4, all.size()));
+    assertEquals(getList(new FSBlobIdIterator(multiDir, "file:dir-n", all.get(2))),
+                 all.subList(3, 4));
+  }
+
+  /**
+   * Hash directories should not be part of the ids; startAfter should filter the unsorted ids.
+   */
+  @Test
+  public void testHashed() {
+    Set<URI> all = getSet(new FSBlobIdIterator(hashedDir, 2, null, null));
+    assertEquals(all, new HashSet<URI>(Arrays.asList(URI.create("file:file-1"),
+        URI.create("file:file-2"), URI.create("file:dir/file-3"),
+        URI.create("file:dir/sub/file-4"))));
+
+    assertEquals(getSet(new FSBlobIdIterator(hashedDir, 2, "file:dir/", null)),
+                 new HashSet<URI>(Arrays.asList(URI.create("file:dir/file-3"),
+                                                URI.create("file:dir/sub/file-4"))));
+    assertEquals(getSet(new FSBlobIdIterator(hashedDir, 2, null, URI.create("file:dir/zz"))),
+                 new HashSet<URI>(Arrays.asList(URI.create("file:file-1"),
+                                                URI.create("file:file-2"))));
+  }
+
   private static FSBlobIdIterator getIter(File dir, String filterPrefix) {
     return new FSBlobIdIterator(dir, filterPrefix);
   }
 
+  private static List<URI> getList(Iterator<URI> iter) {
+    List<URI> list = new ArrayList<URI>();
+    while (iter.hasNext()) {
+      list.add(iter.next());
+    }
+    return list;
+  }
+
   private static Set<URI> getSet(Iterator<URI> iter) {
     HashSet<URI> set = new HashSet<URI>();
     while (iter.hasNext()) {
@@ -0,0 +1,168 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.net.URI;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Unit tests for the snapshots of {@link FSBlobStore}.
+ */
+public class TestFSBlobStoreSnapshot {
+  private static File baseDir;
+  private static File snapDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    baseDir = FSTestUtil.createTempDir();
+    snapDir = FSTestUtil.createTempDir();
+  }
+
+  @AfterClass
+  public static void destroy() {
+    FSTestUtil.rmdir(baseDir);
+    FSTestUtil.rmdir(snapDir);
+  }
+
+  /**
+   * A snapshot should keep the blobs as they were when it was taken, however they are modified
+   * afterwards, and it should not be writable.
+   */
+  @Test
+  public void testSnapshot() throws Exception {
+    FSBlobStore store = new FSBlobStore(URI.create("urn:store"), baseDir, 1);
+    BlobStoreConnection con = store.openConnection(null, null);
+    write(con, "file:a", "aaa");
+    write(con, "file:dir/b", "bbb");
+    write(con, "file:c", "ccc");
+
+    File snap = new File(snapDir, "snap1");
+    store.snapshot(snap);
+
+    write(con, "file:a", "AAAA");
+    SeekableByteChannel ch = con.getBlob(URI.create("file:dir/b"), null).openChannel(true);
+    ch.write(ByteBuffer.wrap("B".getBytes("UTF-8")));
+    ch.close();
+    con.getBlob(URI.create("file:c"), null).delete();
+    write(con, "file:d", "ddd");
+
+    assertEquals(read(con, "file:a"), "AAAA");
+    assertEquals(read(con, "file:dir/b"), "Bbb");
+
+    BlobStoreConnection snapCon =
+        store.openSnapshot(URI.create("urn:snap"), snap).openConnection(null, null);
+    assertEquals(read(snapCon, "file:a"), "aaa");
+    assertEquals(read(snapCon, "file:dir/b"), "bbb");
+    assertEquals(read(snapCon, "file:c"), "ccc");
+    assertFalse(snapCon.getBlob(URI.create("file:d"), null).exists());
+
+    try {
+      snapCon.getBlob(URI.create("file:a"), null).openOutputStream(-1, true);
+      fail("Did not get expected UnsupportedOperationException");
+    } catch (UnsupportedOperationException uoe) {
+    }
+
+    try {
+      snapCon.getBlob(URI.create("file:a"), null).delete();
+      fail("Did not get expected UnsupportedOperationException");
+    } catch (UnsupportedOperationException uoe) {
+    }
+
+    try {
+      store.snapshot(snap);
+      fail("Did not get expected IOException");
+    } catch (IOException ioe) {
+    }
+    assertTrue(snap.isDirectory());
+
+    snapCon.close();
+    con.close();
+  }
+
+  /**
+   * A store reopened over files of which a snapshot was taken earlier should keep the snapshot
+   * intact once told it has snapshots.
+   */
+  @Test
+  public void testReopenedStore() throws Exception {
+    File dir = new File(baseDir, "reopened");
+    FSBlobStore store = new FSBlobStore(URI.create("urn:store"), dir);
+    BlobStoreConnection con = store.openConnection(null, null);
+    write(con, "file:a", "aaa");
+    write(con, "file:b", "bbb");
+    con.close();
+
+    File snap = new File(snapDir, "snap2");
+    store.snapshot(snap);
+
+    store = new FSBlobStore(URI.create("urn:store"), dir);
+    con = store.openConnection(null, null);
+    store.setHasSnapshots(true);
+    write(con, "file:a", "AAAA");
+    SeekableByteChannel ch = con.getBlob(URI.create("file:b"), null).openChannel(true);
+    ch.write(ByteBuffer.wrap("B".getBytes("UTF-8")));
+    ch.close();
+
+    assertEquals(read(con, "file:a"), "AAAA");
+    assertEquals(read(con, "file:b"), "Bbb");
+
+    BlobStoreConnection snapCon =
+        new FSBlobStore(URI.create("urn:store"), snap).openSnapshot(URI.create("urn:snap"), snap)
+            .openConnection(null, null);
+    assertEquals(read(snapCon, "file:a"), "aaa");
+    assertEquals(read(snapCon, "file:b"), "bbb");
+
+    snapCon.close();
+    con.close();
+  }
+
+  private static void write(BlobStoreConnection con, String id, String content)
+      throws Exception {
+    Blob b = con.getBlob(URI.create(id), null);
+    OutputStream out = b.openOutputStream(-1, true);
+    out.write(content.getBytes("UTF-8"));
+    out.close();
+  }
+
+  private static String read(BlobStoreConnection con, String id) throws Exception {
+    return IOUtils.toString(con.getBlob(URI.create(id), null).openInputStream(), "UTF-8");
+  }
+}
@@ -40,24 +40,38 @@ import org.akubraproject.tck.TCKTestSuite;
  * @author Ronald Tschalär
  */
 public class TestFSBlobStoreTCK extends TCKTestSuite {
-  private static File baseDir;
-
   public TestFSBlobStoreTCK() throws Exception {
-    super(getStore(), getStoreId(), false, false);
+    this(0, false);
+  }
+
+  protected TestFSBlobStoreTCK(int hashLevels, boolean indexed) throws Exception {
+    this(getStore(hashLevels, indexed));
   }
 
-  private static URI getStoreId() throws Exception {
+  protected TestFSBlobStoreTCK(FSBlobStore store) throws Exception {
+    super(store, getStoreId(), false, false);
+  }
+
+  protected static URI getStoreId() throws Exception {
     return new URI("urn:example:store");
   }
 
-  private static FSBlobStore getStore() throws Exception {
-    baseDir = FSTestUtil.createTempDir();
-    return new FSBlobStore(getStoreId(), baseDir);
+  private static FSBlobStore getStore(int hashLevels, boolean indexed) throws Exception {
+    File baseDir = FSTestUtil.createTempDir();
+    File indexFile = indexed ? getIndexFile(baseDir) : null;
+    return new FSBlobStore(getStoreId(), baseDir, hashLevels, indexFile);
+  }
+
+  private static File getIndexFile(File baseDir) {
+    return new File(baseDir.getPath() + ".idx");
   }
 
   @AfterSuite
   public void destroy() {
-    FSTestUtil.rmdir(baseDir);
+    for (File baseDir : ((FSBlobStore) store).getLayout().getBaseDirs()) {
+      FSTestUtil.rmdir(baseDir);
+      getIndexFile(baseDir).delete();
+    }
   }
 
   @Override
@@ -52,6 +52,7 @@ public class TestFSBlobThreaded {
 
   private static URI id;
   private static File baseDir;
+  private static FSLayout layout;
   private static FSBlobStoreConnection conn;
   private static StreamManager mgr;
   private static FSBlob fsblob;
@@ -60,7 +61,7 @@ public class TestFSBlobThreaded {
 
   @Test
   public void testThreading() {
-    runner.runTests(getClass(), FSBlob.class);
+    runner.runTests(getClass(), FSLayout.class);
   }
 
   @ThreadedBefore
@@ -68,15 +69,16 @@ public class TestFSBlobThreaded {
     id = new URI("urn:example:store");
     baseDir = FSTestUtil.createTempDir();
     FSBlobStore store = new FSBlobStore(id, baseDir);
+    layout = store.getLayout();
     mgr = new StreamManager();
-    conn = new FSBlobStoreConnection(store, baseDir, mgr, true);
+    conn = new FSBlobStoreConnection(store, mgr, true);
   }
 
   @ThreadedTest
   public void runThreadedTest() throws Exception {
 
     URI uri = new URI("file:foo/bar/baz/testblob");
-    fsblob = new FSBlob(conn, baseDir, uri, mgr, null);
+    fsblob = new FSBlob(conn, layout, uri, mgr, null);
 
     CodePosition position = getDirExistsCodePosition();
 
@@ -96,7 +98,8 @@ public class TestFSBlobThreaded {
     Thread thread1 = new Thread(task);
     Thread.setDefaultUncaughtExceptionHandler(new ThreadExceptionHandler());
 
-    ObjectInstrumentation<FSBlob> instrumented = Instrumentation.getObjectInstrumentation(fsblob);
+    ObjectInstrumentation<FSLayout> instrumented =
+        Instrumentation.getObjectInstrumentation(layout);
     Breakpoint bp = instrumented.createBreakpoint(position, thread1);
 
     thread1.start();
@@ -119,8 +122,8 @@ public class TestFSBlobThreaded {
   }
 
   private static CodePosition getDirExistsCodePosition() throws Exception {
-    ClassInstrumentation instr = Instrumentation.getClassInstrumentation(FSBlob.class);
-    Method makeParentDirs = FSBlob.class.getDeclaredMethod("makeParentDirs", File.class);
+    ClassInstrumentation instr = Instrumentation.getClassInstrumentation(FSLayout.class);
+    Method makeParentDirs = FSLayout.class.getDeclaredMethod("makeParentDirs", File.class);
     Method exists = File.class.getDeclaredMethod("exists");
     CodePosition position = instr.afterCall(makeParentDirs, exists);
     
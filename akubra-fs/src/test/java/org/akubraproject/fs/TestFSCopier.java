@@ -0,0 +1,84 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link FSCopier}.
+ */
+public class TestFSCopier {
+  private static File baseDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    baseDir = FSTestUtil.createTempDir();
+  }
+
+  @AfterClass
+  public static void destroy() {
+    FSTestUtil.rmdir(baseDir);
+  }
+
+  /**
+   * Files should be copied completely, whether in one go or in parallel chunks, also over
+   * existing larger files.
+   */
+  @Test
+  public void testCopy() throws Exception {
+    File src = new File(baseDir, "src");
+    byte[] content = new byte[100 * 1024 + 17];
+    new Random(42).nextBytes(content);
+    FileUtils.writeByteArrayToFile(src, content);
+
+    for (FSCopier copier : new FSCopier[] { new FSCopier(1, 4096), new FSCopier(4, 4096),
+                                            new FSCopier(4, 1024 * 1024) }) {
+      File dest = new File(baseDir, "dest");
+      FileUtils.writeByteArrayToFile(dest, new byte[200 * 1024]);
+
+      copier.copy(src, dest);
+      assertTrue(FileUtils.contentEquals(src, dest));
+      dest.delete();
+
+      copier.copy(src, dest);
+      assertEquals(FileUtils.readFileToByteArray(dest), content);
+      dest.delete();
+    }
+
+    // empty file
+    File empty = new File(baseDir, "empty");
+    assertTrue(empty.createNewFile());
+    File dest = new File(baseDir, "dest");
+    new FSCopier(4, 4096).copy(empty, dest);
+    assertEquals(dest.length(), 0L);
+  }
+}
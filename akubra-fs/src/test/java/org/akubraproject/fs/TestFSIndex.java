@@ -0,0 +1,185 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link FSIndex}.
+ */
+public class TestFSIndex {
+  private File     baseDir;
+  private File     indexFile;
+  private FSLayout layout;
+
+  @BeforeMethod
+  public void init() throws Exception {
+    baseDir   = FSTestUtil.createTempDir();
+    indexFile = new File(baseDir.getPath() + ".idx");
+    layout    = new FSLayout(baseDir, 1);
+  }
+
+  @AfterMethod
+  public void destroy() {
+    FSTestUtil.rmdir(baseDir);
+    indexFile.delete();
+  }
+
+  /**
+   * Changes should be kept across reopening the index.
+   */
+  @Test
+  public void testPersistence() throws Exception {
+    FSIndex index = FSIndex.open(indexFile, layout);
+    assertEquals(index.size(), 0);
+    assertTrue(indexFile.exists());
+
+    index.put("file:a", 1, 10);
+    index.put("file:b/c", 2, 20);
+    index.put("file:a", 3, 30);
+    index.put("file:d", 4, 40);
+    index.remove("file:d");
+    index.remove("file:e");
+    index.force();
+
+    index = FSIndex.open(indexFile, layout);
+    assertEquals(index.size(), 2);
+    assertEquals(index.get("file:a").size, 3);
+    assertEquals(index.get("file:a").mtime, 30);
+    assertEquals(index.get("file:b/c").size, 2);
+    assertNull(index.get("file:d"));
+  }
+
+  /**
+   * Ids should be listed in order, respecting the prefix and startAfter.
+   */
+  @Test
+  public void testList() throws Exception {
+    FSIndex index = FSIndex.open(indexFile, layout);
+    for (String id : new String[] { "file:c", "file:a/2", "file:b", "file:a/1", "file:a-1" })
+      index.put(id, 0, 0);
+
+    assertEquals(getList(index.list(null, null)),
+                 getList("file:a-1", "file:a/1", "file:a/2", "file:b", "file:c"));
+    assertEquals(getList(index.list("file:a/", null)), getList("file:a/1", "file:a/2"));
+    assertEquals(getList(index.list("file:a", "file:a/1")), getList("file:a/2"));
+    assertEquals(getList(index.list("file:b", "file:a")), getList("file:b"));
+    assertEquals(getList(index.list(null, "file:b")), getList("file:c"));
+    assertEquals(getList(index.list("file:d", null)), getList());
+    assertEquals(getList(index.list("urn:", null)), getList());
+  }
+
+  /**
+   * A log mostly made up of superseded records should be compacted.
+   */
+  @Test
+  public void testCompaction() throws Exception {
+    FSIndex index = FSIndex.open(indexFile, layout);
+    for (int idx = 0; idx < 100000; idx++)
+      index.put("file:obj" + (idx % 10), idx, idx);
+
+    assertTrue(indexFile.length() <= 2 * 1024 * 1024, "length: " + indexFile.length());
+
+    index = FSIndex.open(indexFile, layout);
+    assertEquals(index.size(), 10);
+    assertEquals(index.get("file:obj9").size, 99999);
+  }
+
+  /**
+   * Files changed behind the index's back should be picked up by reconciling, and by building
+   * the index; a corrupt log should be rebuilt.
+   */
+  @Test
+  public void testReconcile() throws Exception {
+    createFile("x", "hello");
+    createFile("y/z", "world!");
+
+    FSIndex index = FSIndex.open(indexFile, layout);
+    assertEquals(index.size(), 2);
+    assertEquals(index.get("file:x").size, 5);
+    assertEquals(index.get("file:y/z").size, 6);
+    assertEquals(index.reconcile(), 0);
+
+    createFile("x", "bye");
+    assertTrue(layout.getFile("y/z").delete());
+    createFile("w", "");
+    index.put("file:v", 1, 1);
+
+    assertEquals(index.reconcile(), 4);
+    assertEquals(getList(index.list(null, null)), getList("file:w", "file:x"));
+    assertEquals(index.get("file:x").size, 3);
+    assertEquals(index.reconcile(), 0);
+
+    RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+    try {
+      raf.seek(8);
+      raf.write(42);
+    } finally {
+      raf.close();
+    }
+
+    index = FSIndex.open(indexFile, layout);
+    assertEquals(getList(index.list(null, null)), getList("file:w", "file:x"));
+    assertNotNull(index.get("file:w"));
+  }
+
+  private void createFile(String path, String content) throws Exception {
+    File file = layout.getFile(path);
+    layout.makeParentDirs(file);
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  private static List<URI> getList(Iterator<URI> iter) {
+    List<URI> list = new ArrayList<URI>();
+    while (iter.hasNext())
+      list.add(iter.next());
+    return list;
+  }
+
+  private static List<URI> getList(String... ids) {
+    List<URI> list = new ArrayList<URI>();
+    for (String id : Arrays.asList(ids))
+      list.add(URI.create(id));
+    return list;
+  }
+}
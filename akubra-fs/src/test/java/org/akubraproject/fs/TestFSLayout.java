@@ -0,0 +1,169 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Unit tests for {@link FSLayout}.
+ */
+public class TestFSLayout {
+  private static File baseDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    baseDir = FSTestUtil.createTempDir();
+  }
+
+  @AfterClass
+  public static void destroy() {
+    FSTestUtil.rmdir(baseDir);
+  }
+
+  /**
+   * The flat layout should use the path as is.
+   */
+  @Test
+  public void testFlat() {
+    FSLayout layout = new FSLayout(baseDir, 0);
+    assertEquals(layout.getFile("obj123456"), new File(baseDir, "obj123456"));
+    assertEquals(layout.getFile("foo/bar"), new File(baseDir, "foo/bar"));
+  }
+
+  /**
+   * The hashed layout should put the path below the hash directories.
+   */
+  @Test
+  public void testHashed() {
+    FSLayout layout = new FSLayout(baseDir, 2);
+    assertEquals(layout.getHashDirs("obj123456"), "88/e1/");
+    assertEquals(layout.getFile("obj123456"), new File(baseDir, "88/e1/obj123456"));
+    assertEquals(layout.getFile("foo/bar"),
+                 new File(baseDir, layout.getHashDirs("foo/bar") + "foo/bar"));
+
+    assertEquals(new FSLayout(baseDir, 1).getHashDirs("obj123456"), "88/");
+    assertEquals(new FSLayout(baseDir, FSLayout.MAX_HASH_LEVELS).getHashDirs("obj123456").length(),
+                 FSLayout.MAX_HASH_LEVELS * 3);
+
+    for (int levels : new int[] { -1, FSLayout.MAX_HASH_LEVELS + 1 }) {
+      try {
+        new FSLayout(baseDir, levels);
+        fail("Did not get expected IllegalArgumentException for " + levels + " levels");
+      } catch (IllegalArgumentException iae) {
+      }
+    }
+  }
+
+  /**
+   * Striping should place each path in a fixed base directory, spread the paths by weight, and
+   * only move the paths of a base directory whose weight is raised or which is added.
+   */
+  @Test
+  public void testStriped() {
+    File[] dirs = { new File(baseDir, "d0"), new File(baseDir, "d1"), new File(baseDir, "d2") };
+
+    FSLayout even = new FSLayout(dirs, null, 1);
+    FSLayout skew = new FSLayout(dirs, new long[] { 1, 1, 2 }, 1);
+    FSLayout more = new FSLayout(new File[] { dirs[0], dirs[1], dirs[2], new File(baseDir, "d3") },
+                                 null, 1);
+
+    int[] evenCnt = new int[3];
+    int[] skewCnt = new int[3];
+    for (int idx = 0; idx < 4000; idx++) {
+      String path = "obj" + idx;
+      File   dir  = even.getBaseDir(path);
+      assertEquals(even.getBaseDir(path), dir);
+      assertEquals(even.getFile(path),
+                   new File(new File(dir, even.getHashDirs(path)), path));
+      evenCnt[indexOf(dirs, dir)]++;
+      skewCnt[indexOf(dirs, skew.getBaseDir(path))]++;
+
+      if (skew.getBaseDir(path) != dir)
+        assertEquals(skew.getBaseDir(path), dirs[2]);
+      if (more.getBaseDir(path) != dir)
+        assertEquals(more.getBaseDir(path).getName(), "d3");
+    }
+
+    for (int cnt : evenCnt)
+      assertTrue(cnt > 1100 && cnt < 1560, "uneven spread: " + cnt);
+    assertTrue(skewCnt[2] > 1800 && skewCnt[2] < 2200, "wrong spread: " + skewCnt[2]);
+
+    assertEquals(new FSLayout(dirs, null, 0).getBaseDir(), dirs[0]);
+    assertEquals(new FSLayout(dirs, null, 0).getBaseDirs(), dirs);
+
+    for (long[] weights : new long[][] { { 1, 1 }, { 1, 0, 1 }, { 1, -1, 1 } }) {
+      try {
+        new FSLayout(dirs, weights, 0);
+        fail("Did not get expected IllegalArgumentException");
+      } catch (IllegalArgumentException iae) {
+      }
+    }
+
+    try {
+      new FSLayout(new File[0], null, 0);
+      fail("Did not get expected IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+    }
+  }
+
+  private static int indexOf(File[] dirs, File dir) {
+    for (int idx = 0; idx < dirs.length; idx++) {
+      if (dirs[idx] == dir)
+        return idx;
+    }
+    throw new AssertionError("Unknown directory " + dir);
+  }
+
+  /**
+   * Parent directories should be created once, and recreated if removed.
+   */
+  @Test
+  public void testParentDirs() throws Exception {
+    FSLayout layout = new FSLayout(baseDir, 2);
+    File file = layout.getFile("dir/file");
+    File parent = file.getParentFile();
+
+    assertFalse(layout.recreateParentDirs(file));
+    layout.makeParentDirs(file);
+    assertTrue(parent.isDirectory());
+
+    layout.makeParentDirs(file);
+    assertFalse(layout.recreateParentDirs(file));
+
+    assertTrue(parent.delete());
+    layout.makeParentDirs(file);
+    assertFalse(parent.exists());     // cached
+
+    assertTrue(layout.recreateParentDirs(file));
+    assertTrue(parent.isDirectory());
+    assertTrue(file.createNewFile());
+  }
+}
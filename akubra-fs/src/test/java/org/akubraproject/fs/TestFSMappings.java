@@ -0,0 +1,188 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Unit tests for {@link FSMappings} and {@link MappedInputStream}.
+ */
+public class TestFSMappings {
+  private static File baseDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    baseDir = FSTestUtil.createTempDir();
+  }
+
+  @AfterClass
+  public static void destroy() {
+    FSTestUtil.rmdir(baseDir);
+  }
+
+  /**
+   * Mappings should be pooled up to the maximum size, and be dropped when invalidated or when
+   * their file changes.
+   */
+  @Test
+  public void testPool() throws Exception {
+    File a = createFile("a", "aaaaaaaaaa");
+    File b = createFile("b", "bbbbbbbbbb");
+    File c = createFile("c", "cccccccccccccccccccccccccccccc");
+
+    FSMappings mappings = new FSMappings(20);
+    assertNull(mappings.acquire(a, 11));
+
+    FSMappings.Mapping ma = mappings.acquire(a, 10);
+    assertEquals(mappings.getPooledBytes(), 10L);
+    assertSame(mappings.acquire(a, 0), ma);
+    mappings.release(ma);
+    mappings.release(ma);
+
+    FSMappings.Mapping mb = mappings.acquire(b, 0);
+    assertEquals(mappings.getPooledBytes(), 20L);
+    mappings.release(mb);
+
+    // too large to pool
+    FSMappings.Mapping mc = mappings.acquire(c, 0);
+    assertEquals(mappings.getPooledBytes(), 20L);
+    assertNotSame(mappings.acquire(c, 0), mc);
+
+    // evicts the least recently used
+    mappings.acquire(a, 0);
+    File d = createFile("d", "dd");
+    mappings.acquire(d, 0);
+    assertEquals(mappings.getPooledBytes(), 12L);
+
+    mappings.invalidate(a);
+    assertEquals(mappings.getPooledBytes(), 2L);
+
+    // changed files are remapped
+    FSMappings.Mapping md = mappings.acquire(d, 0);
+    createFile("d", "ddd");
+    assertNotSame(mappings.acquire(d, 0), md);
+    assertEquals(mappings.getPooledBytes(), 3L);
+
+    try {
+      mappings.acquire(new File(baseDir, "missing"), 0);
+      fail("Did not get expected NoSuchFileException");
+    } catch (NoSuchFileException nsfe) {
+    }
+  }
+
+  /**
+   * Streams should read their range, and keep working until closed even if the mapping is
+   * dropped from the pool.
+   */
+  @Test
+  public void testStream() throws Exception {
+    File f = createFile("stream", "0123456789");
+    FSMappings mappings = new FSMappings(100);
+
+    MappedInputStream in = new MappedInputStream(mappings, mappings.acquire(f, 0), 2, 5);
+    mappings.invalidate(f);
+    assertEquals(in.available(), 5);
+    assertEquals(in.read(), '2');
+    assertEquals(in.skip(1), 1L);
+    in.mark(10);
+    assertEquals(IOUtils.toString(in), "456");
+    assertEquals(in.read(), -1);
+    in.reset();
+    assertEquals(in.read(new byte[10], 0, 10), 3);
+
+    in.close();
+    in.close();
+    try {
+      in.read();
+      fail("Did not get expected IOException");
+    } catch (IOException ioe) {
+    }
+
+    in = new MappedInputStream(mappings, mappings.acquire(f, 0), 0, -1);
+    assertEquals(IOUtils.toString(in), "0123456789");
+    in.close();
+    assertEquals(IOUtils.toString(new MappedInputStream(mappings, mappings.acquire(f, 0), 7,
+                                                        100)), "789");
+  }
+
+  /**
+   * Files being written should not be mapped, and writers should be told whether mappings of
+   * the file are still in use.
+   */
+  @Test
+  public void testWrite() throws Exception {
+    File f = createFile("write", "0123456789");
+    FSMappings mappings = new FSMappings(100);
+
+    FSMappings.Mapping m = mappings.acquire(f, 0);
+    assertTrue(mappings.beginWrite(f));
+    assertEquals(mappings.getPooledBytes(), 0L);
+    assertNull(mappings.acquire(f, 0));
+    mappings.endWrite(f);
+
+    mappings.release(m);
+    assertFalse(mappings.beginWrite(f));
+    assertFalse(mappings.beginWrite(f));
+    mappings.endWrite(f);
+    assertNull(mappings.acquire(f, 0));
+    mappings.endWrite(f);
+
+    // only pooled, so not in use
+    mappings.release(mappings.acquire(f, 0));
+    assertEquals(mappings.getPooledBytes(), 10L);
+    assertFalse(mappings.beginWrite(f));
+    mappings.endWrite(f);
+
+    // mappings too small to use are not counted
+    assertNull(mappings.acquire(f, 20));
+    assertFalse(mappings.beginWrite(f));
+    mappings.endWrite(f);
+  }
+
+  private static File createFile(String name, String content) throws Exception {
+    File f = new File(baseDir, name);
+    FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    f.setLastModified(f.lastModified() + content.length() * 1000);
+    return f;
+  }
+}
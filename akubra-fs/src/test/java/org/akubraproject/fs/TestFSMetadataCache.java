@@ -0,0 +1,110 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link FSMetadataCache}.
+ */
+public class TestFSMetadataCache {
+  private static File baseDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    baseDir = FSTestUtil.createTempDir();
+  }
+
+  @AfterClass
+  public static void destroy() {
+    FSTestUtil.rmdir(baseDir);
+  }
+
+  /**
+   * Entries should be served from the cache until invalidated or expired.
+   */
+  @Test
+  public void testCache() throws Exception {
+    FSMetadataCache cache = new FSMetadataCache(200, baseDir);
+    try {
+      File f = new File(baseDir, "cached");
+
+      FSMetadataCache.Entry e = cache.stat(f);
+      assertFalse(e.exists);
+      assertSame(cache.stat(f), e);
+
+      FileUtils.writeStringToFile(f, "hello");
+      cache.invalidate(f);
+      e = cache.stat(f);
+      assertTrue(e.exists);
+      assertEquals(e.size, 5L);
+      assertEquals(e.mtime, f.lastModified());
+
+      // expiry, without the watcher seeing the change
+      cache.close();
+      assertEquals(cache.stat(f).size, 5L);
+      FileUtils.writeStringToFile(f, "hello world");
+      assertEquals(cache.stat(f).size, 5L);
+      Thread.sleep(250);
+      assertEquals(cache.stat(f).size, 11L);
+
+      cache.clear();
+      assertEquals(cache.size(), 0);
+    } finally {
+      cache.close();
+    }
+  }
+
+  /**
+   * Changes made behind the cache's back should be picked up from the watch service.
+   */
+  @Test
+  public void testWatch() throws Exception {
+    FSMetadataCache cache = new FSMetadataCache(Long.MAX_VALUE / 2, baseDir);
+    try {
+      File f = new File(baseDir, "watched");
+      assertFalse(cache.stat(f).exists);
+
+      FileUtils.writeStringToFile(f, "hello");
+      for (int idx = 0; idx < 100 && !cache.stat(f).exists; idx++)
+        Thread.sleep(100);
+      assertTrue(cache.stat(f).exists);
+
+      assertTrue(f.delete());
+      for (int idx = 0; idx < 100 && cache.stat(f).exists; idx++)
+        Thread.sleep(100);
+      assertFalse(cache.stat(f).exists);
+    } finally {
+      cache.close();
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import org.akubraproject.impl.BufferPool;
+
+/**
+ * Unit tests for {@link FSOutputStream}.
+ */
+public class TestFSOutputStream {
+  private static File baseDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    baseDir = FSTestUtil.createTempDir();
+  }
+
+  @AfterClass
+  public static void destroy() {
+    FSTestUtil.rmdir(baseDir);
+  }
+
+  /**
+   * The buffer should follow the estimated size within the pooled sizes.
+   */
+  @Test
+  public void testBufferSize() {
+    assertEquals(FSOutputStream.getBufferSize(-1), BufferPool.DEFAULT_BUFFER_SIZE);
+    assertEquals(FSOutputStream.getBufferSize(0), BufferPool.MIN_BUFFER_SIZE);
+    assertEquals(FSOutputStream.getBufferSize(10000), 10000);
+    assertEquals(FSOutputStream.getBufferSize(1L << 40), BufferPool.MAX_BUFFER_SIZE);
+  }
+
+  /**
+   * Small writes, writes spanning the buffer and writes bypassing it should all end up in the
+   * file in order.
+   */
+  @Test
+  public void testWrite() throws Exception {
+    File f = new File(baseDir, "write");
+    FSOutputStream out = new FSOutputStream(new FileOutputStream(f).getChannel(), 10);
+
+    StringBuilder expected = new StringBuilder();
+    out.write('a');
+    expected.append('a');
+
+    byte[] chunk = new byte[3000];
+    for (int idx = 0; idx < 3; idx++) {
+      Arrays.fill(chunk, (byte) ('b' + idx));
+      out.write(chunk);
+      expected.append(new String(chunk, "US-ASCII"));
+    }
+
+    byte[] big = new byte[10000];
+    Arrays.fill(big, (byte) 'z');
+    out.write(big, 1, 9000);
+    expected.append(new String(big, 1, 9000, "US-ASCII"));
+
+    out.flush();
+    assertEquals(f.length(), (long) expected.length());
+
+    out.write('!');
+    expected.append('!');
+    out.close();
+    out.close();
+
+    assertEquals(FileUtils.readFileToString(f, "US-ASCII"), expected.toString());
+
+    try {
+      out.write('x');
+      fail("Did not get expected IOException");
+    } catch (IOException ioe) {
+    }
+  }
+
+  /**
+   * The estimate is only a hint: however large, it should not extend the file, which should
+   * hold just the content written.
+   */
+  @Test
+  public void testEstimate() throws Exception {
+    File f = new File(baseDir, "estimate");
+    FSOutputStream out = new FSOutputStream(new FileOutputStream(f).getChannel(), Long.MAX_VALUE);
+    assertEquals(f.length(), 0L);
+    out.write(new byte[1000]);
+    out.close();
+    assertEquals(f.length(), 1000L);
+
+    out = new FSOutputStream(new FileOutputStream(f).getChannel(), 100L * 1024 * 1024);
+    byte[] buf = new byte[BufferPool.MAX_BUFFER_SIZE];
+    for (int idx = 0; idx < 5; idx++)
+      out.write(buf);
+    assertEquals(f.length(), 5L * buf.length);
+    out.write('x');
+    out.close();
+    assertEquals(f.length(), 5L * buf.length + 1);
+  }
+}
@@ -0,0 +1,131 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link FSSyncer}.
+ */
+public class TestFSSyncer {
+  /**
+   * Each file and each parent directory should be sync'd once.
+   */
+  @Test
+  public void testFilesAndDirs() throws Exception {
+    RecordingSyncer syncer = new RecordingSyncer(4, null);
+    syncer.sync(Collections.<File>emptyList());
+    assertEquals(syncer.getBatchCount(), 0L);
+
+    File a = new File("a");
+    syncer.sync(Arrays.asList(new File(a, "b/f1"), new File(a, "b/f2"), new File(a, "c")));
+    assertEquals(syncer.getBatchCount(), 1L);
+    assertEquals(syncer.synced.size(), 5);
+    assertEquals(new HashSet<File>(syncer.synced),
+                 new HashSet<File>(Arrays.asList(new File(a, "b/f1"), new File(a, "b/f2"),
+                                                 new File(a, "c"), new File(a, "b"), a)));
+
+    // real files and directories
+    File dir = FSTestUtil.createTempDir();
+    try {
+      File file = new File(dir, "file");
+      assertTrue(file.createNewFile());
+      new FSSyncer(2).sync(Arrays.asList(file, new File(dir, "removed")));
+    } finally {
+      FSTestUtil.rmdir(dir);
+    }
+  }
+
+  /**
+   * Syncs arriving while a batch is being sync'd should be coalesced into one batch.
+   */
+  @Test
+  public void testGroupCommit() throws Exception {
+    final CountDownLatch  gate   = new CountDownLatch(1);
+    final RecordingSyncer syncer = new RecordingSyncer(4, gate);
+
+    Thread leader = startSync(syncer, new File("leader"));
+    while (syncer.synced.isEmpty())
+      Thread.sleep(10);
+
+    List<Thread> followers = new ArrayList<Thread>();
+    for (int idx = 0; idx < 10; idx++)
+      followers.add(startSync(syncer, new File("dir" + idx, "file")));
+
+    for (Thread t : followers) {
+      while (t.getState() != Thread.State.WAITING)
+        Thread.sleep(10);
+    }
+
+    gate.countDown();
+    leader.join();
+    for (Thread t : followers)
+      t.join();
+
+    assertEquals(syncer.getBatchCount(), 2L);
+    assertEquals(syncer.synced.size(), 1 + 10 * 2);      // "leader" has no parent
+  }
+
+  private static Thread startSync(final FSSyncer syncer, final File file) {
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        syncer.sync(Collections.singletonList(file));
+      }
+    };
+    t.start();
+    return t;
+  }
+
+  private static class RecordingSyncer extends FSSyncer {
+    final List<File>     synced = Collections.synchronizedList(new ArrayList<File>());
+    final CountDownLatch gate;
+
+    RecordingSyncer(int threads, CountDownLatch gate) {
+      super(threads);
+      this.gate = gate;
+    }
+
+    @Override
+    void fsync(File file) {
+      synced.add(file);
+      try {
+        if (gate != null)
+          gate.await();
+      } catch (InterruptedException ie) {
+        throw new RuntimeException(ie);
+      }
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link FSTrash}.
+ */
+public class TestFSTrash {
+  private static File baseDir;
+  private static File trashDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    baseDir  = FSTestUtil.createTempDir();
+    trashDir = new File(baseDir.getPath() + ".trash");
+  }
+
+  @AfterClass
+  public static void destroy() {
+    FSTestUtil.rmdir(baseDir);
+    FSTestUtil.rmdir(trashDir);
+  }
+
+  /**
+   * Deleted files should be moved out of the way at once, and be removed in the background.
+   */
+  @Test
+  public void testReap() throws Exception {
+    FSTrash trash = new FSTrash(new File[] { baseDir }, new File[] { trashDir }, 2, 100);
+    try {
+      File f = createFile("reap");
+      assertTrue(trash.delete(f, baseDir));
+      assertFalse(f.exists());
+      assertFalse(trash.delete(f, baseDir));
+
+      for (int idx = 0; idx < 100 && trash.getReapedCount() < 1; idx++)
+        Thread.sleep(50);
+      assertEquals(trash.getReapedCount(), 1L);
+      assertEquals(trashDir.list().length, 0);
+      assertEquals(trash.getQueueDepth(), 0);
+    } finally {
+      trash.close();
+    }
+  }
+
+  /**
+   * When the queue is full the deleting thread should remove the file itself, and files left
+   * in the trash should be removed when the trash is reopened.
+   */
+  @Test
+  public void testBackPressure() throws Exception {
+    FSTrash trash = new FSTrash(new File[] { baseDir }, new File[] { trashDir }, 1, 1);
+    trash.close();    // no reapers
+
+    File a = createFile("a");
+    File b = createFile("b");
+    assertTrue(trash.delete(a, baseDir));
+    assertEquals(trash.getQueueDepth(), 1);
+    assertTrue(trash.delete(b, baseDir));
+    assertEquals(trash.getQueueDepth(), 1);
+    assertEquals(trash.getDirectCount(), 1L);
+    assertFalse(a.exists());
+    assertFalse(b.exists());
+    assertEquals(trashDir.list().length, 1);
+
+    trash = new FSTrash(new File[] { baseDir }, new File[] { trashDir }, 1, 10);
+    try {
+      for (int idx = 0; idx < 100 && trashDir.list().length > 0; idx++)
+        Thread.sleep(50);
+      assertEquals(trashDir.list().length, 0);
+    } finally {
+      trash.close();
+    }
+  }
+
+  private static File createFile(String name) throws Exception {
+    File f = new File(baseDir, name);
+    FileUtils.writeStringToFile(f, name);
+    return f;
+  }
+}
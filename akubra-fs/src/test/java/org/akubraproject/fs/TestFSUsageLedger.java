@@ -0,0 +1,138 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+import java.io.OutputStream;
+
+import java.net.URI;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Unit tests for {@link FSUsageLedger}.
+ */
+public class TestFSUsageLedger {
+  private static File baseDir;
+  private static File ledgerFile;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    baseDir    = FSTestUtil.createTempDir();
+    ledgerFile = new File(baseDir.getPath() + ".usage");
+  }
+
+  @AfterClass
+  public static void destroy() {
+    FSTestUtil.rmdir(baseDir);
+    ledgerFile.delete();
+  }
+
+  /**
+   * The prefix should be the id up to the first '/'.
+   */
+  @Test
+  public void testPrefix() {
+    assertEquals(FSUsageLedger.getPrefix("obj1"), "file:");
+    assertEquals(FSUsageLedger.getPrefix("a/obj1"), "file:a/");
+    assertEquals(FSUsageLedger.getPrefix("a/b/obj1"), "file:a/");
+  }
+
+  /**
+   * The counts should follow writes, deletes, moves and copies, match a rescan, and survive
+   * reopening the ledger.
+   */
+  @Test
+  public void testLedger() throws Exception {
+    FSBlobStore store = new FSBlobStore(URI.create("urn:store"), baseDir, 1);
+    write(store, "file:x/a", "123");
+    store.setUsageLedger(ledgerFile, 60000);
+
+    FSUsageConnection con = (FSUsageConnection) store.openConnection(null, null);
+    assertEquals(con.getUsage(), new FSUsage(1, 3));
+
+    write(con, "file:x/b", "12345");
+    write(con, "file:x/a", "1");
+    write(con, "file:top", "1234");
+    con.getBlob(URI.create("file:x/b"), null).moveTo(URI.create("file:y/b"), null);
+    con.getBlob(URI.create("file:y/b"), null).copyTo(URI.create("file:y/c"), null);
+    con.getBlob(URI.create("file:top"), null).delete();
+    con.getBlob(URI.create("file:top"), null).delete();
+
+    SeekableByteChannel ch = con.getBlob(URI.create("file:x/a"), null).openChannel(true);
+    ch.position(ch.size());
+    ch.write(ByteBuffer.wrap(new byte[10]));
+    ch.close();
+
+    assertEquals(con.getUsage(), new FSUsage(3, 21));
+    Map<String, FSUsage> byPrefix = con.getUsageByPrefix();
+    assertEquals(byPrefix.size(), 2);
+    assertEquals(byPrefix.get("file:x/"), new FSUsage(1, 11));
+    assertEquals(byPrefix.get("file:y/"), new FSUsage(2, 10));
+    assertNull(byPrefix.get("file:"));
+
+    store.rescanUsage();
+    assertEquals(con.getUsageByPrefix(), byPrefix);
+    con.close();
+
+    // reopen from the file
+    store.setUsageLedger(null, 0);
+    FileUtils.writeStringToFile(store.getLayout().getFile("sneaky"), "not in the ledger");
+    store.setUsageLedger(ledgerFile, 60000);
+    con = (FSUsageConnection) store.openConnection(null, null);
+    assertEquals(con.getUsageByPrefix(), byPrefix);
+
+    // an unreadable ledger is rebuilt
+    store.setUsageLedger(null, 0);
+    FileUtils.writeStringToFile(ledgerFile, "garbage");
+    store.setUsageLedger(ledgerFile, 60000);
+    con = (FSUsageConnection) store.openConnection(null, null);
+    assertEquals(con.getUsage(), new FSUsage(4, 38));
+    store.setUsageLedger(null, 0);
+  }
+
+  private static void write(FSBlobStore store, String id, String content) throws Exception {
+    BlobStoreConnection con = store.openConnection(null, null);
+    write(con, id, content);
+    con.close();
+  }
+
+  private static void write(BlobStoreConnection con, String id, String content)
+      throws Exception {
+    OutputStream out = con.getBlob(URI.create(id), null).openOutputStream(-1, true);
+    out.write(content.getBytes("UTF-8"));
+    out.close();
+  }
+}
@@ -0,0 +1,40 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+
+/**
+ * TCK test suite for {@link FSBlobStore} striped over several base directories.
+ */
+public class TestStripedFSBlobStoreTCK extends TestFSBlobStoreTCK {
+  public TestStripedFSBlobStoreTCK() throws Exception {
+    super(getStore());
+  }
+
+  private static FSBlobStore getStore() throws Exception {
+    File[] baseDirs = { FSTestUtil.createTempDir(), FSTestUtil.createTempDir(),
+                        FSTestUtil.createTempDir() };
+    return new FSBlobStore(getStoreId(), baseDirs, FSBlobStore.getFreeSpaceWeights(baseDirs), 0,
+                           null);
+  }
+}
@@ -0,0 +1,47 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.fs;
+
+import java.io.File;
+
+import org.testng.annotations.AfterSuite;
+
+/**
+ * TCK test suite for {@link FSBlobStore} with deferred deletes.
+ */
+public class TestTrashedFSBlobStoreTCK extends TestFSBlobStoreTCK {
+  public TestTrashedFSBlobStoreTCK() throws Exception {
+    super(0, false);
+    ((FSBlobStore) store).setDeferredDeletes(new File[] { getTrashDir() }, 2, 10);
+  }
+
+  private File getTrashDir() {
+    return new File(((FSBlobStore) store).getLayout().getBaseDir().getPath() + ".trash");
+  }
+
+  @AfterSuite
+  @Override
+  public void destroy() {
+    FSTestUtil.rmdir(getTrashDir());
+    super.destroy();
+  }
+}
@@ -70,4 +70,15 @@ class IdMappingBlob extends BlobWrapper {
     return new IdMappingBlob(owner, internalBlob, mapper);
   }
 
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws DuplicateBlobException,
+      IOException, MissingBlobException, NullPointerException, IllegalArgumentException {
+    Blob internalBlob;
+    if (blobId == null)
+      internalBlob = delegate.copyTo(null, hints);
+    else
+      internalBlob = delegate.copyTo(mapper.getInternalId(blobId), hints);
+    return new IdMappingBlob(owner, internalBlob, mapper);
+  }
+
 }
@@ -26,14 +26,19 @@ import java.io.InputStream;
 
 import java.net.URI;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterators;
 
 import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.BlobStore;
 import org.akubraproject.BlobStoreConnection;
 import org.akubraproject.UnsupportedIdException;
@@ -80,6 +85,67 @@ class IdMappingBlobStoreConnection extends BlobStoreConnectionWrapper {
     return new IdMappingBlob(this, internalBlob, mapper);
   }
 
+  @Override
+  public Map<URI, Blob> getBlobs(Collection<URI> blobIds, Map<String, String> hints)
+      throws IOException, UnsupportedIdException {
+    Map<URI, URI> intIds = toInternal(blobIds);
+    Map<URI, Blob> intBlobs = delegate.getBlobs(intIds.values(), hints);
+
+    Map<URI, Blob> res = new LinkedHashMap<URI, Blob>();
+    for (Map.Entry<URI, URI> e : intIds.entrySet())
+      res.put(e.getKey(), new IdMappingBlob(this, intBlobs.get(e.getValue()), mapper));
+
+    return res;
+  }
+
+  @Override
+  public Set<URI> exists(Collection<URI> blobIds) throws IOException, UnsupportedIdException {
+    Map<URI, URI> intIds = toInternal(blobIds);
+    Set<URI> intExists = delegate.exists(intIds.values());
+
+    Set<URI> res = new HashSet<URI>();
+    for (Map.Entry<URI, URI> e : intIds.entrySet()) {
+      if (intExists.contains(e.getValue()))
+        res.add(e.getKey());
+    }
+
+    return res;
+  }
+
+  @Override
+  public Map<URI, Long> getSizes(Collection<URI> blobIds)
+      throws IOException, UnsupportedIdException {
+    Map<URI, URI> intIds = toInternal(blobIds);
+    Map<URI, Long> intSizes = delegate.getSizes(intIds.values());
+
+    Map<URI, Long> res = new LinkedHashMap<URI, Long>();
+    for (Map.Entry<URI, URI> e : intIds.entrySet()) {
+      Long size = intSizes.get(e.getValue());
+      if (size != null)
+        res.put(e.getKey(), size);
+    }
+
+    return res;
+  }
+
+  @Override
+  public void delete(Collection<URI> blobIds) throws IOException, UnsupportedIdException {
+    delegate.delete(toInternal(blobIds).values());
+  }
+
+  /**
+   * Maps each of the given external ids to its internal id, preserving their order.
+   */
+  private Map<URI, URI> toInternal(Collection<URI> blobIds) {
+    ensureOpen();
+
+    Map<URI, URI> res = new LinkedHashMap<URI, URI>();
+    for (URI id : blobIds)
+      res.put(id, mapper.getInternalId(checkId(id)));
+
+    return res;
+  }
+
   @Override
   public Iterator<URI> listBlobIds(final String filterPrefix) throws IOException {
     // list the appropriate internal ids
@@ -111,4 +177,14 @@ class IdMappingBlobStoreConnection extends BlobStoreConnectionWrapper {
       return extIterator;
     }
   }
+
+  /**
+   * The mapping need not preserve the order of the ids, so this scans the full listing.
+   */
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds)
+      throws IOException {
+    checkMaxIds(maxIds);
+    return scanPage(listBlobIds(filterPrefix), startAfter, maxIds);
+  }
 }
@@ -26,6 +26,7 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
 import java.util.Map;
 
 import org.akubraproject.Blob;
@@ -102,12 +103,46 @@ class MemBlob extends AbstractBlob {
     return dest;
   }
 
+  /**
+   * Copies by sharing the content between the two blobs; the content is copied only if and when
+   * either is overwritten.
+   */
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints)
+        throws IOException, MissingBlobException, NullPointerException, IllegalArgumentException,
+               DuplicateBlobException {
+    ensureOpen();
+
+    MemBlob dest = (MemBlob)getConnection().getBlob(blobId, hints);
+
+    synchronized (blobs) {
+      MemData data = blobs.get(id);
+      if (data == null)
+        throw new MissingBlobException(getId());
+
+      if (dest.exists())
+        throw new DuplicateBlobException(blobId, "Destination blob already exists");
+
+      data.share();
+      blobs.put(dest.getId(), data);
+    }
+
+    return dest;
+  }
+
   @Override
   public InputStream openInputStream() throws IOException {
     ensureOpen();
     return streamMgr.manageInputStream(getConnection(), getData().getInputStream());
   }
 
+  @Override
+  public InputStream openInputStream(long offset, long length) throws IOException {
+    checkRange(offset, length);
+    ensureOpen();
+    return streamMgr.manageInputStream(getConnection(), getData().getInputStream(offset, length));
+  }
+
   @Override
   public OutputStream openOutputStream(long estimatedSize, boolean overwrite) throws IOException {
     ensureOpen();
@@ -119,7 +154,7 @@ class MemBlob extends AbstractBlob {
       if (!overwrite && data != null)
         throw new DuplicateBlobException(getId(), "Blob already exists");
 
-      if (data == null || estimatedSize > data.bufferSize()) {
+      if (data == null || data.isShared() || estimatedSize > data.bufferSize()) {
         data = new MemData(Math.max((int) Math.min(estimatedSize, Integer.MAX_VALUE), 1024));
         blobs.put(id, data);
       } else {
@@ -130,6 +165,32 @@ class MemBlob extends AbstractBlob {
     return streamMgr.manageOutputStream(getConnection(), data);
   }
 
+  /**
+   * Opens a channel directly on the blob's buffer. A writable channel on content shared with a
+   * copy gets its own buffer first.
+   */
+  @Override
+  public SeekableByteChannel openChannel(boolean writable) throws IOException {
+    ensureOpen();
+
+    MemData data;
+
+    synchronized (blobs) {
+      data = blobs.get(id);
+      if (data == null)
+        throw new MissingBlobException(getId());
+
+      if (writable && data.isShared()) {
+        MemData copy = new MemData(Math.max(data.size(), 1024));
+        data.writeTo(copy);
+        blobs.put(id, copy);
+        data = copy;
+      }
+    }
+
+    return streamMgr.manageChannel(getConnection(), new MemChannel(data, writable), writable);
+  }
+
   @Override
   public long getSize() throws IOException {
     ensureOpen();
@@ -0,0 +1,121 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.mem;
+
+import java.net.URI;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.akubraproject.BlobIdPage;
+
+/**
+ * The blob-map of a {@link MemBlobStore}. Blobs are looked up by {@link URI#equals}, like in a
+ * <code>HashMap</code>, so e.g. <code>URN:x</code> and <code>urn:x</code> are the same blob;
+ * in addition the ids are kept in {@link BlobIdPage#ID_ORDER} for paged listings. Of ids that
+ * are equal, the one the blob was stored under is the one listed.
+ *
+ * <p>This is not synchronized; users synchronize on the instance.
+ */
+class MemBlobMap extends AbstractMap<URI, MemData> {
+  /** the entries, keyed by id, each holding the id the blob was stored under and its data */
+  private final Map<URI, Map.Entry<URI, MemData>> entries =
+      new HashMap<URI, Map.Entry<URI, MemData>>();
+  /** the ids the blobs were stored under */
+  private final NavigableSet<URI> ids = new TreeSet<URI>(BlobIdPage.ID_ORDER);
+
+  @Override
+  public MemData get(Object id) {
+    Map.Entry<URI, MemData> e = entries.get(id);
+    return (e != null) ? e.getValue() : null;
+  }
+
+  @Override
+  public boolean containsKey(Object id) {
+    return entries.containsKey(id);
+  }
+
+  @Override
+  public MemData put(URI id, MemData data) {
+    Map.Entry<URI, MemData> old = entries.get(id);
+    URI                     key = (old != null) ? old.getKey() : id;
+
+    entries.put(key, new SimpleImmutableEntry<URI, MemData>(key, data));
+    if (old == null)
+      ids.add(key);
+
+    return (old != null) ? old.getValue() : null;
+  }
+
+  @Override
+  public MemData remove(Object id) {
+    Map.Entry<URI, MemData> old = entries.remove(id);
+    if (old == null)
+      return null;
+
+    ids.remove(old.getKey());
+    return old.getValue();
+  }
+
+  @Override
+  public void clear() {
+    entries.clear();
+    ids.clear();
+  }
+
+  @Override
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the entries; read-only
+   */
+  @Override
+  public Set<Map.Entry<URI, MemData>> entrySet() {
+    return Collections.unmodifiableSet(new AbstractSet<Map.Entry<URI, MemData>>() {
+      @Override
+      public Iterator<Map.Entry<URI, MemData>> iterator() {
+        return entries.values().iterator();
+      }
+
+      @Override
+      public int size() {
+        return entries.size();
+      }
+    });
+  }
+
+  /**
+   * @return the ids the blobs were stored under, in {@link BlobIdPage#ID_ORDER}; must not be
+   *         modified
+   */
+  NavigableSet<URI> ids() {
+    return ids;
+  }
+}
@@ -23,7 +23,6 @@
 package org.akubraproject.mem;
 
 import java.net.URI;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 
@@ -41,8 +40,8 @@ import org.akubraproject.impl.StreamManager;
 public class MemBlobStore extends AbstractBlobStore {
   private static final Random rng = new Random();
 
-  private final Map<URI, MemData> blobs     = new HashMap<URI, MemData>();
-  private final StreamManager     streamMgr = new StreamManager();
+  private final MemBlobMap    blobs     = new MemBlobMap();
+  private final StreamManager streamMgr = new StreamManager();
 
   /**
    * Create a new, random ID with the given prefix.
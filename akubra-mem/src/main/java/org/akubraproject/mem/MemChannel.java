@@ -0,0 +1,123 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.mem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A channel reading and writing a blob's buffer directly. Writes are visible to all readers of
+ * the blob right away.
+ */
+class MemChannel implements SeekableByteChannel {
+  private final MemData data;
+  private final boolean writable;
+  private long          pos  = 0;
+  private boolean       open = true;
+
+  /**
+   * Create a new channel positioned at the beginning of the data.
+   *
+   * @param data     the buffer to access
+   * @param writable whether writing is allowed
+   */
+  MemChannel(MemData data, boolean writable) {
+    this.data     = data;
+    this.writable = writable;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    ensureOpen();
+    if (!dst.hasRemaining())
+      return 0;
+
+    int n = data.read(pos, dst);
+    if (n > 0)
+      pos += n;
+    return n;
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    ensureOpen();
+    if (!writable)
+      throw new NonWritableChannelException();
+
+    int n = data.write(pos, src);
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public long position() throws IOException {
+    ensureOpen();
+    return pos;
+  }
+
+  @Override
+  public SeekableByteChannel position(long newPosition) throws IOException {
+    ensureOpen();
+    if (newPosition < 0)
+      throw new IllegalArgumentException("position must not be negative: " + newPosition);
+
+    pos = newPosition;
+    return this;
+  }
+
+  @Override
+  public long size() throws IOException {
+    ensureOpen();
+    return data.size();
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) throws IOException {
+    ensureOpen();
+    if (size < 0)
+      throw new IllegalArgumentException("size must not be negative: " + size);
+    if (!writable)
+      throw new NonWritableChannelException();
+
+    data.truncate(size);
+    pos = Math.min(pos, size);
+    return this;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (!open)
+      throw new ClosedChannelException();
+  }
+}
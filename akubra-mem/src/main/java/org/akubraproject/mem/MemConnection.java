@@ -23,14 +23,18 @@
 package org.akubraproject.mem;
 
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterators;
 
 import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.impl.AbstractBlobStoreConnection;
 import org.akubraproject.impl.StreamManager;
 
@@ -40,7 +44,7 @@ import org.akubraproject.impl.StreamManager;
  * @author Ronald Tschalär
  */
 class MemConnection extends AbstractBlobStoreConnection {
-  private final Map<URI, MemData> blobs;
+  private final MemBlobMap blobs;
 
   /**
    * Create a new connection.
@@ -49,7 +53,7 @@ class MemConnection extends AbstractBlobStoreConnection {
    * @param blobs     the blob-map to use (shared, hence needs to be synchronized)
    * @param streamMgr the stream-manager to use
    */
-  MemConnection(MemBlobStore owner, Map<URI, MemData> blobs, StreamManager streamMgr) {
+  MemConnection(MemBlobStore owner, MemBlobMap blobs, StreamManager streamMgr) {
     super(owner, streamMgr);
     this.blobs     = blobs;
   }
@@ -74,7 +78,7 @@ class MemConnection extends AbstractBlobStoreConnection {
     ensureOpen();
 
     synchronized (blobs) {
-      return Iterators.filter(new ArrayList<URI>(blobs.keySet()).iterator(), new Predicate<URI>() {
+      return Iterators.filter(new ArrayList<URI>(blobs.ids()).iterator(), new Predicate<URI>() {
          public boolean apply(URI uri) {
            return ((filterPrefix == null) || uri.toString().startsWith(filterPrefix));
          }
@@ -82,6 +86,62 @@ class MemConnection extends AbstractBlobStoreConnection {
     }
   }
 
+  /**
+   * Seeks to the start of the page in the blob-map, so this takes time proportional to the page
+   * size only.
+   */
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds) {
+    ensureOpen();
+    checkMaxIds(maxIds);
+
+    List<URI> ids = new ArrayList<URI>();
+
+    synchronized (blobs) {
+      // start at whichever is later, the prefix or startAfter
+      URI start = (filterPrefix != null) ? lowerBound(filterPrefix) : null;
+
+      NavigableSet<URI> tail = blobs.ids();
+      if (startAfter != null &&
+          (start == null || BlobIdPage.ID_ORDER.compare(startAfter, start) >= 0))
+        tail = tail.tailSet(startAfter, false);
+      else if (start != null)
+        tail = tail.tailSet(start, true);
+
+      for (URI id : tail) {
+        if (ids.size() > maxIds)
+          break;
+
+        String str = id.toString();
+        if (filterPrefix == null || str.startsWith(filterPrefix))
+          ids.add(id);
+        else if (str.compareTo(filterPrefix) > 0)
+          break;          // past all ids with the prefix
+      }
+    }
+
+    return toPage(ids, maxIds);
+  }
+
+  /**
+   * Get a URI which sorts before or at all ids with the given prefix. Since the prefix itself
+   * need not be a valid URI, this is the longest prefix of it that is.
+   *
+   * @param prefix the id prefix
+   * @return the URI, or null if none could be found
+   */
+  private static URI lowerBound(String prefix) {
+    for (int len = prefix.length(); len > 0; len--) {
+      try {
+        return new URI(prefix.substring(0, len));
+      } catch (URISyntaxException use) {
+        // try a shorter one
+      }
+    }
+
+    return null;
+  }
+
   @Override
   public void sync() {
     ensureOpen();
@@ -24,7 +24,10 @@ package org.akubraproject.mem;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * A simple, dynamic in-memory buffer to which we can write and from which we can read.
@@ -32,6 +35,8 @@ import java.io.InputStream;
  * @author Ronald Tschalär
  */
 class MemData extends ByteArrayOutputStream {
+  private boolean shared;
+
   /**
    * Create a new buffer of the given size.
    *
@@ -51,6 +56,74 @@ class MemData extends ByteArrayOutputStream {
     return new ByteArrayInputStream(buf, 0, count);
   }
 
+  /**
+   * Get an input stream on a range of the current data. The range is clipped to the data.
+   *
+   * @param offset the position of the first byte
+   * @param length the maximum number of bytes, or -1 for all bytes up to the end of the data
+   * @return the input stream
+   */
+  public InputStream getInputStream(long offset, long length) {
+    int off = (int) Math.min(offset, count);
+    int len = count - off;
+    if (length >= 0 && length < len)
+      len = (int) length;
+
+    return new ByteArrayInputStream(buf, off, len);
+  }
+
+  /**
+   * Copy data at the given position into a buffer.
+   *
+   * @param pos the position of the first byte to read
+   * @param dst the buffer to read into
+   * @return the number of bytes read, or -1 if <var>pos</var> is at or beyond the end of the data
+   */
+  public synchronized int read(long pos, ByteBuffer dst) {
+    if (pos >= count)
+      return -1;
+
+    int n = (int) Math.min(dst.remaining(), count - pos);
+    dst.put(buf, (int) pos, n);
+    return n;
+  }
+
+  /**
+   * Copy data from a buffer into this one at the given position, growing the data as needed. If
+   * <var>pos</var> is beyond the end of the data the gap is filled with zeros.
+   *
+   * @param pos the position of the first byte to write
+   * @param src the buffer to write from
+   * @return the number of bytes written
+   * @throws IOException if the data would grow beyond the maximum size of an array
+   */
+  public synchronized int write(long pos, ByteBuffer src) throws IOException {
+    int  n   = src.remaining();
+    long end = pos + n;
+    if (end > Integer.MAX_VALUE - 8)
+      throw new IOException("Blob too large for in-memory store: " + end + " bytes");
+
+    if (end > buf.length)
+      buf = Arrays.copyOf(buf, (int) Math.min(Math.max(2L * buf.length, end),
+                                              Integer.MAX_VALUE - 8));
+    if (pos > count)
+      Arrays.fill(buf, count, (int) pos, (byte) 0);
+
+    src.get(buf, (int) pos, n);
+    count = Math.max(count, (int) end);
+    return n;
+  }
+
+  /**
+   * Shorten the data. Nothing happens if the data is not longer than <var>size</var>.
+   *
+   * @param size the new size
+   */
+  public synchronized void truncate(long size) {
+    if (size < count)
+      count = (int) size;
+  }
+
   /**
    * The size of the internal buffer.
    *
@@ -59,4 +132,19 @@ class MemData extends ByteArrayOutputStream {
   public int bufferSize() {
     return buf.length;
   }
+
+  /**
+   * Mark this buffer as being referenced by more than one blob. A shared buffer must not be
+   * written to again; the blobs write to new buffers instead. Callers synchronize on the blob-map.
+   */
+  public void share() {
+    shared = true;
+  }
+
+  /**
+   * @return whether this buffer is referenced by more than one blob
+   */
+  public boolean isShared() {
+    return shared;
+  }
 }
@@ -0,0 +1,83 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.mem;
+
+import java.io.OutputStream;
+
+import java.net.URI;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Unit tests for the id semantics of {@link MemBlobStore}.
+ */
+public class TestMemBlobStoreIds {
+  /**
+   * Ids that are equal as URIs should name the same blob, also in the paged listings, which
+   * should list the id the blob was created under.
+   */
+  @Test
+  public void testEqualIds() throws Exception {
+    BlobStoreConnection con = new MemBlobStore().openConnection(null, null);
+
+    create(con, "URN:x");
+    create(con, "urn:a%2f");
+    create(con, "urn:b");
+
+    assertTrue(con.getBlob(URI.create("urn:x"), null).exists());
+    assertTrue(con.getBlob(URI.create("urn:a%2F"), null).exists());
+    assertEquals(con.listBlobIds(null, null, 10).getBlobIds(),
+                 Arrays.asList(URI.create("URN:x"), URI.create("urn:a%2f"),
+                               URI.create("urn:b")));
+
+    // overwriting through an equal id keeps the original one
+    create(con, "urn:x");
+    assertEquals(con.listBlobIds(null, null, 10).getBlobIds().size(), 3);
+    assertEquals(con.listBlobIds(null, URI.create("urn:a%2f"), 10).getBlobIds(),
+                 Arrays.asList(URI.create("urn:b")));
+
+    con.getBlob(URI.create("urn:x"), null).delete();
+    con.getBlob(URI.create("urn:a%2F"), null).moveTo(URI.create("urn:c"), null);
+    assertFalse(con.getBlob(URI.create("URN:x"), null).exists());
+    assertFalse(con.getBlob(URI.create("urn:a%2f"), null).exists());
+    assertEquals(con.listBlobIds(null, null, 10).getBlobIds(),
+                 Arrays.asList(URI.create("urn:b"), URI.create("urn:c")));
+    assertEquals(con.getSizes(Arrays.asList(URI.create("urn:b"))).get(URI.create("urn:b")),
+                 Long.valueOf(1));
+
+    con.close();
+  }
+
+  private static void create(BlobStoreConnection con, String id) throws Exception {
+    OutputStream out = con.getBlob(URI.create(id), null).openOutputStream(-1, true);
+    out.write('x');
+    out.close();
+  }
+}
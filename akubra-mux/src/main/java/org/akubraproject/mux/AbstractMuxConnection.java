@@ -32,6 +32,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import javax.transaction.Transaction;
 
@@ -41,6 +43,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.BlobStore;
 import org.akubraproject.BlobStoreConnection;
 import org.akubraproject.UnsupportedIdException;
@@ -186,6 +189,34 @@ public abstract class AbstractMuxConnection extends AbstractBlobStoreConnection
     return Iterators.concat(iterators.iterator());
   }
 
+  /**
+   * Gets a page from each of the matching backing stores and merges them.
+   */
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds)
+      throws IOException {
+    checkMaxIds(maxIds);
+
+    SortedSet<URI> ids  = new TreeSet<URI>(BlobIdPage.ID_ORDER);
+    boolean        more = false;
+
+    for (BlobStore store : getStores(filterPrefix)) {
+      BlobIdPage page = getConnection(store, null).listBlobIds(filterPrefix, startAfter, maxIds);
+      ids.addAll(page.getBlobIds());
+      more |= page.getContinuation() != null;
+    }
+
+    /* A store with more ids returned a full page, so there are at least maxIds ids. The ones
+     * beyond those are not necessarily the next ones overall, so they are dropped.
+     */
+    List<URI> res = new ArrayList<URI>(ids);
+    if (!more && res.size() <= maxIds)
+      return new BlobIdPage(res, null);
+
+    res = res.subList(0, maxIds);
+    return new BlobIdPage(res, res.get(maxIds - 1));
+  }
+
   @Override
   public void sync() throws IOException {
     if (cons == null)
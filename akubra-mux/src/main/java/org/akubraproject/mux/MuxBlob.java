@@ -36,12 +36,14 @@ import org.akubraproject.Blob;
 import org.akubraproject.DuplicateBlobException;
 import org.akubraproject.MissingBlobException;
 import org.akubraproject.impl.BlobWrapper;
+import org.akubraproject.impl.BufferPool;
 
 /**
  * A wrapped blob for use by implementations of {@link AbstractMuxConnection}. This ensures
  * that {@link #getConnection()} returns the connection from the mux store layer rather than the
  * backing store. Additionally this supports {@link #moveTo(URI, Map)} across blob stores using {@link
- * #moveByCopy(Blob, URI, URI)}.
+ * #moveByCopy(Blob, URI, URI)}, and {@link #copyTo(URI, Map)} using {@link
+ * #copyAcrossStores(Blob)}.
  *
  * @author Pradeep Krishnan
  */
@@ -72,6 +74,59 @@ public class MuxBlob extends BlobWrapper {
     return dest;
   }
 
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+    MuxBlob dest   = (MuxBlob) getConnection().getBlob(blobId, hints);
+    URI thisStore  = delegate.getConnection().getBlobStore().getId();
+    URI otherStore = dest.delegate.getConnection().getBlobStore().getId();
+
+    if (!thisStore.equals(otherStore))
+      copyAcrossStores(dest);
+    else
+      delegate.copyTo(dest.getId(), hints);
+
+    return dest;
+  }
+
+  /**
+   * Performs a {@link #copyTo(URI, Map)} operation by streaming the content, since the blobs are
+   * in different stores.
+   *
+   * @param blob the destination
+   *
+   * @throws IOException on an error in copy
+   * @throws DuplicateBlobException if a blob with the same id as the destination blob exists in
+   *         the destination blob store
+   * @throws MissingBlobException if this blob does not exist
+   */
+  protected void copyAcrossStores(Blob blob)
+                     throws IOException, DuplicateBlobException, MissingBlobException {
+    InputStream  in      = openInputStream();
+    OutputStream out     = null;
+    boolean      created = false;
+
+    try {
+      out = blob.openOutputStream(getSize(), false);
+      created = true;
+      BufferPool.getDefault().copy(in, out);
+      out.close();
+      out = null;
+      created = false;
+    } finally {
+      IOUtils.closeQuietly(in);
+
+      if (out != null)
+        IOUtils.closeQuietly(out);
+
+      try {
+        if (created)
+          blob.delete();
+      } catch (Exception de) {
+        log.warn("Ignored deletion failure for " + blob.getId());
+      }
+    }
+  }
+
   /**
    * Performs a {@link #moveTo(URI, Map)} operation by copy since the blobs are in different stores.
    *
@@ -96,7 +151,7 @@ public class MuxBlob extends BlobWrapper {
     try {
       out = blob.openOutputStream(getSize(), false);
       created = true;
-      IOUtils.copy(in, out);
+      BufferPool.getDefault().copy(in, out);
       out.close();
       out = null;
       in.close();
@@ -0,0 +1,145 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+
+import org.akubraproject.Blob;
+import org.akubraproject.DuplicateBlobException;
+import org.akubraproject.MissingBlobException;
+import org.akubraproject.impl.AbstractBlob;
+import org.akubraproject.impl.StreamManager;
+import org.akubraproject.pack.SegmentLog.Entry;
+
+/**
+ * A blob in a {@link PackBlobStore}.
+ */
+class PackBlob extends AbstractBlob {
+  private final SegmentLog    segLog;
+  private final File          tmpDir;
+  private final StreamManager streamMgr;
+
+  /**
+   * Create a new blob.
+   *
+   * @param owner     the connection this blob belongs to
+   * @param id        the blob's id
+   * @param segLog    the log holding the blobs
+   * @param tmpDir    the directory for temporary files
+   * @param streamMgr the stream-manager to use
+   */
+  PackBlob(PackConnection owner, URI id, SegmentLog segLog, File tmpDir,
+           StreamManager streamMgr) {
+    super(owner, id);
+    this.segLog    = segLog;
+    this.tmpDir    = tmpDir;
+    this.streamMgr = streamMgr;
+  }
+
+  @Override
+  public URI getCanonicalId() {
+    return getId();
+  }
+
+  @Override
+  public boolean exists() throws IOException {
+    ensureOpen();
+    return segLog.get(id) != null;
+  }
+
+  @Override
+  public long getSize() throws IOException {
+    ensureOpen();
+
+    Entry e = segLog.get(id);
+    if (e == null)
+      throw new MissingBlobException(id);
+
+    return e.length;
+  }
+
+  @Override
+  public void delete() throws IOException {
+    ensureOpen();
+    segLog.remove(id);
+  }
+
+  /**
+   * Moves the blob by only writing a record for the new id that points at the existing
+   * content; the content itself is not copied.
+   */
+  @Override
+  public Blob moveTo(URI blobId, Map<String, String> hints) throws IOException {
+    ensureOpen();
+
+    Blob dest = getConnection().getBlob(blobId, hints);
+    segLog.move(id, dest.getId());
+    return dest;
+  }
+
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+    ensureOpen();
+
+    Blob dest = getConnection().getBlob(blobId, hints);
+    segLog.copy(id, dest.getId());
+    return dest;
+  }
+
+  @Override
+  public InputStream openInputStream() throws IOException {
+    return openInputStream(0, -1);
+  }
+
+  /**
+   * Reads just the requested range from the segment.
+   */
+  @Override
+  public InputStream openInputStream(long offset, long length) throws IOException {
+    checkRange(offset, length);
+    ensureOpen();
+
+    Entry e     = segLog.acquire(id);
+    long  start = e.dataPos + Math.min(offset, e.length);
+    long  end   = e.dataPos + e.length;
+    if (length >= 0 && length < end - start)
+      end = start + length;
+
+    return streamMgr.manageInputStream(getConnection(),
+                                       new SegmentInputStream(segLog, e.dataSeg, start, end));
+  }
+
+  @Override
+  public OutputStream openOutputStream(long estimatedSize, boolean overwrite) throws IOException {
+    ensureOpen();
+
+    if (!overwrite && segLog.get(id) != null)
+      throw new DuplicateBlobException(id, "Blob already exists");
+
+    return streamMgr.manageOutputStream(getConnection(), new PackOutputStream(segLog, id, tmpDir));
+  }
+}
@@ -0,0 +1,145 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+import javax.transaction.Transaction;
+
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.impl.AbstractBlobStore;
+import org.akubraproject.impl.StreamManager;
+
+/**
+ * A store that packs blobs into large, append-only segment files in a directory, rather than
+ * storing each in a file of its own. This saves inodes, directory entries and syncs when there
+ * are many small blobs; in exchange, the content of deleted and overwritten blobs is only
+ * reclaimed when their segment is compacted.
+ *
+ * <p>The index of the blobs is kept in memory and is recovered from the segments when the store
+ * is first used. Moving a blob only writes a small record and does not copy its content. A
+ * background thread compacts each full segment once the given share of it has become garbage,
+ * by appending the blobs still in use to the current segment and deleting the old one;
+ * {@link #compact} does the same on demand.
+ *
+ * <p>Any URI is a valid blob id. Ids are generated as <code>urn:uuid:</code> URIs. The store
+ * must not be opened by more than one instance at a time.
+ */
+public class PackBlobStore extends AbstractBlobStore {
+  /** The default size beyond which a new segment is started: 64 MiB. */
+  public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+  /** The default percentage of garbage at which a segment is compacted. */
+  public static final int DEFAULT_COMPACT_PERCENT = 50;
+
+  private final File          baseDir;
+  private final long          segmentSize;
+  private final int           compactPercent;
+  private final StreamManager streamMgr = new StreamManager();
+  private SegmentLog          segLog;
+
+  /**
+   * Create a new store with the default segment size and compaction threshold.
+   *
+   * @param id      the store id
+   * @param baseDir the directory holding the segments; created if it does not exist
+   */
+  public PackBlobStore(URI id, File baseDir) {
+    this(id, baseDir, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACT_PERCENT);
+  }
+
+  /**
+   * Create a new store.
+   *
+   * @param id             the store id
+   * @param baseDir        the directory holding the segments; created if it does not exist
+   * @param segmentSize    the size beyond which a new segment is started
+   * @param compactPercent the percentage of a full segment that must be garbage for it to be
+   *                       compacted, from 1 to 100
+   * @throws IllegalArgumentException if the segment size is not positive or the percentage is
+   *                                  out of range
+   */
+  public PackBlobStore(URI id, File baseDir, long segmentSize, int compactPercent)
+      throws IllegalArgumentException {
+    super(id);
+
+    if (segmentSize <= 0)
+      throw new IllegalArgumentException("segmentSize must be positive: " + segmentSize);
+    if (compactPercent < 1 || compactPercent > 100)
+      throw new IllegalArgumentException("compactPercent must be between 1 and 100: " +
+                                         compactPercent);
+
+    this.baseDir        = baseDir;
+    this.segmentSize    = segmentSize;
+    this.compactPercent = compactPercent;
+  }
+
+  @Override
+  public BlobStoreConnection openConnection(Transaction tx, Map<String, String> hints)
+      throws IOException {
+    if (tx != null)
+      throw new UnsupportedOperationException("PackBlobStore does not support transactions");
+
+    return new PackConnection(this, getLog(), baseDir, streamMgr);
+  }
+
+  /**
+   * Compact all full segments that have reached the garbage threshold now, rather than waiting
+   * for the background compaction.
+   *
+   * @return the number of segments compacted
+   * @throws IOException if reading or writing the segments failed
+   */
+  public int compact() throws IOException {
+    return getLog().compact();
+  }
+
+  /**
+   * Stop the background compaction, sync all changes and close the segment files. The store
+   * cannot be used afterwards.
+   *
+   * @throws IOException if syncing or closing failed
+   */
+  public synchronized void shutdown() throws IOException {
+    if (segLog != null)
+      segLog.close();
+  }
+
+  /**
+   * @return the directory holding the segments
+   */
+  public File getBaseDir() {
+    return baseDir;
+  }
+
+  /**
+   * @return the log, opened on first use
+   */
+  synchronized SegmentLog getLog() throws IOException {
+    if (segLog == null)
+      segLog = new SegmentLog(baseDir, segmentSize, compactPercent);
+    return segLog;
+  }
+}
@@ -0,0 +1,96 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
+import org.akubraproject.impl.AbstractBlobStoreConnection;
+import org.akubraproject.impl.StreamManager;
+
+/**
+ * A connection to a {@link PackBlobStore}. All connections share the store's segments and
+ * index.
+ */
+class PackConnection extends AbstractBlobStoreConnection {
+  private final SegmentLog segLog;
+  private final File       tmpDir;
+
+  /**
+   * Create a new connection.
+   *
+   * @param owner     the owning blob-store
+   * @param segLog    the log holding the blobs
+   * @param tmpDir    the directory for temporary files
+   * @param streamMgr the stream-manager to use
+   */
+  PackConnection(PackBlobStore owner, SegmentLog segLog, File tmpDir, StreamManager streamMgr) {
+    super(owner, streamMgr);
+    this.segLog = segLog;
+    this.tmpDir = tmpDir;
+  }
+
+  @Override
+  public Blob getBlob(URI blobId, Map<String, String> hints) {
+    ensureOpen();
+
+    if (blobId == null) {
+      do {
+        blobId = URI.create("urn:uuid:" + UUID.randomUUID());
+      } while (segLog.get(blobId) != null);
+    }
+
+    return new PackBlob(this, blobId, segLog, tmpDir, streamManager);
+  }
+
+  @Override
+  public Iterator<URI> listBlobIds(String filterPrefix) {
+    ensureOpen();
+    return segLog.list(filterPrefix, null, -1).iterator();
+  }
+
+  /**
+   * Seeks to the start of the page in the index, so this takes time proportional to the page
+   * size only.
+   */
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds) {
+    ensureOpen();
+    checkMaxIds(maxIds);
+
+    List<URI> ids = segLog.list(filterPrefix, startAfter, maxIds + 1);
+    return toPage(ids, maxIds);
+  }
+
+  @Override
+  public void sync() throws IOException {
+    ensureOpen();
+    segLog.sync();
+  }
+}
@@ -0,0 +1,99 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.pack;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.io.output.ProxyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An output stream for a blob's content. Since the content is appended to the active segment
+ * in one go, it is collected first: in memory up to {@link #MEMORY_THRESHOLD} bytes, which
+ * covers most blobs in a pack store, and in a temporary file beyond. The blob is stored when
+ * the stream is closed.
+ */
+class PackOutputStream extends ProxyOutputStream {
+  private static final Logger log = LoggerFactory.getLogger(PackOutputStream.class);
+
+  /** The number of bytes collected in memory before switching to a temporary file. */
+  static final int MEMORY_THRESHOLD = 256 * 1024;
+
+  private final SegmentLog               segLog;
+  private final URI                      id;
+  private final DeferredFileOutputStream buffer;
+  private boolean                        closed;
+
+  /**
+   * Create a new stream.
+   *
+   * @param segLog the log to store the blob in
+   * @param id     the blob id
+   * @param tmpDir the directory for the temporary file
+   */
+  PackOutputStream(SegmentLog segLog, URI id, File tmpDir) {
+    this(segLog, id, new DeferredFileOutputStream(MEMORY_THRESHOLD, "akubra-pack", ".tmp",
+                                                  tmpDir));
+  }
+
+  private PackOutputStream(SegmentLog segLog, URI id, DeferredFileOutputStream buffer) {
+    super(buffer);
+    this.segLog = segLog;
+    this.id     = id;
+    this.buffer = buffer;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed)
+      return;
+
+    closed = true;
+    try {
+      super.close();
+
+      if (buffer.isInMemory()) {
+        byte[] data = buffer.getData();
+        segLog.put(id, Channels.newChannel(new ByteArrayInputStream(data)), data.length);
+      } else {
+        FileChannel ch = FileChannel.open(buffer.getFile().toPath(), StandardOpenOption.READ);
+        try {
+          segLog.put(id, ch, ch.size());
+        } finally {
+          ch.close();
+        }
+      }
+    } finally {
+      File tmp = buffer.getFile();
+      if (tmp != null && !tmp.delete())
+        log.warn("Could not delete temporary file '" + tmp + "'");
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One segment file of a {@link SegmentLog}. Records are only ever appended to a segment, and
+ * only while it is the log's active one; afterwards only their status bytes change.
+ *
+ * <p>The segment keeps track of the live content it holds, i.e. the data and the owning records
+ * of the blobs in the log's index, so that the compactor can tell how much of it is garbage and
+ * which blobs to relocate. All the fields apart from the channel are guarded by the log's lock.
+ */
+class Segment {
+  /** The magic at the start of each segment file. */
+  static final byte[] MAGIC = { 'A', 'K', 'B', 'P', 'A', 'C', 'K', '1' };
+
+  /** The suffix of segment file names; the rest of the name is the segment number. */
+  static final String SUFFIX = ".pack";
+
+  final int  number;
+  final File file;
+
+  /** the size of the valid content; records are appended here */
+  long size;
+  /** the number of bytes held by live data and live owning records */
+  long liveBytes;
+  /** the ids of the live blobs whose data is in this segment, by data position */
+  final Map<Long, URI> owners  = new HashMap<Long, URI>();
+  /** the ids of the live blobs whose owning record is in this segment, by record position */
+  final Map<Long, URI> records = new HashMap<Long, URI>();
+  /** the number of open readers */
+  int readers;
+  /** whether the segment has been compacted and is to be deleted once the readers are done */
+  boolean retired;
+  /** whether the segment has been written to since it was last forced */
+  boolean dirty;
+
+  private FileChannel channel;
+  private boolean     closed;
+
+  /**
+   * Open a segment file, creating it if it does not exist yet.
+   *
+   * @param dir    the directory holding the segments
+   * @param number the segment number
+   * @throws IOException if the file could not be opened or created
+   */
+  Segment(File dir, int number) throws IOException {
+    this.number  = number;
+    this.file    = new File(dir, getName(number));
+    this.channel = open();
+  }
+
+  /**
+   * @param number the segment number
+   * @return the name of the segment's file
+   */
+  static String getName(int number) {
+    return String.format("%08d", number) + SUFFIX;
+  }
+
+  /**
+   * @param name a file name
+   * @return the number of the segment stored under this name, or -1 if it is not a segment name
+   */
+  static int parseName(String name) {
+    if (!name.endsWith(SUFFIX))
+      return -1;
+
+    try {
+      return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+    } catch (NumberFormatException nfe) {
+      return -1;
+    }
+  }
+
+  /**
+   * Get the channel to the segment file. A channel closed by the interruption of a thread using
+   * it is reopened, so that one interrupted reader does not break the segment for everybody.
+   *
+   * @return the channel
+   * @throws IOException if the channel needed reopening and that failed, or the segment has
+   *                     been closed
+   */
+  synchronized FileChannel getChannel() throws IOException {
+    if (!channel.isOpen()) {
+      if (closed)
+        throw new ClosedChannelException();
+      channel = open();
+    }
+    return channel;
+  }
+
+  /**
+   * Read from the segment until the buffer is full.
+   *
+   * @param dst the buffer to read into
+   * @param pos the position to read at
+   * @throws IOException if the read failed or the end of the file was reached
+   */
+  void readFully(ByteBuffer dst, long pos) throws IOException {
+    while (dst.hasRemaining()) {
+      int n = getChannel().read(dst, pos);
+      if (n < 0)
+        throw new IOException("Unexpected end of segment '" + file + "' at " + pos);
+      pos += n;
+    }
+  }
+
+  /**
+   * Write a whole buffer to the segment.
+   *
+   * @param src the buffer to write
+   * @param pos the position to write at
+   * @throws IOException if the write failed
+   */
+  void writeFully(ByteBuffer src, long pos) throws IOException {
+    while (src.hasRemaining())
+      pos += getChannel().write(src, pos);
+    dirty = true;
+  }
+
+  /**
+   * @return the fraction of the segment's bytes, apart from the magic, that are garbage
+   */
+  double getGarbageRatio() {
+    long total = size - MAGIC.length;
+    return (total <= 0) ? 0 : (double) (total - liveBytes) / total;
+  }
+
+  /**
+   * Close the segment's channel.
+   *
+   * @throws IOException if closing failed
+   */
+  synchronized void close() throws IOException {
+    closed = true;
+    channel.close();
+  }
+
+  private FileChannel open() throws IOException {
+    return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+  }
+
+  @Override
+  public String toString() {
+    return file.getName();
+  }
+}
@@ -0,0 +1,105 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.pack;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream over (part of) a blob's content in a segment. The segment is released when
+ * the stream is closed.
+ */
+class SegmentInputStream extends InputStream {
+  private final SegmentLog segLog;
+  private final Segment    seg;
+  private final long       end;
+  private long             pos;
+  private boolean          closed;
+
+  /**
+   * Create a new stream.
+   *
+   * @param segLog the log the segment was {@link SegmentLog#acquire acquired} from
+   * @param seg    the segment holding the content
+   * @param pos    the position of the first byte to read
+   * @param end    the position after the last byte to read
+   */
+  SegmentInputStream(SegmentLog segLog, Segment seg, long pos, long end) {
+    this.segLog = segLog;
+    this.seg    = seg;
+    this.pos    = pos;
+    this.end    = end;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+
+    if (len == 0)
+      return 0;
+    if (pos >= end)
+      return -1;
+
+    ByteBuffer buf = ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos));
+    int n = seg.getChannel().read(buf, pos);
+    if (n < 0)
+      throw new IOException("Unexpected end of segment '" + seg.file + "' at " + pos);
+
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    ensureOpen();
+
+    long skipped = Math.max(0, Math.min(n, end - pos));
+    pos += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() throws IOException {
+    ensureOpen();
+    return (int) Math.min(end - pos, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      segLog.release(seg);
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed)
+      throw new IOException("Stream closed");
+  }
+}
@@ -0,0 +1,871 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.akubraproject.BlobIdPage;
+import org.akubraproject.DuplicateBlobException;
+import org.akubraproject.MissingBlobException;
+import org.akubraproject.async.AsyncBlobStore;
+import org.akubraproject.impl.BufferPool;
+
+/**
+ * The segment files of a {@link PackBlobStore}, together with the in-memory index of the blob
+ * ids to the location of their content.
+ *
+ * <p>Blobs are stored as records appended to the active segment; once that reaches the
+ * configured size a new one is started. Each segment starts with {@link Segment#MAGIC}, followed
+ * by the records:
+ * <pre>
+ *   status   byte    0 while the record is being written, then LIVE, DEAD or MOVED
+ *   type     byte    PUT or ALIAS
+ *   idLen    int     the length of the id
+ *   id       byte[]  the blob id, UTF-8 encoded
+ *   PUT:     length (long) and the content
+ *   ALIAS:   segment number (int), position (long) and length (long) of the content of a PUT
+ * </pre>
+ *
+ * <p>Records are never rewritten, but their status is changed in place: deleting or
+ * overwriting a blob marks its record DEAD. Moving a blob appends an ALIAS for the new id,
+ * pointing at the existing content, and marks the PUT MOVED (the content is still in use) or
+ * the previous ALIAS DEAD; so no content is copied. Since appended records are always the most
+ * recent, a crash between appending a record and marking the one it replaces is resolved on
+ * recovery by letting the later record win, both for its id and for its content. A record
+ * whose status is still 0 marks the end of a segment.
+ *
+ * <p>A background compactor rewrites each sealed segment in which the share of garbage has
+ * reached the configured ratio, by appending its live blobs to the active segment again, and
+ * then deletes it.
+ *
+ * <p>All operations are serialized on this log; reading the content of a blob is not, as it
+ * is never overwritten while the segment holding it is in use.
+ */
+class SegmentLog {
+  private static final Logger log = LoggerFactory.getLogger(SegmentLog.class);
+
+  static final byte LIVE  = 1;
+  static final byte DEAD  = 2;
+  static final byte MOVED = 3;
+
+  static final byte PUT   = 1;
+  static final byte ALIAS = 2;
+
+  /** the record size without the id and the content: status, type, idLen and length */
+  private static final int PUT_HEADER   = 1 + 1 + 4 + 8;
+  /** the record size without the id: status, type, idLen, segment, position and length */
+  private static final int ALIAS_RECORD = 1 + 1 + 4 + 4 + 8 + 8;
+
+  private final File                           dir;
+  private final long                           segmentSize;
+  private final double                         compactRatio;
+  private final NavigableMap<URI, Entry>       index    =
+      new TreeMap<URI, Entry>(BlobIdPage.ID_ORDER);
+  private final NavigableMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+  private final ExecutorService                compactor;
+  private final AtomicBoolean                  compactionPending = new AtomicBoolean();
+
+  private Segment active;
+  private boolean dirDirty;
+  private boolean closed;
+  private long    compactions;
+
+  /**
+   * Open the log in the given directory, recovering the index from the segments found there.
+   *
+   * @param dir            the directory holding the segments; created if it does not exist
+   * @param segmentSize    the size beyond which a new segment is started
+   * @param compactPercent the percentage of garbage at which a segment is compacted
+   * @throws IOException if the segments could not be read
+   */
+  SegmentLog(File dir, long segmentSize, int compactPercent) throws IOException {
+    this.dir          = dir;
+    this.segmentSize  = segmentSize;
+    this.compactRatio = compactPercent / 100.0;
+    this.compactor    = AsyncBlobStore.newBoundedExecutor(1, 1, "akubra-pack-compactor");
+
+    synchronized (this) {
+      load();
+    }
+  }
+
+  /**
+   * Get the location of a blob's content.
+   *
+   * @param id the blob id
+   * @return the location, or null if the blob does not exist
+   */
+  synchronized Entry get(URI id) {
+    ensureOpen();
+    return index.get(id);
+  }
+
+  /**
+   * Get the location of a blob's content for reading it. The segment holding the content will
+   * not be deleted until {@link #release released}.
+   *
+   * @param id the blob id
+   * @return the location
+   * @throws MissingBlobException if the blob does not exist
+   */
+  synchronized Entry acquire(URI id) throws MissingBlobException {
+    Entry e = get(id);
+    if (e == null)
+      throw new MissingBlobException(id);
+
+    e.dataSeg.readers++;
+    return e;
+  }
+
+  /**
+   * Release a segment obtained through {@link #acquire}.
+   *
+   * @param seg the segment
+   */
+  synchronized void release(Segment seg) {
+    if (--seg.readers == 0 && seg.retired)
+      delete(seg);
+  }
+
+  /**
+   * Store a blob, replacing any previous content.
+   *
+   * @param id     the blob id
+   * @param src    the content
+   * @param length the number of bytes of content to read from <var>src</var>
+   * @throws IOException if the content could not be read or stored
+   */
+  synchronized void put(URI id, ReadableByteChannel src, long length) throws IOException {
+    ensureOpen();
+    replace(id, index.get(id), appendPut(id, src, length));
+  }
+
+  /**
+   * Delete a blob.
+   *
+   * @param id the blob id
+   * @return true if the blob existed
+   * @throws IOException if the record could not be updated
+   */
+  synchronized boolean remove(URI id) throws IOException {
+    ensureOpen();
+
+    Entry e = index.remove(id);
+    if (e == null)
+      return false;
+
+    unlink(e, false);
+    checkGarbage(e);
+    return true;
+  }
+
+  /**
+   * Move a blob. Only records are written; the content stays where it is.
+   *
+   * @param from the id of the blob to move
+   * @param to   the new id
+   * @throws DuplicateBlobException if a blob with the new id exists
+   * @throws MissingBlobException if the blob to move does not exist
+   * @throws IOException if the records could not be written
+   */
+  synchronized void move(URI from, URI to) throws IOException {
+    ensureOpen();
+
+    if (index.containsKey(to))
+      throw new DuplicateBlobException(to, "Destination blob already exists");
+
+    Entry e = index.get(from);
+    if (e == null)
+      throw new MissingBlobException(from);
+
+    Entry moved = appendAlias(to, e);
+    index.remove(from);
+    unlink(e, true);
+    link(to, moved);
+    checkGarbage(e);
+  }
+
+  /**
+   * Copy a blob.
+   *
+   * @param from the id of the blob to copy
+   * @param to   the id of the copy
+   * @throws MissingBlobException if the blob to copy does not exist
+   * @throws DuplicateBlobException if a blob with the new id exists
+   * @throws IOException if the copy could not be written
+   */
+  synchronized void copy(URI from, URI to) throws IOException {
+    ensureOpen();
+
+    Entry e = index.get(from);
+    if (e == null)
+      throw new MissingBlobException(from);
+
+    if (index.containsKey(to))
+      throw new DuplicateBlobException(to, "Destination blob already exists");
+
+    link(to, appendPut(to, new SegmentReader(e.dataSeg, e.dataPos), e.length));
+  }
+
+  /**
+   * List blob ids in id order.
+   *
+   * @param prefix     if not null, only ids starting with this are listed
+   * @param startAfter if not null, only ids after this one are listed
+   * @param limit      the maximum number of ids to list, or -1 for all
+   * @return the ids
+   */
+  synchronized List<URI> list(String prefix, URI startAfter, int limit) {
+    ensureOpen();
+
+    // start at whichever is later, the prefix or startAfter
+    URI start = (prefix != null) ? lowerBound(prefix) : null;
+
+    NavigableMap<URI, Entry> tail = index;
+    if (startAfter != null &&
+        (start == null || BlobIdPage.ID_ORDER.compare(startAfter, start) >= 0))
+      tail = index.tailMap(startAfter, false);
+    else if (start != null)
+      tail = index.tailMap(start, true);
+
+    List<URI> ids = new ArrayList<URI>();
+    for (URI id : tail.keySet()) {
+      if (ids.size() == limit)
+        break;
+
+      String str = id.toString();
+      if (prefix == null || str.startsWith(prefix))
+        ids.add(id);
+      else if (str.compareTo(prefix) > 0)
+        break;          // past all ids with the prefix
+    }
+
+    return ids;
+  }
+
+  /**
+   * Force all changes to disk.
+   *
+   * @throws IOException if forcing failed
+   */
+  synchronized void sync() throws IOException {
+    ensureOpen();
+    force();
+  }
+
+  /**
+   * Compact all sealed segments that have reached the garbage ratio, and wait for it.
+   *
+   * @return the number of segments compacted
+   * @throws IOException if compacting failed
+   */
+  int compact() throws IOException {
+    int count = 0;
+    for (Segment seg = nextCompactable(); seg != null; seg = nextCompactable()) {
+      compact(seg);
+      count++;
+    }
+
+    return count;
+  }
+
+  /**
+   * Stop the compactor, force all changes to disk and close the segments. Any further
+   * operation fails.
+   *
+   * @throws IOException if forcing or closing failed
+   */
+  synchronized void close() throws IOException {
+    if (closed)
+      return;
+
+    compactor.shutdown();
+    force();
+    closed = true;
+
+    for (Segment seg : segments.values())
+      seg.close();
+  }
+
+  /**
+   * @return the number of segments; for testing
+   */
+  synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * @return the number of segments compacted so far; for testing
+   */
+  synchronized long getCompactionCount() {
+    return compactions;
+  }
+
+  private void ensureOpen() throws IllegalStateException {
+    if (closed)
+      throw new IllegalStateException("Store has been shut down");
+  }
+
+  /*
+   * Recovery
+   */
+
+  private void load() throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Could not create directory '" + dir + "'");
+
+    List<Integer> numbers = new ArrayList<Integer>();
+    for (String name : dir.list()) {
+      int num = Segment.parseName(name);
+      if (num >= 0)
+        numbers.add(num);
+    }
+    Collections.sort(numbers);
+
+    for (int num : numbers) {
+      Segment seg = new Segment(dir, num);
+      segments.put(num, seg);
+      scan(seg);
+    }
+
+    if (segments.isEmpty())
+      active = createSegment(1);
+    else if (segments.lastEntry().getValue().size < segmentSize)
+      active = segments.lastEntry().getValue();
+    else
+      active = createSegment(segments.lastKey() + 1);
+
+    if (log.isDebugEnabled())
+      log.debug("Loaded " + index.size() + " blobs from " + segments.size() + " segments in '" +
+                dir + "'");
+
+    for (Segment seg : segments.values())
+      checkGarbage(seg);
+  }
+
+  private void scan(Segment seg) throws IOException {
+    long fileSize = seg.getChannel().size();
+    if (fileSize < Segment.MAGIC.length) {
+      // crashed while creating it
+      writeMagic(seg);
+      return;
+    }
+
+    ByteBuffer magic = ByteBuffer.allocate(Segment.MAGIC.length);
+    seg.readFully(magic, 0);
+    if (!Arrays.equals(magic.array(), Segment.MAGIC))
+      throw new IOException("'" + seg.file + "' is not a pack segment");
+
+    long pos = Segment.MAGIC.length;
+    while (pos < fileSize) {
+      long end = replay(seg, pos, fileSize);
+      if (end < 0)
+        break;
+      pos = end;
+    }
+
+    if (pos < fileSize) {
+      log.warn("Discarding incomplete record at " + pos + " of '" + seg.file + "'");
+      seg.getChannel().truncate(pos);
+    }
+
+    seg.size = pos;
+  }
+
+  /**
+   * Apply the record at the given position to the index.
+   *
+   * @return the end of the record, or -1 if there is no complete record
+   */
+  private long replay(Segment seg, long pos, long fileSize) throws IOException {
+    if (fileSize - pos < 6)
+      return -1;
+
+    ByteBuffer hdr = ByteBuffer.allocate(6);
+    seg.readFully(hdr, pos);
+    hdr.flip();
+
+    byte status = hdr.get();
+    byte type   = hdr.get();
+    int  idLen  = hdr.getInt();
+
+    int fixed = (type == PUT) ? PUT_HEADER : ALIAS_RECORD;
+    if (status < LIVE || status > MOVED || (type != PUT && type != ALIAS) || idLen < 0 ||
+        fileSize - pos < fixed + (long) idLen)
+      return -1;
+
+    ByteBuffer rec = ByteBuffer.allocate(fixed - 6 + idLen);
+    seg.readFully(rec, pos + 6);
+    rec.flip();
+
+    byte[] idBytes = new byte[idLen];
+    rec.get(idBytes);
+
+    URI id;
+    try {
+      id = new URI(new String(idBytes, StandardCharsets.UTF_8));
+    } catch (URISyntaxException use) {
+      return -1;
+    }
+
+    if (type == PUT) {
+      long length  = rec.getLong();
+      long dataPos = pos + fixed + idLen;
+      if (length < 0 || fileSize - dataPos < length)
+        return -1;
+
+      if (status == LIVE)
+        claim(id, new Entry(seg, dataPos, length, seg, pos, fixed + idLen));
+
+      return dataPos + length;
+    }
+
+    int     segNum  = rec.getInt();
+    long    dataPos = rec.getLong();
+    long    length  = rec.getLong();
+    Segment dataSeg = segments.get(segNum);
+    long    dataEnd = (dataSeg == seg) ? pos : (dataSeg != null) ? dataSeg.size : 0;
+
+    if (status == LIVE) {
+      if (dataSeg != null && dataPos >= 0 && length >= 0 && dataEnd - dataPos >= length) {
+        claim(id, new Entry(dataSeg, dataPos, length, seg, pos, fixed + idLen));
+      } else {
+        log.warn("Discarding alias '" + id + "' to missing content in '" + seg.file + "'");
+        setStatus(seg, pos, DEAD);
+      }
+    }
+
+    return pos + fixed + idLen;
+  }
+
+  /**
+   * Enter a recovered record into the index. Being the latest record seen, it replaces both any
+   * earlier record for the same id and any earlier record owning the same content.
+   */
+  private void claim(URI id, Entry e) throws IOException {
+    Entry old = index.remove(id);
+    if (old != null)
+      unlink(old, false);
+
+    URI prev = e.dataSeg.owners.get(e.dataPos);
+    if (prev != null)
+      unlink(index.remove(prev), true);
+
+    link(id, e);
+  }
+
+  /*
+   * Writing
+   */
+
+  private Entry appendPut(URI id, ReadableByteChannel src, long length) throws IOException {
+    byte[]  idBytes = encode(id);
+    Segment seg     = getActiveSegment();
+    long    pos     = seg.size;
+
+    ByteBuffer hdr = ByteBuffer.allocate(PUT_HEADER + idBytes.length);
+    hdr.put((byte) 0).put(PUT).putInt(idBytes.length).put(idBytes).putLong(length).flip();
+
+    boolean ok = false;
+    try {
+      seg.writeFully(hdr, pos);
+      long dataPos = pos + hdr.capacity();
+      transfer(src, seg, dataPos, length);
+      setStatus(seg, pos, LIVE);
+
+      seg.size = dataPos + length;
+      ok = true;
+      return new Entry(seg, dataPos, length, seg, pos, hdr.capacity());
+    } finally {
+      if (!ok)
+        truncate(seg, pos);
+    }
+  }
+
+  private Entry appendAlias(URI id, Entry target) throws IOException {
+    byte[]  idBytes = encode(id);
+    Segment seg     = getActiveSegment();
+    long    pos     = seg.size;
+
+    ByteBuffer rec = ByteBuffer.allocate(ALIAS_RECORD + idBytes.length);
+    rec.put((byte) 0).put(ALIAS).putInt(idBytes.length).put(idBytes)
+       .putInt(target.dataSeg.number).putLong(target.dataPos).putLong(target.length).flip();
+
+    boolean ok = false;
+    try {
+      seg.writeFully(rec, pos);
+      setStatus(seg, pos, LIVE);
+
+      seg.size = pos + rec.capacity();
+      ok = true;
+      return new Entry(target.dataSeg, target.dataPos, target.length, seg, pos, rec.capacity());
+    } finally {
+      if (!ok)
+        truncate(seg, pos);
+    }
+  }
+
+  private static void transfer(ReadableByteChannel src, Segment dst, long pos, long length)
+      throws IOException {
+    BufferPool pool = BufferPool.getDefault();
+    ByteBuffer buf  =
+        pool.acquireDirect((int) Math.min(length, BufferPool.DEFAULT_BUFFER_SIZE));
+    try {
+      while (length > 0) {
+        buf.clear();
+        if (buf.remaining() > length)
+          buf.limit((int) length);
+
+        if (src.read(buf) < 0)
+          throw new IOException("Content ended " + length + " bytes early");
+
+        buf.flip();
+        int n = buf.remaining();
+        dst.writeFully(buf, pos);
+        pos    += n;
+        length -= n;
+      }
+    } finally {
+      pool.releaseDirect(buf);
+    }
+  }
+
+  private static void setStatus(Segment seg, long pos, byte status) throws IOException {
+    seg.writeFully(ByteBuffer.wrap(new byte[] { status }), pos);
+  }
+
+  private static void truncate(Segment seg, long pos) {
+    try {
+      seg.getChannel().truncate(pos);
+    } catch (IOException ioe) {
+      log.warn("Error truncating '" + seg.file + "' after a failed write", ioe);
+    }
+  }
+
+  private Segment getActiveSegment() throws IOException {
+    if (active.size >= segmentSize && active.size > Segment.MAGIC.length) {
+      Segment sealed = active;
+      active = createSegment(sealed.number + 1);
+      checkGarbage(sealed);
+    }
+
+    return active;
+  }
+
+  private Segment createSegment(int num) throws IOException {
+    Segment seg = new Segment(dir, num);
+    writeMagic(seg);
+    segments.put(num, seg);
+    dirDirty = true;
+    return seg;
+  }
+
+  private static void writeMagic(Segment seg) throws IOException {
+    seg.getChannel().truncate(0);
+    seg.writeFully(ByteBuffer.wrap(Segment.MAGIC), 0);
+    seg.size = Segment.MAGIC.length;
+  }
+
+  private static byte[] encode(URI id) {
+    return id.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void force() throws IOException {
+    for (Segment seg : segments.values()) {
+      if (seg.dirty) {
+        seg.getChannel().force(true);
+        seg.dirty = false;
+      }
+    }
+
+    if (dirDirty) {
+      try {
+        FileChannel ch = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+        try {
+          ch.force(true);
+        } finally {
+          ch.close();
+        }
+      } catch (IOException ioe) {
+        log.debug("Could not sync directory '" + dir + "'", ioe);
+      }
+      dirDirty = false;
+    }
+  }
+
+  /*
+   * Index maintenance
+   */
+
+  private void link(URI id, Entry e) {
+    index.put(id, e);
+    e.dataSeg.owners.put(e.dataPos, id);
+    e.dataSeg.liveBytes += e.length;
+    e.recSeg.records.put(e.recPos, id);
+    e.recSeg.liveBytes += e.recLen;
+  }
+
+  /**
+   * Remove an entry's accounting from its segments and update its record's status. The caller
+   * must remove it from the index.
+   *
+   * @param e        the entry
+   * @param keepData whether the content stays in use, i.e. whether the blob is being moved
+   */
+  private void unlink(Entry e, boolean keepData) throws IOException {
+    e.dataSeg.owners.remove(e.dataPos);
+    e.dataSeg.liveBytes -= e.length;
+    e.recSeg.records.remove(e.recPos);
+    e.recSeg.liveBytes -= e.recLen;
+
+    setStatus(e.recSeg, e.recPos, (keepData && e.isPut()) ? MOVED : DEAD);
+  }
+
+  private void replace(URI id, Entry old, Entry e) throws IOException {
+    if (old != null)
+      unlink(old, false);
+
+    link(id, e);
+
+    if (old != null)
+      checkGarbage(old);
+  }
+
+  /*
+   * Compaction
+   */
+
+  private void checkGarbage(Entry e) {
+    checkGarbage(e.dataSeg);
+    if (e.recSeg != e.dataSeg)
+      checkGarbage(e.recSeg);
+  }
+
+  private void checkGarbage(Segment seg) {
+    if (isCompactable(seg))
+      scheduleCompaction();
+  }
+
+  private boolean isCompactable(Segment seg) {
+    return seg != active && !seg.retired && seg.getGarbageRatio() >= compactRatio;
+  }
+
+  private void scheduleCompaction() {
+    if (!compactionPending.compareAndSet(false, true))
+      return;
+
+    try {
+      compactor.execute(new Runnable() {
+        public void run() {
+          compactionPending.set(false);
+          try {
+            compact();
+          } catch (IOException ioe) {
+            log.warn("Error compacting segments in '" + dir + "'", ioe);
+          }
+        }
+      });
+    } catch (RejectedExecutionException ree) {
+      compactionPending.set(false);
+    }
+  }
+
+  private synchronized Segment nextCompactable() {
+    if (closed)
+      return null;
+
+    for (Segment seg : segments.values()) {
+      if (isCompactable(seg))
+        return seg;
+    }
+
+    return null;
+  }
+
+  /**
+   * Relocate all live content and records out of a segment, and then delete it. The lock is
+   * released after each blob, so that other operations are not held up for long; blobs moved
+   * into the segment meanwhile are picked up by the next pass.
+   */
+  private void compact(Segment seg) throws IOException {
+    while (true) {
+      List<URI> ids;
+      synchronized (this) {
+        if (closed || seg.retired)
+          return;
+
+        if (seg.owners.isEmpty() && seg.records.isEmpty()) {
+          retire(seg);
+          return;
+        }
+
+        ids = new ArrayList<URI>(seg.owners.values());
+        ids.addAll(seg.records.values());
+      }
+
+      for (URI id : ids)
+        relocate(id, seg);
+    }
+  }
+
+  private synchronized void relocate(URI id, Segment seg) throws IOException {
+    if (closed)
+      return;
+
+    Entry e = index.get(id);
+    if (e == null)
+      return;
+
+    Entry moved;
+    if (e.dataSeg == seg)
+      moved = appendPut(id, new SegmentReader(seg, e.dataPos), e.length);
+    else if (e.recSeg == seg)
+      moved = appendAlias(id, e);
+    else
+      return;
+
+    replace(id, e, moved);
+  }
+
+  private void retire(Segment seg) throws IOException {
+    // the relocated copies must be on disk before the originals go
+    force();
+
+    segments.remove(seg.number);
+    seg.retired = true;
+    compactions++;
+
+    if (log.isDebugEnabled())
+      log.debug("Compacted '" + seg.file + "'");
+
+    if (seg.readers == 0)
+      delete(seg);
+  }
+
+  private void delete(Segment seg) {
+    try {
+      seg.close();
+    } catch (IOException ioe) {
+      log.warn("Error closing '" + seg.file + "'", ioe);
+    }
+
+    if (!seg.file.delete())
+      log.warn("Could not delete compacted segment '" + seg.file + "'");
+
+    dirDirty = true;
+  }
+
+  /**
+   * Get a URI which sorts before or at all ids with the given prefix. Since the prefix itself
+   * need not be a valid URI, this is the longest prefix of it that is.
+   *
+   * @param prefix the id prefix
+   * @return the URI, or null if none could be found
+   */
+  private static URI lowerBound(String prefix) {
+    for (int len = prefix.length(); len > 0; len--) {
+      try {
+        return new URI(prefix.substring(0, len));
+      } catch (URISyntaxException use) {
+        // try a shorter one
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * The location of a blob's content and of the record owning it. For a blob stored by a PUT
+   * both are in the same record; for a moved blob the owning record is an ALIAS.
+   */
+  static final class Entry {
+    final Segment dataSeg;
+    final long    dataPos;
+    final long    length;
+    final Segment recSeg;
+    final long    recPos;
+    final int     recLen;
+
+    Entry(Segment dataSeg, long dataPos, long length, Segment recSeg, long recPos, int recLen) {
+      this.dataSeg = dataSeg;
+      this.dataPos = dataPos;
+      this.length  = length;
+      this.recSeg  = recSeg;
+      this.recPos  = recPos;
+      this.recLen  = recLen;
+    }
+
+    boolean isPut() {
+      return recSeg == dataSeg && recPos + recLen == dataPos;
+    }
+  }
+
+  /**
+   * Reads sequentially from a segment, starting at a given position.
+   */
+  private static class SegmentReader implements ReadableByteChannel {
+    private final Segment seg;
+    private long          pos;
+
+    SegmentReader(Segment seg, long pos) {
+      this.seg = seg;
+      this.pos = pos;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      int n = seg.getChannel().read(dst, pos);
+      if (n > 0)
+        pos += n;
+      return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
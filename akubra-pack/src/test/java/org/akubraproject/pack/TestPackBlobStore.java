@@ -0,0 +1,305 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobStoreConnection;
+
+/**
+ * Unit tests for {@link PackBlobStore}: recovery, moves and compaction.
+ */
+public class TestPackBlobStore {
+  private File          baseDir;
+  private PackBlobStore store;
+
+  static File createTempDir() throws IOException {
+    File dir = File.createTempFile("akubra-pack", null);
+    if (!dir.delete() || !dir.mkdir())
+      throw new IOException("Could not create temporary directory '" + dir + "'");
+    return dir;
+  }
+
+  @BeforeMethod
+  public void init() throws Exception {
+    baseDir = createTempDir();
+    store   = newStore(1024, 50);
+  }
+
+  @AfterMethod
+  public void destroy() throws Exception {
+    store.shutdown();
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  /**
+   * Blobs written, overwritten, moved and deleted should all be recovered as they were when
+   * the store is reopened.
+   */
+  @Test
+  public void testRecovery() throws Exception {
+    Map<URI, String> expected = new TreeMap<URI, String>();
+
+    BlobStoreConnection con = store.openConnection(null, null);
+    for (int idx = 0; idx < 50; idx++)
+      expected.put(write(con, "blob" + idx, content(idx, 100)), content(idx, 100));
+
+    for (int idx = 0; idx < 50; idx += 5)
+      expected.put(write(con, "blob" + idx, "overwritten" + idx), "overwritten" + idx);
+
+    for (int idx = 1; idx < 50; idx += 5) {
+      con.getBlob(id("blob" + idx), null).delete();
+      expected.remove(id("blob" + idx));
+    }
+
+    for (int idx = 2; idx < 50; idx += 5) {
+      con.getBlob(id("blob" + idx), null).moveTo(id("moved" + idx), null);
+      expected.put(id("moved" + idx), expected.remove(id("blob" + idx)));
+    }
+
+    // move a moved blob again, and overwrite another
+    con.getBlob(id("moved2"), null).moveTo(id("moved-again2"), null);
+    expected.put(id("moved-again2"), expected.remove(id("moved2")));
+    expected.put(write(con, "moved7", "overwritten7"), "overwritten7");
+
+    assertContent(con, expected);
+    con.close();
+
+    store.shutdown();
+    store = newStore(1024, 50);
+
+    con = store.openConnection(null, null);
+    assertContent(con, expected);
+    con.close();
+  }
+
+  /**
+   * Moving a blob should only append a small record, not copy the content.
+   */
+  @Test
+  public void testMoveIsIndexOnly() throws Exception {
+    String data = content(7, 20000);
+
+    BlobStoreConnection con = store.openConnection(null, null);
+    write(con, "big", data);
+
+    long before = getSegmentBytes();
+    Blob moved = con.getBlob(id("big"), null).moveTo(id("bigger"), null);
+    assertTrue(getSegmentBytes() - before < 100, "grew by " + (getSegmentBytes() - before));
+
+    assertFalse(con.getBlob(id("big"), null).exists());
+    assertEquals(read(moved), data);
+    assertEquals(IOUtils.toString(moved.openInputStream(19990, 5)),
+                 data.substring(19990, 19995));
+    con.close();
+  }
+
+  /**
+   * Compaction should delete segments holding mostly garbage, keep the live blobs intact, also
+   * after a restart, and not disturb streams still reading from a compacted segment.
+   */
+  @Test
+  public void testCompaction() throws Exception {
+    store.shutdown();
+    store = newStore(1024, 100);      // no background compaction of partly used segments
+
+    Map<URI, String> expected = new TreeMap<URI, String>();
+
+    BlobStoreConnection con = store.openConnection(null, null);
+    for (int idx = 0; idx < 100; idx++)
+      expected.put(write(con, "blob" + idx, content(idx, 200)), content(idx, 200));
+
+    for (int idx = 10; idx < 20; idx++)
+      con.getBlob(id("blob" + idx), null).moveTo(id("moved" + idx), null);
+    for (int idx = 10; idx < 20; idx++)
+      expected.put(id("moved" + idx), expected.remove(id("blob" + idx)));
+
+    // everything but every tenth blob becomes garbage
+    for (int idx = 0; idx < 100; idx++) {
+      if (idx % 10 != 0) {
+        URI id = id((idx >= 10 && idx < 20) ? "moved" + idx : "blob" + idx);
+        con.getBlob(id, null).delete();
+        expected.remove(id);
+      }
+    }
+    con.close();
+
+    store.shutdown();
+    int segments = getSegments().size();
+    store = newStore(1024, 75);
+
+    assertTrue(store.compact() + store.getLog().getCompactionCount() > 0);
+    assertTrue(store.getLog().getSegmentCount() < segments / 2,
+               store.getLog().getSegmentCount() + " of " + segments + " segments left");
+
+    con = store.openConnection(null, null);
+    assertContent(con, expected);
+
+    // a stream opened before compaction can still be read
+    InputStream in = con.getBlob(id("blob0"), null).openInputStream();
+    store.compact();
+    assertEquals(IOUtils.toString(in), content(0, 200));
+    in.close();
+    con.close();
+
+    store.shutdown();
+    store = newStore(1024, 75);
+
+    con = store.openConnection(null, null);
+    assertContent(con, expected);
+    con.close();
+  }
+
+  /**
+   * Compaction should happen in the background once a sealed segment is mostly garbage.
+   */
+  @Test
+  public void testBackgroundCompaction() throws Exception {
+    BlobStoreConnection con = store.openConnection(null, null);
+    for (int idx = 0; idx < 20; idx++)
+      write(con, "blob" + idx, content(idx, 500));
+    for (int idx = 0; idx < 10; idx++)
+      con.getBlob(id("blob" + idx), null).delete();
+
+    for (int cnt = 0; cnt < 100 && store.getLog().getCompactionCount() == 0; cnt++)
+      Thread.sleep(100);
+    assertTrue(store.getLog().getCompactionCount() > 0);
+
+    for (int idx = 10; idx < 20; idx++)
+      assertEquals(read(con.getBlob(id("blob" + idx), null)), content(idx, 500));
+    con.close();
+  }
+
+  /**
+   * An incomplete record at the end of the last segment, as left by a crash, should be
+   * discarded on recovery.
+   */
+  @Test
+  public void testIncompleteRecord() throws Exception {
+    BlobStoreConnection con = store.openConnection(null, null);
+    write(con, "blob1", "foo");
+    con.close();
+    store.shutdown();
+
+    File last = getSegments().get(getSegments().size() - 1);
+    long size = last.length();
+
+    RandomAccessFile raf = new RandomAccessFile(last, "rw");
+    try {
+      raf.seek(size);
+      raf.write(new byte[] { 0, SegmentLog.PUT, 0, 0, 0, 5, 'u', 'r', 'n', ':', 'x' });
+    } finally {
+      raf.close();
+    }
+
+    store = newStore(1024, 50);
+    con = store.openConnection(null, null);
+    assertEquals(read(con.getBlob(id("blob1"), null)), "foo");
+    assertEquals(last.length(), size);
+
+    write(con, "blob2", "bar");
+    assertEquals(read(con.getBlob(id("blob2"), null)), "bar");
+    con.close();
+  }
+
+  private PackBlobStore newStore(long segmentSize, int compactPercent) {
+    return new PackBlobStore(URI.create("urn:test:pack"), baseDir, segmentSize, compactPercent);
+  }
+
+  private static URI id(String name) {
+    return URI.create("urn:test:" + name);
+  }
+
+  private static String content(int seed, int length) {
+    StringBuilder sb = new StringBuilder(length);
+    while (sb.length() < length)
+      sb.append(seed).append(':').append(sb.length()).append(' ');
+    return sb.substring(0, length);
+  }
+
+  private static URI write(BlobStoreConnection con, String name, String data) throws Exception {
+    OutputStream out = con.getBlob(id(name), null).openOutputStream(-1, true);
+    out.write(data.getBytes("UTF-8"));
+    out.close();
+    return id(name);
+  }
+
+  private static String read(Blob blob) throws Exception {
+    InputStream in = blob.openInputStream();
+    try {
+      return IOUtils.toString(in, "UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void assertContent(BlobStoreConnection con, Map<URI, String> expected)
+      throws Exception {
+    List<URI> ids = new ArrayList<URI>();
+    for (Iterator<URI> it = con.listBlobIds("urn:test:"); it.hasNext(); )
+      ids.add(it.next());
+    assertEquals(ids, new ArrayList<URI>(expected.keySet()));
+
+    for (Map.Entry<URI, String> e : expected.entrySet()) {
+      Blob blob = con.getBlob(e.getKey(), null);
+      assertEquals(read(blob), e.getValue(), "blob " + e.getKey());
+      assertEquals(blob.getSize(), e.getValue().length());
+    }
+  }
+
+  private List<File> getSegments() {
+    Map<String, File> files = new TreeMap<String, File>();
+    for (File f : baseDir.listFiles()) {
+      if (Segment.parseName(f.getName()) >= 0)
+        files.put(f.getName(), f);
+    }
+    return new ArrayList<File>(files.values());
+  }
+
+  private long getSegmentBytes() {
+    long total = 0;
+    for (File f : getSegments())
+      total += f.length();
+    return total;
+  }
+}
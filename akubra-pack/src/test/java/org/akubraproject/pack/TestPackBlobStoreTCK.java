@@ -0,0 +1,60 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.pack;
+
+import java.net.URI;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterSuite;
+
+import org.akubraproject.tck.TCKTestSuite;
+
+/**
+ * TCK test suite for {@link PackBlobStore}. The segments are kept small, so that the tests
+ * span several of them and the background compaction gets exercised too.
+ */
+public class TestPackBlobStoreTCK extends TCKTestSuite {
+  public TestPackBlobStoreTCK() throws Exception {
+    super(new PackBlobStore(URI.create("urn:example:store"), TestPackBlobStore.createTempDir(),
+                            4096, 25),
+          URI.create("urn:example:store"), false, true);
+  }
+
+  @AfterSuite
+  public void destroy() throws Exception {
+    PackBlobStore pack = (PackBlobStore) store;
+    pack.shutdown();
+    FileUtils.deleteDirectory(pack.getBaseDir());
+  }
+
+  /** all URI's are valid */
+  @Override
+  protected URI getInvalidId() {
+    return null;
+  }
+
+  /** all URI's are distinct */
+  @Override
+  protected URI[] getAliases(URI uri) {
+    return new URI[] { uri };
+  }
+}
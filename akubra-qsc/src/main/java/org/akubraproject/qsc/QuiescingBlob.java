@@ -25,6 +25,7 @@ package org.akubraproject.qsc;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
 import java.util.Map;
 
 import org.akubraproject.Blob;
@@ -58,6 +59,15 @@ class QuiescingBlob extends BlobWrapper {
     return streamManager.manageOutputStream(owner, super.openOutputStream(estimSize, overwrite));
   }
 
+  @Override
+  public SeekableByteChannel openChannel(boolean writable) throws IOException {
+    if (!writable)
+      return super.openChannel(false);
+
+    ((QuiescingBlobStoreConnection) owner).waitUnquiescedAndMarkModified();
+    return streamManager.manageChannel(owner, super.openChannel(true), true);
+  }
+
   @Override
   public void delete() throws IOException {
     ((QuiescingBlobStoreConnection) owner).waitUnquiescedAndMarkModified();
@@ -69,4 +79,10 @@ class QuiescingBlob extends BlobWrapper {
     ((QuiescingBlobStoreConnection) owner).waitUnquiescedAndMarkModified();
     return super.moveTo(blobId, hints);
   }
+
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+    ((QuiescingBlobStoreConnection) owner).waitUnquiescedAndMarkModified();
+    return super.copyTo(blobId, hints);
+  }
 }
@@ -27,7 +27,10 @@ import java.io.InputStream;
 
 import java.net.URI;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import javax.transaction.Transaction;
 
@@ -79,6 +82,33 @@ class QuiescingBlobStoreConnection extends BlobStoreConnectionWrapper {
     return new QuiescingBlob(this, internalBlob, streamManager);
   }
 
+  @Override
+  public Map<URI, Blob> getBlobs(Collection<URI> blobIds, Map<String, String> hints)
+      throws IOException, UnsupportedIdException {
+    Map<URI, Blob> res = new LinkedHashMap<URI, Blob>();
+    for (Map.Entry<URI, Blob> e : delegate.getBlobs(blobIds, hints).entrySet())
+      res.put(e.getKey(), new QuiescingBlob(this, e.getValue(), streamManager));
+
+    return res;
+  }
+
+  @Override
+  public Set<URI> exists(Collection<URI> blobIds) throws IOException, UnsupportedIdException {
+    return delegate.exists(blobIds);
+  }
+
+  @Override
+  public Map<URI, Long> getSizes(Collection<URI> blobIds)
+      throws IOException, UnsupportedIdException {
+    return delegate.getSizes(blobIds);
+  }
+
+  @Override
+  public void delete(Collection<URI> blobIds) throws IOException, UnsupportedIdException {
+    waitUnquiescedAndMarkModified();
+    delegate.delete(blobIds);
+  }
+
   @Override
   public void sync() throws IOException {
     waitUnquiescedAndMarkModified();
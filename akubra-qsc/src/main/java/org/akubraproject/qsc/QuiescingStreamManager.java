@@ -24,6 +24,9 @@ package org.akubraproject.qsc;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.SeekableByteChannel;
+
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.locks.Condition;
@@ -153,12 +156,10 @@ class QuiescingStreamManager extends StreamManager {
       stateLock.lockInterruptibly();
 
       if (quiescent && !this.quiescent) {
-        synchronized (openOutputStreams) {
-          while (!openOutputStreams.isEmpty()) {
-            log.info("setQuiescent: Waiting for " + openOutputStreams.size() +
-                     " output streams to close...");
-            openOutputStreams.wait(); // wake up when next one is closed
-          }
+        int open = getOpenOutputStreamCount();
+        if (open > 0) {
+          log.info("setQuiescent: Waiting for " + open + " output streams to close...");
+          awaitOutputStreamsClosed(); // wake up when the last one is closed
         }
 
         synchronized (txnCons) {
@@ -222,6 +223,35 @@ class QuiescingStreamManager extends StreamManager {
     }
   }
 
+  @Override
+  public SeekableByteChannel manageChannel(BlobStoreConnection con, SeekableByteChannel channel,
+                                           boolean writable) throws IOException {
+    if (!writable)
+      return super.manageChannel(con, channel, writable);
+
+    lockIOE();
+    try {
+      return super.manageChannel(con, channel, writable);
+    } finally {
+      stateLock.unlock();
+    }
+  }
+
+  @Override
+  public AsynchronousFileChannel manageAsyncChannel(BlobStoreConnection con,
+                                                    AsynchronousFileChannel channel,
+                                                    boolean writable) throws IOException {
+    if (!writable)
+      return super.manageAsyncChannel(con, channel, writable);
+
+    lockIOE();
+    try {
+      return super.manageAsyncChannel(con, channel, writable);
+    } finally {
+      stateLock.unlock();
+    }
+  }
+
   private void lockIOE() throws IOException {
     try {
       stateLock.lockInterruptibly();
@@ -23,8 +23,12 @@
 package org.akubraproject.qsc;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.OutputStream;
 
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.StandardOpenOption;
+
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertFalse;
@@ -114,6 +118,42 @@ public class TestQuiescingStreamManager {
     assertTrue(manager.setQuiescent(false));
   }
 
+  /**
+   * Going into quiescent state while a writable AsynchronousFileChannel is open should block,
+   * then return true when the channel is closed; read-only channels should not block.
+   */
+  @Test(dependsOnGroups = { "init" })
+  public void testGoQuiescentOpenAsyncChannelBlocking() throws Exception {
+    File file = File.createTempFile("qsc-async", null);
+    try {
+      AsynchronousFileChannel reader = manager.manageAsyncChannel(null,
+          AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ), false);
+      assertTrue(manager.setQuiescent(true));
+      assertTrue(manager.setQuiescent(false));
+
+      AsynchronousFileChannel writer;
+      manager.lockUnquiesced();
+      try {
+        writer = manager.manageAsyncChannel(null,
+            AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.WRITE), true);
+      } finally {
+        manager.unlockState();
+      }
+      GoQuiescentThread thread = new GoQuiescentThread(manager);
+      thread.start();
+      Thread.sleep(100);
+      assertTrue(thread.isAlive()); // thread should be blocking
+      writer.close();
+      thread.join();                // thread will now terminate; wait for it
+      assertTrue(thread.getReturnValue());
+      assertNull(thread.getException());
+      assertTrue(manager.setQuiescent(false));
+      reader.close();
+    } finally {
+      file.delete();
+    }
+  }
+
   /**
    * Going into quiescent state while the state lock is held should block,
    * then return true when the state lock is released.
@@ -0,0 +1,244 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.rmi.client;
+
+import java.net.URI;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.akubraproject.MissingBlobException;
+import org.akubraproject.UnsupportedIdException;
+import org.akubraproject.async.BlobFuture;
+import org.akubraproject.async.BlobFutureTask;
+import org.akubraproject.async.ExecutorAsyncConnection;
+
+/**
+ * The asynchronous view of a {@link ClientConnection}. Operations are run one at a time, since
+ * the server side connection need not be safe for concurrent use, but consecutive {@link #exists
+ * exists} and {@link #getSize getSize} requests are combined into bulk calls so that a burst of
+ * lookups costs one or two round trips instead of one each.
+ *
+ * <p>A lookup only joins a pending batch if no other operation was submitted since the batch
+ * was started, so the order in which operations are submitted is preserved.
+ */
+class ClientAsyncConnection extends ExecutorAsyncConnection {
+  private static final Executor SAME_THREAD = new Executor() {
+    public void execute(Runnable r) {
+      r.run();
+    }
+  };
+
+  /** the batch lookups can be added to; guarded by this */
+  private LookupBatch open;
+
+  /**
+   * Creates a new ClientAsyncConnection object.
+   *
+   * @param con      the client connection
+   * @param executor the executor to run the operations on
+   */
+  public ClientAsyncConnection(ClientConnection con, Executor executor) {
+    super(con, executor, false);
+  }
+
+  @Override
+  public BlobFuture<Boolean> exists(URI blobId) {
+    BlobFutureTask<Boolean> f = new BlobFutureTask<Boolean>();
+    if (blobId == null) {
+      f.fail(new NullPointerException("Blob id may not be null"));
+      return f;
+    }
+
+    LookupBatch b = null;
+    synchronized (this) {
+      if (open == null)
+        open = b = new LookupBatch();
+      add(open.exists, blobId, f);
+    }
+
+    if (b != null)
+      schedule(b);
+
+    return f;
+  }
+
+  @Override
+  public BlobFuture<Long> getSize(URI blobId) {
+    BlobFutureTask<Long> f = new BlobFutureTask<Long>();
+    if (blobId == null) {
+      f.fail(new NullPointerException("Blob id may not be null"));
+      return f;
+    }
+
+    LookupBatch b = null;
+    synchronized (this) {
+      if (open == null)
+        open = b = new LookupBatch();
+      add(open.sizes, blobId, f);
+    }
+
+    if (b != null)
+      schedule(b);
+
+    return f;
+  }
+
+  @Override
+  protected <T> BlobFuture<T> submit(Callable<T> task) {
+    synchronized (this) {
+      open = null;
+    }
+
+    return super.submit(task);
+  }
+
+  private void schedule(final LookupBatch b) {
+    final BlobFuture<Void> res = super.submit(b);
+
+    // if the batch could not be scheduled, fail the lookups in it
+    res.addListener(new Runnable() {
+      public void run() {
+        try {
+          res.get();
+        } catch (ExecutionException ee) {
+          b.failAll(ee.getCause());
+        } catch (Exception e) {
+          b.failAll(e);
+        }
+      }
+    }, SAME_THREAD);
+  }
+
+  private static <T> void add(Map<URI, List<BlobFutureTask<T>>> map, URI id,
+                              BlobFutureTask<T> f) {
+    List<BlobFutureTask<T>> l = map.get(id);
+    if (l == null)
+      map.put(id, l = new ArrayList<BlobFutureTask<T>>(1));
+    l.add(f);
+  }
+
+  private static <T> void complete(List<BlobFutureTask<T>> l, T value) {
+    for (BlobFutureTask<T> f : l)
+      f.complete(value);
+  }
+
+  private static <T> void fail(List<BlobFutureTask<T>> l, Throwable t) {
+    for (BlobFutureTask<T> f : l)
+      f.fail(t);
+  }
+
+  /**
+   * A set of lookups that are run together.
+   */
+  private class LookupBatch implements Callable<Void> {
+    final Map<URI, List<BlobFutureTask<Boolean>>> exists =
+        new LinkedHashMap<URI, List<BlobFutureTask<Boolean>>>();
+    final Map<URI, List<BlobFutureTask<Long>>>    sizes  =
+        new LinkedHashMap<URI, List<BlobFutureTask<Long>>>();
+
+    public Void call() {
+      synchronized (ClientAsyncConnection.this) {
+        if (open == this)
+          open = null;
+      }
+
+      if (!exists.isEmpty())
+        runExists();
+      if (!sizes.isEmpty())
+        runSizes();
+
+      return null;
+    }
+
+    private void runExists() {
+      Set<URI> found;
+      try {
+        found = con.exists(exists.keySet());
+      } catch (UnsupportedIdException uie) {
+        // find out which ones are bad
+        for (Map.Entry<URI, List<BlobFutureTask<Boolean>>> e : exists.entrySet()) {
+          try {
+            complete(e.getValue(), con.getBlob(e.getKey(), null).exists());
+          } catch (Exception ex) {
+            fail(e.getValue(), ex);
+          }
+        }
+        return;
+      } catch (Exception ex) {
+        for (List<BlobFutureTask<Boolean>> l : exists.values())
+          fail(l, ex);
+        return;
+      }
+
+      for (Map.Entry<URI, List<BlobFutureTask<Boolean>>> e : exists.entrySet())
+        complete(e.getValue(), found.contains(e.getKey()));
+    }
+
+    private void runSizes() {
+      Map<URI, Long> found;
+      try {
+        found = con.getSizes(sizes.keySet());
+      } catch (UnsupportedIdException uie) {
+        // find out which ones are bad
+        for (Map.Entry<URI, List<BlobFutureTask<Long>>> e : sizes.entrySet()) {
+          try {
+            complete(e.getValue(), con.getBlob(e.getKey(), null).getSize());
+          } catch (Exception ex) {
+            fail(e.getValue(), ex);
+          }
+        }
+        return;
+      } catch (Exception ex) {
+        for (List<BlobFutureTask<Long>> l : sizes.values())
+          fail(l, ex);
+        return;
+      }
+
+      for (Map.Entry<URI, List<BlobFutureTask<Long>>> e : sizes.entrySet()) {
+        Long size = found.get(e.getKey());
+        if (size != null)
+          complete(e.getValue(), size);
+        else
+          fail(e.getValue(), new MissingBlobException(e.getKey()));
+      }
+    }
+
+    void failAll(Throwable t) {
+      synchronized (ClientAsyncConnection.this) {
+        if (open == this)
+          open = null;
+      }
+
+      for (List<BlobFutureTask<Boolean>> l : exists.values())
+        fail(l, t);
+      for (List<BlobFutureTask<Long>> l : sizes.values())
+        fail(l, t);
+    }
+  }
+}
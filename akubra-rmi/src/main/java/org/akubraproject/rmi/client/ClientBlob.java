@@ -57,7 +57,20 @@ class ClientBlob extends AbstractBlob {
    */
   public ClientBlob(BlobStoreConnection con, StreamManager streamMgr,
                     RemoteBlob remote) throws RemoteException {
-    super(con, remote.getId());
+    this(con, streamMgr, remote, remote.getId());
+  }
+
+  /**
+   * Creates a new ClientBlob object whose id is already known, saving the round trip to
+   * obtain it from remote.
+   *
+   * @param con the connection
+   * @param streamMgr the stream manager
+   * @param remote stub for a remote blob
+   * @param id the blob-id of the remote blob
+   */
+  public ClientBlob(BlobStoreConnection con, StreamManager streamMgr, RemoteBlob remote, URI id) {
+    super(con, id);
     this.streamMgr   = streamMgr;
     this.remote      = remote;
   }
@@ -77,6 +90,15 @@ class ClientBlob extends AbstractBlob {
                                        new ClientInputStream(remote.openInputStream()));
   }
 
+  @Override
+  public InputStream openInputStream(long offset, long length) throws IOException {
+    checkRange(offset, length);
+    ensureOpen();
+
+    return streamMgr.manageInputStream(getConnection(),
+                               new ClientInputStream(remote.openInputStream(offset, length)));
+  }
+
   @Override
   public OutputStream openOutputStream(long estSize, boolean overwrite) throws IOException {
     ensureOpen();
@@ -112,4 +134,11 @@ class ClientBlob extends AbstractBlob {
 
     return new ClientBlob(getConnection(), streamMgr, remote.moveTo(blobId, hints));
   }
+
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+    ensureOpen();
+
+    return new ClientBlob(getConnection(), streamMgr, remote.copyTo(blobId, hints));
+  }
 }
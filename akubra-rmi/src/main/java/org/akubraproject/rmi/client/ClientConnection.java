@@ -27,16 +27,25 @@ import java.io.OutputStream;
 
 import java.net.URI;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.BlobStore;
+import org.akubraproject.async.AsyncBlobStoreConnection;
+import org.akubraproject.async.AsyncCapableConnection;
 import org.akubraproject.impl.AbstractBlobStoreConnection;
+import org.akubraproject.impl.BufferPool;
 import org.akubraproject.impl.StreamManager;
 import org.akubraproject.rmi.remote.RemoteBlob;
 import org.akubraproject.rmi.remote.RemoteBlobCreator;
@@ -48,7 +57,7 @@ import org.akubraproject.rmi.remote.RemoteIterator;
  *
  * @author Pradeep Krishnan
  */
-class ClientConnection extends AbstractBlobStoreConnection {
+class ClientConnection extends AbstractBlobStoreConnection implements AsyncCapableConnection {
   private static final Logger       log    = LoggerFactory.getLogger(ClientConnection.class);
   private final RemoteConnection remote;
 
@@ -89,6 +98,55 @@ class ClientConnection extends AbstractBlobStoreConnection {
     return new ClientBlob(this, streamManager, remote.getBlob(blobId, hints));
   }
 
+  @Override
+  public Map<URI, Blob> getBlobs(Collection<URI> blobIds, Map<String, String> hints)
+               throws IOException {
+    ensureOpen();
+
+    Map<URI, RemoteBlob> rbs = remote.getBlobs(toList(blobIds), hints);
+
+    Map<URI, Blob> res = new LinkedHashMap<URI, Blob>();
+    for (URI id : blobIds) {
+      if (!res.containsKey(id))
+        res.put(id, new ClientBlob(this, streamManager, rbs.get(id), id));
+    }
+
+    return res;
+  }
+
+  @Override
+  public Set<URI> exists(Collection<URI> blobIds) throws IOException {
+    ensureOpen();
+
+    return remote.exists(toList(blobIds));
+  }
+
+  @Override
+  public Map<URI, Long> getSizes(Collection<URI> blobIds) throws IOException {
+    ensureOpen();
+
+    return remote.getSizes(toList(blobIds));
+  }
+
+  @Override
+  public void delete(Collection<URI> blobIds) throws IOException {
+    ensureOpen();
+
+    remote.delete(toList(blobIds));
+  }
+
+  /**
+   * Copy the ids into a serializable list for sending to the remote, checking for nulls on the
+   * way so the error is reported locally.
+   */
+  private static List<URI> toList(Collection<URI> blobIds) {
+    List<URI> res = new ArrayList<URI>(blobIds.size());
+    for (URI id : blobIds)
+      res.add(checkId(id));
+
+    return res;
+  }
+
   @Override
   public Blob getBlob(InputStream in, long estimatedSize, Map<String, String> hints)
                throws IOException {
@@ -100,7 +158,7 @@ class ClientConnection extends AbstractBlobStoreConnection {
     RemoteBlob rb = null;
     try {
       OutputStream out = new ClientOutputStream(bc);
-      IOUtils.copyLarge(in, out);
+      BufferPool.getDefault().copy(in, out);
       out.close();
       rb = bc.shutDown(false);
       bc = null;
@@ -128,9 +186,23 @@ class ClientConnection extends AbstractBlobStoreConnection {
     return new ClientIterator<URI>(ri, ITERATOR_BATCH_SIZE);
   }
 
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds)
+      throws IOException {
+    ensureOpen();
+    checkMaxIds(maxIds);
+
+    return remote.listBlobIds(filterPrefix, startAfter, maxIds);
+  }
+
   @Override
   public void sync() throws IOException {
     ensureOpen();
     remote.sync();
   }
+
+  @Override
+  public AsyncBlobStoreConnection getAsyncConnection(ExecutorService executor) {
+    return new ClientAsyncConnection(this, executor);
+  }
 }
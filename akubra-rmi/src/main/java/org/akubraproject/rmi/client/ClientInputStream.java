@@ -65,13 +65,17 @@ class ClientInputStream extends InputStream {
     if (pb == null)
       return -1;
 
-    if (pb.getLength() > len)
-      throw new IOException("Server mis-behavior. Asked to read " + len + " got back "
-                            + pb.getLength());
+    try {
+      if (pb.getLength() > len)
+        throw new IOException("Server mis-behavior. Asked to read " + len + " got back "
+                              + pb.getLength());
 
-    System.arraycopy(pb.getBuffer(), pb.getOffset(), buf, off, pb.getLength());
+      System.arraycopy(pb.getBuffer(), pb.getOffset(), buf, off, pb.getLength());
 
-    return pb.getLength();
+      return pb.getLength();
+    } finally {
+      pb.release();
+    }
   }
 
   @Override
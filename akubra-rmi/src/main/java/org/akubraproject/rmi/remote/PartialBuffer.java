@@ -22,15 +22,21 @@
 package org.akubraproject.rmi.remote;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
+import org.akubraproject.impl.BufferPool;
+
 /**
  * Represents the parameters of {@link java.io.OutputStream#write(byte[], int, int)} call.
  * Using this is more efficient in terms of network transfer since the unused portions of the
  * buffer is not transferred across.
  *
+ * <p>On deserialization the data is read into a buffer from the {@link BufferPool}; the
+ * receiver should call {@link #release} once it is done with the data.
+ *
  * @author Pradeep Krishnan
  */
 public class PartialBuffer implements Serializable {
@@ -38,6 +44,7 @@ public class PartialBuffer implements Serializable {
   private byte[]            b;
   private int               off;
   private int               len;
+  private transient boolean pooled;
 
   /**
    * Creates a new PartialBuffer object.
@@ -79,6 +86,18 @@ public class PartialBuffer implements Serializable {
     return b;
   }
 
+  /**
+   * Returns the buffer to the pool if it was taken from there on deserialization. The buffer
+   * must not be used afterwards.
+   */
+  public void release() {
+    if (pooled) {
+      pooled = false;
+      BufferPool.getDefault().release(b);
+      b = null;
+    }
+  }
+
   private void writeObject(ObjectOutputStream out) throws IOException {
     out.writeInt(len);
     out.write(b, off, len);
@@ -87,7 +106,11 @@ public class PartialBuffer implements Serializable {
   private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
     off   = 0;
     len   = in.readInt();
-    b     = new byte[len];
-    in.readFully(b);
+    if (len < 0)
+      throw new InvalidObjectException("negative length: " + len);
+
+    b      = BufferPool.getDefault().acquire(len);
+    pooled = true;
+    in.readFully(b, 0, len);
   }
 }
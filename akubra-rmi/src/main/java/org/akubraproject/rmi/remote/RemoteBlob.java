@@ -105,6 +105,25 @@ public interface RemoteBlob extends Remote {
        throws RemoteException, DuplicateBlobException, MissingBlobException,
               UnsupportedOperationException, IOException;
 
+  /**
+   * Copies the blob contents to another on the remote. The content is not transferred to the
+   * client.
+   *
+   * @param id the other blob
+   * @param hints the hints to pass to the remote
+   *
+   * @return the resulting Blob
+   *
+   * @throws RemoteException on an error in rmi transport
+   * @throws DuplicateBlobException error reported by remote
+   * @throws MissingBlobException error reported by remote
+   * @throws UnsupportedOperationException error reported by remote
+   * @throws IOException error reported by the remote
+   */
+  RemoteBlob copyTo(URI id, Map<String, String> hints)
+       throws RemoteException, DuplicateBlobException, MissingBlobException,
+              UnsupportedOperationException, IOException;
+
   /**
    * Create a stream to read from the blob on the remote.
    *
@@ -116,6 +135,23 @@ public interface RemoteBlob extends Remote {
    */
   RemoteInputStream openInputStream() throws RemoteException, IOException, MissingBlobException;
 
+  /**
+   * Create a stream to read a range of the blob on the remote. The range is applied on the
+   * remote, so the skipped content never crosses the wire.
+   *
+   * @param offset the position of the first byte to read
+   * @param length the maximum number of bytes to read, or -1 to read to the end
+   *
+   * @return a new stream to read from the remote server blob.
+   *
+   * @throws RemoteException on an error in rmi transport
+   * @throws IOException error reported by remote
+   * @throws MissingBlobException error reported by remote
+   * @throws IllegalArgumentException error reported by remote
+   */
+  RemoteInputStream openInputStream(long offset, long length)
+      throws RemoteException, IOException, MissingBlobException, IllegalArgumentException;
+
   /**
    * Create a stream to write to the blob on the remote.
    *
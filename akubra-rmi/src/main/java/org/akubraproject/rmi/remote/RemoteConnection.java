@@ -28,8 +28,11 @@ import java.net.URI;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.UnsupportedIdException;
 
 /**
@@ -53,6 +56,59 @@ public interface RemoteConnection extends Remote {
   RemoteBlob getBlob(URI id, Map<String, String> hints)
               throws RemoteException, IOException, UnsupportedIdException;
 
+  /**
+   * Gets blob handles for a number of remote blobs in one call.
+   *
+   * @param ids the blob ids to pass to the remote server
+   * @param hints the hints to pass to the remote server
+   *
+   * @return the remote blob handles, keyed by id
+   *
+   * @throws RemoteException on an error in rmi transport
+   * @throws IOException error reported by the remote server
+   * @throws UnsupportedIdException error reported by the remote server
+   */
+  Map<URI, RemoteBlob> getBlobs(List<URI> ids, Map<String, String> hints)
+              throws RemoteException, IOException, UnsupportedIdException;
+
+  /**
+   * Tests which of a number of blobs exist on the remote server.
+   *
+   * @param ids the blob ids to pass to the remote server
+   *
+   * @return the subset of the ids that exist
+   *
+   * @throws RemoteException on an error in rmi transport
+   * @throws IOException error reported by the remote server
+   * @throws UnsupportedIdException error reported by the remote server
+   */
+  Set<URI> exists(List<URI> ids) throws RemoteException, IOException, UnsupportedIdException;
+
+  /**
+   * Gets the sizes of a number of blobs on the remote server.
+   *
+   * @param ids the blob ids to pass to the remote server
+   *
+   * @return the sizes of the blobs that exist, keyed by id
+   *
+   * @throws RemoteException on an error in rmi transport
+   * @throws IOException error reported by the remote server
+   * @throws UnsupportedIdException error reported by the remote server
+   */
+  Map<URI, Long> getSizes(List<URI> ids)
+              throws RemoteException, IOException, UnsupportedIdException;
+
+  /**
+   * Deletes a number of blobs on the remote server.
+   *
+   * @param ids the blob ids to pass to the remote server
+   *
+   * @throws RemoteException on an error in rmi transport
+   * @throws IOException error reported by the remote server
+   * @throws UnsupportedIdException error reported by the remote server
+   */
+  void delete(List<URI> ids) throws RemoteException, IOException, UnsupportedIdException;
+
   /**
    * Gets a blob creator for creating a blob from user supplied content.
    *
@@ -80,6 +136,21 @@ public interface RemoteConnection extends Remote {
   RemoteIterator<URI> listBlobIds(String filterPrefix)
                            throws RemoteException, IOException;
 
+  /**
+   * Gets one page of a listing of the blobs on the remote server.
+   *
+   * @param filterPrefix the filterPrefix to pass to the remote
+   * @param startAfter the id to continue the listing after, or null
+   * @param maxIds the page size
+   *
+   * @return the page
+   *
+   * @throws RemoteException on an error in rmi transport
+   * @throws IOException error reported by remote server
+   */
+  BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds)
+                           throws RemoteException, IOException;
+
   /**
    * Flush all blobs associated with the remote connection and fsync.
    *
@@ -86,11 +86,21 @@ public class ServerBlob extends UnicastExportable implements RemoteBlob {
     return new ServerBlob(blob.moveTo(other, hints), getExporter());
   }
 
+  @Override
+  public RemoteBlob copyTo(URI other, Map<String, String> hints) throws IOException {
+    return new ServerBlob(blob.copyTo(other, hints), getExporter());
+  }
+
   @Override
   public RemoteInputStream openInputStream() throws IOException {
     return new ServerInputStream(blob.openInputStream(), getExporter());
   }
 
+  @Override
+  public RemoteInputStream openInputStream(long offset, long length) throws IOException {
+    return new ServerInputStream(blob.openInputStream(offset, length), getExporter());
+  }
+
   @Override
   public RemoteOutputStream openOutputStream(long estimatedSize, boolean overwrite)
       throws IOException {
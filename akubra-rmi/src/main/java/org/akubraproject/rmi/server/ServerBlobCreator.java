@@ -39,6 +39,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.impl.BufferPool;
 import org.akubraproject.rmi.remote.PartialBuffer;
 import org.akubraproject.rmi.remote.RemoteBlob;
 import org.akubraproject.rmi.remote.RemoteBlobCreator;
@@ -72,7 +73,7 @@ public class ServerBlobCreator extends UnicastExportable implements RemoteBlobCr
     super(exporter);
     out = new PipedOutputStream();
 
-    final InputStream in = new PipedInputStream(out);
+    final InputStream in = new PipedInputStream(out, BufferPool.DEFAULT_BUFFER_SIZE);
     readerService =
       Executors.newSingleThreadExecutor(new ThreadFactory() {
           public Thread newThread(Runnable r) {
@@ -215,7 +216,11 @@ public class ServerBlobCreator extends UnicastExportable implements RemoteBlobCr
   public void write(final PartialBuffer b) throws IOException {
     execute(new Callable<Void>() {
         public Void call() throws Exception {
-          out.write(b.getBuffer(), b.getOffset(), b.getLength());
+          try {
+            out.write(b.getBuffer(), b.getOffset(), b.getLength());
+          } finally {
+            b.release();
+          }
 
           return null;
         }
@@ -27,8 +27,15 @@ import java.net.URI;
 
 import java.rmi.RemoteException;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.BlobStoreConnection;
 import org.akubraproject.rmi.remote.RemoteBlob;
 import org.akubraproject.rmi.remote.RemoteBlobCreator;
@@ -65,6 +72,31 @@ public class ServerConnection extends UnicastExportable implements RemoteConnect
     return new ServerBlob(con.getBlob(id, hints), getExporter());
   }
 
+  @Override
+  public Map<URI, RemoteBlob> getBlobs(List<URI> ids, Map<String, String> hints)
+                     throws IOException {
+    Map<URI, RemoteBlob> res = new HashMap<URI, RemoteBlob>();
+    for (Map.Entry<URI, Blob> e : con.getBlobs(ids, hints).entrySet())
+      res.put(e.getKey(), new ServerBlob(e.getValue(), getExporter()));
+
+    return res;
+  }
+
+  @Override
+  public Set<URI> exists(List<URI> ids) throws IOException {
+    return new HashSet<URI>(con.exists(ids));
+  }
+
+  @Override
+  public Map<URI, Long> getSizes(List<URI> ids) throws IOException {
+    return new LinkedHashMap<URI, Long>(con.getSizes(ids));
+  }
+
+  @Override
+  public void delete(List<URI> ids) throws IOException {
+    con.delete(ids);
+  }
+
   @Override
   public RemoteBlobCreator getBlobCreator(long estimatedSize, Map<String, String> hints)
                      throws IOException {
@@ -77,6 +109,12 @@ public class ServerConnection extends UnicastExportable implements RemoteConnect
     return new ServerIterator<URI>(con.listBlobIds(filterPrefix), getExporter());
   }
 
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds)
+                         throws IOException {
+    return con.listBlobIds(filterPrefix, startAfter, maxIds);
+  }
+
   @Override
   public void sync() throws IOException {
     con.sync();
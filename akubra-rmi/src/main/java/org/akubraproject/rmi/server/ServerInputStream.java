@@ -30,6 +30,7 @@ import java.rmi.RemoteException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.akubraproject.impl.BufferPool;
 import org.akubraproject.rmi.remote.PartialBuffer;
 import org.akubraproject.rmi.remote.RemoteInputStream;
 
@@ -37,12 +38,18 @@ import org.akubraproject.rmi.remote.RemoteInputStream;
  * The server side implementation that delegates to an InputStream. Closes the stream when it
  * becomes unreferenced such as when the client aborts.
  *
+ * <p>The buffer returned by {@link #read(int)} is only marshalled after the call returns, so
+ * it is kept and reused by the next read. It is taken from the {@link BufferPool} and returned
+ * to it on close; this relies on the client reading each stream from one thread at a time, as
+ * the client side stream does.
+ *
  * @author Pradeep Krishnan
  */
 public class ServerInputStream extends UnicastExportable implements RemoteInputStream, Closeable {
   private static final Logger log = LoggerFactory.getLogger(ServerInputStream.class);
   private static final long serialVersionUID = 1L;
   private final InputStream in;
+  private transient byte[]  buf;
 
   /**
    * Creates a new ServerInputStream object.
@@ -59,11 +66,18 @@ public class ServerInputStream extends UnicastExportable implements RemoteInputS
     return in.read();
   }
 
-  public PartialBuffer read(int len) throws IOException {
-    byte[] b   = new byte[len];
-    int    ret = in.read(b);
+  public synchronized PartialBuffer read(int len) throws IOException {
+    if (len < 0)
+      throw new IllegalArgumentException("length must not be negative: " + len);
+
+    if (buf == null || buf.length < len) {
+      BufferPool.getDefault().release(buf);
+      buf = BufferPool.getDefault().acquire(len);
+    }
+
+    int ret = in.read(buf, 0, len);
 
-    return (ret < 0) ? null : new PartialBuffer(b, 0, ret);
+    return (ret < 0) ? null : new PartialBuffer(buf, 0, ret);
   }
 
   public long skip(long n) throws IOException {
@@ -72,7 +86,14 @@ public class ServerInputStream extends UnicastExportable implements RemoteInputS
 
   public void close() throws IOException {
     unExport(false);
-    in.close();
+    try {
+      in.close();
+    } finally {
+      synchronized (this) {
+        BufferPool.getDefault().release(buf);
+        buf = null;
+      }
+    }
   }
 
   @Override
@@ -66,7 +66,11 @@ public class ServerOutputStream extends UnicastExportable implements RemoteOutpu
   }
 
   public void write(PartialBuffer b) throws IOException {
-    out.write(b.getBuffer(), b.getOffset(), b.getLength());
+    try {
+      out.write(b.getBuffer(), b.getOffset(), b.getLength());
+    } finally {
+      b.release();
+    }
   }
 
   public void flush() throws IOException {
@@ -0,0 +1,248 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.rmi.client;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.makeThreadSafe;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.URI;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.MissingBlobException;
+import org.akubraproject.UnsupportedIdException;
+import org.akubraproject.async.AsyncBlobStoreConnection;
+import org.akubraproject.async.BlobFuture;
+import org.akubraproject.impl.StreamManager;
+import org.akubraproject.rmi.remote.RemoteConnection;
+import org.akubraproject.rmi.server.Exporter;
+import org.akubraproject.rmi.server.ServerConnection;
+
+import org.testng.annotations.AfterSuite;
+import org.testng.annotations.BeforeSuite;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for ClientAsyncConnection.
+ */
+public class ClientAsyncConnectionTest {
+  private static final URI A = URI.create("foo:a");
+  private static final URI B = URI.create("foo:b");
+
+  private Exporter            exporter;
+  private BlobStoreConnection con;
+  private ServerConnection    sc;
+  private ClientConnection    cc;
+
+  @BeforeSuite
+  public void setUp() throws Exception {
+    exporter = new Exporter(0);
+
+    ClientStore store = createMock(ClientStore.class);
+
+    con   = createMock(BlobStoreConnection.class);
+    sc    = new ServerConnection(con, exporter);
+    cc    = new ClientConnection(store, new StreamManager(), (RemoteConnection) sc.getExported());
+  }
+
+  @AfterSuite
+  public void tearDown() throws Exception {
+    sc.unExport(false);
+  }
+
+  @Test
+  public void testGetAsyncConnection() {
+    ExecutorService exec = createMock(ExecutorService.class);
+    assertTrue(cc.getAsyncConnection(exec) instanceof ClientAsyncConnection);
+  }
+
+  @Test
+  public void testBatching() throws Exception {
+    Map<URI, Long> sizes = new LinkedHashMap<URI, Long>();
+    sizes.put(A, 42L);
+
+    reset(con);
+    expect(con.exists(eq(Arrays.asList(A, B)))).andReturn(Collections.singleton(A));
+    expect(con.getSizes(eq(Arrays.asList(A, B)))).andReturn(sizes);
+    makeThreadSafe(con, true);
+    replay(con);
+
+    QueueExecutor            exec = new QueueExecutor();
+    AsyncBlobStoreConnection acon = new ClientAsyncConnection(cc, exec);
+
+    BlobFuture<Boolean> ea  = acon.exists(A);
+    BlobFuture<Boolean> eb  = acon.exists(B);
+    BlobFuture<Long>    sa  = acon.getSize(A);
+    BlobFuture<Boolean> ea2 = acon.exists(A);
+    BlobFuture<Long>    sb  = acon.getSize(B);
+
+    assertEquals(exec.tasks.size(), 1);
+    exec.runAll();
+
+    assertTrue(ea.get());
+    assertFalse(eb.get());
+    assertTrue(ea2.get());
+    assertEquals(sa.get(), Long.valueOf(42));
+    try {
+      sb.get();
+      fail("Failed to rcv expected exception");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof MissingBlobException);
+    }
+
+    verify(con);
+  }
+
+  @Test
+  public void testOrdering() throws Exception {
+    Blob blob = createMock(Blob.class);
+    expect(blob.getId()).andStubReturn(B);
+    makeThreadSafe(blob, true);
+    replay(blob);
+
+    reset(con);
+    expect(con.exists(eq(Arrays.asList(A)))).andReturn(Collections.singleton(A));
+    expect(con.getBlob(B, null)).andReturn(blob);
+    expect(con.exists(eq(Arrays.asList(A)))).andReturn(new HashSet<URI>());
+    makeThreadSafe(con, true);
+    replay(con);
+
+    QueueExecutor            exec = new QueueExecutor();
+    AsyncBlobStoreConnection acon = new ClientAsyncConnection(cc, exec);
+
+    // the getBlob in between must close the first batch
+    BlobFuture<Boolean> e1 = acon.exists(A);
+    BlobFuture<Blob>    b  = acon.getBlob(B, null);
+    BlobFuture<Boolean> e2 = acon.exists(A);
+    exec.runAll();
+
+    assertTrue(e1.get());
+    assertEquals(b.get().getId(), B);
+    assertFalse(e2.get());
+
+    verify(con);
+  }
+
+  @Test
+  public void testUnsupportedId() throws Exception {
+    Blob blob = createMock(Blob.class);
+    expect(blob.getId()).andStubReturn(A);
+    expect(blob.exists()).andReturn(true);
+    makeThreadSafe(blob, true);
+    replay(blob);
+
+    reset(con);
+    expect(con.exists(eq(Arrays.asList(A, B)))).andThrow(new UnsupportedIdException(B));
+    expect(con.getBlob(A, null)).andReturn(blob);
+    expect(con.getBlob(B, null)).andThrow(new UnsupportedIdException(B));
+    makeThreadSafe(con, true);
+    replay(con);
+
+    QueueExecutor            exec = new QueueExecutor();
+    AsyncBlobStoreConnection acon = new ClientAsyncConnection(cc, exec);
+
+    BlobFuture<Boolean> ea = acon.exists(A);
+    BlobFuture<Boolean> eb = acon.exists(B);
+    exec.runAll();
+
+    assertTrue(ea.get());
+    try {
+      eb.get();
+      fail("Failed to rcv expected exception");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof UnsupportedIdException);
+    }
+
+    try {
+      acon.exists(null).get();
+      fail("Failed to rcv expected exception");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof NullPointerException);
+    }
+
+    verify(con);
+  }
+
+  @Test
+  public void testRejected() throws Exception {
+    reset(con);
+    replay(con);
+
+    Executor reject = new Executor() {
+      public void execute(Runnable r) {
+        throw new RejectedExecutionException();
+      }
+    };
+
+    AsyncBlobStoreConnection acon = new ClientAsyncConnection(cc, reject);
+    BlobFuture<Boolean>      e1   = acon.exists(A);
+    BlobFuture<Long>         s1   = acon.getSize(A);
+
+    for (BlobFuture<?> f : Arrays.asList(e1, s1)) {
+      try {
+        f.get();
+        fail("Failed to rcv expected exception");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+      }
+    }
+
+    verify(con);
+  }
+
+  /**
+   * An executor that queues tasks until told to run them.
+   */
+  private static class QueueExecutor implements Executor {
+    final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+    public void execute(Runnable r) {
+      tasks.add(r);
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty())
+        tasks.removeFirst().run();
+    }
+  }
+}
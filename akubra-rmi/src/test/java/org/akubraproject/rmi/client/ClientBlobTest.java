@@ -136,6 +136,39 @@ public class ClientBlobTest {
     verify(in);
   }
 
+  @Test
+  public void testOpenRangedInputStream() throws IOException {
+    URI         id = URI.create("foo:bar");
+    InputStream in = createMock(InputStream.class);
+    makeThreadSafe(in, true);
+
+    reset(blob);
+    makeThreadSafe(blob, true);
+    expect(blob.openInputStream(10L, 20L)).andReturn(in);
+    expect(blob.openInputStream(5L, -1L)).andThrow(new MissingBlobException(id));
+
+    expect(in.read()).andReturn(42);
+    in.close();
+    expectLastCall().atLeastOnce();
+    replay(blob);
+    replay(in);
+
+    InputStream ci = cb.openInputStream(10, 20);
+    assertNotNull(ci);
+    assertEquals(42, ci.read());
+    ci.close();
+
+    try {
+      cb.openInputStream(5, -1);
+      fail("Failed to rcv expected exception");
+    } catch (MissingBlobException e) {
+      assertEquals(id, e.getBlobId());
+    }
+
+    verify(blob);
+    verify(in);
+  }
+
   @Test
   public void testOpenOutputStream() throws IOException {
     URI          id  = URI.create("foo:bar");
@@ -250,4 +283,56 @@ public class ClientBlobTest {
     sb.unExport(false);
     sb2.unExport(false);
   }
+
+  @Test
+  public void testCopyTo() throws IOException {
+    URI                 id1   = URI.create("foo:1");
+    URI                 id2   = URI.create("foo:2");
+    BlobStoreConnection con   = createMock(BlobStoreConnection.class);
+    Blob                blob2 = createMock(Blob.class);
+
+    reset(blob);
+    expect(blob.getConnection()).andStubReturn(con);
+    expect(blob2.getConnection()).andStubReturn(con);
+
+    expect(blob.getId()).andStubReturn(id1);
+    expect(blob2.getId()).andStubReturn(id2);
+
+    expect(con.getBlob(id1, null)).andStubReturn(blob);
+    expect(con.getBlob(id2, null)).andStubReturn(blob2);
+
+    expect(blob.copyTo(id1, null)).andStubThrow(new DuplicateBlobException(id1));
+    expect(blob.copyTo(id2, null)).andStubReturn(blob2);
+    expect(blob.copyTo(null, null)).andStubThrow(new UnsupportedOperationException());
+    replay(blob);
+    replay(blob2);
+    replay(con);
+
+    ServerBlob sb  = new ServerBlob(blob, exporter);
+    ClientBlob cb  =
+      new ClientBlob(this.cb.getConnection(), new StreamManager(), (RemoteBlob) sb.getExported());
+
+    ServerBlob sb2 = new ServerBlob(blob2, exporter);
+    ClientBlob cb2 =
+      new ClientBlob(cb.getConnection(), new StreamManager(), (RemoteBlob) sb2.getExported());
+
+    try {
+      cb.copyTo(cb.getId(), null);
+      fail("Failed to rcv expected exception");
+    } catch (DuplicateBlobException e) {
+    }
+
+    cb.copyTo(cb2.getId(), null);
+
+    try {
+      cb.copyTo(null, null);
+      fail("Failed to rcv expected exception");
+    } catch (UnsupportedOperationException e) {
+    }
+
+    verify(blob);
+
+    sb.unExport(false);
+    sb2.unExport(false);
+  }
 }
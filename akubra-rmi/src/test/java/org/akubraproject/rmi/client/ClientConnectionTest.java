@@ -32,6 +32,7 @@ import static org.easymock.EasyMock.verify;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -43,11 +44,15 @@ import java.io.PipedInputStream;
 import java.net.URI;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.BlobStoreConnection;
 import org.akubraproject.UnsupportedIdException;
 import org.akubraproject.impl.StreamManager;
@@ -165,6 +170,61 @@ public class ClientConnectionTest {
     verify(con);
   }
 
+  @Test
+  public void testGetBlobs() throws IOException {
+    URI       id1 = URI.create("foo:bar");
+    URI       id2 = URI.create("foo:baz");
+    List<URI> ids = Arrays.asList(id2, id1);
+
+    Blob blob1 = createMock(Blob.class);
+    Blob blob2 = createMock(Blob.class);
+    Map<URI, Blob> blobs = new HashMap<URI, Blob>();
+    blobs.put(id1, blob1);
+    blobs.put(id2, blob2);
+
+    reset(con);
+    expect(con.getBlobs(ids, null)).andReturn(blobs);
+    replay(con);
+
+    Map<URI, Blob> res = cc.getBlobs(ids, null);
+    assertEquals(Arrays.asList(id2, id1), Arrays.asList(res.keySet().toArray()));
+    for (Map.Entry<URI, Blob> e : res.entrySet()) {
+      assertTrue(e.getValue() instanceof ClientBlob);
+      assertEquals(e.getKey(), e.getValue().getId());
+    }
+
+    verify(con);
+  }
+
+  @Test
+  public void testExistsAndGetSizes() throws IOException {
+    URI       id1 = URI.create("foo:bar");
+    URI       id2 = URI.create("foo:baz");
+    List<URI> ids = Arrays.asList(id1, id2);
+
+    reset(con);
+    expect(con.exists(ids)).andReturn(Collections.singleton(id1));
+    expect(con.getSizes(ids)).andReturn(Collections.singletonMap(id1, 42L));
+    con.delete(ids);
+    replay(con);
+
+    Set<URI> exists = cc.exists(ids);
+    assertEquals(Collections.singleton(id1), exists);
+
+    Map<URI, Long> sizes = cc.getSizes(ids);
+    assertEquals(Collections.singletonMap(id1, 42L), sizes);
+
+    cc.delete(ids);
+
+    try {
+      cc.exists(Arrays.asList(id1, null));
+      fail("Failed to rcv expected exception");
+    } catch (NullPointerException e) {
+    }
+
+    verify(con);
+  }
+
   @Test
   public void testListBlobIds() throws IOException {
     URI           id = URI.create("foo:bar");
@@ -181,4 +241,31 @@ public class ClientConnectionTest {
     assertFalse(ri.hasNext());
     verify(con);
   }
+
+  @Test
+  public void testListBlobIdsPaged() throws IOException {
+    URI id1 = URI.create("foo:bar");
+    URI id2 = URI.create("foo:baz");
+
+    reset(con);
+    expect(con.listBlobIds("foo:", null, 1)).andReturn(new BlobIdPage(Arrays.asList(id1), id1));
+    expect(con.listBlobIds("foo:", id1, 1)).andReturn(new BlobIdPage(Arrays.asList(id2), null));
+    replay(con);
+
+    BlobIdPage page = cc.listBlobIds("foo:", null, 1);
+    assertEquals(Arrays.asList(id1), page.getBlobIds());
+    assertEquals(id1, page.getContinuation());
+
+    page = cc.listBlobIds("foo:", page.getContinuation(), 1);
+    assertEquals(Arrays.asList(id2), page.getBlobIds());
+    assertNull(page.getContinuation());
+
+    try {
+      cc.listBlobIds("foo:", null, 0);
+      fail("Failed to rcv expected exception");
+    } catch (IllegalArgumentException e) {
+    }
+
+    verify(con);
+  }
 }
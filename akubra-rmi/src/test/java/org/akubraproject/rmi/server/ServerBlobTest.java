@@ -158,6 +158,47 @@ public class ServerBlobTest {
     verify(blob);
   }
 
+  @Test
+  public void testCopyTo() throws IOException {
+    URI                 id1   = URI.create("foo:1");
+    URI                 id2   = URI.create("foo:2");
+    BlobStoreConnection con   = createMock(BlobStoreConnection.class);
+    Blob                blob2 = createMock(Blob.class);
+
+    reset(blob);
+    expect(blob.getConnection()).andStubReturn(con);
+    expect(blob2.getConnection()).andStubReturn(con);
+
+    expect(blob.getId()).andStubReturn(id1);
+    expect(blob2.getId()).andStubReturn(id2);
+
+    expect(con.getBlob(id1, null)).andStubReturn(blob);
+    expect(con.getBlob(id2, null)).andStubReturn(blob2);
+
+    expect(blob.copyTo(id1, null)).andStubThrow(new DuplicateBlobException(id1));
+    expect(blob.copyTo(id2, null)).andStubReturn(blob2);
+    expect(blob.copyTo(null, null)).andStubThrow(new UnsupportedOperationException());
+    replay(blob);
+    replay(blob2);
+    replay(con);
+
+    try {
+      sb.copyTo(blob.getId(), null);
+      fail("Failed to rcv expected exception");
+    } catch (DuplicateBlobException e) {
+    }
+
+    sb.copyTo(blob2.getId(), null);
+
+    try {
+      sb.copyTo(null, null);
+      fail("Failed to rcv expected exception");
+    } catch (UnsupportedOperationException e) {
+    }
+
+    verify(blob);
+  }
+
   @Test
   public void testOpenInputStream() throws IOException {
     URI         id = URI.create("foo:bar");
@@ -181,6 +222,29 @@ public class ServerBlobTest {
     verify(blob);
   }
 
+  @Test
+  public void testOpenRangedInputStream() throws IOException {
+    URI         id = URI.create("foo:bar");
+    InputStream in = createMock(InputStream.class);
+    reset(blob);
+    expect(blob.openInputStream(10L, 20L)).andReturn(in);
+    expect(blob.openInputStream(5L, -1L)).andThrow(new MissingBlobException(id));
+    replay(blob);
+
+    RemoteInputStream ri = sb.openInputStream(10, 20);
+    assertTrue(ri instanceof ServerInputStream);
+    assertEquals(((ServerInputStream) ri).getInputStream(), in);
+
+    try {
+      sb.openInputStream(5, -1);
+      fail("Failed to rcv expected exception");
+    } catch (MissingBlobException e) {
+      assertEquals(id, e.getBlobId());
+    }
+
+    verify(blob);
+  }
+
   @Test
   public void testOpenOutputStream() throws IOException {
     URI          id  = URI.create("foo:bar");
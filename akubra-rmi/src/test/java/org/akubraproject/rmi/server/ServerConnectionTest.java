@@ -44,8 +44,10 @@ import java.net.URI;
 import java.rmi.RemoteException;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.akubraproject.Blob;
@@ -114,6 +116,51 @@ public class ServerConnectionTest {
     verify(con);
   }
 
+  @Test
+  public void testGetBlobs() throws IOException {
+    URI       id  = URI.create("foo:bar");
+    List<URI> ids = Arrays.asList(id);
+
+    Blob blob = createMock(Blob.class);
+
+    reset(con);
+    expect(con.getBlobs(ids, null)).andReturn(Collections.singletonMap(id, blob));
+    replay(con);
+
+    Map<URI, RemoteBlob> rbs = sc.getBlobs(ids, null);
+    assertEquals(rbs.size(), 1);
+    assertTrue(rbs.get(id) instanceof ServerBlob);
+    assertEquals(blob, ((ServerBlob) rbs.get(id)).getBlob());
+
+    verify(con);
+  }
+
+  @Test
+  public void testBulkOperations() throws IOException {
+    URI       id  = URI.create("foo:bar");
+    List<URI> ids = Arrays.asList(id);
+
+    reset(con);
+    expect(con.exists(ids)).andReturn(Collections.singleton(id));
+    expect(con.getSizes(ids)).andReturn(Collections.singletonMap(id, 42L));
+    con.delete(ids);
+    expect(con.exists(ids)).andThrow(new UnsupportedIdException(id));
+    replay(con);
+
+    assertEquals(sc.exists(ids), Collections.singleton(id));
+    assertEquals(sc.getSizes(ids), Collections.singletonMap(id, 42L));
+    sc.delete(ids);
+
+    try {
+      sc.exists(ids);
+      fail("Failed to rcv expected exception");
+    } catch (UnsupportedIdException e) {
+      assertEquals(id, e.getBlobId());
+    }
+
+    verify(con);
+  }
+
   @Test
   public void testGetBlobCreator() throws IOException {
     Map<String, String> hints = new HashMap<String, String>();
@@ -0,0 +1,157 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.URI;
+
+import java.nio.channels.SeekableByteChannel;
+
+import java.util.Map;
+
+import org.akubraproject.Blob;
+import org.akubraproject.impl.BlobWrapper;
+import org.akubraproject.impl.StreamManager;
+
+/**
+ * Records the latencies of the blob level operations and wraps the streams and channels to count
+ * the bytes transferred.
+ */
+class InstrumentedBlob extends BlobWrapper {
+  private final StreamManager   streamManager;
+  private final StoreStatistics stats;
+
+  /**
+   * Create a new instrumented blob.
+   *
+   * @param connection    the connection this blob belongs to
+   * @param blob          the underlying blob this is wrapping
+   * @param streamManager the stream manager
+   * @param stats         the statistics to record into
+   */
+  public InstrumentedBlob(InstrumentedConnection connection, Blob blob,
+                          StreamManager streamManager, StoreStatistics stats) {
+    super(blob, connection);
+    this.streamManager = streamManager;
+    this.stats         = stats;
+  }
+
+  @Override
+  public InputStream openInputStream() throws IOException {
+    InputStream in;
+
+    long start = System.nanoTime();
+    try {
+      in = super.openInputStream();
+    } finally {
+      stats.record(Operation.OPEN_INPUT_STREAM, start);
+    }
+
+    return streamManager.manageInputStream(owner, new InstrumentedInputStream(in, stats));
+  }
+
+  @Override
+  public InputStream openInputStream(long offset, long length) throws IOException {
+    InputStream in;
+
+    long start = System.nanoTime();
+    try {
+      in = super.openInputStream(offset, length);
+    } finally {
+      stats.record(Operation.OPEN_INPUT_STREAM, start);
+    }
+
+    return streamManager.manageInputStream(owner, new InstrumentedInputStream(in, stats));
+  }
+
+  @Override
+  public OutputStream openOutputStream(long estimatedSize, boolean overwrite) throws IOException {
+    OutputStream out;
+
+    long start = System.nanoTime();
+    try {
+      out = super.openOutputStream(estimatedSize, overwrite);
+    } finally {
+      stats.record(Operation.OPEN_OUTPUT_STREAM, start);
+    }
+
+    return streamManager.manageOutputStream(owner, new InstrumentedOutputStream(out, stats));
+  }
+
+  @Override
+  public SeekableByteChannel openChannel(boolean writable) throws IOException {
+    SeekableByteChannel channel;
+
+    long start = System.nanoTime();
+    try {
+      channel = super.openChannel(writable);
+    } finally {
+      stats.record(Operation.OPEN_CHANNEL, start);
+    }
+
+    return streamManager.manageChannel(owner, InstrumentedChannels.wrap(channel, writable, stats),
+                                       writable);
+  }
+
+  @Override
+  public void delete() throws IOException {
+    long start = System.nanoTime();
+    try {
+      super.delete();
+    } finally {
+      stats.record(Operation.DELETE, start);
+    }
+  }
+
+  @Override
+  public Blob moveTo(URI blobId, Map<String, String> hints) throws IOException {
+    Blob dest;
+
+    long start = System.nanoTime();
+    try {
+      ensureOpen();
+      dest = delegate.moveTo(blobId, hints);
+    } finally {
+      stats.record(Operation.MOVE_TO, start);
+    }
+
+    return ((InstrumentedConnection) owner).wrap(dest);
+  }
+
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+    Blob dest;
+
+    long start = System.nanoTime();
+    try {
+      ensureOpen();
+      dest = delegate.copyTo(blobId, hints);
+    } finally {
+      stats.record(Operation.COPY_TO, start);
+    }
+
+    return ((InstrumentedConnection) owner).wrap(dest);
+  }
+}
@@ -0,0 +1,115 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.io.IOException;
+
+import java.net.URI;
+
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.transaction.Transaction;
+
+import org.akubraproject.BlobStore;
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.impl.AbstractBlobStore;
+import org.akubraproject.impl.StreamManager;
+
+/**
+ * A pass-through store that records statistics about the operations performed through it:
+ * per-operation latency histograms (see {@link Operation}), the number of bytes read and
+ * written, and the number of open connections and streams. Placing one of these above each
+ * layer of a stack shows how much each layer contributes to the overall latency.
+ *
+ * <p>The statistics are available via {@link #getStatistics} and {@link #getSnapshot}, and can be
+ * exposed via JMX using {@link #registerMBean}.
+ */
+public class InstrumentedBlobStore extends AbstractBlobStore {
+  /** The JMX domain used by {@link #registerMBean}. */
+  public static final String JMX_DOMAIN = "org.akubraproject";
+
+  private final BlobStore       store;
+  private final StoreStatistics stats     = new StoreStatistics();
+  private final StreamManager   streamMgr = new StreamManager();
+
+  /**
+   * Creates an instance.
+   *
+   * @param id the id associated with this store.
+   * @param store the store to wrap.
+   */
+  public InstrumentedBlobStore(URI id, BlobStore store) {
+    super(id);
+    this.store = store;
+  }
+
+  @Override
+  public BlobStoreConnection openConnection(Transaction tx, Map<String, String> hints)
+      throws IOException {
+    BlobStoreConnection con;
+
+    long start = System.nanoTime();
+    try {
+      con = store.openConnection(tx, hints);
+    } finally {
+      stats.record(Operation.OPEN_CONNECTION, start);
+    }
+
+    return new InstrumentedConnection(this, con, streamMgr, stats);
+  }
+
+  /**
+   * Gets the live statistics of this store.
+   *
+   * @return the statistics
+   */
+  public StoreStatistics getStatistics() {
+    return stats;
+  }
+
+  /**
+   * Takes a snapshot of the statistics of this store.
+   *
+   * @return the snapshot
+   */
+  public StatisticsSnapshot getSnapshot() {
+    return stats.snapshot();
+  }
+
+  /**
+   * Registers the statistics of this store with the given MBean server, under the name
+   * <code>org.akubraproject:type=InstrumentedBlobStore,id="&lt;store-id&gt;"</code>.
+   *
+   * @param server the MBean server, e.g. the platform MBean server
+   * @return the name the statistics were registered under; use it to unregister them
+   * @throws JMException if the registration failed
+   */
+  public ObjectName registerMBean(MBeanServer server) throws JMException {
+    ObjectName name = new ObjectName(JMX_DOMAIN + ":type=InstrumentedBlobStore,id=" +
+                                     ObjectName.quote(getId().toString()));
+    server.registerMBean(stats, name);
+    return name;
+  }
+}
@@ -0,0 +1,184 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.akubraproject.impl.FileChannelWrapper;
+import org.akubraproject.impl.SeekableByteChannelWrapper;
+
+/**
+ * Wraps blob channels to count the bytes transferred and to track them in the open-stream
+ * gauges: a writable channel is counted as an output stream, a read-only one as an input stream.
+ * File channels remain file channels; bytes accessed through a memory mapping are not counted.
+ */
+final class InstrumentedChannels {
+  private InstrumentedChannels() {
+  }
+
+  /**
+   * Wrap a channel.
+   *
+   * @param channel  the channel to wrap
+   * @param writable whether the channel was opened for writing
+   * @param stats    the statistics to record into
+   * @return the wrapped channel
+   */
+  static SeekableByteChannel wrap(SeekableByteChannel channel, boolean writable,
+                                  StoreStatistics stats) {
+    Gauge gauge = new Gauge(writable, stats);
+    if (channel instanceof FileChannel)
+      return new InstrumentedFileChannel((FileChannel) channel, gauge);
+    return new InstrumentedChannel(channel, gauge);
+  }
+
+  private static class Gauge {
+    final StoreStatistics stats;
+    final boolean         writable;
+    boolean               closed = false;
+
+    Gauge(boolean writable, StoreStatistics stats) {
+      this.writable = writable;
+      this.stats    = stats;
+
+      if (writable)
+        stats.outputStreamOpened();
+      else
+        stats.inputStreamOpened();
+    }
+
+    long read(long cnt) {
+      if (cnt > 0)
+        stats.addBytesRead(cnt);
+      return cnt;
+    }
+
+    long written(long cnt) {
+      if (cnt > 0)
+        stats.addBytesWritten(cnt);
+      return cnt;
+    }
+
+    synchronized void closed() {
+      if (!closed) {
+        closed = true;
+        if (writable)
+          stats.outputStreamClosed();
+        else
+          stats.inputStreamClosed();
+      }
+    }
+  }
+
+  private static class InstrumentedChannel extends SeekableByteChannelWrapper {
+    private final Gauge gauge;
+
+    InstrumentedChannel(SeekableByteChannel channel, Gauge gauge) {
+      super(channel);
+      this.gauge = gauge;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      return (int) gauge.read(super.read(dst));
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      return (int) gauge.written(super.write(src));
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        gauge.closed();
+      }
+    }
+  }
+
+  private static class InstrumentedFileChannel extends FileChannelWrapper {
+    private final Gauge gauge;
+
+    InstrumentedFileChannel(FileChannel channel, Gauge gauge) {
+      super(channel);
+      this.gauge = gauge;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      return (int) gauge.read(super.read(dst));
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+      return gauge.read(super.read(dsts, offset, length));
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+      return (int) gauge.read(super.read(dst, position));
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      return (int) gauge.written(super.write(src));
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+      return gauge.written(super.write(srcs, offset, length));
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+      return (int) gauge.written(super.write(src, position));
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target)
+        throws IOException {
+      return gauge.read(super.transferTo(position, count, target));
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count)
+        throws IOException {
+      return gauge.written(super.transferFrom(src, position, count));
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+      try {
+        super.implCloseChannel();
+      } finally {
+        gauge.closed();
+      }
+    }
+  }
+}
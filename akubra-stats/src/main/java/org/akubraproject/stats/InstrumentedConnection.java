@@ -0,0 +1,194 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URI;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
+import org.akubraproject.BlobStore;
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.UnsupportedIdException;
+import org.akubraproject.impl.BlobStoreConnectionWrapper;
+import org.akubraproject.impl.StreamManager;
+
+/**
+ * Records the latencies of the connection level operations and provides wrapped blobs.
+ */
+class InstrumentedConnection extends BlobStoreConnectionWrapper {
+  private final StoreStatistics stats;
+
+  /**
+   * Creates an instance.
+   *
+   * @param store      the store from which this connection originated.
+   * @param connection the wrapped connection.
+   * @param streamMgr  the stream manager.
+   * @param stats      the statistics to record into.
+   */
+  public InstrumentedConnection(BlobStore store, BlobStoreConnection connection,
+                                StreamManager streamMgr, StoreStatistics stats) {
+    super(store, connection, streamMgr);
+    this.stats = stats;
+
+    stats.connectionOpened();
+  }
+
+  @Override
+  public Blob getBlob(URI blobId, Map<String, String> hints)
+      throws IOException, UnsupportedIdException, UnsupportedOperationException {
+    Blob blob;
+
+    long start = System.nanoTime();
+    try {
+      blob = delegate.getBlob(blobId, hints);
+    } finally {
+      stats.record(Operation.GET_BLOB, start);
+    }
+
+    return wrap(blob);
+  }
+
+  @Override
+  public Blob getBlob(InputStream content, long estimatedSize, Map<String, String> hints)
+      throws IOException, UnsupportedOperationException {
+    CountingInputStream counter = new CountingInputStream(content);
+    Blob                blob;
+
+    long start = System.nanoTime();
+    try {
+      blob = delegate.getBlob(counter, estimatedSize, hints);
+    } finally {
+      stats.record(Operation.GET_BLOB, start);
+      stats.addBytesWritten(counter.getByteCount());
+    }
+
+    return wrap(blob);
+  }
+
+  @Override
+  public Map<URI, Blob> getBlobs(Collection<URI> blobIds, Map<String, String> hints)
+      throws IOException, UnsupportedIdException {
+    Map<URI, Blob> blobs;
+
+    long start = System.nanoTime();
+    try {
+      blobs = delegate.getBlobs(blobIds, hints);
+    } finally {
+      stats.record(Operation.GET_BLOB, start);
+    }
+
+    Map<URI, Blob> res = new LinkedHashMap<URI, Blob>();
+    for (Map.Entry<URI, Blob> e : blobs.entrySet())
+      res.put(e.getKey(), wrap(e.getValue()));
+
+    return res;
+  }
+
+  @Override
+  public Set<URI> exists(Collection<URI> blobIds) throws IOException, UnsupportedIdException {
+    long start = System.nanoTime();
+    try {
+      return delegate.exists(blobIds);
+    } finally {
+      stats.record(Operation.GET_BLOB, start);
+    }
+  }
+
+  @Override
+  public Map<URI, Long> getSizes(Collection<URI> blobIds)
+      throws IOException, UnsupportedIdException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getSizes(blobIds);
+    } finally {
+      stats.record(Operation.GET_BLOB, start);
+    }
+  }
+
+  @Override
+  public void delete(Collection<URI> blobIds) throws IOException, UnsupportedIdException {
+    long start = System.nanoTime();
+    try {
+      delegate.delete(blobIds);
+    } finally {
+      stats.record(Operation.DELETE, start);
+    }
+  }
+
+  @Override
+  public Iterator<URI> listBlobIds(String filterPrefix) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return delegate.listBlobIds(filterPrefix);
+    } finally {
+      stats.record(Operation.LIST_BLOB_IDS, start);
+    }
+  }
+
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds)
+      throws IOException {
+    long start = System.nanoTime();
+    try {
+      return delegate.listBlobIds(filterPrefix, startAfter, maxIds);
+    } finally {
+      stats.record(Operation.LIST_BLOB_IDS, start);
+    }
+  }
+
+  @Override
+  public void sync() throws IOException, UnsupportedOperationException {
+    long start = System.nanoTime();
+    try {
+      delegate.sync();
+    } finally {
+      stats.record(Operation.SYNC, start);
+    }
+  }
+
+  @Override
+  public void close() {
+    boolean wasOpen = !isClosed();
+    try {
+      super.close();
+    } finally {
+      if (wasOpen)
+        stats.connectionClosed();
+    }
+  }
+
+  Blob wrap(Blob blob) {
+    return new InstrumentedBlob(this, blob, streamManager, stats);
+  }
+}
@@ -0,0 +1,75 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read and tracks the stream in the open-stream gauge.
+ */
+class InstrumentedInputStream extends FilterInputStream {
+  private final StoreStatistics stats;
+  private       boolean         closed = false;
+
+  /**
+   * Create a new instrumented stream.
+   *
+   * @param in    the stream to wrap
+   * @param stats the statistics to record into
+   */
+  InstrumentedInputStream(InputStream in, StoreStatistics stats) {
+    super(in);
+    this.stats = stats;
+
+    stats.inputStreamOpened();
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    if (b >= 0)
+      stats.addBytesRead(1);
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int got = super.read(b, off, len);
+    if (got > 0)
+      stats.addBytesRead(got);
+    return got;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      if (!closed) {
+        closed = true;
+        stats.inputStreamClosed();
+      }
+    }
+  }
+}
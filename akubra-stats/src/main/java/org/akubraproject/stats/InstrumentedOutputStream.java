@@ -0,0 +1,75 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes written and tracks the stream in the open-stream gauge.
+ */
+class InstrumentedOutputStream extends FilterOutputStream {
+  private final StoreStatistics stats;
+  private       boolean         closed = false;
+
+  /**
+   * Create a new instrumented stream.
+   *
+   * @param out   the stream to wrap
+   * @param stats the statistics to record into
+   */
+  InstrumentedOutputStream(OutputStream out, StoreStatistics stats) {
+    super(out);
+    this.stats = stats;
+
+    stats.outputStreamOpened();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    out.write(b);
+    stats.addBytesWritten(1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    out.write(b, off, len);
+    stats.addBytesWritten(len);
+  }
+
+  /**
+   * Closes the underlying stream. Unlike <code>FilterOutputStream</code> this does not flush
+   * first, so that errors on close are not lost.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      out.close();
+    } finally {
+      if (!closed) {
+        closed = true;
+        stats.outputStreamClosed();
+      }
+    }
+  }
+}
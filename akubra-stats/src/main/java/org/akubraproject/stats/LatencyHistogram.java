@@ -0,0 +1,134 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds. Values are grouped into log-linear buckets:
+ * each power of two is split into {@link #SUB} equally sized buckets, giving a relative error
+ * of at most 25% over the whole range. Values of 2<sup>{@link #MAX_EXP}</sup> ns (about 18
+ * minutes) or more all fall into the last bucket.
+ *
+ * <p>Like {@link StripedCounter}, each thread records into its own stripe of counters, so
+ * concurrent recordings seldom touch the same cache line. {@link #snapshot} sums the stripes.
+ */
+class LatencyHistogram {
+  /** log2 of the number of buckets each power of two is split into */
+  static final int SUB_BITS = 2;
+  /** the number of buckets each power of two is split into */
+  static final int SUB = 1 << SUB_BITS;
+  /** values with this many or more significant bits go into the last bucket */
+  static final int MAX_EXP = 40;
+  /** the total number of buckets */
+  static final int NUM_BUCKETS = (MAX_EXP - SUB_BITS + 1) * SUB;
+
+  private static final int STRIPES = StripedCounter.STRIPES;
+  private static final int PAD     = 8;
+
+  private final AtomicLongArray counts = new AtomicLongArray(STRIPES * NUM_BUCKETS);
+  private final AtomicLongArray totals = new AtomicLongArray(STRIPES * PAD);
+  private final AtomicLongArray maxima = new AtomicLongArray(STRIPES * PAD);
+
+  /**
+   * Record a latency.
+   *
+   * @param nanos the latency, in nanoseconds; negative values are recorded as 0
+   */
+  void record(long nanos) {
+    if (nanos < 0)
+      nanos = 0;
+
+    int stripe = StripedCounter.stripe();
+    counts.incrementAndGet(stripe * NUM_BUCKETS + bucketOf(nanos));
+    totals.addAndGet(stripe * PAD, nanos);
+
+    int  idx = stripe * PAD;
+    long max;
+    while ((max = maxima.get(idx)) < nanos && !maxima.compareAndSet(idx, max, nanos))
+      ;
+  }
+
+  /**
+   * Take a snapshot of the current counts. Recordings that happen concurrently may or may not be
+   * included.
+   *
+   * @return the snapshot
+   */
+  LatencySnapshot snapshot() {
+    long[] buckets = new long[NUM_BUCKETS];
+    long   total   = 0;
+    long   max     = 0;
+
+    for (int s = 0; s < STRIPES; s++) {
+      for (int b = 0; b < NUM_BUCKETS; b++)
+        buckets[b] += counts.get(s * NUM_BUCKETS + b);
+      total += totals.get(s * PAD);
+      max    = Math.max(max, maxima.get(s * PAD));
+    }
+
+    return new LatencySnapshot(buckets, total, max);
+  }
+
+  /**
+   * Find the bucket for a value.
+   *
+   * @param v the value; must not be negative
+   * @return the bucket index
+   */
+  static int bucketOf(long v) {
+    if (v < SUB)
+      return (int) v;
+
+    int exp = 63 - Long.numberOfLeadingZeros(v);
+    if (exp >= MAX_EXP)
+      return NUM_BUCKETS - 1;
+
+    int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+    return (exp - SUB_BITS + 1) * SUB + sub;
+  }
+
+  /**
+   * Get the smallest value that falls into the given bucket.
+   *
+   * @param idx the bucket index
+   * @return the lower bound (inclusive)
+   */
+  static long lowerBound(int idx) {
+    if (idx < SUB)
+      return idx;
+
+    int exp = idx / SUB + SUB_BITS - 1;
+    int sub = idx % SUB;
+    return ((long) (SUB + sub)) << (exp - SUB_BITS);
+  }
+
+  /**
+   * Get the largest value that falls into the given bucket.
+   *
+   * @param idx the bucket index
+   * @return the upper bound (inclusive)
+   */
+  static long upperBound(int idx) {
+    return (idx >= NUM_BUCKETS - 1) ? Long.MAX_VALUE : lowerBound(idx + 1) - 1;
+  }
+}
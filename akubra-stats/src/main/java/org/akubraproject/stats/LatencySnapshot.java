@@ -0,0 +1,175 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+/**
+ * An immutable snapshot of the latencies recorded for an {@link Operation}. Percentiles are
+ * estimated from the histogram buckets and are accurate to within 25%; they never exceed the
+ * recorded maximum.
+ *
+ * <p>The counters only ever grow; use {@link #since} to get the latencies for an interval.
+ */
+public class LatencySnapshot {
+  private final long[] buckets;
+  private final long   count;
+  private final long   totalNanos;
+  private final long   maxNanos;
+
+  /**
+   * Create a new snapshot.
+   *
+   * @param buckets    the number of recordings in each bucket; not copied
+   * @param totalNanos the sum of all recorded latencies
+   * @param maxNanos   the largest recorded latency
+   */
+  LatencySnapshot(long[] buckets, long totalNanos, long maxNanos) {
+    long count = 0;
+    for (long c : buckets)
+      count += c;
+
+    this.buckets    = buckets;
+    this.count      = count;
+    this.totalNanos = totalNanos;
+    this.maxNanos   = maxNanos;
+  }
+
+  /**
+   * @return the number of recorded operations
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return the sum of all recorded latencies, in nanoseconds
+   */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /**
+   * @return the mean latency, in nanoseconds, or 0 if nothing was recorded
+   */
+  public long getMeanNanos() {
+    return (count == 0) ? 0 : totalNanos / count;
+  }
+
+  /**
+   * @return the largest latency recorded since the store was created, in nanoseconds. This is
+   *         not affected by {@link #since}.
+   */
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * @return the estimated median latency, in nanoseconds
+   */
+  public long getP50Nanos() {
+    return getPercentileNanos(50);
+  }
+
+  /**
+   * @return the estimated 90th percentile latency, in nanoseconds
+   */
+  public long getP90Nanos() {
+    return getPercentileNanos(90);
+  }
+
+  /**
+   * @return the estimated 99th percentile latency, in nanoseconds
+   */
+  public long getP99Nanos() {
+    return getPercentileNanos(99);
+  }
+
+  /**
+   * @return the estimated 99.9th percentile latency, in nanoseconds
+   */
+  public long getP999Nanos() {
+    return getPercentileNanos(99.9);
+  }
+
+  /**
+   * Estimate a percentile of the recorded latencies. The result is the upper bound of the bucket
+   * containing the requested rank, capped at the maximum recorded latency.
+   *
+   * @param percentile the percentile, in the range (0, 100]
+   * @return the latency in nanoseconds, or 0 if nothing was recorded
+   * @throws IllegalArgumentException if the percentile is out of range
+   */
+  public long getPercentileNanos(double percentile) throws IllegalArgumentException {
+    if (!(percentile > 0 && percentile <= 100))
+      throw new IllegalArgumentException("percentile must be in (0, 100]: " + percentile);
+    if (count == 0)
+      return 0;
+
+    long rank = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+    long seen = 0;
+    for (int idx = 0; idx < buckets.length; idx++) {
+      seen += buckets[idx];
+      if (seen >= rank)
+        return Math.min(LatencyHistogram.upperBound(idx), maxNanos);
+    }
+
+    return maxNanos;
+  }
+
+  /**
+   * @return a copy of the bucket counts. Bucket <var>i</var> holds the latencies between
+   *         {@link #getBucketLowerBound getBucketLowerBound(i)} and
+   *         <code>getBucketLowerBound(i + 1) - 1</code>.
+   */
+  public long[] getBucketCounts() {
+    return buckets.clone();
+  }
+
+  /**
+   * Get the smallest latency counted in a bucket.
+   *
+   * @param idx the bucket index
+   * @return the lower bound, in nanoseconds
+   */
+  public static long getBucketLowerBound(int idx) {
+    return LatencyHistogram.lowerBound(idx);
+  }
+
+  /**
+   * Get the latencies recorded since an earlier snapshot of the same operation.
+   *
+   * @param earlier the earlier snapshot
+   * @return a snapshot of the difference; the maximum is still that of this snapshot
+   */
+  public LatencySnapshot since(LatencySnapshot earlier) {
+    long[] diff = new long[buckets.length];
+    for (int idx = 0; idx < diff.length; idx++)
+      diff[idx] = buckets[idx] - earlier.buckets[idx];
+
+    return new LatencySnapshot(diff, totalNanos - earlier.totalNanos, maxNanos);
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + count + ", mean=" + getMeanNanos() + "ns, p50=" + getP50Nanos() +
+           "ns, p99=" + getP99Nanos() + "ns, max=" + maxNanos + "ns";
+  }
+}
@@ -0,0 +1,59 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+/**
+ * The operations whose latencies are recorded by an {@link InstrumentedBlobStore}.
+ *
+ * <p>Latencies are measured from the call into the instrumented layer until the wrapped layer
+ * returns or throws; failed calls are recorded too. For the stream and channel operations this
+ * covers opening the stream or channel, not transferring the data.
+ */
+public enum Operation {
+  /** {@link org.akubraproject.BlobStore#openConnection BlobStore.openConnection} */
+  OPEN_CONNECTION,
+  /**
+   * {@link org.akubraproject.BlobStoreConnection#getBlob(java.net.URI, java.util.Map)
+   * BlobStoreConnection.getBlob} and the other lookups; bulk lookups are recorded as a single
+   * sample.
+   */
+  GET_BLOB,
+  /** {@link org.akubraproject.Blob#openInputStream Blob.openInputStream} */
+  OPEN_INPUT_STREAM,
+  /** {@link org.akubraproject.Blob#openOutputStream Blob.openOutputStream} */
+  OPEN_OUTPUT_STREAM,
+  /** {@link org.akubraproject.Blob#openChannel Blob.openChannel} */
+  OPEN_CHANNEL,
+  /** {@link org.akubraproject.Blob#moveTo Blob.moveTo} */
+  MOVE_TO,
+  /** {@link org.akubraproject.Blob#copyTo Blob.copyTo} */
+  COPY_TO,
+  /** {@link org.akubraproject.Blob#delete Blob.delete}; bulk deletes are a single sample. */
+  DELETE,
+  /**
+   * {@link org.akubraproject.BlobStoreConnection#listBlobIds listBlobIds}, until it returns; each
+   * page of a paged listing is a sample.
+   */
+  LIST_BLOB_IDS,
+  /** {@link org.akubraproject.BlobStoreConnection#sync BlobStoreConnection.sync} */
+  SYNC
+}
@@ -0,0 +1,155 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the statistics of an {@link InstrumentedBlobStore}.
+ */
+public class StatisticsSnapshot {
+  private final long                            timestamp;
+  private final Map<Operation, LatencySnapshot> latencies;
+  private final long                            bytesRead;
+  private final long                            bytesWritten;
+  private final long                            openConnections;
+  private final long                            openInputStreams;
+  private final long                            openOutputStreams;
+
+  /**
+   * Create a new snapshot.
+   *
+   * @param timestamp         when the snapshot was taken, in milliseconds since the epoch
+   * @param latencies         the latencies of each operation; not copied
+   * @param bytesRead         the number of bytes read from input streams
+   * @param bytesWritten      the number of bytes written to output streams
+   * @param openConnections   the number of open connections
+   * @param openInputStreams  the number of open input streams
+   * @param openOutputStreams the number of open output streams
+   */
+  StatisticsSnapshot(long timestamp, EnumMap<Operation, LatencySnapshot> latencies,
+                     long bytesRead, long bytesWritten, long openConnections,
+                     long openInputStreams, long openOutputStreams) {
+    this.timestamp         = timestamp;
+    this.latencies         = Collections.unmodifiableMap(latencies);
+    this.bytesRead         = bytesRead;
+    this.bytesWritten      = bytesWritten;
+    this.openConnections   = openConnections;
+    this.openInputStreams  = openInputStreams;
+    this.openOutputStreams = openOutputStreams;
+  }
+
+  /**
+   * @return when this snapshot was taken, in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Get the latencies of an operation.
+   *
+   * @param op the operation
+   * @return the latencies
+   */
+  public LatencySnapshot getLatency(Operation op) {
+    return latencies.get(op);
+  }
+
+  /**
+   * @return the latencies of all operations
+   */
+  public Map<Operation, LatencySnapshot> getLatencies() {
+    return latencies;
+  }
+
+  /**
+   * @return the number of bytes read from input streams
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * @return the number of bytes written, to output streams as well as via
+   *         {@link org.akubraproject.BlobStoreConnection#getBlob(java.io.InputStream, long,
+   *         java.util.Map) getBlob(InputStream, ...)}
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * @return the number of open connections
+   */
+  public long getOpenConnections() {
+    return openConnections;
+  }
+
+  /**
+   * @return the number of open input streams
+   */
+  public long getOpenInputStreams() {
+    return openInputStreams;
+  }
+
+  /**
+   * @return the number of open output streams
+   */
+  public long getOpenOutputStreams() {
+    return openOutputStreams;
+  }
+
+  /**
+   * Get the statistics for the interval since an earlier snapshot. Latencies and byte counts are
+   * the differences between the two snapshots; the gauges are those of this snapshot.
+   *
+   * @param earlier the earlier snapshot of the same store
+   * @return the statistics for the interval
+   */
+  public StatisticsSnapshot since(StatisticsSnapshot earlier) {
+    EnumMap<Operation, LatencySnapshot> diff =
+        new EnumMap<Operation, LatencySnapshot>(Operation.class);
+    for (Map.Entry<Operation, LatencySnapshot> e : latencies.entrySet())
+      diff.put(e.getKey(), e.getValue().since(earlier.getLatency(e.getKey())));
+
+    return new StatisticsSnapshot(timestamp, diff, bytesRead - earlier.bytesRead,
+                                  bytesWritten - earlier.bytesWritten, openConnections,
+                                  openInputStreams, openOutputStreams);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("bytesRead=").append(bytesRead).append(", bytesWritten=").append(bytesWritten)
+      .append(", openConnections=").append(openConnections)
+      .append(", openInputStreams=").append(openInputStreams)
+      .append(", openOutputStreams=").append(openOutputStreams);
+
+    for (Map.Entry<Operation, LatencySnapshot> e : latencies.entrySet())
+      sb.append("\n  ").append(e.getKey()).append(": ").append(e.getValue());
+
+    return sb.toString();
+  }
+}
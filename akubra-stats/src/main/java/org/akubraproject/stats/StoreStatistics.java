@@ -0,0 +1,143 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The live statistics of an {@link InstrumentedBlobStore}. Recording is lock-free: latencies go
+ * into striped {@link LatencyHistogram}s and counts into {@link StripedCounter}s, so threads
+ * recording at the same time rarely contend. Reading, via {@link #snapshot} or the JMX
+ * attributes, sums up the stripes.
+ */
+public class StoreStatistics implements StoreStatisticsMXBean {
+  private final EnumMap<Operation, LatencyHistogram> latencies =
+      new EnumMap<Operation, LatencyHistogram>(Operation.class);
+
+  private final StripedCounter bytesRead         = new StripedCounter();
+  private final StripedCounter bytesWritten      = new StripedCounter();
+  private final StripedCounter openConnections   = new StripedCounter();
+  private final StripedCounter openInputStreams  = new StripedCounter();
+  private final StripedCounter openOutputStreams = new StripedCounter();
+
+  /**
+   * Create a new, empty, set of statistics.
+   */
+  StoreStatistics() {
+    for (Operation op : Operation.values())
+      latencies.put(op, new LatencyHistogram());
+  }
+
+  /**
+   * Record the latency of an operation that started at the given time.
+   *
+   * @param op         the operation
+   * @param startNanos the start time, as returned by {@link System#nanoTime}
+   */
+  void record(Operation op, long startNanos) {
+    latencies.get(op).record(System.nanoTime() - startNanos);
+  }
+
+  void addBytesRead(long cnt) {
+    bytesRead.add(cnt);
+  }
+
+  void addBytesWritten(long cnt) {
+    bytesWritten.add(cnt);
+  }
+
+  void connectionOpened() {
+    openConnections.add(1);
+  }
+
+  void connectionClosed() {
+    openConnections.add(-1);
+  }
+
+  void inputStreamOpened() {
+    openInputStreams.add(1);
+  }
+
+  void inputStreamClosed() {
+    openInputStreams.add(-1);
+  }
+
+  void outputStreamOpened() {
+    openOutputStreams.add(1);
+  }
+
+  void outputStreamClosed() {
+    openOutputStreams.add(-1);
+  }
+
+  /**
+   * Take a snapshot of the current statistics.
+   *
+   * @return the snapshot
+   */
+  public StatisticsSnapshot snapshot() {
+    EnumMap<Operation, LatencySnapshot> snaps =
+        new EnumMap<Operation, LatencySnapshot>(Operation.class);
+    for (Map.Entry<Operation, LatencyHistogram> e : latencies.entrySet())
+      snaps.put(e.getKey(), e.getValue().snapshot());
+
+    return new StatisticsSnapshot(System.currentTimeMillis(), snaps, bytesRead.sum(),
+                                  bytesWritten.sum(), openConnections.sum(),
+                                  openInputStreams.sum(), openOutputStreams.sum());
+  }
+
+  @Override
+  public Map<String, LatencySnapshot> getLatencies() {
+    Map<String, LatencySnapshot> res = new LinkedHashMap<String, LatencySnapshot>();
+    for (Map.Entry<Operation, LatencyHistogram> e : latencies.entrySet())
+      res.put(e.getKey().name(), e.getValue().snapshot());
+
+    return res;
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  @Override
+  public long getOpenConnections() {
+    return openConnections.sum();
+  }
+
+  @Override
+  public long getOpenInputStreams() {
+    return openInputStreams.sum();
+  }
+
+  @Override
+  public long getOpenOutputStreams() {
+    return openOutputStreams.sum();
+  }
+}
@@ -0,0 +1,60 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the statistics of an {@link InstrumentedBlobStore}. See {@link
+ * InstrumentedBlobStore#registerMBean} for registering it.
+ */
+public interface StoreStatisticsMXBean {
+  /**
+   * @return the latencies of each operation, keyed by {@link Operation} name
+   */
+  Map<String, LatencySnapshot> getLatencies();
+
+  /**
+   * @return the number of bytes read from input streams
+   */
+  long getBytesRead();
+
+  /**
+   * @return the number of bytes written
+   */
+  long getBytesWritten();
+
+  /**
+   * @return the number of open connections
+   */
+  long getOpenConnections();
+
+  /**
+   * @return the number of open input streams
+   */
+  long getOpenInputStreams();
+
+  /**
+   * @return the number of open output streams
+   */
+  long getOpenOutputStreams();
+}
@@ -0,0 +1,76 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free counter that spreads updates over several cells to reduce contention between
+ * threads. Each thread updates the cell picked by its id; reading the value sums all cells.
+ */
+class StripedCounter {
+  /** The number of stripes: a power of two, scaled to the number of processors. */
+  static final int STRIPES;
+
+  /** Spacing of the cells, in longs, so that different stripes live on separate cache lines. */
+  private static final int PAD = 8;
+
+  static {
+    int n = Math.min(Runtime.getRuntime().availableProcessors(), 32);
+    int s = 1;
+    while (s < n)
+      s <<= 1;
+    STRIPES = s;
+  }
+
+  private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+  /**
+   * Add to the counter.
+   *
+   * @param delta the amount to add; may be negative
+   */
+  void add(long delta) {
+    cells.addAndGet(stripe() * PAD, delta);
+  }
+
+  /**
+   * Get the current value. This is not an atomic snapshot with respect to concurrent updates.
+   *
+   * @return the sum of all cells
+   */
+  long sum() {
+    long sum = 0;
+    for (int idx = 0; idx < STRIPES; idx++)
+      sum += cells.get(idx * PAD);
+    return sum;
+  }
+
+  /**
+   * @return the stripe for the current thread, in the range [0, STRIPES)
+   */
+  static int stripe() {
+    long id = Thread.currentThread().getId();
+    int  h  = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return (h >>> 16) & (STRIPES - 1);
+  }
+}
@@ -0,0 +1,30 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Akubra Instrumentation Layer. This store records latency histograms for the blob store
+ * operations, the number of bytes read and written, and the number of open connections and
+ * streams of the store it wraps. Several of these can be placed in a stack, one above each
+ * layer, to find out where time is spent. The statistics are available programmatically as
+ * snapshots and via JMX.
+ */
+package org.akubraproject.stats;
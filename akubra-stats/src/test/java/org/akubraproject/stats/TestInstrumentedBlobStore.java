@@ -0,0 +1,180 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.lang.management.ManagementFactory;
+
+import java.net.URI;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.commons.io.IOUtils;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+import org.akubraproject.Blob;
+import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.mem.MemBlobStore;
+
+/**
+ * Unit tests for {@link InstrumentedBlobStore}.
+ */
+public class TestInstrumentedBlobStore {
+  /**
+   * Each operation should be recorded, bytes counted, and the gauges maintained.
+   */
+  @Test
+  public void testRecording() throws Exception {
+    InstrumentedBlobStore store =
+        new InstrumentedBlobStore(URI.create("urn:stats-test:1"), new MemBlobStore());
+    StatisticsSnapshot start = store.getSnapshot();
+
+    BlobStoreConnection con = store.openConnection(null, null);
+    assertEquals(store.getSnapshot().getOpenConnections(), 1);
+
+    Blob b = con.getBlob(URI.create("urn:blob:1"), null);
+    OutputStream out = b.openOutputStream(-1, true);
+    assertEquals(store.getSnapshot().getOpenOutputStreams(), 1);
+    out.write(new byte[1000]);
+    out.write(42);
+    out.close();
+    out.close();
+    assertEquals(store.getSnapshot().getOpenOutputStreams(), 0);
+
+    InputStream in = b.openInputStream();
+    assertEquals(IOUtils.toByteArray(in).length, 1001);
+    in.close();
+
+    in = b.openInputStream(1000, -1);
+    assertEquals(in.read(), 42);
+    assertEquals(in.read(), -1);
+    assertEquals(store.getSnapshot().getOpenInputStreams(), 1);
+
+    con.getBlob(new ByteArrayInputStream(new byte[10]), 10, null);
+
+    Blob moved = b.moveTo(URI.create("urn:blob:2"), null);
+    assertEquals(moved.getConnection(), con);
+    Blob copied = moved.copyTo(URI.create("urn:blob:4"), null);
+    assertEquals(copied.getConnection(), con);
+    copied.delete();
+    moved.delete();
+    con.delete(Arrays.asList(URI.create("urn:blob:3")));
+
+    Iterator<URI> it = con.listBlobIds(null);
+    assertNotNull(it);
+    con.sync();
+
+    con.close();
+
+    StatisticsSnapshot s = store.getSnapshot().since(start);
+    assertEquals(s.getOpenConnections(), 0);
+    assertEquals(s.getOpenInputStreams(), 0, "input stream not closed with connection");
+    assertEquals(s.getOpenOutputStreams(), 0);
+    assertEquals(s.getBytesWritten(), 1011);
+    assertEquals(s.getBytesRead(), 1002);
+
+    assertEquals(s.getLatency(Operation.OPEN_CONNECTION).getCount(), 1);
+    assertEquals(s.getLatency(Operation.GET_BLOB).getCount(), 2);
+    assertEquals(s.getLatency(Operation.OPEN_OUTPUT_STREAM).getCount(), 1);
+    assertEquals(s.getLatency(Operation.OPEN_INPUT_STREAM).getCount(), 2);
+    assertEquals(s.getLatency(Operation.MOVE_TO).getCount(), 1);
+    assertEquals(s.getLatency(Operation.COPY_TO).getCount(), 1);
+    assertEquals(s.getLatency(Operation.DELETE).getCount(), 3);
+    assertEquals(s.getLatency(Operation.LIST_BLOB_IDS).getCount(), 1);
+    assertEquals(s.getLatency(Operation.SYNC).getCount(), 1);
+  }
+
+  /**
+   * Channels should be recorded like streams.
+   */
+  @Test
+  public void testChannel() throws Exception {
+    InstrumentedBlobStore store =
+        new InstrumentedBlobStore(URI.create("urn:stats-test:3"), new MemBlobStore());
+    StatisticsSnapshot start = store.getSnapshot();
+
+    BlobStoreConnection con = store.openConnection(null, null);
+    Blob b = con.getBlob(new ByteArrayInputStream(new byte[10]), 10, null);
+
+    SeekableByteChannel ch = b.openChannel(true);
+    assertEquals(store.getSnapshot().getOpenOutputStreams(), 1);
+    ch.position(8);
+    assertEquals(ch.write(ByteBuffer.allocate(4)), 4);
+    ch.close();
+    assertEquals(store.getSnapshot().getOpenOutputStreams(), 0);
+
+    ch = b.openChannel(false);
+    assertEquals(store.getSnapshot().getOpenInputStreams(), 1);
+    assertEquals(ch.read(ByteBuffer.allocate(20)), 12);
+    con.close();
+    assertEquals(store.getSnapshot().getOpenInputStreams(), 0,
+                 "channel not closed with connection");
+
+    StatisticsSnapshot s = store.getSnapshot().since(start);
+    assertEquals(s.getBytesWritten(), 14);
+    assertEquals(s.getBytesRead(), 12);
+    assertEquals(s.getLatency(Operation.OPEN_CHANNEL).getCount(), 2);
+  }
+
+  /**
+   * The statistics should be readable via JMX.
+   */
+  @Test
+  public void testJmx() throws Exception {
+    InstrumentedBlobStore store =
+        new InstrumentedBlobStore(URI.create("urn:stats-test:2"), new MemBlobStore());
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName  name   = store.registerMBean(server);
+
+    try {
+      BlobStoreConnection con = store.openConnection(null, null);
+      con.getBlob(URI.create("urn:blob:1"), null);
+
+      assertEquals(server.getAttribute(name, "OpenConnections"), 1L);
+
+      TabularData   lat = (TabularData) server.getAttribute(name, "Latencies");
+      CompositeData row = lat.get(new Object[] { Operation.GET_BLOB.name() });
+      assertEquals(((CompositeData) row.get("value")).get("count"), 1L);
+
+      con.close();
+      assertEquals(server.getAttribute(name, "OpenConnections"), 0L);
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/* $HeadURL$
+ * $Id$
+ *
+ * Copyright (c) 2009-2010 DuraSpace
+ * http://duraspace.org
+ *
+ * In collaboration with Topaz Inc.
+ * http://www.topazproject.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.akubraproject.stats;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Unit tests for {@link LatencyHistogram} and {@link LatencySnapshot}.
+ */
+public class TestLatencyHistogram {
+  /**
+   * Every value must fall into a bucket whose bounds contain it, and the buckets must be
+   * contiguous.
+   */
+  @Test
+  public void testBuckets() {
+    for (int idx = 0; idx < LatencyHistogram.NUM_BUCKETS - 1; idx++)
+      assertEquals(LatencyHistogram.upperBound(idx) + 1, LatencyHistogram.lowerBound(idx + 1));
+
+    long[] values = { 0, 1, 3, 4, 5, 7, 8, 9, 15, 16, 1000, 123456789L, (1L << 39) + 1 };
+    for (long v : values) {
+      int idx = LatencyHistogram.bucketOf(v);
+      assertTrue(LatencyHistogram.lowerBound(idx) <= v && v <= LatencyHistogram.upperBound(idx),
+                 "value " + v + " not in bucket " + idx);
+      assertTrue(LatencyHistogram.upperBound(idx) - LatencyHistogram.lowerBound(idx) <= v / 4,
+                 "bucket " + idx + " too wide for " + v);
+    }
+
+    assertEquals(LatencyHistogram.bucketOf(1L << 40), LatencyHistogram.NUM_BUCKETS - 1);
+    assertEquals(LatencyHistogram.bucketOf(Long.MAX_VALUE), LatencyHistogram.NUM_BUCKETS - 1);
+  }
+
+  /**
+   * Count, mean, max and percentiles of a recorded distribution.
+   */
+  @Test
+  public void testSnapshot() {
+    LatencyHistogram h = new LatencyHistogram();
+    assertEquals(h.snapshot().getCount(), 0);
+    assertEquals(h.snapshot().getP99Nanos(), 0);
+
+    for (int i = 1; i <= 1000; i++)
+      h.record(i * 1000L);
+    h.record(-5);
+
+    LatencySnapshot s = h.snapshot();
+    assertEquals(s.getCount(), 1001);
+    assertEquals(s.getTotalNanos(), 500500000L);
+    assertEquals(s.getMaxNanos(), 1000000L);
+    assertEquals(s.getMeanNanos(), 500500000L / 1001);
+    assertNear(s.getP50Nanos(), 500000);
+    assertNear(s.getP90Nanos(), 900000);
+    assertNear(s.getP99Nanos(), 990000);
+    assertEquals(s.getPercentileNanos(100), 1000000L);
+    assertEquals(s.getBucketCounts()[0], 1);
+
+    try {
+      s.getPercentileNanos(0);
+      fail("Did not get expected IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+    }
+
+    for (int i = 0; i < 10; i++)
+      h.record(50);
+
+    LatencySnapshot d = h.snapshot().since(s);
+    assertEquals(d.getCount(), 10);
+    assertEquals(d.getTotalNanos(), 500);
+    assertNear(d.getP99Nanos(), 50);
+  }
+
+  /**
+   * Concurrent recordings must not be lost.
+   */
+  @Test
+  public void testConcurrentRecording() throws Exception {
+    final LatencyHistogram h = new LatencyHistogram();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 10000; i++)
+            h.record(i);
+        }
+      };
+      threads[t].start();
+    }
+
+    for (Thread t : threads)
+      t.join();
+
+    LatencySnapshot s = h.snapshot();
+    assertEquals(s.getCount(), 80000);
+    assertEquals(s.getTotalNanos(), 8L * (9999L * 10000L / 2));
+    assertEquals(s.getMaxNanos(), 9999);
+  }
+
+  private static void assertNear(long actual, long expected) {
+    assertTrue(actual >= expected * 3 / 4 && actual <= expected * 5 / 4,
+               "expected about " + expected + " but got " + actual);
+  }
+}
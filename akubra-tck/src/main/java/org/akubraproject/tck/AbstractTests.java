@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -234,6 +236,29 @@ public abstract class AbstractTests {
     }
   }
 
+  protected String getBody(Blob b, long offset, long length) throws IOException {
+    InputStream is = b.openInputStream(offset, length);
+    try {
+      return IOUtils.toString(is, "UTF-8");
+    } finally {
+      is.close();
+    }
+  }
+
+  protected String readChannel(SeekableByteChannel ch, long pos, int len) throws IOException {
+    ch.position(pos);
+    ByteBuffer buf = ByteBuffer.allocate(len);
+    while (buf.hasRemaining() && ch.read(buf) >= 0)
+      ;
+    return new String(buf.array(), 0, buf.position(), "UTF-8");
+  }
+
+  protected void writeChannel(SeekableByteChannel ch, String data) throws IOException {
+    ByteBuffer buf = ByteBuffer.wrap(data.getBytes("UTF-8"));
+    while (buf.hasRemaining())
+      ch.write(buf);
+  }
+
   protected void setBody(Blob b, String data) throws IOException {
     setBody(b, data, data.length(), true);
   }
@@ -26,6 +26,16 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import javax.transaction.Transaction;
 
@@ -39,6 +49,7 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import org.akubraproject.Blob;
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.BlobStore;
 import org.akubraproject.BlobStoreConnection;
 import org.akubraproject.DuplicateBlobException;
@@ -105,7 +116,8 @@ public abstract class TCKTestSuite extends AbstractTests {
    * @param isListIdsSupp   true if <code>con.listBlobIds()</code> is supported
    * @param isOutputSupp    true if <var>Blob.openOutputStream()</var> is supported
    * @param isDeleteSupp    true if <var>Blob.delete()</var> is supported
-   * @param isMoveToSupp    true if <var>Blob.moveTo()</var> is supported
+   * @param isMoveToSupp    true if <var>Blob.moveTo()</var> and <var>copyTo()</var> are
+   *                        supported
    * @param isSyncSupp      true if <var>con.sync()</var> is supported
    */
   protected TCKTestSuite(BlobStore store, URI storeId, boolean isTransactional, boolean isIdGenSupp,
@@ -370,6 +382,36 @@ public abstract class TCKTestSuite extends AbstractTests {
             }
           }, IllegalStateException.class, null);
 
+          shouldFail(new ERunnable() {
+            @Override
+            public void erun() throws Exception {
+              con.getBlobs(Collections.singleton(id1), null);
+            }
+          }, IllegalStateException.class, null);
+
+          shouldFail(new ERunnable() {
+            @Override
+            public void erun() throws Exception {
+              con.exists(Collections.singleton(id1));
+            }
+          }, IllegalStateException.class, null);
+
+          shouldFail(new ERunnable() {
+            @Override
+            public void erun() throws Exception {
+              con.getSizes(Collections.singleton(id1));
+            }
+          }, IllegalStateException.class, null);
+
+          if (isDeleteSupp) {
+            shouldFail(new ERunnable() {
+              @Override
+              public void erun() throws Exception {
+                con.delete(Collections.singleton(id1));
+              }
+            }, IllegalStateException.class, null);
+          }
+
           if (isListIdsSupp) {
             shouldFail(new ERunnable() {
               @Override
@@ -384,6 +426,13 @@ public abstract class TCKTestSuite extends AbstractTests {
                 con.listBlobIds(null);
               }
             }, IllegalStateException.class, null);
+
+            shouldFail(new ERunnable() {
+              @Override
+              public void erun() throws Exception {
+                con.listBlobIds(null, null, 10);
+              }
+            }, IllegalStateException.class, null);
           }
 
           if (isSyncSupp) {
@@ -452,6 +501,13 @@ public abstract class TCKTestSuite extends AbstractTests {
             }
           }, IllegalStateException.class, null);
 
+          shouldFail(new ERunnable() {
+            @Override
+            public void erun() throws Exception {
+              b.openInputStream(0, 1);
+            }
+          }, IllegalStateException.class, null);
+
           if (isOutputSupp) {
             shouldFail(new ERunnable() {
               @Override
@@ -491,6 +547,29 @@ public abstract class TCKTestSuite extends AbstractTests {
                 b.moveTo(b2.getId(), null);
               }
             }, IllegalStateException.class, null);
+
+            shouldFail(new ERunnable() {
+              @Override
+              public void erun() throws Exception {
+                b.copyTo(b2.getId(), null);
+              }
+            }, IllegalStateException.class, null);
+          }
+
+          shouldFail(new ERunnable() {
+            @Override
+            public void erun() throws Exception {
+              b.openChannel(false);
+            }
+          }, IllegalStateException.class, null);
+
+          if (isOutputSupp) {
+            shouldFail(new ERunnable() {
+              @Override
+              public void erun() throws Exception {
+                b.openChannel(true);
+              }
+            }, IllegalStateException.class, null);
           }
         }
       }
@@ -578,6 +657,163 @@ public abstract class TCKTestSuite extends AbstractTests {
     });
   }
 
+  /**
+   * Test listing blobs in pages.
+   */
+  @Test(groups={ "connection", "manipulatesBlobs" }, dependsOnGroups={ "init" })
+  public void testListBlobsPaged() throws Exception {
+    // check if list-ids is supported
+    if (!isListIdsSupp) {
+      shouldFail(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          con.listBlobIds(null, null, 10);
+        }
+      }, UnsupportedOperationException.class, null);
+
+      return;
+    }
+
+    final String    prefix = getPrefixFor("blobPagedList");
+    final List<URI> ids    = new ArrayList<URI>();
+    for (String name : new String[] { "blobPagedList3", "blobPagedList1", "blobPagedList/a",
+                                      "blobPagedList2x", "blobPagedList2" })
+      ids.add(createId(name));
+
+    for (URI id : ids)
+      createBlob(id, "foo", true);
+    Collections.sort(ids, BlobIdPage.ID_ORDER);
+
+    runTests(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          // page through everything
+          List<URI> seen = new ArrayList<URI>();
+          URI       cont = null;
+          do {
+            BlobIdPage page = con.listBlobIds(prefix, cont, 2);
+            assertTrue(page.getBlobIds().size() <= 2);
+            seen.addAll(page.getBlobIds());
+            cont = page.getContinuation();
+          } while (cont != null);
+          assertEquals(seen, ids);
+
+          // a single page
+          BlobIdPage page = con.listBlobIds(prefix, null, 10);
+          assertEquals(page.getBlobIds(), ids);
+          assertNull(page.getContinuation());
+
+          // resume after an id, which need not exist
+          page = con.listBlobIds(prefix, ids.get(2), 10);
+          assertEquals(page.getBlobIds(), ids.subList(3, 5));
+          assertNull(page.getContinuation());
+
+          page = con.listBlobIds(prefix, URI.create(ids.get(2) + "0"), 2);
+          assertEquals(page.getBlobIds(), ids.subList(3, 5));
+
+          page = con.listBlobIds(prefix, ids.get(4), 10);
+          assertTrue(page.getBlobIds().isEmpty());
+          assertNull(page.getContinuation());
+
+          // the prefix is honored
+          page = con.listBlobIds(getPrefixFor("blobPagedList2"), null, 10);
+          assertEquals(new HashSet<URI>(page.getBlobIds()),
+                       new HashSet<URI>(Arrays.asList(createId("blobPagedList2"),
+                                                      createId("blobPagedList2x"))));
+
+          page = con.listBlobIds(getPrefixFor("blobPagedLisT"), null, 10);
+          assertTrue(page.getBlobIds().isEmpty());
+        }
+    });
+
+    // page sizes must be positive
+    shouldFail(new ConAction() {
+      public void run(BlobStoreConnection con) throws Exception {
+        con.listBlobIds(prefix, null, 0);
+      }
+    }, IllegalArgumentException.class, null);
+
+    // clean up
+    for (URI id : ids)
+      deleteBlob(id, "foo", true);
+    assertNoBlobs(prefix);
+  }
+
+  /**
+   * Test the bulk operations.
+   */
+  @Test(groups={ "connection", "manipulatesBlobs" }, dependsOnGroups={ "init" })
+  public void testBulkOperations() throws Exception {
+    final URI id1 = createId("blobBulkOps1");
+    final URI id2 = createId("blobBulkOps2");
+    final URI id3 = createId("blobBulkOps3");
+    final List<URI> ids = Arrays.asList(id3, id1, id2, id1);
+
+    createBlob(id1, "foo", true);
+    createBlob(id2, "barbaz", true);
+
+    // check the results against the single-blob operations
+    runTests(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          Map<URI, Blob> blobs = con.getBlobs(ids, null);
+          Iterator<URI> iter = blobs.keySet().iterator();
+          assertEquals(iter.next(), id3);
+          assertEquals(iter.next(), id1);
+          assertEquals(iter.next(), id2);
+          assertFalse(iter.hasNext());
+
+          for (Map.Entry<URI, Blob> e : blobs.entrySet()) {
+            assertEquals(e.getValue().getId(), e.getKey());
+            assertSame(e.getValue().getConnection(), con);
+            assertEquals(e.getValue().exists(), con.getBlob(e.getKey(), null).exists());
+          }
+
+          assertEquals(con.exists(ids), new HashSet<URI>(Arrays.asList(id1, id2)));
+
+          // some stores can't determine the size, in which case it'll be -1
+          Map<URI, Long> sizes = con.getSizes(ids);
+          assertEquals(sizes.keySet(), new HashSet<URI>(Arrays.asList(id1, id2)));
+          assertEquals(sizes.get(id1).longValue(), con.getBlob(id1, null).getSize());
+          assertEquals(sizes.get(id2).longValue(), con.getBlob(id2, null).getSize());
+
+          assertTrue(con.getBlobs(Collections.<URI>emptyList(), null).isEmpty());
+          assertTrue(con.exists(Collections.<URI>emptyList()).isEmpty());
+          assertTrue(con.getSizes(Collections.<URI>emptyList()).isEmpty());
+        }
+    });
+
+    if (!isDeleteSupp) {
+      deleteBlob(id1, "foo", true);
+      deleteBlob(id2, "barbaz", true);
+      assertNoBlobs(getPrefixFor("blobBulkOps"));
+      return;
+    }
+
+    // changes made in the current connection must be visible, and deletes must stick
+    runTests(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          createBlob(con, getBlob(con, id3, null), "quux");
+          assertEquals(con.exists(ids), new HashSet<URI>(Arrays.asList(id1, id2, id3)));
+
+          con.delete(Arrays.asList(id1, id3));
+          assertEquals(con.exists(ids), Collections.singleton(id2));
+          assertEquals(con.getSizes(ids).keySet(), Collections.singleton(id2));
+        }
+    });
+
+    getBlob(id1, null, true);
+    getBlob(id2, "barbaz", true);
+    getBlob(id3, null, true);
+
+    runTests(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          con.delete(ids);
+          assertTrue(con.exists(ids).isEmpty());
+        }
+    });
+
+    // clean up
+    assertNoBlobs(getPrefixFor("blobBulkOps"));
+  }
+
   /**
    * Test sync.
    */
@@ -740,6 +976,12 @@ public abstract class TCKTestSuite extends AbstractTests {
         getBlob(con, id, false).openInputStream().close();
       }
     }, MissingBlobException.class, id);
+
+    shouldFail(new ConAction() {
+      public void run(BlobStoreConnection con) throws Exception {
+        getBlob(con, id, false).openInputStream(1, 2).close();
+      }
+    }, MissingBlobException.class, id);
   }
 
   /**
@@ -880,6 +1122,29 @@ public abstract class TCKTestSuite extends AbstractTests {
           // read whole body
           assertEquals(getBody(b), body);
 
+          // read ranges
+          assertEquals(getBody(b, 0, -1), body);
+          assertEquals(getBody(b, 0, 3), body.substring(0, 3));
+          assertEquals(getBody(b, 8, 4), body.substring(8, 12));
+          assertEquals(getBody(b, 8, -1), body.substring(8));
+          assertEquals(getBody(b, 20, 100), body.substring(20));
+          assertEquals(getBody(b, body.length() - 1, 1), body.substring(body.length() - 1));
+          assertEquals(getBody(b, 5, 0), "");
+          assertEquals(getBody(b, body.length(), -1), "");
+          assertEquals(getBody(b, body.length() + 10, 5), "");
+
+          try {
+            b.openInputStream(-1, 5);
+            fail("Did not get expected IllegalArgumentException for negative offset");
+          } catch (IllegalArgumentException iae) {
+          }
+
+          try {
+            b.openInputStream(0, -2);
+            fail("Did not get expected IllegalArgumentException for length < -1");
+          } catch (IllegalArgumentException iae) {
+          }
+
           deleteBlob(con, b);
         }
     });
@@ -997,6 +1262,104 @@ public abstract class TCKTestSuite extends AbstractTests {
     assertNoBlobs(getPrefixFor("blobBlobUpdate"));
   }
 
+  /**
+   * Test random access through channels.
+   */
+  @Test(groups={ "blob", "manipulatesBlobs" }, dependsOnGroups={ "init" })
+  public void testChannel() throws Exception {
+    final URI id = createId("blobChannel1");
+
+    // channel on non-existent blob should fail
+    shouldFail(new ConAction() {
+      public void run(BlobStoreConnection con) throws Exception {
+        getBlob(con, id, false).openChannel(false);
+      }
+    }, MissingBlobException.class, id);
+
+    createBlob(id, "foobar", true);
+
+    // read-only channel
+    runTests(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          final SeekableByteChannel ch = getBlob(con, id, "foobar").openChannel(false);
+          try {
+            assertTrue(ch.isOpen());
+            if (ch.size() != -1)
+              assertEquals(ch.size(), 6);
+            assertEquals(ch.position(), 0);
+            assertEquals(readChannel(ch, 3, 3), "bar");
+            assertEquals(ch.position(), 6);
+            assertEquals(readChannel(ch, 0, 3), "foo");
+            assertEquals(readChannel(ch, 4, 10), "ar");
+            assertEquals(ch.read(ByteBuffer.allocate(1)), -1);
+            assertEquals(readChannel(ch, 10, 1), "");
+
+            shouldFail(new ERunnable() {
+              @Override
+              public void erun() throws Exception {
+                writeChannel(ch, "x");
+              }
+            }, NonWritableChannelException.class, null);
+          } finally {
+            ch.close();
+          }
+
+          assertFalse(ch.isOpen());
+        }
+    });
+
+    String body = "foobar";
+
+    // modify in place
+    if (isOutputSupp) {
+      runTests(new ConAction() {
+          public void run(BlobStoreConnection con) throws Exception {
+            Blob b = getBlob(con, id, "foobar");
+            SeekableByteChannel ch = b.openChannel(true);
+            try {
+              ch.position(3);
+              writeChannel(ch, "BA");
+              assertEquals(ch.position(), 5);
+              ch.position(6);
+              writeChannel(ch, "!!");
+              ch.truncate(7);
+              assertEquals(readChannel(ch, 0, 10), "fooBAr!");
+            } finally {
+              ch.close();
+            }
+
+            assertEquals(getBody(b), "fooBAr!");
+          }
+      });
+
+      body = "fooBAr!";
+      getBlob(id, body, true);
+
+      // changes through a channel are rolled back
+      if (isTransactional) {
+        runTests(new ConAction() {
+            public void run(BlobStoreConnection con) throws Exception {
+              Blob b = getBlob(con, id, "fooBAr!");
+              SeekableByteChannel ch = b.openChannel(true);
+              try {
+                writeChannel(ch, "XY");
+              } finally {
+                ch.close();
+              }
+
+              assertEquals(getBody(b), "XYoBAr!");
+            }
+        }, false);
+
+        getBlob(id, body, true);
+      }
+    }
+
+    // clean up
+    deleteBlob(id, body, true);
+    assertNoBlobs(getPrefixFor("blobChannel"));
+  }
+
   /**
    * Test move.
    */
@@ -1111,6 +1474,143 @@ public abstract class TCKTestSuite extends AbstractTests {
     assertNoBlobs(getPrefixFor("blobMoveTo"));
   }
 
+  /**
+   * Test copy.
+   */
+  @Test(groups={ "blob", "manipulatesBlobs" }, dependsOnGroups={ "init" })
+  public void testCopyTo() throws Exception {
+    // check if copy is supported
+    if (!isMoveToSupp) {
+      shouldFail(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          Blob b = getBlob(con, createId("blobCopyTo1"), false);
+          b.copyTo(createId("blobCopyTo2"), null);
+        }
+      }, UnsupportedOperationException.class, null);
+
+      return;
+    }
+
+    // set up
+    final URI id1 = createId("blobCopyTo1");
+    final URI id2 = createId("blobCopyTo2");
+    final URI id3 = createId("blobCopyTo3");
+    final URI id4 = createId("blobCopyTo4");
+
+    createBlob(id1, "foo", true);
+    createBlob(id4, "bar", true);
+
+    // copy blob from id1 to id2
+    runTests(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          Blob ob = getBlob(con, id1, "foo");
+          Blob nb = ob.copyTo(id2, null);
+          assertNotNull(nb);
+          assertEquals(nb.getId(), id2);
+          assertEquals(nb.getConnection(), con);
+          assertTrue(ob.exists());
+          assertEquals(getBody(nb), "foo");
+          assertEquals(getBody(con.getBlob(id2, null)), "foo");
+        }
+    });
+
+    getBlob(id1, "foo", true);
+    getBlob(id2, "foo", true);
+
+    // the copies are independent
+    setBlob(id2, "baz", true);
+    getBlob(id1, "foo", true);
+
+    runTests(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          Blob nb = getBlob(con, id1, "foo").copyTo(id3, null);
+          setBlob(con, getBlob(con, id1, "foo"), "foo2");
+          assertEquals(getBody(nb), "foo");
+          deleteBlob(con, nb);
+          assertEquals(getBody(con.getBlob(id1, null)), "foo2");
+        }
+    });
+
+    getBlob(id1, "foo2", true);
+    getBlob(id3, null, true);
+
+    // copy from non-existent blob should fail
+    shouldFail(new ConAction() {
+      public void run(BlobStoreConnection con) throws Exception {
+        Blob ob = getBlob(con, id3, false);
+        ob.copyTo(id4, null);
+      }
+    }, MissingBlobException.class, id3);
+
+    getBlob(id3, null, true);
+    getBlob(id4, "bar", true);
+
+    // copy to existing blob should fail
+    shouldFail(new ConAction() {
+      public void run(BlobStoreConnection con) throws Exception {
+        Blob ob = getBlob(con, id2, "baz");
+        ob.copyTo(id4, null);
+      }
+    }, DuplicateBlobException.class, id4);
+
+    getBlob(id2, "baz", true);
+    getBlob(id4, "bar", true);
+
+    // copy an existing blob onto itself should fail
+    shouldFail(new ConAction() {
+      public void run(BlobStoreConnection con) throws Exception {
+        Blob b = getBlob(con, id2, "baz");
+        b.copyTo(id2, null);
+      }
+    }, DuplicateBlobException.class, id2);
+
+    getBlob(id2, "baz", true);
+
+    // copy to null
+    if (!isIdGenSupp) {
+      // copy to null should fail
+      shouldFail(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          Blob b = getBlob(con, id2, "baz");
+          b.copyTo(null, null);
+        }
+      }, UnsupportedOperationException.class, null);
+    } else {
+      // null id should work
+      runTests(new ConAction() {
+          public void run(BlobStoreConnection con) throws Exception {
+            Blob b  = getBlob(con, id2, "baz");
+            Blob b2 = b.copyTo(null, null);
+            assertEquals(getBody(b2), "baz");
+            // undo for other tests
+            deleteBlob(con, b2);
+          }
+      }, false);
+    }
+
+    getBlob(id2, "baz", true);
+
+    // copy to incompatible blob should fail
+    final URI inv = getInvalidId();
+    if (inv != null) {
+      shouldFail(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          Blob ob = getBlob(con, id2, "baz");
+          ob.copyTo(inv, null);
+        }
+      }, UnsupportedIdException.class, inv);
+    }
+
+    getBlob(id2, "baz", true);
+
+    // clean up
+    deleteBlob(id1, "foo2", true);
+    deleteBlob(id2, "baz", true);
+    deleteBlob(id4, "bar", true);
+
+    assertNoBlobs(getPrefixFor("blobCopyTo"));
+  }
+
   /*
    * Transaction tests.
    */
@@ -26,7 +26,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -125,6 +129,44 @@ public abstract class AbstractTransactionalConnection extends AbstractBlobStoreC
     return b;
   }
 
+  /**
+   * Gets the blobs with the given ids. This looks up the underlying blob-ids of all the blobs not
+   * already in the blob cache with a single {@link #getRealIds getRealIds} call. The bulk
+   * existence and size operations are built on top of this.
+   */
+  @Override
+  public Map<URI, Blob> getBlobs(Collection<URI> blobIds, Map<String, String> hints)
+      throws IOException {
+    ensureOpen();
+
+    List<URI> lookup = new ArrayList<URI>();
+    for (URI blobId : blobIds) {
+      validateId(checkId(blobId));
+      if (!blobCache.containsKey(blobId))
+        lookup.add(blobId);
+    }
+
+    Map<URI, URI> realIds = lookup.isEmpty() ? new HashMap<URI, URI>() : getRealIds(lookup);
+
+    Map<URI, Blob> res = new LinkedHashMap<URI, Blob>();
+    for (URI blobId : blobIds) {
+      if (res.containsKey(blobId))
+        continue;
+
+      Blob b = blobCache.get(blobId);
+      if (b == null) {
+        // the cache holds its values weakly, so the blob may have disappeared since we checked
+        b = realIds.containsKey(blobId) ? new TxnBlob(blobId, hints, realIds.get(blobId))
+                                        : new TxnBlob(blobId, hints);
+        blobCache.put(blobId, b);
+      }
+
+      res.put(blobId, b);
+    }
+
+    return res;
+  }
+
   @Override
   public void sync() throws IOException {
     ensureOpen();
@@ -215,6 +257,24 @@ public abstract class AbstractTransactionalConnection extends AbstractBlobStoreC
    */
   protected abstract URI getRealId(URI blobId) throws IOException;
 
+  /**
+   * Look up the underlying store's blob-ids for a number of upper-level blob-ids at once. This
+   * implementation just invokes {@link #getRealId getRealId} for each id; subclasses should
+   * override this if they can do the lookups more efficiently in bulk.
+   *
+   * @param blobIds  the upper level blob-ids
+   * @return a map containing an entry for each id in <var>blobIds</var>, with the underlying
+   *         blob-id as the value, or null if no mapping exists for that id
+   * @throws IOException if an error occurred looking up the ids
+   */
+  protected Map<URI, URI> getRealIds(Collection<URI> blobIds) throws IOException {
+    Map<URI, URI> res = new HashMap<URI, URI>();
+    for (URI blobId : blobIds)
+      res.put(blobId, getRealId(blobId));
+
+    return res;
+  }
+
   /**
    * Remove an id mapping.
    *
@@ -330,11 +390,22 @@ public abstract class AbstractTransactionalConnection extends AbstractBlobStoreC
     private       Blob    storeBlob = null;
 
     public TxnBlob(URI blobId, Map<String, String> hints) throws IOException {
+      this(blobId, hints, getRealId(blobId));
+    }
+
+    /**
+     * Create a new blob whose underlying blob-id has already been looked up.
+     *
+     * @param blobId  the upper level blob-id
+     * @param hints   the hints to use when accessing the underlying blob
+     * @param storeId the underlying blob-id, as returned by {@link #getRealId getRealId}
+     */
+    public TxnBlob(URI blobId, Map<String, String> hints, URI storeId) {
       super(AbstractTransactionalConnection.this, blobId);
       this.hints = hints;
 
-      storeId    = getRealId(blobId);
-      needToCopy = true;
+      this.storeId = storeId;
+      needToCopy   = true;
     }
 
     @Override
@@ -370,6 +441,38 @@ public abstract class AbstractTransactionalConnection extends AbstractBlobStoreC
       return dest;
     }
 
+    /**
+     * Creates a new underlying blob for the copy and has the underlying store copy the content
+     * into it, so the content is not passed through this connection.
+     */
+    @Override
+    public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+      getStoreBlob();
+      TxnBlob dest = (TxnBlob) getConnection().getBlob(blobId, hints);
+      dest.check(false, true);
+
+      dest.storeBlob  = (Blob) createBlob(dest.getId(), hints)[1];
+      dest.storeId    = dest.storeBlob.getId();
+      dest.needToCopy = false;
+
+      boolean success = false;
+      try {
+        dest.storeBlob = storeBlob.copyTo(dest.storeId, hints);
+        success = true;
+      } finally {
+        if (!success) {
+          try {
+            dest.delete();
+          } catch (Throwable t) {
+            logger.warn("Error removing copied blob during exception handling: blob-id = '" +
+                        dest.getId() + "'", t);
+          }
+        }
+      }
+
+      return dest;
+    }
+
     @Override
     public long getSize() throws IOException {
       getStoreBlob();
@@ -382,6 +485,56 @@ public abstract class AbstractTransactionalConnection extends AbstractBlobStoreC
       return storeBlob.openInputStream();
     }
 
+    @Override
+    public InputStream openInputStream(long offset, long length) throws IOException {
+      checkRange(offset, length);
+      getStoreBlob();
+      return storeBlob.openInputStream(offset, length);
+    }
+
+    /**
+     * A writable channel modifies the underlying blob in place, so the first time in a
+     * transaction the content is first copied to a new underlying blob, like a stream overwriting
+     * the content gets a new underlying blob.
+     */
+    @Override
+    public SeekableByteChannel openChannel(boolean writable) throws IOException {
+      getStoreBlob();
+
+      if (writable && needToCopy) {
+        URI  oldId   = storeId;
+        Blob newBlob = null;
+
+        remNameEntry(getId(), oldId);
+
+        boolean success = false;
+        try {
+          newBlob = (Blob) createBlob(getId(), hints)[1];
+          newBlob = storeBlob.copyTo(newBlob.getId(), hints);
+          success = true;
+        } finally {
+          if (!success) {
+            try {
+              if (newBlob != null)
+                removeBlob(getId(), newBlob.getId());
+              addNameEntry(getId(), oldId);
+            } catch (Throwable t) {
+              logger.warn("Error restoring blob during exception handling: blob-id = '" +
+                          getId() + "'", t);
+            }
+          }
+        }
+
+        remBlob(getId(), oldId);
+
+        storeBlob  = newBlob;
+        storeId    = newBlob.getId();
+        needToCopy = false;
+      }
+
+      return storeBlob.openChannel(writable);
+    }
+
     @Override
     public OutputStream openOutputStream(long estimatedSize, boolean overwrite)
         throws IOException, DuplicateBlobException {
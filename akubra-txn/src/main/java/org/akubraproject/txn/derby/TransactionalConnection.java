@@ -29,7 +29,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import javax.sql.XAConnection;
@@ -40,6 +44,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.derby.iapi.services.monitor.Monitor;
 
+import org.akubraproject.BlobIdPage;
 import org.akubraproject.BlobStore;
 import org.akubraproject.UnsupportedIdException;
 import org.akubraproject.txn.ConcurrentBlobUpdateException;
@@ -53,8 +58,12 @@ import org.akubraproject.txn.SQLTransactionalConnection;
 public class TransactionalConnection extends SQLTransactionalConnection {
   private static final Logger logger = LoggerFactory.getLogger(TransactionalConnection.class);
 
+  /** the number of ids looked up per query by {@link #getRealIds getRealIds} */
+  static final int NAM_GET_BATCH_SIZE = 100;
+
   private final long              version;
   private final PreparedStatement nam_get;
+  private final PreparedStatement nam_get_multi;
   private final PreparedStatement nam_ins;
   private final PreparedStatement nam_upd;
   private final PreparedStatement del_ins;
@@ -64,6 +73,8 @@ public class TransactionalConnection extends SQLTransactionalConnection {
   private final PreparedStatement del_cmt;
   private final PreparedStatement nam_lst_all;
   private final PreparedStatement nam_lst_pfx;
+  private final PreparedStatement nam_lst_aft;
+  private final PreparedStatement nam_lst_pfx_aft;
 
   private int numMods = 0;
 
@@ -97,6 +108,16 @@ public class TransactionalConnection extends SQLTransactionalConnection {
       nam_get = con.prepareStatement(sql);
       nam_get.setMaxRows(1);
 
+      // get store-ids in bulk; the rows for each appId are ordered by descending version
+      StringBuilder params = new StringBuilder(NAM_GET_BATCH_SIZE * 2);
+      for (int idx = 0; idx < NAM_GET_BATCH_SIZE; idx++)
+        params.append(idx > 0 ? ",?" : "?");
+
+      sql = "SELECT appId, storeId, deleted FROM " + TransactionalStore.NAME_TABLE +
+            " WHERE appId IN (" + params + ") AND (version < ? AND committed <> 0 OR " +
+            " version = ?) ORDER BY appId, version DESC";
+      nam_get_multi = con.prepareStatement(sql);
+
       // update name-table on blob insert/delete/modify
       sql = "INSERT INTO " + TransactionalStore.NAME_TABLE + " VALUES (?, ?, ?, ?, ?)";
       nam_ins = con.prepareStatement(sql);
@@ -137,6 +158,17 @@ public class TransactionalConnection extends SQLTransactionalConnection {
             " WHERE (version < ? AND committed <> 0 OR version = ?)" +
             " AND appId LIKE ? ESCAPE '!' ORDER BY appId";
       nam_lst_pfx = con.prepareStatement(sql);
+
+      // list a page of blob-ids, seeking past the previous page
+      sql = "SELECT appId, version, deleted FROM " + TransactionalStore.NAME_TABLE +
+            " WHERE (version < ? AND committed <> 0 OR version = ?)" +
+            " AND appId > ? ORDER BY appId";
+      nam_lst_aft = con.prepareStatement(sql);
+
+      sql = "SELECT appId, version, deleted FROM " + TransactionalStore.NAME_TABLE +
+            " WHERE (version < ? AND committed <> 0 OR version = ?)" +
+            " AND appId LIKE ? ESCAPE '!' AND appId > ? ORDER BY appId";
+      nam_lst_pfx_aft = con.prepareStatement(sql);
     } catch (SQLException sqle) {
       throw new IOException("Error querying db", sqle);
     }
@@ -149,50 +181,57 @@ public class TransactionalConnection extends SQLTransactionalConnection {
     if (logger.isDebugEnabled())
       logger.debug("listing blob-ids with prefix '" + filterPrefix + "' (" + this + ")");
 
+    return listIds(filterPrefix, null);
+  }
+
+  /**
+   * Seeks to <var>startAfter</var> in the name-table index and reads only as many rows as are
+   * needed for the page.
+   */
+  @Override
+  public BlobIdPage listBlobIds(String filterPrefix, URI startAfter, int maxIds)
+      throws IOException {
+    ensureOpen();
+    checkMaxIds(maxIds);
+
+    if (logger.isDebugEnabled())
+      logger.debug("listing " + maxIds + " blob-ids with prefix '" + filterPrefix +
+                   "' after '" + startAfter + "' (" + this + ")");
+
+    NameIdIterator iter = listIds(filterPrefix, startAfter);
     try {
-      PreparedStatement query;
-      if (filterPrefix != null && filterPrefix.trim().length() > 0) {
-        query = nam_lst_pfx;
-        query.setLong(1, version);
-        query.setLong(2, version);
-        query.setString(3, escLike(filterPrefix.trim()) + '%');
-      } else {
-        query = nam_lst_all;
-        query.setLong(1, version);
-        query.setLong(2, version);
-      }
+      List<URI> ids = new ArrayList<URI>();
+      while (ids.size() <= maxIds && iter.hasNext())
+        ids.add(iter.next());
+
+      return toPage(ids, maxIds);
+    } catch (RuntimeException re) {
+      if (re.getCause() instanceof SQLException)
+        throw new IOException("Error querying db", re.getCause());
+      throw re;
+    } finally {
+      iter.close();
+    }
+  }
 
-      ResultSet rs = query.executeQuery();              // NOPMD
-      return new RSBlobIdIterator(rs, false) {
-        private final RSBlobIdIterator idIterator = new RSBlobIdIterator(rs, false);
-
-        @Override
-        protected URI getNextId() throws SQLException {
-          while (true) {
-            // see if we've reached the end of the result-set
-            if (!idIterator.hasNext())
-              return null;
-
-            // get all the rows with the same id; the one with the largest version determines isDel
-            long    maxVers = -1;
-            boolean isDel   = true;
-            URI     curId;
-
-            do {
-              curId = idIterator.next();
-              long v = rs.getLong(2);
-              if (v > maxVers) {
-                maxVers = v;
-                isDel   = rs.getBoolean(3);
-              }
-            } while (idIterator.hasNext() && idIterator.peek().equals(curId));
-
-            // if this id wasn't deleted then we're golden
-            if (!isDel)
-              return curId;
-          }
-        }
-      };
+  private NameIdIterator listIds(String filterPrefix, URI startAfter) throws IOException {
+    try {
+      boolean           hasPfx = filterPrefix != null && filterPrefix.trim().length() > 0;
+      PreparedStatement query;
+      if (startAfter != null)
+        query = hasPfx ? nam_lst_pfx_aft : nam_lst_aft;
+      else
+        query = hasPfx ? nam_lst_pfx : nam_lst_all;
+
+      int idx = 1;
+      query.setLong(idx++, version);
+      query.setLong(idx++, version);
+      if (hasPfx)
+        query.setString(idx++, escLike(filterPrefix.trim()) + '%');
+      if (startAfter != null)
+        query.setString(idx++, startAfter.toString());
+
+      return new NameIdIterator(query.executeQuery());
     } catch (SQLException sqle) {
       throw new IOException("Error querying db", sqle);
     }
@@ -225,6 +264,53 @@ public class TransactionalConnection extends SQLTransactionalConnection {
     }
   }
 
+  /**
+   * Looks up the ids in batches of {@link #NAM_GET_BATCH_SIZE} using a single query per batch.
+   * The last batch is padded by repeating its last id so the same prepared statement can always
+   * be used.
+   */
+  @Override
+  protected Map<URI, URI> getRealIds(Collection<URI> blobIds) throws IOException {
+    Map<URI, URI> res = new HashMap<URI, URI>();
+
+    try {
+      Iterator<URI> iter = blobIds.iterator();
+      while (iter.hasNext()) {
+        String last = null;
+        for (int idx = 1; idx <= NAM_GET_BATCH_SIZE; idx++) {
+          if (iter.hasNext()) {
+            URI blobId = iter.next();
+            res.put(blobId, null);
+            last = blobId.toString();
+          }
+          nam_get_multi.setString(idx, last);
+        }
+        nam_get_multi.setLong(NAM_GET_BATCH_SIZE + 1, version);
+        nam_get_multi.setLong(NAM_GET_BATCH_SIZE + 2, version);
+
+        ResultSet rs = nam_get_multi.executeQuery();    // NOPMD
+        try {
+          String prev = null;
+          while (rs.next()) {
+            String appId = rs.getString(1);
+            if (appId.equals(prev))
+              continue;         // an older version
+            prev = appId;
+
+            if (!rs.getBoolean(3))
+              res.put(URI.create(appId), URI.create(rs.getString(2)));
+          }
+        } finally {
+          rs.close();
+        }
+      }
+    } catch (SQLException sqle) {
+      throw new IOException("Error querying db", sqle);
+    }
+
+    return res;
+  }
+
   /* Debug helper
   static String dumpResults(ResultSet rs) throws SQLException {
     StringBuilder res = new StringBuilder(500);
@@ -413,8 +499,9 @@ public class TransactionalConnection extends SQLTransactionalConnection {
   }
 
   private void closeStatements() {
-    for (Statement stmt : new Statement[] { nam_get, nam_ins, nam_upd, del_ins, del_upd, nam_cfl,
-                                            nam_cmt, del_cmt, nam_lst_all, nam_lst_pfx }) {
+    for (Statement stmt : new Statement[] { nam_get, nam_get_multi, nam_ins, nam_upd, del_ins,
+                                            del_upd, nam_cfl, nam_cmt, del_cmt, nam_lst_all,
+                                            nam_lst_pfx }) {
       try {
         stmt.close();
       } catch (SQLException sqle) {
@@ -444,4 +531,51 @@ public class TransactionalConnection extends SQLTransactionalConnection {
       rs.close();
     }
   }
+
+  /**
+   * Iterates over the ids in a listing of the name-table, skipping deleted blobs.
+   */
+  private static class NameIdIterator extends RSBlobIdIterator {
+    private final RSBlobIdIterator idIterator;
+
+    NameIdIterator(ResultSet rs) throws SQLException {
+      super(rs, false);
+      idIterator = new RSBlobIdIterator(rs, false);
+    }
+
+    @Override
+    protected URI getNextId() throws SQLException {
+      while (true) {
+        // see if we've reached the end of the result-set
+        if (!idIterator.hasNext())
+          return null;
+
+        // get all the rows with the same id; the one with the largest version determines isDel
+        long    maxVers = -1;
+        boolean isDel   = true;
+        URI     curId;
+
+        do {
+          curId = idIterator.next();
+          long v = rs.getLong(2);
+          if (v > maxVers) {
+            maxVers = v;
+            isDel   = rs.getBoolean(3);
+          }
+        } while (idIterator.hasNext() && idIterator.peek().equals(curId));
+
+        // if this id wasn't deleted then we're golden
+        if (!isDel)
+          return curId;
+      }
+    }
+
+    /**
+     * Close the result-set before the end of the iteration.
+     */
+    @Override
+    public void close() {
+      super.close();
+    }
+  }
 }
@@ -27,7 +27,12 @@ import java.net.URI;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 
@@ -148,6 +153,57 @@ public class TestTransactionalStore extends TCKTestSuite {
     notify(cv, true);
   }
 
+  @Override
+  public void testBulkOperations() throws Exception {
+    super.testBulkOperations();
+
+    // enough ids to need several batches, with old versions and deletions for some of them
+    final List<URI> ids = new ArrayList<URI>();
+    final Set<URI>  exp = new HashSet<URI>();
+    for (int idx = 0; idx < TransactionalConnection.NAM_GET_BATCH_SIZE * 2 + 7; idx++)
+      ids.add(createId("blobBulkOpsTxn" + idx));
+
+    runTests(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          for (int idx = 0; idx < ids.size(); idx += 3) {
+            createBlob(con, getBlob(con, ids.get(idx), null), "v1-" + idx);
+            exp.add(ids.get(idx));
+          }
+        }
+    });
+
+    runTests(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          for (int idx = 0; idx + 3 < ids.size(); idx += 6) {
+            setBlob(con, getBlob(con, ids.get(idx), true), "v2-" + idx);
+            deleteBlob(con, getBlob(con, ids.get(idx + 3), true));
+            exp.remove(ids.get(idx + 3));
+          }
+        }
+    });
+
+    runTests(new ConAction() {
+        public void run(BlobStoreConnection con) throws Exception {
+          assertEquals(con.exists(ids), exp);
+
+          Map<URI, Long> sizes = con.getSizes(ids);
+          assertEquals(sizes.keySet(), exp);
+          for (int idx = 0; idx + 3 < ids.size(); idx += 6)
+            assertEquals(sizes.get(ids.get(idx)).longValue(), ("v2-" + idx).length());
+
+          Map<URI, Blob> blobs = con.getBlobs(ids, null);
+          assertEquals(blobs.size(), ids.size());
+          for (URI id : ids)
+            assertEquals(blobs.get(id).exists(), exp.contains(id));
+
+          con.delete(ids);
+          assertEquals(con.exists(ids), new HashSet<URI>());
+        }
+    });
+
+    assertNoBlobs(getPrefixFor("blobBulkOpsTxn"));
+  }
+
   /**
    * Test deletions are done and cleaned up properly under various combinations of
    * creating/moving/deleting blobs.
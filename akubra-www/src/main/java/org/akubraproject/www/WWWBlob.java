@@ -21,11 +21,13 @@
  */
 package org.akubraproject.www;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -50,6 +52,9 @@ import org.akubraproject.impl.StreamManager;
 class WWWBlob extends AbstractBlob {
   private static final Logger logger = LoggerFactory.getLogger(WWWBlob.class);
 
+  private static final int SC_PARTIAL_CONTENT       = 206;
+  private static final int SC_RANGE_NOT_SATISFIABLE = 416;
+
   private final URL           url;
   private final StreamManager streamManager;
   private Long                size;
@@ -154,6 +159,56 @@ class WWWBlob extends AbstractBlob {
     return content;
   }
 
+  /**
+   * Opens a stream on a range of the resource. For http(s) urls this sends a <code>Range</code>
+   * header so that only the requested bytes are transferred; if the server does not honor the
+   * header, or for other kinds of urls, the leading content is skipped locally.
+   */
+  @Override
+  public InputStream openInputStream(long offset, long length) throws IOException {
+    checkRange(offset, length);
+    if (offset == 0 && length < 0)
+      return openInputStream();
+
+    ensureOpen();
+
+    URLConnection con = url.openConnection();
+    con.setAllowUserInteraction(false);
+    con.setDoInput(true);
+
+    boolean ranged = false;
+    if (con instanceof HttpURLConnection) {
+      HttpURLConnection hc = (HttpURLConnection) con;
+      long last = offset + Math.max(length, 1) - 1;
+      hc.setRequestProperty("Range", "bytes=" + offset + "-" + ((length < 0) ? "" : last));
+
+      int code = hc.getResponseCode();
+      if (code == SC_RANGE_NOT_SATISFIABLE) {
+        // the resource exists, but ends before offset
+        hc.disconnect();
+        exists = true;
+        return streamManager.manageInputStream(owner, new ByteArrayInputStream(new byte[0]));
+      }
+      ranged = (code == SC_PARTIAL_CONTENT);
+    }
+
+    InputStream in;
+    try {
+      in = con.getInputStream();
+    } catch (FileNotFoundException fnfe) {
+      logger.debug("blob doesn't exist for '" + id + "'", fnfe);
+      exists = false;
+      size   = null;
+      urlc   = null;
+      throw new MissingBlobException(id);
+    }
+
+    exists = true;
+    in = ranged ? limitStream(in, length) : sliceStream(in, offset, length);
+
+    return streamManager.manageInputStream(owner, in);
+  }
+
   @Override
   public OutputStream openOutputStream(long estimatedSize, boolean overwrite) throws IOException {
     if (!overwrite && exists())
@@ -188,4 +243,9 @@ class WWWBlob extends AbstractBlob {
   public Blob moveTo(URI blobId, Map<String, String> hints) throws IOException {
     throw new UnsupportedOperationException();
   }
+
+  @Override
+  public Blob copyTo(URI blobId, Map<String, String> hints) throws IOException {
+    throw new UnsupportedOperationException();
+  }
 }
@@ -22,11 +22,25 @@
 package org.akubraproject.www;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.IOUtils;
 
 import org.akubraproject.Blob;
 import org.akubraproject.BlobStoreConnection;
+import org.akubraproject.MissingBlobException;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.fail;
@@ -131,4 +145,85 @@ public class WWWBlobTest {
       fail("openOutputStream() failed", e);
     }
   }
+
+  /**
+   * Test openInputStream(offset, length) against a local http server, making sure the range
+   * is sent to the server rather than skipped locally.
+   *
+   * @throws Exception on an error
+   */
+  @Test
+  public void testOpenRangedInputStream() throws Exception {
+    final byte[]       body   = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes("US-ASCII");
+    final List<String> ranges = new ArrayList<String>();
+
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      private final Pattern range = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+      public void handle(HttpExchange ex) throws IOException {
+        if (!ex.getRequestURI().getPath().equals("/blob")) {
+          ex.sendResponseHeaders(404, -1);
+          ex.close();
+          return;
+        }
+
+        String  hdr = ex.getRequestHeaders().getFirst("Range");
+        Matcher m   = (hdr != null) ? range.matcher(hdr) : null;
+        synchronized (ranges) {
+          ranges.add(hdr);
+        }
+
+        int code = 200, off = 0, len = body.length;
+        if (m != null && m.matches()) {
+          off = Integer.parseInt(m.group(1));
+          int end = m.group(2).length() > 0 ? Integer.parseInt(m.group(2)) + 1 : body.length;
+          if (off >= body.length) {
+            ex.sendResponseHeaders(416, -1);
+            ex.close();
+            return;
+          }
+          len  = Math.min(end, body.length) - off;
+          code = 206;
+        }
+
+        ex.sendResponseHeaders(code, len);
+        OutputStream out = ex.getResponseBody();
+        out.write(body, off, len);
+        out.close();
+      }
+    });
+    server.start();
+
+    try {
+      String base = "http://localhost:" + server.getAddress().getPort();
+      Blob   b    = con.getBlob(URI.create(base + "/blob"), null);
+
+      assertEquals(read(b.openInputStream(10, 5)), "abcde");
+      assertEquals(read(b.openInputStream(30, -1)), "uvwxyz");
+      assertEquals(read(b.openInputStream(30, 100)), "uvwxyz");
+      assertEquals(read(b.openInputStream(3, 0)), "");
+      assertEquals(read(b.openInputStream(100, 5)), "");
+      assertEquals(ranges.size(), 5);
+      assertEquals(ranges.get(0), "bytes=10-14");
+      assertEquals(ranges.get(1), "bytes=30-");
+
+      try {
+        con.getBlob(URI.create(base + "/missing"), null).openInputStream(1, 1);
+        fail("Failed to rcv expected exception");
+      } catch (MissingBlobException e) {
+        assertEquals(e.getBlobId(), URI.create(base + "/missing"));
+      }
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  private static String read(InputStream in) throws IOException {
+    try {
+      return IOUtils.toString(in, "US-ASCII");
+    } finally {
+      in.close();
+    }
+  }
 }